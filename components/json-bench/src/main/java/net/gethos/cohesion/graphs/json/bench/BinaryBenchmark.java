@@ -0,0 +1,113 @@
+/**
+ * Cohesion Framework - JSON Library
+ * Copyright (c) 2017 - Stewart Gebbie, Gethos. Licensed under the MIT licence.
+ * vim: set ts=4 sw=0:
+ */
+package net.gethos.cohesion.graphs.json.bench;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import net.gethos.cohesion.graphs.json.JSONBinaryStream;
+import net.gethos.cohesion.graphs.json.JSONBinaryWriter;
+import net.gethos.cohesion.graphs.json.JSONStream;
+import net.gethos.cohesion.graphs.json.JSONValue;
+import net.gethos.cohesion.graphs.json.JSONWriter;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Benchmark a hop between services: the values of each corpus written out
+ * and read back in, as UTF-8 text via {@link JSONWriter} and
+ * {@link JSONStream}, and in binary form via {@link JSONBinaryWriter} and
+ * {@link JSONBinaryStream}. The size of each encoding is printed at setup.
+ *
+ * @author {@literal Stewart Gebbie <sgebbie@gethos.net>}
+ *
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class BinaryBenchmark {
+
+	@Param({"NUMBERS", "STRINGS", "NESTED", "WIDE", "STREAM"})
+	public Corpus corpus;
+
+	private List<JSONValue> values;
+	private byte[] text;
+	private byte[] binary;
+
+	/**
+	 * Discards what is written, so that only the encoding is measured.
+	 */
+	private static final OutputStream DISCARD = new OutputStream() {
+		@Override
+		public void write(int b) {
+		}
+
+		@Override
+		public void write(byte[] b, int off, int len) {
+		}
+	};
+
+	@Setup
+	public void setup() throws IOException {
+		values = new ArrayList<JSONValue>();
+		for (JSONValue v : new JSONStream(new StringReader(corpus.text()))) values.add(v);
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		JSONWriter w = new JSONWriter(out);
+		for (JSONValue v : values) w.value(v);
+		w.flush();
+		text = out.toByteArray();
+		out = new ByteArrayOutputStream();
+		JSONBinaryWriter b = new JSONBinaryWriter(out);
+		for (JSONValue v : values) b.write(v);
+		b.flush();
+		binary = out.toByteArray();
+		System.out.printf("%n%s: %d bytes of text, %d bytes binary%n", corpus, text.length, binary.length);
+	}
+
+	@Benchmark
+	public void writeText() throws IOException {
+		JSONWriter w = new JSONWriter(DISCARD);
+		for (JSONValue v : values) w.value(v);
+		w.flush();
+	}
+
+	@Benchmark
+	public void writeBinary() throws IOException {
+		JSONBinaryWriter w = new JSONBinaryWriter(DISCARD);
+		for (JSONValue v : values) w.write(v);
+		w.flush();
+	}
+
+	@Benchmark
+	public void readText(Blackhole bh) {
+		for (JSONValue v : new JSONStream(new ByteArrayInputStream(text))) bh.consume(v);
+	}
+
+	@Benchmark
+	public void readBinary(Blackhole bh) {
+		for (JSONValue v : new JSONBinaryStream(new ByteArrayInputStream(binary))) bh.consume(v);
+	}
+}
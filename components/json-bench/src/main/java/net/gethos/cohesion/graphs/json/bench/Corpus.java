@@ -0,0 +1,169 @@
+/**
+ * Cohesion Framework - JSON Library
+ * Copyright (c) 2017 - Stewart Gebbie, Gethos. Licensed under the MIT licence.
+ * vim: set ts=4 sw=0:
+ */
+package net.gethos.cohesion.graphs.json.bench;
+
+import java.util.Random;
+
+/**
+ * Representative JSON corpora used by the benchmarks.
+ * <p>
+ * Each corpus is generated deterministically (fixed seed) so that results
+ * remain comparable between runs and between revisions of the parser.
+ *
+ * @author {@literal Stewart Gebbie <sgebbie@gethos.net>}
+ *
+ */
+public enum Corpus {
+
+	/** Telemetry style arrays of integers and doubles. */
+	NUMBERS {
+		@Override
+		String generate(Random r) {
+			StringBuilder x = new StringBuilder();
+			x.append('{');
+			for (int i = 0; i < 64; i++) {
+				if (i > 0) x.append(',');
+				x.append("\"series").append(i).append("\":[");
+				for (int j = 0; j < 32; j++) {
+					if (j > 0) x.append(',');
+					switch (j % 4) {
+						case 0: x.append(r.nextInt(1000)); break;
+						case 1: x.append(r.nextLong()); break;
+						case 2: x.append(r.nextDouble() * 1000); break;
+						default: x.append('-').append(r.nextInt(10)).append('.').append(r.nextInt(100000)).append("E+").append(r.nextInt(20)); break;
+					}
+				}
+				x.append(']');
+			}
+			x.append('}');
+			return x.toString();
+		}
+	},
+
+	/** Log lines, embedded JSON and stack traces with plenty of escapes. */
+	STRINGS {
+		@Override
+		String generate(Random r) {
+			StringBuilder x = new StringBuilder();
+			x.append('[');
+			for (int i = 0; i < 256; i++) {
+				if (i > 0) x.append(',');
+				x.append('"');
+				switch (i % 3) {
+					case 0:
+						x.append("2017-06-0").append(i % 9 + 1).append("T12:00:00Z INFO request \\\"").append(word(r)).append("\\\" completed in ").append(r.nextInt(500)).append("ms");
+						break;
+					case 1:
+						x.append("{\\\"id\\\":").append(r.nextInt()).append(",\\\"name\\\":\\\"").append(word(r)).append("\\\",\\\"path\\\":\\\"C:\\\\temp\\\\").append(word(r)).append("\\\"}");
+						break;
+					default:
+						x.append("java.lang.IllegalStateException: ").append(word(r)).append("\\n\\tat net.gethos.").append(word(r)).append("(Unknown Source)\\n\\tat caf\\u00e9.").append(word(r)).append("\\r\\n");
+						break;
+				}
+				x.append('"');
+			}
+			x.append(']');
+			return x.toString();
+		}
+	},
+
+	/** Deeply nested objects and arrays. */
+	NESTED {
+		@Override
+		String generate(Random r) {
+			StringBuilder x = new StringBuilder();
+			x.append('[');
+			for (int i = 0; i < 16; i++) {
+				if (i > 0) x.append(',');
+				nest(r, x, 48);
+			}
+			x.append(']');
+			return x.toString();
+		}
+
+		private void nest(Random r, StringBuilder x, int depth) {
+			if (depth == 0) {
+				x.append(r.nextBoolean() ? "true" : "null");
+			} else if (depth % 2 == 0) {
+				x.append("{\"").append(word(r)).append("\":");
+				nest(r, x, depth - 1);
+				x.append(",\"n\":").append(depth).append('}');
+			} else {
+				x.append('[');
+				nest(r, x, depth - 1);
+				x.append(",false]");
+			}
+		}
+	},
+
+	/** Wide, flat records with many members. */
+	WIDE {
+		@Override
+		String generate(Random r) {
+			StringBuilder x = new StringBuilder();
+			x.append('[');
+			for (int i = 0; i < 16; i++) {
+				if (i > 0) x.append(',');
+				record(r, x, 256);
+			}
+			x.append(']');
+			return x.toString();
+		}
+	},
+
+	/** Many small records sent back-to-back, as seen by a {@code JSONStream}. */
+	STREAM {
+		@Override
+		String generate(Random r) {
+			StringBuilder x = new StringBuilder();
+			for (int i = 0; i < 2048; i++) {
+				record(r, x, 12);
+				x.append(i % 2 == 0 ? "\n" : " ");
+			}
+			return x.toString();
+		}
+	},
+	;
+
+	private static final long SEED = 0x5eed2017L;
+
+	private String text;
+
+	abstract String generate(Random r);
+
+	/**
+	 * @return the JSON text of the corpus
+	 */
+	public synchronized String text() {
+		if (text == null) text = generate(new Random(SEED + ordinal()));
+		return text;
+	}
+
+	private static final String[] WORDS = {
+		"alpha", "bravo", "charlie", "delta", "echo", "foxtrot", "golf", "hotel",
+		"india", "juliet", "kilo", "lima", "mike", "november", "oscar", "papa"
+	};
+
+	static String word(Random r) {
+		return WORDS[r.nextInt(WORDS.length)];
+	}
+
+	static void record(Random r, StringBuilder x, int members) {
+		x.append('{');
+		for (int m = 0; m < members; m++) {
+			if (m > 0) x.append(',');
+			x.append("\"field").append(m).append("\":");
+			switch (m % 5) {
+				case 0: x.append(r.nextInt(100000)); break;
+				case 1: x.append('"').append(word(r)).append('-').append(word(r)).append('"'); break;
+				case 2: x.append(r.nextDouble()); break;
+				case 3: x.append(r.nextBoolean()); break;
+				default: x.append("[\"").append(word(r)).append("\",").append(r.nextInt(10)).append(",null]"); break;
+			}
+		}
+		x.append('}');
+	}
+}
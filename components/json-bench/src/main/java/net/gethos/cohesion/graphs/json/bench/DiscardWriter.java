@@ -0,0 +1,40 @@
+/**
+ * Cohesion Framework - JSON Library
+ * Copyright (c) 2017 - Stewart Gebbie, Gethos. Licensed under the MIT licence.
+ * vim: set ts=4 sw=0:
+ */
+package net.gethos.cohesion.graphs.json.bench;
+
+import java.io.Writer;
+
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Writer that hands each block to the black hole, so that the cost of
+ * gathering the output is not measured.
+ *
+ * @author {@literal Stewart Gebbie <sgebbie@gethos.net>}
+ *
+ */
+class DiscardWriter extends Writer {
+
+	private final Blackhole bh;
+
+	DiscardWriter(Blackhole bh) {
+		this.bh = bh;
+	}
+
+	@Override
+	public void write(char[] cbuf, int off, int len) {
+		bh.consume(cbuf);
+		bh.consume(len);
+	}
+
+	@Override
+	public void flush() {
+	}
+
+	@Override
+	public void close() {
+	}
+}
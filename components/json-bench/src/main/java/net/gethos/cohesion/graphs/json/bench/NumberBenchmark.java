@@ -0,0 +1,76 @@
+/**
+ * Cohesion Framework - JSON Library
+ * Copyright (c) 2017 - Stewart Gebbie, Gethos. Licensed under the MIT licence.
+ * vim: set ts=4 sw=0:
+ */
+package net.gethos.cohesion.graphs.json.bench;
+
+import java.io.IOException;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import net.gethos.cohesion.graphs.json.JSONReader;
+import net.gethos.cohesion.graphs.json.JSONToken;
+import net.gethos.cohesion.graphs.json.JSONWriter;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Benchmark decoding and formatting doubles, as found in metrics and
+ * market data feeds.
+ *
+ * @author {@literal Stewart Gebbie <sgebbie@gethos.net>}
+ *
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class NumberBenchmark {
+
+	private static final int COUNT = 10000;
+
+	private String json;
+	private double[] values;
+
+	@Setup
+	public void setup() throws IOException {
+		Random r = new Random(1);
+		values = new double[COUNT];
+		for (int i = 0; i < COUNT; i++) values[i] = r.nextGaussian() * Math.pow(10, r.nextInt(12) - 4);
+		StringBuilder text = new StringBuilder();
+		text.append('[');
+		for (int i = 0; i < COUNT; i++) text.append(i == 0 ? "" : ",").append(values[i]);
+		text.append(']');
+		json = text.toString();
+	}
+
+	@Benchmark
+	public void readDoubles(Blackhole bh) {
+		JSONReader r = new JSONReader(json);
+		for (JSONToken t = r.nextToken(); t != null; t = r.nextToken()) {
+			if (t == JSONToken.NUMBER) bh.consume(r.getDouble());
+		}
+	}
+
+	@Benchmark
+	public void writeDoubles(Blackhole bh) throws IOException {
+		JSONWriter w = new JSONWriter(new DiscardWriter(bh));
+		w.beginArray();
+		for (double x : values) w.value(x);
+		w.endArray();
+		w.flush();
+	}
+}
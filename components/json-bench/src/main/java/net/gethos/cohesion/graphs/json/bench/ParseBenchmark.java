@@ -0,0 +1,79 @@
+/**
+ * Cohesion Framework - JSON Library
+ * Copyright (c) 2017 - Stewart Gebbie, Gethos. Licensed under the MIT licence.
+ * vim: set ts=4 sw=0:
+ */
+package net.gethos.cohesion.graphs.json.bench;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+import net.gethos.cohesion.graphs.json.JSON;
+import net.gethos.cohesion.graphs.json.JSONValue;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmark {@link JSON#parse(String)} over each corpus, and
+ * {@link JSON#parseLazily(String)} for a reader that only looks at the
+ * first entry of the document, and {@link JSON#parseParallel(ByteBuffer)}
+ * over the common fork-join pool (which only splits documents that are a
+ * top-level array of at least a couple of MiB).
+ *
+ * @author {@literal Stewart Gebbie <sgebbie@gethos.net>}
+ *
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ParseBenchmark {
+
+	@Param({"NUMBERS", "STRINGS", "NESTED", "WIDE", "STREAM"})
+	public Corpus corpus;
+
+	private String json;
+	private byte[] bytes;
+
+	@Setup
+	public void setup() {
+		// the stream corpus is back-to-back values, so wrap it up as a single array for JSON.parse
+		json = corpus == Corpus.STREAM ? "[" + corpus.text().replaceAll("}\\s*\\{", "},{") + "]" : corpus.text();
+		bytes = json.getBytes(StandardCharsets.UTF_8);
+	}
+
+	@Benchmark
+	public JSONValue parse() {
+		return JSON.parse(json);
+	}
+
+	@Benchmark
+	public JSONValue parseBytes() {
+		return JSON.parse(bytes);
+	}
+
+	@Benchmark
+	public JSONValue parseLazilyFirst() {
+		JSONValue v = JSON.parseLazily(json);
+		if (v.isObject()) return v.asObject().get(v.asObject().members().iterator().next());
+		return v.asArray().get(0);
+	}
+
+	@Benchmark
+	public JSONValue parseParallel() {
+		return JSON.parseParallel(ByteBuffer.wrap(bytes));
+	}
+}
@@ -0,0 +1,80 @@
+/**
+ * Cohesion Framework - JSON Library
+ * Copyright (c) 2017 - Stewart Gebbie, Gethos. Licensed under the MIT licence.
+ * vim: set ts=4 sw=0:
+ */
+package net.gethos.cohesion.graphs.json.bench;
+
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+import net.gethos.cohesion.graphs.json.JSON;
+import net.gethos.cohesion.graphs.json.JSONParser;
+import net.gethos.cohesion.graphs.json.JSONValue;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmark the allocation of parsing many small documents, with a
+ * {@link JSONParser} that is reused, one that is created for each
+ * document, and the per-thread parser behind {@link JSON#parse(String)}.
+ * Run with {@code -prof gc} (as the {@code jmh} task does) and compare
+ * {@code gc.alloc.rate.norm}: the reused parser allocates only the values
+ * that it returns.
+ *
+ * @author {@literal Stewart Gebbie <sgebbie@gethos.net>}
+ *
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class ParserBenchmark {
+
+	private String json;
+	private byte[] bytes;
+	private JSONParser parser;
+
+	@Setup
+	public void setup() {
+		json = "{\"id\":12345,\"name\":\"a \\\"small\\\" message\",\"tags\":[\"a\",\"b\"],\"score\":0.5,\"ok\":true}";
+		bytes = json.getBytes(StandardCharsets.UTF_8);
+		parser = new JSONParser();
+	}
+
+	@Benchmark
+	public JSONValue reused() {
+		return parser.parse(json);
+	}
+
+	@Benchmark
+	public JSONValue reusedBytes() {
+		return parser.parse(bytes);
+	}
+
+	@Benchmark
+	public JSONValue created() {
+		return new JSONParser().parse(json);
+	}
+
+	@Benchmark
+	public JSONValue perThread() {
+		return JSON.parse(json);
+	}
+
+	@Benchmark
+	public JSONValue perThreadBytes() {
+		return JSON.parse(bytes);
+	}
+}
@@ -0,0 +1,75 @@
+/**
+ * Cohesion Framework - JSON Library
+ * Copyright (c) 2017 - Stewart Gebbie, Gethos. Licensed under the MIT licence.
+ * vim: set ts=4 sw=0:
+ */
+package net.gethos.cohesion.graphs.json.bench;
+
+import java.io.StringReader;
+import java.util.concurrent.TimeUnit;
+
+import net.gethos.cohesion.graphs.json.JSONReader;
+import net.gethos.cohesion.graphs.json.JSONToken;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Benchmark pulling tokens with {@link JSONReader}, without building trees.
+ *
+ * @author {@literal Stewart Gebbie <sgebbie@gethos.net>}
+ *
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ReaderBenchmark {
+
+	@Param({"STREAM", "NUMBERS", "STRINGS", "NESTED", "WIDE"})
+	public Corpus corpus;
+
+	private String json;
+
+	@Setup
+	public void setup() {
+		json = corpus.text();
+	}
+
+	/**
+	 * Visit every token, without decoding any values.
+	 */
+	@Benchmark
+	public void tokens(Blackhole bh) {
+		JSONReader r = new JSONReader(new StringReader(json));
+		for (JSONToken t = r.nextToken(); t != null; t = r.nextToken()) bh.consume(t);
+	}
+
+	/**
+	 * Pick out a single member of each top-level record, skipping everything else.
+	 */
+	@Benchmark
+	public void select(Blackhole bh) {
+		JSONReader r = new JSONReader(new StringReader(json));
+		for (JSONToken t = r.nextToken(); t != null; t = r.nextToken()) {
+			if (t == JSONToken.NAME && r.depth() == 1 && "field0".equals(r.currentName())) {
+				r.nextToken();
+				bh.consume(r.getLong());
+			} else if ((t == JSONToken.START_OBJECT || t == JSONToken.START_ARRAY) && r.depth() > 0) {
+				r.skipChildren();
+			}
+		}
+	}
+}
@@ -0,0 +1,102 @@
+/**
+ * Cohesion Framework - JSON Library
+ * Copyright (c) 2017 - Stewart Gebbie, Gethos. Licensed under the MIT licence.
+ * vim: set ts=4 sw=0:
+ */
+package net.gethos.cohesion.graphs.json.bench;
+
+import java.io.ByteArrayInputStream;
+import java.io.StringReader;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+
+import net.gethos.cohesion.graphs.json.JSONExtractor;
+import net.gethos.cohesion.graphs.json.JSONStream;
+import net.gethos.cohesion.graphs.json.JSONValue;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Benchmark {@link JSONStream} reading values off a {@link java.io.Reader}, or
+ * off the UTF-8 bytes of an {@link java.io.InputStream}, and extracting just
+ * a few values from each via a {@link JSONExtractor}, or building the values
+ * in parallel on a {@link ForkJoinPool}.
+ * <p>
+ * Each operation consumes the whole corpus, so for the {@code STREAM} corpus
+ * a single operation is a long run of back-to-back values.
+ *
+ * @author {@literal Stewart Gebbie <sgebbie@gethos.net>}
+ *
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class StreamBenchmark {
+
+	// a couple of members of each record of the stream corpus
+	private static final JSONExtractor EXTRACTOR = new JSONExtractor("/field0", "/field9/1");
+
+	@Param({"STREAM", "NUMBERS", "STRINGS", "NESTED", "WIDE"})
+	public Corpus corpus;
+
+	private String json;
+	private byte[] bytes;
+	private ForkJoinPool pool;
+
+	@Setup
+	public void setup() {
+		json = corpus.text();
+		bytes = json.getBytes(StandardCharsets.UTF_8);
+		pool = new ForkJoinPool();
+	}
+
+	@TearDown
+	public void tearDown() {
+		pool.shutdown();
+	}
+
+	@Benchmark
+	public void next(Blackhole bh) {
+		JSONStream s = new JSONStream(new StringReader(json));
+		for (JSONValue v = s.next(); v != null; v = s.next()) bh.consume(v);
+	}
+
+	@Benchmark
+	public void iterator(Blackhole bh) {
+		for (JSONValue v : new JSONStream(new StringReader(json))) bh.consume(v);
+	}
+
+	@Benchmark
+	public void inputStream(Blackhole bh) {
+		for (JSONValue v : new JSONStream(new ByteArrayInputStream(bytes))) bh.consume(v);
+	}
+
+	@Benchmark
+	public void extract(Blackhole bh) {
+		JSONStream s = new JSONStream(new ByteArrayInputStream(bytes));
+		for (JSONValue[] v = s.next(EXTRACTOR); v != null; v = s.next(EXTRACTOR)) bh.consume(v);
+	}
+
+	@Benchmark
+	public void parallel(Blackhole bh) {
+		JSONStream s = new JSONStream(new ByteArrayInputStream(bytes));
+		s.setExecutor(pool, 4 * pool.getParallelism());
+		for (JSONValue v : s) bh.consume(v);
+	}
+}
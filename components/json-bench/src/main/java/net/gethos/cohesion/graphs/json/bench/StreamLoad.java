@@ -0,0 +1,165 @@
+/**
+ * Cohesion Framework - JSON Library
+ * Copyright (c) 2017 - Stewart Gebbie, Gethos. Licensed under the MIT licence.
+ * vim: set ts=4 sw=0:
+ */
+package net.gethos.cohesion.graphs.json.bench;
+
+import java.nio.ByteBuffer;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+import net.gethos.cohesion.graphs.json.JSONStream;
+import net.gethos.cohesion.graphs.json.JSONValue;
+
+/**
+ * Load test of many concurrent {@link JSONStream}s, each read on a virtual
+ * thread of its own from a channel that trickles its bytes in, pausing
+ * before each read as a slow connection would.
+ * <p>
+ * A stream that held a monitor while waiting for input would pin its
+ * virtual thread to a carrier thread, so that only as many streams as
+ * there are carriers could make progress at once, and the run would take
+ * many times longer than the total pause of a single stream. Run with
+ * {@code -Djdk.tracePinnedThreads=full} to have any pinning reported.
+ * <pre>
+ * $ gradle :components:json-bench:load
+ * $ gradle :components:json-bench:load -Pload.args="100000 10 64 1000"
+ * </pre>
+ * The arguments are the number of streams, the number of values per
+ * stream, the number of bytes per read, and the pause before each read in
+ * microseconds. Virtual threads need Java 21, and on an earlier Java the
+ * streams are run on a fixed pool of platform threads instead.
+ *
+ * @author {@literal Stewart Gebbie <sgebbie@gethos.net>}
+ *
+ */
+public class StreamLoad {
+
+	private static final int PLATFORM_THREADS = 256;
+
+	/**
+	 * Hands out a few bytes at a time, after a pause.
+	 */
+	private static class SlowChannel implements ReadableByteChannel {
+		private final ByteBuffer bytes;
+		private final int chunk;
+		private final long pause;
+		private boolean open = true;
+
+		SlowChannel(byte[] bytes, int chunk, long pause) {
+			this.bytes = ByteBuffer.wrap(bytes);
+			this.chunk = chunk;
+			this.pause = pause;
+		}
+
+		@Override
+		public int read(ByteBuffer dst) {
+			if (!bytes.hasRemaining()) return -1;
+			LockSupport.parkNanos(pause);
+			int n = Math.min(chunk, Math.min(bytes.remaining(), dst.remaining()));
+			ByteBuffer b = bytes.duplicate();
+			b.limit(b.position() + n);
+			dst.put(b);
+			bytes.position(bytes.position() + n);
+			return n;
+		}
+
+		@Override
+		public boolean isOpen() {
+			return open;
+		}
+
+		@Override
+		public void close() {
+			open = false;
+		}
+	}
+
+	public static void main(String[] args) throws Exception {
+		final int streams = args.length > 0 ? Integer.parseInt(args[0]) : 100000;
+		final int values = args.length > 1 ? Integer.parseInt(args[1]) : 10;
+		final int chunk = args.length > 2 ? Integer.parseInt(args[2]) : 64;
+		final long pause = TimeUnit.MICROSECONDS.toNanos(args.length > 3 ? Long.parseLong(args[3]) : 1000);
+
+		StringBuilder text = new StringBuilder();
+		for (int i = 0; i < values; i++) {
+			text.append("{\"id\":").append(i).append(",\"name\":\"value ").append(i).append("\",\"tags\":[\"a\",\"b\"],\"score\":").append(i * 0.5).append("}\n");
+		}
+		final byte[] bytes = text.toString().getBytes(StandardCharsets.UTF_8);
+		final long reads = (bytes.length + chunk - 1) / chunk + 1;
+
+		ExecutorService executor = virtualThreads();
+		String threads = "virtual threads";
+		if (executor == null) {
+			executor = Executors.newFixedThreadPool(PLATFORM_THREADS);
+			threads = String.format("%d platform threads (virtual threads need Java 21)",PLATFORM_THREADS);
+		}
+
+		final CountDownLatch ready = new CountDownLatch(streams);
+		final CountDownLatch go = new CountDownLatch(1);
+		final CountDownLatch finished = new CountDownLatch(streams);
+		final AtomicInteger active = new AtomicInteger();
+		final AtomicInteger peak = new AtomicInteger();
+		final AtomicLong parsed = new AtomicLong();
+		final AtomicInteger failed = new AtomicInteger();
+
+		for (int s = 0; s < streams; s++) {
+			executor.execute(new Runnable() {
+				@Override
+				public void run() {
+					ready.countDown();
+					try {
+						go.await();
+						int n = active.incrementAndGet();
+						for (int p = peak.get(); n > p && !peak.compareAndSet(p, n); p = peak.get());
+						int count = 0;
+						for (JSONValue v : new JSONStream(new SlowChannel(bytes, chunk, pause))) {
+							if (v.asObject().get("id").asNumber().longValue() != count) throw new IllegalStateException("Out of order");
+							count++;
+						}
+						if (count != values) throw new IllegalStateException("Missing values");
+						parsed.addAndGet(count);
+					} catch (Exception e) {
+						failed.incrementAndGet();
+					} finally {
+						active.decrementAndGet();
+						finished.countDown();
+					}
+				}
+			});
+		}
+
+		// the platform pool can not start every stream before the gate opens
+		if (threads.startsWith("virtual")) ready.await();
+		long start = System.nanoTime();
+		go.countDown();
+		finished.await();
+		long elapsed = System.nanoTime() - start;
+		executor.shutdown();
+
+		System.out.printf("streams: %d on %s%n", streams, threads);
+		System.out.printf("values: %d parsed, %d streams failed%n", parsed.get(), failed.get());
+		System.out.printf("peak concurrent streams: %d%n", peak.get());
+		System.out.printf("elapsed: %d ms (each stream pauses for %d ms in total)%n",
+				TimeUnit.NANOSECONDS.toMillis(elapsed), TimeUnit.NANOSECONDS.toMillis(reads * pause));
+	}
+
+	/**
+	 * @return an executor that starts a virtual thread per task, or null if there are no virtual threads
+	 */
+	private static ExecutorService virtualThreads() {
+		try {
+			return (ExecutorService)Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+		} catch (ReflectiveOperationException e) {
+			return null;
+		}
+	}
+}
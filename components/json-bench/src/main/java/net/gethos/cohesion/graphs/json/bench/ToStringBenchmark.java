@@ -0,0 +1,67 @@
+/**
+ * Cohesion Framework - JSON Library
+ * Copyright (c) 2017 - Stewart Gebbie, Gethos. Licensed under the MIT licence.
+ * vim: set ts=4 sw=0:
+ */
+package net.gethos.cohesion.graphs.json.bench;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import net.gethos.cohesion.graphs.json.JSONStream;
+import net.gethos.cohesion.graphs.json.JSONValue;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Benchmark serialising parsed trees back to text via {@link JSONValue#toString()},
+ * and streamed via {@link JSONValue#writeTo(Writer)}.
+ *
+ * @author {@literal Stewart Gebbie <sgebbie@gethos.net>}
+ *
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ToStringBenchmark {
+
+	@Param({"NUMBERS", "STRINGS", "NESTED", "WIDE", "STREAM"})
+	public Corpus corpus;
+
+	private List<JSONValue> values;
+
+	@Setup
+	public void setup() {
+		values = new ArrayList<JSONValue>();
+		for (JSONValue v : new JSONStream(new StringReader(corpus.text()))) values.add(v);
+	}
+
+	@Benchmark
+	public void toString(Blackhole bh) {
+		for (JSONValue v : values) bh.consume(v.toString());
+	}
+
+	@Benchmark
+	public void writeTo(Blackhole bh) throws IOException {
+		DiscardWriter out = new DiscardWriter(bh);
+		for (JSONValue v : values) v.writeTo(out);
+	}
+}
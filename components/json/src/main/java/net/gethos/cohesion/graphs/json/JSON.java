@@ -5,7 +5,14 @@
  */
 package net.gethos.cohesion.graphs.json;
 
-import java.math.BigDecimal;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.ForkJoinPool;
 
 /**
  * Gethos Cohesion JSON parser implementation.
@@ -18,9 +25,13 @@ import java.math.BigDecimal;
  */
 public class JSON {
 
-	private static class Holder<T> {
-		public T value;
-	}
+	// a parser per thread, so that its scratch space is reused from one call to the next
+	private static final ThreadLocal<JSONParser> PARSERS = new ThreadLocal<JSONParser>() {
+		@Override
+		protected JSONParser initialValue() {
+			return new JSONParser();
+		}
+	};
 
 	/**
 	 * Parse a text JSON representation into a JSON value.
@@ -30,167 +41,250 @@ public class JSON {
 	 */
 	public static JSONValue parse(String json) {
 		if (json == null) return null;
-		Holder<JSONValue> h = new Holder<JSONValue>();
-		parseValue(h, json, 0, json.length());
-		return h.value;
+		return PARSERS.get().parse(json);
 	}
 
-	private static int skipWhitespace(String json, int from, int to) {
-		int pos = from;
-		while(pos < to && Character.isWhitespace(json.charAt(pos))) pos++;
-		return pos;
+	/**
+	 * Parse UTF-8 encoded JSON text into a JSON value.
+	 *
+	 * @param json
+	 * @return JSON value representing the parsed data
+	 */
+	public static JSONValue parse(byte[] json) {
+		if (json == null) return null;
+		return parse(json, 0, json.length);
 	}
 
-	private static int parseValue(Holder<JSONValue> holder, String json, int from, int to) {
-
-		from = skipWhitespace(json,from,to);
-
-		if (json.startsWith(JSONNull.NULL,     from)) { holder.value = JSONNull.JSON_NULL;     return from + 4; }
-		if (json.startsWith(JSONBoolean.FALSE, from)) { holder.value = JSONBoolean.JSON_FALSE; return from + 5; }
-		if (json.startsWith(JSONBoolean.TRUE,  from)) { holder.value = JSONBoolean.JSON_TRUE;  return from + 4; }
-		char c = json.charAt(from);
-		if (c == '"')                           { return parseString(holder, json, from, to); }
-		if (c == '-' || (c >= '0' && c <= '9')) { return parseNumber(holder, json, from, to); }
-		if (c == '{')                           { return parseObject(holder, json, from, to); }
-		if (c == '[')                           { return parseArray (holder, json, from, to); }
-
-		throw new JSONException(String.format("Unexpected character {%s} while parsing value [%d,%d) in '...%s...' in %s",c,from,to,errorSnippet(json, from, to), json));
+	/**
+	 * Parse UTF-8 encoded JSON text, held in a range of a byte array, into a
+	 * JSON value. The bytes are tokenized directly, without first decoding
+	 * the text into characters.
+	 *
+	 * @param json
+	 * @param from index of the first byte
+	 * @param to index after the last byte
+	 * @return JSON value representing the parsed data
+	 */
+	public static JSONValue parse(byte[] json, int from, int to) {
+		if (json == null) return null;
+		return PARSERS.get().parse(json, from, to);
 	}
 
-	private static String errorSnippet(String json, int from, int to) {
-		return json.substring(Math.max(0, from-10),Math.min(json.length()-1,from+10));
+	/**
+	 * Parse the UTF-8 encoded JSON text between the buffer's position and
+	 * limit into a JSON value. The bytes are tokenized directly, without
+	 * first decoding the text into characters. The position and limit of the
+	 * buffer are not modified.
+	 *
+	 * @param json
+	 * @return JSON value representing the parsed data
+	 */
+	public static JSONValue parse(ByteBuffer json) {
+		if (json == null) return null;
+		JSONScanner s = new JSONUTF8Scanner(json);
+		s.symbols = JSONSymbols.SHARED;
+		try {
+			return s.parseValue();
+		} catch (IOException e) {
+			// not expected, since the input is already in memory
+			throw new JSONException(String.format("I/O Error while parsing JSON somewhere close to [%d]",s.position()), e);
+		}
 	}
 
-	private static int parseString(Holder<JSONValue> holder, String json, int from, int to) {
-
-		if (json.charAt(from) != '"') throw new JSONException(String.format("No string while parsing [%d,%d) in {%s}",from,to,json));
-
-		int end;
-		for (end = from+1; (end < to) && (json.charAt(end) != '"'); end++) if (json.charAt(end) == '\\') end++;
-		String unescaped = JSONString.unescape(json,from+1,end);
-		holder.value = new JSONString(unescaped);
-
-		return end+1;
+	/**
+	 * Parse the UTF-8 encoded JSON text of a file into a JSON value, by
+	 * memory mapping the file from the channel's current position. The file
+	 * is mapped in chunks, so files larger than 2 GiB may be parsed.
+	 *
+	 * @param json
+	 * @return JSON value representing the parsed data
+	 * @see JSONStream#JSONStream(FileChannel)
+	 */
+	public static JSONValue parse(FileChannel json) {
+		if (json == null) return null;
+		JSONScanner s = null;
+		try {
+			s = new JSONUTF8Scanner(json);
+			s.symbols = JSONSymbols.SHARED;
+			return s.parseValue();
+		} catch (IOException e) {
+			throw new JSONException(String.format("I/O Error while parsing JSON from file somewhere close to [%d]",s == null ? 0 : s.position()), e);
+		}
 	}
 
-	private static int parseNumber(Holder<JSONValue> holder, String json, int from, int to) {
-
-		int pos = from;
-
-		// find the end of the number
-		if (pos < to && json.charAt(pos)=='-') {pos++;}	// is negative
-		if (pos < to && json.charAt(pos)=='0') {pos++;}	// is zero
-
-		if (pos < to && (json.charAt(pos)>='1' && json.charAt(pos)<='9'))	do {pos++;} while (pos < to && json.charAt(pos)>='0' && json.charAt(pos)<='9');	// significand
-		if (pos < to && json.charAt(pos)=='.') {pos++; do {pos++;} while (pos < to && json.charAt(pos)>='0' && json.charAt(pos)<='9');}	// fractional significand
+	/**
+	 * Parse UTF-8 encoded JSON text, holding a single large array, into a
+	 * JSON value, using the common fork-join pool.
+	 *
+	 * @param json
+	 * @return JSON value representing the parsed data
+	 * @see #parseParallel(ByteBuffer, ForkJoinPool)
+	 */
+	public static JSONValue parseParallel(ByteBuffer json) {
+		return parseParallel(json, ForkJoinPool.commonPool());
+	}
 
-		if (pos < to && (json.charAt(pos)=='e' || json.charAt(pos)=='E')) // exponent
-		{
-			pos++;
-			// check for sign
-			if (json.charAt(pos)=='+') pos++;
-			else if (json.charAt(pos)=='-') {pos++;}
-			while (pos < to && json.charAt(pos)>='0' && json.charAt(pos)<='9') { pos++;} // exponent value
+	/**
+	 * Parse the UTF-8 encoded JSON text between the buffer's position and
+	 * limit into a JSON value, parsing the elements of a top-level array in
+	 * parallel, on the pool.
+	 * <p>
+	 * The elements are split into runs, at the commas between them, and each
+	 * run is parsed by a task of its own, before the runs are joined back,
+	 * in order, into one array. Finding the commas is itself split between
+	 * tasks. Text that does not hold a top-level array, or that is too small
+	 * to be worth splitting, is parsed on the calling thread. The position
+	 * and limit of the buffer are not modified.
+	 *
+	 * @param json
+	 * @param pool the pool on which to parse the elements
+	 * @return JSON value representing the parsed data
+	 */
+	public static JSONValue parseParallel(ByteBuffer json, ForkJoinPool pool) {
+		if (json == null) return null;
+		try {
+			return JSONSplitter.parse(new JSONSplitter.BufferInput(json), pool, 0);
+		} catch (IOException e) {
+			// not expected, since the input is already in memory
+			throw new JSONException("I/O Error while parsing JSON", e);
 		}
-
-		// parse out the number
-		BigDecimal n = new BigDecimal(json.substring(from, pos));
-
-		holder.value = new JSONNumber(n);
-
-		return pos;
 	}
 
-	private static int parseArray(Holder<JSONValue> holder, String json, int from, int to) {
-
-		if (json.charAt(from) != '[') throw new JSONException(String.format("No array while parsing [%d,%d) in {%s}",from,to,json));
-
-		JSONArray x = new JSONArray();
-
-		int pos = from+1;
-		char c;
-
-		while(pos < to) {
-			pos = skipWhitespace(json, pos, to);
-			c = json.charAt(pos);
-			if (c == ']') { pos++; break; }
-			pos = parseValue(holder, json, pos, to);
-			x.add(holder.value);
-			pos = skipWhitespace(json, pos, to);
-			c = json.charAt(pos++);
-			if (c == ',') continue;
-			else if (c == ']') break;
-			else throw new JSONException(String.format("Unexpected character {%s} (expected ',' or ']') while parsing array at %d in [%d,%d) of '...%s...' in %s",c,pos,from,to,errorSnippet(json, from, to), json));
-		}
+	/**
+	 * Parse the UTF-8 encoded JSON text of a file, holding a single large
+	 * array, into a JSON value, using the common fork-join pool.
+	 *
+	 * @param json
+	 * @return JSON value representing the parsed data
+	 * @see #parseParallel(FileChannel, ForkJoinPool)
+	 */
+	public static JSONValue parseParallel(FileChannel json) {
+		return parseParallel(json, ForkJoinPool.commonPool());
+	}
 
-		holder.value = x;
-
-		return pos;
-	}
-
-	private static int parseObject(Holder<JSONValue> holder, String json, int from, int to) {
-		if (json.charAt(from) != '{') throw new JSONException(String.format("No object while parsing [%d,%d) in {%s}",from,to,json));
-
-		JSONObject x = new JSONObject();
-
-		char c;
-		int pos = from+1;
-
-		while(pos < to) {
-			pos = skipWhitespace(json, pos, to);
-			c = json.charAt(pos);
-			if (c == '}') { pos++; break; }
-			pos = parseString(holder, json, pos, to);
-			if (holder.value == null || !holder.value.isString() || holder.value.asString().value == null) throw new JSONException(String.format("Unable to read member name while parsing at %d in [%d,%d) of '...%s...' in %s",pos,from,to,errorSnippet(json, from, to),json));
-			String member = holder.value.asString().value;
-			pos = skipWhitespace(json, pos, to);
-			c = json.charAt(pos++);
-			if (c != ':') throw new JSONException(String.format("Unexpected character {%s} (expected ':') while parsing object at %d in [%d,%d) of '...%s...' in %s",c,pos-1,from,to,errorSnippet(json, from, to),json));
-			pos = skipWhitespace(json, pos, to);
-			pos = parseValue(holder, json, pos, to);
-			x.put(member,holder.value);
-			pos = skipWhitespace(json, pos, to);
-			c = json.charAt(pos++);
-			if (c == ',') continue;
-			else if (c == '}') break;
-			else throw new JSONException(String.format("Unexpected character {%s} (expected ',' or '}') while parsing object at %d in [%d,%d) of '...%s...' in %s",c,pos-1,from,to,errorSnippet(json, from, to),json));
+	/**
+	 * Parse the UTF-8 encoded JSON text of a file into a JSON value, from the
+	 * channel's current position, parsing the elements of a top-level array
+	 * in parallel, on the pool. Each task maps its own part of the file, so
+	 * files larger than 2 GiB may be parsed.
+	 *
+	 * @param json
+	 * @param pool the pool on which to parse the elements
+	 * @return JSON value representing the parsed data
+	 * @see #parseParallel(ByteBuffer, ForkJoinPool)
+	 */
+	public static JSONValue parseParallel(FileChannel json, ForkJoinPool pool) {
+		if (json == null) return null;
+		try {
+			return JSONSplitter.parse(new JSONSplitter.FileInput(json), pool, 0);
+		} catch (IOException e) {
+			throw new JSONException("I/O Error while parsing JSON from file", e);
 		}
-
-		holder.value = x;
-
-		return pos;
 	}
 
-	/*
-	private static int _parseNumber(Holder<JSONValue> holder, String json, int from, int to) {
-
-		double n=0,nSign=1,scale=0;
-		int subscale=0,subscaleSign=1;
-
-		int pos = from;
-
-		if (json.charAt(pos)=='-') {nSign=-1;pos++;}	// is negative
-		if (json.charAt(pos)=='0') {pos++;}			// is zero
-
-		if (json.charAt(pos)>='1' && json.charAt(pos)<='9')	do {n=(n*10.0)+(json.charAt(pos)-'0'); pos++; } while (json.charAt(pos)>='0' && json.charAt(pos)<='9');	// significand
-		if (json.charAt(pos)=='.') {pos++; do {n=(n*10.0)+(json.charAt(pos) -'0');pos++;scale--;} while (json.charAt(pos)>='0' && json.charAt(pos)<='9');}	// fractional significand
-
-		if (json.charAt(pos)=='e' || json.charAt(pos)=='E') // exponent
-		{
-			pos++;
+	/**
+	 * Parse a text JSON representation into a JSON value, keeping only the
+	 * object members in the projection. The other members are passed over
+	 * without being decoded.
+	 *
+	 * @param json
+	 * @param projection the members to keep, or null to keep everything
+	 * @return JSON value representing the parsed data
+	 */
+	public static JSONValue parse(String json, JSONProjection projection) {
+		if (json == null) return null;
+		if (projection == null) return parse(json);
+		return parse(new JSONCharScanner(json.toCharArray(), 0, json.length()), projection);
+	}
 
-			// check for sign
-			if (json.charAt(pos)=='+') pos++;
-			else if (json.charAt(pos)=='-') {subscaleSign=-1;pos++;}
+	/**
+	 * Parse UTF-8 encoded JSON text into a JSON value, keeping only the
+	 * object members in the projection.
+	 *
+	 * @param json
+	 * @param projection the members to keep, or null to keep everything
+	 * @return JSON value representing the parsed data
+	 * @see #parse(String, JSONProjection)
+	 */
+	public static JSONValue parse(byte[] json, JSONProjection projection) {
+		if (json == null) return null;
+		return parse(new JSONUTF8Scanner(ByteBuffer.wrap(json)), projection);
+	}
 
-			while (json.charAt(pos)>='0' && json.charAt(pos)<='9') { subscale=(subscale*10)+(json.charAt(pos) - '0');pos++;}	// exponent number
+	private static JSONValue parse(JSONScanner s, JSONProjection projection) {
+		s.symbols = JSONSymbols.SHARED;
+		try {
+			return s.parseValue(projection);
+		} catch (IOException e) {
+			// not expected, since the input is already in memory
+			throw new JSONException(String.format("I/O Error while parsing JSON somewhere close to [%d]",s.position()), e);
 		}
+	}
 
-		n=nSign*n*Math.pow(10.0,(scale+subscale*subscaleSign));	// n = +/- significand * 10^+/- (exponent including scale)
+	/**
+	 * Index a text JSON representation, returning a view of its value that
+	 * is only decoded as it is used.
+	 * <p>
+	 * The text is first scanned once, to record where each structural
+	 * character and value lies, and to pair up the brackets. Objects and
+	 * arrays are then returned as views, that decode their contents on first
+	 * use, so that the parts of a large document that are never looked at
+	 * are never decoded. The views are otherwise ordinary {@link JSONObject}
+	 * and {@link JSONArray} values.
+	 * <p>
+	 * Only the nesting of brackets and the termination of strings are
+	 * checked up front. Any other error is reported when the part of the
+	 * text holding it is decoded. Note that decoding updates the views, so
+	 * a tree returned from here must not be read from several threads at
+	 * once without synchronisation.
+	 *
+	 * @param json
+	 * @return JSON value representing the parsed data
+	 */
+	public static JSONValue parseLazily(String json) {
+		if (json == null) return null;
+		return JSONIndex.parse(json.toCharArray(), 0, json.length());
+	}
 
-		holder.value = new JSONNumber(n);
+	/**
+	 * Index UTF-8 encoded JSON text, returning a view of its value that is
+	 * only decoded as it is used.
+	 *
+	 * @param json
+	 * @return JSON value representing the parsed data
+	 * @see #parseLazily(String)
+	 */
+	public static JSONValue parseLazily(byte[] json) {
+		if (json == null) return null;
+		// decode straight into the array that is indexed, rather than by way of a String
+		CharBuffer text = StandardCharsets.UTF_8.decode(ByteBuffer.wrap(json));
+		return JSONIndex.parse(text.array(), text.arrayOffset() + text.position(), text.arrayOffset() + text.limit());
+	}
 
-		return pos;
+	/**
+	 * Encode the value in binary form, as a stream of its own, with its own
+	 * references. Use a {@link JSONBinaryWriter} to encode many values as
+	 * one stream, so that they share their references.
+	 *
+	 * @param value
+	 * @param out
+	 * @see JSONBinaryStream
+	 */
+	public static void encode(JSONValue value, OutputStream out) throws IOException {
+		JSONBinaryWriter w = new JSONBinaryWriter(out);
+		w.write(value);
+		w.flush();
 	}
+
+	/**
+	 * Decode the first value of a binary encoded stream.
+	 *
+	 * @param bytes
+	 * @return JSON value representing the decoded data, or null if there is none
+	 * @see #encode(JSONValue, OutputStream)
 	 */
+	public static JSONValue decode(byte[] bytes) {
+		if (bytes == null) return null;
+		return new JSONBinaryStream(new ByteArrayInputStream(bytes)).next();
+	}
 }
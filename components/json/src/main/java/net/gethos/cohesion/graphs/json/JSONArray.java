@@ -5,14 +5,27 @@
  */
 package net.gethos.cohesion.graphs.json;
 
+import java.io.IOException;
 import java.math.BigDecimal;
-import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Iterator;
-import java.util.List;
+import java.util.NoSuchElementException;
 
 /**
  * Gethos Cohesion JSON implementation.
  * <p>
+ * An array that holds only integers is backed by a {@code long[]}, and one
+ * that holds only numbers that a double represents faithfully is backed by a
+ * {@code double[]}, so that large numeric arrays cost eight bytes an element
+ * rather than an object each. The elements are handed out as
+ * {@link JSONNumber}s on demand. The array falls back to holding general
+ * values as soon as an element arrives that does not fit.
+ * <p>
+ * An array returned by {@link JSON#parseLazily(String)} starts out as a
+ * view of its text, and decodes its elements when it is first used, so
+ * that a numeric array still takes the compact form. Nested objects and
+ * arrays remain views until they in turn are used.
+ * <p>
  * See: http://www.json.org/
  * 
  * @author {@literal Stewart Gebbie <sgebbie@gethos.net>}
@@ -20,16 +33,70 @@ import java.util.List;
  */
 public class JSONArray extends JSONValue implements Iterable<JSONValue> {
 
-	private final List<JSONValue> values;
+	// storage
+	private static final int VALUES = 0;
+	private static final int LONGS = 1;
+	private static final int DOUBLES = 2;
+
+	private static final long EXACT = 1L << 53; // longs up to this magnitude are exact as doubles
+
+	private static final long[] NO_LONGS = new long[0];
+
+	private int mode;
+	private JSONValue[] values;
+	private long[] longs;
+	private double[] doubles;
+	private int size;
 
 	private JSONType elementType;
 
+	private JSONIndex lazy; // the source of the elements, until they are decoded
+	private int node;
+
 	public JSONArray() {
-		this.values = new ArrayList<JSONValue>();
+		this.mode = LONGS; // until the first element decides otherwise
+		this.values = null;
+		this.longs = NO_LONGS;
+		this.doubles = null;
+		this.size = 0;
 		this.elementType = JSONType.NULL;
+		this.lazy = null;
+		this.node = -1;
+	}
+
+	/**
+	 * A view of the array at the entry of the index.
+	 */
+	JSONArray(JSONIndex lazy, int node) {
+		this();
+		this.lazy = lazy;
+		this.node = node;
+	}
+
+	/**
+	 * Decode the elements of a view.
+	 */
+	private void load() {
+		if (lazy == null) return;
+		JSONIndex source = lazy;
+		lazy = null;
+		int t = node + 1;
+		if (source.at(t) == ']') return;
+		for (;;) {
+			source.addTo(this, t);
+			t = source.next(t);
+			char c = source.at(t);
+			if (c == ']') break;
+			if (c != ',') throw new JSONException(String.format("Unexpected character {%s} (expected ',' or ']') while parsing array element [%d]",c,size));
+			t++;
+		}
 	}
 
+	/**
+	 * @return the type of the (non-null) elements, {@link JSONType#NULL} if there are none, or {@link JSONType#OBJECT} if they are mixed
+	 */
 	public JSONType elementType() {
+		load();
 		return elementType;
 	}
 
@@ -44,72 +111,414 @@ public class JSONArray extends JSONValue implements Iterable<JSONValue> {
 	}
 
 	public int size() {
-		return values.size();
+		load();
+		return size;
 	}
 
 	public JSONArray add(JSONValue... x) {
+		load();
 		if (x == null || x.length == 0) return this;
-		updateType(x[0]);
 		for (JSONValue y : x)
-			values.add(y);
+			append(y);
 		return this;
 	}
 
 	public JSONValue set(int idx, JSONValue x) {
+		load();
+		if (idx >= size) {
+			if (idx > size) {
+				// pad with (Java) nulls
+				general();
+				ensure(idx + 1);
+				size = idx;
+			}
+			append(x);
+			return null;
+		}
+		JSONValue y = get(idx);
 		updateType(x);
-		JSONValue y = values.size() > idx ? values.get(idx) : null;
-		while(values.size() <= idx) values.add(null);
-		values.set(idx, x);
+		if (mode == LONGS && x instanceof JSONNumber && ((JSONNumber)x).isLong()) {
+			longs[idx] = ((JSONNumber)x).longValue();
+		} else if (mode == DOUBLES && !Double.isNaN(toDouble(x))) {
+			doubles[idx] = toDouble(x);
+		} else {
+			general();
+			values[idx] = x;
+		}
 		return y;
 	}
 
 	private void updateType(JSONValue x) {
-		if (elementType == null && x != null && !x.isNull()) {
+		if (x == null || x.isNull()) return;
+		if (elementType == JSONType.NULL) {
 			elementType = x.type();
-		} else if (elementType != null) {
-			if (!x.isNull() && !elementType.equals(x.type())) elementType = JSONType.OBJECT;
+		} else if (!elementType.equals(x.type())) {
+			elementType = JSONType.OBJECT;
 		}
 	}
 
 	public JSONValue get(int idx) {
-		return values.size() > idx ? values.get(idx) : null;
+		load();
+		if (idx >= size) return null;
+		switch (mode) {
+			case LONGS: return JSONNumber.valueOf(longs[idx]);
+			case DOUBLES: return new JSONNumber(doubles[idx]);
+			default: return values[idx];
+		}
 	}
 
 	public JSONValue remove(int idx) {
-		if (values.size() > idx) {
-			return values.remove(idx);
-		} else {
-			return null;
+		load();
+		if (idx >= size) return null;
+		JSONValue y = get(idx);
+		size--;
+		switch (mode) {
+			case LONGS: System.arraycopy(longs, idx + 1, longs, idx, size - idx); break;
+			case DOUBLES: System.arraycopy(doubles, idx + 1, doubles, idx, size - idx); break;
+			default:
+				System.arraycopy(values, idx + 1, values, idx, size - idx);
+				values[size] = null;
+		}
+		return y;
+	}
+
+	/**
+	 * @return the double that the value can be held as, or NaN if it is not a number that a double represents faithfully
+	 */
+	private static double toDouble(JSONValue x) {
+		if (!(x instanceof JSONNumber)) return Double.NaN;
+		JSONNumber n = (JSONNumber)x;
+		if (n.isLong()) {
+			long v = n.longValue();
+			return v >= -EXACT && v <= EXACT ? v : Double.NaN;
+		}
+		return n.shortDouble();
+	}
+
+	private void append(JSONValue x) {
+		if (mode == LONGS && x instanceof JSONNumber && ((JSONNumber)x).isLong()) {
+			addLong(((JSONNumber)x).longValue());
+			return;
+		}
+		if (mode != VALUES) {
+			double d = toDouble(x);
+			if (!Double.isNaN(d)) {
+				addDouble(d);
+				return;
+			}
+		}
+		general();
+		updateType(x);
+		ensure(size + 1);
+		values[size++] = x;
+	}
+
+	private void addLong(long x) {
+		if (mode != LONGS) {
+			if (mode == DOUBLES && x >= -EXACT && x <= EXACT) addDouble(x);
+			else append(JSONNumber.valueOf(x));
+			return;
+		}
+		ensure(size + 1);
+		longs[size++] = x;
+		elementType = JSONType.NUMBER;
+	}
+
+	private void addDouble(double x) {
+		if (mode == LONGS) {
+			// all of the longs must be exact as doubles
+			for (int i = 0; i < size; i++) {
+				if (longs[i] < -EXACT || longs[i] > EXACT) {
+					general();
+					break;
+				}
+			}
+			if (mode == LONGS) {
+				doubles = new double[Math.max(longs.length, 4)];
+				for (int i = 0; i < size; i++) doubles[i] = longs[i];
+				longs = null;
+				mode = DOUBLES;
+			}
+		}
+		if (mode != DOUBLES) {
+			append(new JSONNumber(x));
+			return;
+		}
+		ensure(size + 1);
+		doubles[size++] = x;
+		elementType = JSONType.NUMBER;
+	}
+
+	/**
+	 * Add a number token from the parser, without creating a
+	 * {@link JSONNumber} for it while the array remains numeric.
+	 *
+	 * @throws JSONException if the token is not a well formed JSON number
+	 */
+	void addNumber(char[] c, int off, int len) {
+		if (mode != VALUES) {
+			if (JSONNumbers.isShortInteger(c, off, len)) {
+				addLong(JSONNumbers.parseLong(c, off, len));
+				return;
+			}
+			if (!JSONNumbers.isValid(c, off, len)) throw new JSONException(String.format("Malformed number {%s}",new String(c, off, len)));
+			double d = JSONNumbers.parseShortDouble(c, off, len);
+			if (!Double.isNaN(d)) {
+				addDouble(d);
+				return;
+			}
+		}
+		append(JSONNumber.parse(c, off, len));
+	}
+
+	/**
+	 * Copy the elements, which must all be numbers, as doubles.
+	 *
+	 * @return false if an element is not a number
+	 */
+	boolean copyDoubles(double[] dst, int off) {
+		load();
+		switch (mode) {
+			case LONGS: for (int i = 0; i < size; i++) dst[off + i] = longs[i]; return true;
+			case DOUBLES: System.arraycopy(doubles, 0, dst, off, size); return true;
+			default:
+				for (int i = 0; i < size; i++) {
+					JSONValue v = values[i];
+					if (v == null || !v.isNumber()) return false;
+					dst[off + i] = v.asNumber().doubleValue();
+				}
+				return true;
+		}
+	}
+
+	/**
+	 * Copy the elements, which must all be integers within the range of a long.
+	 *
+	 * @return false if an element is not such an integer
+	 */
+	boolean copyLongs(long[] dst, int off) {
+		load();
+		switch (mode) {
+			case LONGS: System.arraycopy(longs, 0, dst, off, size); return true;
+			case DOUBLES:
+				for (int i = 0; i < size; i++) {
+					double d = doubles[i];
+					if (d != Math.rint(d) || d < -0x1p63 || d >= 0x1p63) return false;
+					dst[off + i] = (long)d;
+				}
+				return true;
+			default:
+				for (int i = 0; i < size; i++) {
+					JSONValue v = values[i];
+					if (v == null || !v.isNumber()) return false;
+					JSONNumber n = v.asNumber();
+					if (n.isLong()) {
+						dst[off + i] = n.longValue();
+					} else {
+						if (!n.isIntegral()) return false;
+						try {
+							dst[off + i] = n.value().longValueExact();
+						} catch (ArithmeticException e) {
+							return false; // out of range
+						}
+					}
+				}
+				return true;
+		}
+	}
+
+	/**
+	 * Move the elements of the other array onto the end of this one, taking
+	 * over its storage where it can. The other array must not be used
+	 * afterwards.
+	 */
+	void join(JSONArray x) {
+		load();
+		x.load();
+		if (x.size == 0) return;
+		if (size == 0) {
+			mode = x.mode;
+			values = x.values;
+			longs = x.longs;
+			doubles = x.doubles;
+			size = x.size;
+			elementType = x.elementType;
+			return;
+		}
+		if (x.mode == LONGS) {
+			if (mode == LONGS) {
+				ensure(size + x.size);
+				System.arraycopy(x.longs, 0, longs, size, x.size);
+				size += x.size;
+			} else {
+				for (int i = 0; i < x.size; i++) addLong(x.longs[i]);
+			}
+			return;
+		}
+		if (x.mode == DOUBLES) {
+			if (mode == DOUBLES) {
+				ensure(size + x.size);
+				System.arraycopy(x.doubles, 0, doubles, size, x.size);
+				size += x.size;
+			} else {
+				for (int i = 0; i < x.size; i++) addDouble(x.doubles[i]);
+			}
+			return;
+		}
+		general();
+		ensure(size + x.size);
+		System.arraycopy(x.values, 0, values, size, x.size);
+		size += x.size;
+		if (elementType == JSONType.NULL) elementType = x.elementType;
+		else if (x.elementType != JSONType.NULL && !elementType.equals(x.elementType)) elementType = JSONType.OBJECT;
+	}
+
+	/**
+	 * Switch to holding general values.
+	 */
+	private void general() {
+		if (mode == VALUES) return;
+		JSONValue[] x = new JSONValue[Math.max(size, 4)];
+		for (int i = 0; i < size; i++) x[i] = get(i);
+		values = x;
+		longs = null;
+		doubles = null;
+		mode = VALUES;
+	}
+
+	private void ensure(int n) {
+		switch (mode) {
+			case LONGS: if (n > longs.length) longs = Arrays.copyOf(longs, Math.max(n, Math.max(4, longs.length * 2))); break;
+			case DOUBLES: if (n > doubles.length) doubles = Arrays.copyOf(doubles, Math.max(n, doubles.length * 2)); break;
+			default: if (n > values.length) values = Arrays.copyOf(values, Math.max(n, values.length * 2));
 		}
 	}
 
 	@Override
 	void toString(StringBuilder text) {
+		load();
 		text.append("[");
-		String sep = "";
-		for(JSONValue v : values) {
-			text.append(sep);
-			if (v == null) v = new JSONNull();
-			v.toString(text);
-			sep = ",";
+		switch (mode) {
+			case LONGS:
+				for (int i = 0; i < size; i++) {
+					if (i > 0) text.append(',');
+					text.append(longs[i]);
+				}
+				break;
+			case DOUBLES: {
+				char[] c = new char[25];
+				for (int i = 0; i < size; i++) {
+					if (i > 0) text.append(',');
+					text.append(c, 0, JSONDoubles.toChars(doubles[i], c, 0));
+				}
+				break;
+			}
+			default: {
+				String sep = "";
+				for (int i = 0; i < size; i++) {
+					JSONValue v = values[i];
+					text.append(sep);
+					if (v == null) v = new JSONNull();
+					v.toString(text);
+					sep = ",";
+				}
+			}
 		}
 		text.append("]");
 	}
 
+	@Override
+	void writeTo(JSONWriter out) throws IOException {
+		load();
+		out.beginArray();
+		switch (mode) {
+			case LONGS: for (int i = 0; i < size; i++) out.value(longs[i]); break;
+			case DOUBLES: for (int i = 0; i < size; i++) out.value(doubles[i]); break;
+			default:
+				for (int i = 0; i < size; i++) {
+					out.value(values[i]);
+				}
+		}
+		out.endArray();
+	}
+
+	@Override
+	void encodeTo(JSONBinaryWriter out) throws IOException {
+		load();
+		switch (mode) {
+			case LONGS: out.longs(longs, size); break;
+			case DOUBLES: out.doubles(doubles, size); break;
+			default:
+				out.beginArray(size);
+				for (int i = 0; i < size; i++) {
+					out.value(values[i]);
+				}
+		}
+	}
+
 	@Override
 	public Iterator<JSONValue> iterator() {
-		return values.iterator();
+		load();
+		return new Iterator<JSONValue>() {
+
+			private int next = 0;
+			private boolean removable = false;
+
+			@Override
+			public boolean hasNext() {
+				return next < size;
+			}
+
+			@Override
+			public JSONValue next() {
+				if (next >= size) throw new NoSuchElementException();
+				removable = true;
+				return get(next++);
+			}
+
+			@Override
+			public void remove() {
+				if (!removable) throw new IllegalStateException();
+				removable = false;
+				JSONArray.this.remove(--next);
+			}
+		};
 	}
 
 	@Override
 	public int hashCode() {
-		return values.hashCode();
+		load();
+		// as per List, whatever the storage
+		int h = 1;
+		for (int i = 0; i < size; i++) {
+			int e;
+			switch (mode) {
+				case LONGS: e = JSONNumber.hashCode(longs[i]); break;
+				case DOUBLES: e = JSONNumber.hashCode(doubles[i]); break;
+				default: e = values[i] == null ? 0 : values[i].hashCode();
+			}
+			h = 31 * h + e;
+		}
+		return h;
 	}
 
 	@Override
 	public boolean equals(Object x) {
 		if (x != null && x instanceof JSONArray) {
-			return values.equals(((JSONArray)x).values);
+			JSONArray y = (JSONArray)x;
+			if (size() != y.size()) return false;
+			for (int i = 0; i < size; i++) {
+				if (mode == LONGS && y.mode == LONGS) {
+					if (longs[i] != y.longs[i]) return false;
+				} else if (mode == DOUBLES && y.mode == DOUBLES) {
+					if (doubles[i] != y.doubles[i]) return false;
+				} else {
+					JSONValue a = get(i);
+					JSONValue b = y.get(i);
+					if (a == null ? b != null : !a.equals(b)) return false;
+				}
+			}
+			return true;
 		}
 		return false;
 	}
@@ -151,8 +560,47 @@ public class JSONArray extends JSONValue implements Iterable<JSONValue> {
 	public JSONArray add(Long... values) {
 		if (values == null || values.length == 0) return this;
 		for (Long x : values) {
-			add(x == null ? JSONNull.JSON_NULL : new JSONNumber(x));
+			add(x == null ? JSONNull.JSON_NULL : JSONNumber.valueOf(x));
+		}
+		return this;
+	}
+
+	/**
+	 * @throws JSONException if a value is not finite
+	 */
+	public JSONArray add(double[] values) {
+		load();
+		if (values == null || values.length == 0) return this;
+		for (double x : values) {
+			if (Double.isNaN(x) || Double.isInfinite(x)) throw new JSONException(String.format("Non-finite number {%s} can not be represented as JSON",x));
+		}
+		if (mode == DOUBLES || mode == LONGS && size == 0) {
+			if (mode == LONGS) {
+				mode = DOUBLES;
+				longs = null;
+				doubles = new double[0];
+			}
+			ensure(size + values.length);
+			System.arraycopy(values, 0, doubles, size, values.length);
+			size += values.length;
+			elementType = JSONType.NUMBER;
+			return this;
+		}
+		for (double x : values) addDouble(x);
+		return this;
+	}
+
+	public JSONArray add(long[] values) {
+		load();
+		if (values == null || values.length == 0) return this;
+		if (mode == LONGS) {
+			ensure(size + values.length);
+			System.arraycopy(values, 0, longs, size, values.length);
+			size += values.length;
+			elementType = JSONType.NUMBER;
+			return this;
 		}
+		for (long x : values) addLong(x);
 		return this;
 	}
 
@@ -0,0 +1,88 @@
+/**
+ * Cohesion Framework - JSON Library
+ * Copyright (c) 2017 - Stewart Gebbie, Gethos. Licensed under the MIT licence.
+ * vim: set ts=4 sw=0:
+ */
+package net.gethos.cohesion.graphs.json;
+
+/**
+ * Gethos Cohesion JSON binary encoding, shared by {@link JSONBinaryWriter}
+ * and {@link JSONBinaryStream}.
+ * <p>
+ * A stream starts with a header, {@code 0xFF 'J' 'B' 0x01}, which is
+ * followed by any number of values. Each value starts with a tag byte:
+ * <pre>
+ * 0x00 null
+ * 0x01 false
+ * 0x02 true
+ * 0x03 integer:  zigzag varint
+ * 0x04 double:   8 bytes, IEEE 754, big-endian
+ * 0x05 decimal:  zigzag varint scale, zigzag varint unscaled value
+ * 0x06 decimal:  zigzag varint scale, varint length, two's-complement unscaled value
+ * 0x07 string:   varint length, UTF-8 bytes
+ * 0x08 string:   varint reference to an earlier string
+ * 0x09 array:    varint count, values
+ * 0x0A array:    varint count, zigzag varint integers
+ * 0x0B array:    varint count, 8 byte doubles
+ * 0x0C object:   varint count, then for each member a name and a value
+ * </pre>
+ * Strings are encoded as UTF-8, except that a surrogate that is not one
+ * of a pair (which a JSON string may hold, as an escape) is encoded as if
+ * it were a character of its own, in 3 bytes, as per WTF-8, so that it
+ * survives the round trip.
+ * <p>
+ * Numbers that were parsed from text, and are not held as a long or a
+ * double, are encoded as their {@link java.math.BigDecimal} value, keeping
+ * every digit and the scale, but not the form of the text. So, they are
+ * decoded as equal numbers, that are written back out in the form of
+ * {@link java.math.BigDecimal#toString()}: {@code 1e400} comes back as
+ * {@code 1E+400}, and {@code -0.0} as {@code 0.0}.
+ * <p>
+ * A name is a varint, which is either a reference to an earlier name (when
+ * odd, as {@code reference << 1 | 1}), or the length of the UTF-8 bytes of
+ * the name that follow it (when even, as {@code length << 1}).
+ * <p>
+ * Each name, and each string of up to {@link #SHORT_STRING} characters,
+ * is given the next reference the first time it is written, up to
+ * {@link #REFERENCES} of each. The references start over at each header,
+ * so that separately encoded streams may be joined end to end.
+ * <p>
+ * Varints hold 7 bits per byte, least significant first, with the high bit
+ * set on all but the last byte. A zigzag varint holds a signed value as
+ * {@code v << 1 ^ v >> 63}.
+ *
+ * @author {@literal Stewart Gebbie <sgebbie@gethos.net>}
+ *
+ */
+final class JSONBinary {
+
+	static final byte[] HEADER = {(byte)0xFF, 'J', 'B', 0x01};
+
+	static final int NULL = 0x00;
+	static final int FALSE = 0x01;
+	static final int TRUE = 0x02;
+	static final int LONG = 0x03;
+	static final int DOUBLE = 0x04;
+	static final int DECIMAL = 0x05;
+	static final int BIG_DECIMAL = 0x06;
+	static final int STRING = 0x07;
+	static final int STRING_REFERENCE = 0x08;
+	static final int ARRAY = 0x09;
+	static final int LONG_ARRAY = 0x0A;
+	static final int DOUBLE_ARRAY = 0x0B;
+	static final int OBJECT = 0x0C;
+	static final int START = 0xFF; // the first byte of the header
+
+	/**
+	 * The longest string, in characters, that is given a reference.
+	 */
+	static final int SHORT_STRING = 64;
+
+	/**
+	 * The most names, and the most strings, that are given references.
+	 */
+	static final int REFERENCES = 4096;
+
+	private JSONBinary() {
+	}
+}
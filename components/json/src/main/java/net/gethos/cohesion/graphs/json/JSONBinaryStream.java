@@ -0,0 +1,359 @@
+/**
+ * Cohesion Framework - JSON Library
+ * Copyright (c) 2017 - Stewart Gebbie, Gethos. Licensed under the MIT licence.
+ * vim: set ts=4 sw=0:
+ */
+package net.gethos.cohesion.graphs.json;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Iterator;
+
+/**
+ * Gethos Cohesion JSON binary stream, decoding the values written by a
+ * {@link JSONBinaryWriter} off an input stream, one at a time.
+ * <p>
+ * The stream reads from the input stream in blocks, into its own window,
+ * which only grows as far as the data that actually arrives, so that a
+ * corrupt length can not cause a large allocation. Streams that were
+ * encoded separately, and then joined end to end, are read as one.
+ * <pre>
+ * for (JSONValue v : new JSONBinaryStream(in)) {
+ *     ...
+ * }
+ * </pre>
+ *
+ * @author {@literal Stewart Gebbie <sgebbie@gethos.net>}
+ * @see JSONBinaryWriter
+ * @see JSONStream
+ *
+ */
+public class JSONBinaryStream implements Iterable<JSONValue> {
+
+	private static final int BUFFER_SIZE = 8192;
+	private static final int CHUNK = 1024; // the most elements of a packed array decoded at a time
+
+	private final InputStream in;
+	private byte[] buf;
+	private int pos;
+	private int limit;
+	private long base; // the position in the input of the start of the window
+
+	private boolean started;
+	private String[] names;
+	private int nameCount;
+	private String[] strings;
+	private int stringCount;
+
+	public JSONBinaryStream(InputStream in) {
+		this.in = in;
+		this.buf = new byte[BUFFER_SIZE];
+		this.pos = 0;
+		this.limit = 0;
+		this.base = 0;
+		this.started = false;
+		this.names = new String[16];
+		this.nameCount = 0;
+		this.strings = new String[16];
+		this.stringCount = 0;
+	}
+
+	/**
+	 * @return the next value, or null at the end of the stream
+	 */
+	public JSONValue next() {
+		try {
+			if (!require(1)) return null;
+			if ((buf[pos] & 0xFF) == JSONBinary.START) header();
+			else if (!started) throw new JSONException(String.format("No binary JSON header at [%d]",position()));
+			return value();
+		} catch (IOException e) {
+			throw new JSONException(String.format("I/O Error while decoding binary JSON from stream somewhere close to [%d]",position()), e);
+		}
+	}
+
+	@Override
+	public Iterator<JSONValue> iterator() {
+		return new Iterator<JSONValue>() {
+
+			private JSONValue next;
+
+			{
+				next = JSONBinaryStream.this.next();
+			}
+
+			@Override
+			public boolean hasNext() {
+				return next != null;
+			}
+
+			@Override
+			public JSONValue next() {
+				JSONValue n = next;
+				next = JSONBinaryStream.this.next();
+				return n;
+			}
+
+			@Override
+			public void remove() {
+				throw new UnsupportedOperationException();
+			}
+		};
+	}
+
+	/**
+	 * Check the header, and start the references over.
+	 */
+	private void header() throws IOException {
+		long at = position();
+		byte[] h = JSONBinary.HEADER;
+		if (!require(h.length) || buf[pos+1] != h[1] || buf[pos+2] != h[2]) throw new JSONException(String.format("No binary JSON header at [%d]",at));
+		if (buf[pos+3] != h[3]) throw new JSONException(String.format("Unsupported binary JSON version {%d} at [%d]",buf[pos+3],at));
+		pos += h.length;
+		started = true;
+		Arrays.fill(names, 0, nameCount, null);
+		nameCount = 0;
+		Arrays.fill(strings, 0, stringCount, null);
+		stringCount = 0;
+	}
+
+	private JSONValue value() throws IOException {
+		long at = position();
+		int tag = read();
+		switch (tag) {
+			case JSONBinary.NULL: return JSONNull.JSON_NULL;
+			case JSONBinary.FALSE: return JSONBoolean.JSON_FALSE;
+			case JSONBinary.TRUE: return JSONBoolean.JSON_TRUE;
+			case JSONBinary.LONG: return JSONNumber.valueOf(zigzag());
+			case JSONBinary.DOUBLE: return new JSONNumber(bits());
+			case JSONBinary.DECIMAL: {
+				int scale = scale();
+				return new JSONNumber(BigDecimal.valueOf(zigzag(), scale));
+			}
+			case JSONBinary.BIG_DECIMAL: {
+				int scale = scale();
+				int n = length();
+				if (n == 0) throw new JSONException(String.format("Empty decimal at [%d]",at));
+				byte[] b = Arrays.copyOfRange(buf, pos, pos + n);
+				pos += n;
+				return new JSONNumber(new BigDecimal(new BigInteger(b), scale));
+			}
+			case JSONBinary.STRING: {
+				String s = utf8(length());
+				if (s.length() <= JSONBinary.SHORT_STRING && stringCount < JSONBinary.REFERENCES) {
+					if (stringCount == strings.length) strings = Arrays.copyOf(strings, stringCount * 2);
+					strings[stringCount++] = s;
+				}
+				return new JSONString(s);
+			}
+			case JSONBinary.STRING_REFERENCE: {
+				long ref = varint();
+				if (ref < 0 || ref >= stringCount) throw new JSONException(String.format("Unknown string reference {%d} at [%d]",ref,at));
+				return new JSONString(strings[(int)ref]);
+			}
+			case JSONBinary.ARRAY: {
+				int n = count();
+				JSONArray x = new JSONArray();
+				for (int i = 0; i < n; i++) x.add(value());
+				return x;
+			}
+			case JSONBinary.LONG_ARRAY: {
+				int n = count();
+				JSONArray x = new JSONArray();
+				long[] chunk = new long[Math.min(n, CHUNK)];
+				for (int i = 0; i < n; i += chunk.length) {
+					if (n - i < chunk.length) chunk = new long[n - i];
+					for (int j = 0; j < chunk.length; j++) chunk[j] = zigzag();
+					x.add(chunk);
+				}
+				return x;
+			}
+			case JSONBinary.DOUBLE_ARRAY: {
+				int n = count();
+				JSONArray x = new JSONArray();
+				double[] chunk = new double[Math.min(n, CHUNK)];
+				for (int i = 0; i < n; i += chunk.length) {
+					if (n - i < chunk.length) chunk = new double[n - i];
+					for (int j = 0; j < chunk.length; j++) chunk[j] = bits();
+					x.add(chunk);
+				}
+				return x;
+			}
+			case JSONBinary.OBJECT: {
+				int n = count();
+				JSONObject x = new JSONObject();
+				for (int i = 0; i < n; i++) {
+					String name = name();
+					x.put(name, value());
+				}
+				return x;
+			}
+			case -1:
+				throw new JSONException(String.format("End-of-stream while decoding binary JSON value [%d]",at));
+			default:
+				throw new JSONException(String.format("Unexpected tag {%d} while decoding binary JSON value [%d]",tag,at));
+		}
+	}
+
+	private String name() throws IOException {
+		long at = position();
+		long v = varint();
+		if ((v & 1) != 0) {
+			long ref = v >>> 1;
+			if (ref >= nameCount) throw new JSONException(String.format("Unknown name reference {%d} at [%d]",ref,at));
+			return names[(int)ref];
+		}
+		if (v >>> 1 > Integer.MAX_VALUE) throw new JSONException(String.format("Name too long at [%d]",at));
+		String name = utf8((int)(v >>> 1));
+		if (nameCount < JSONBinary.REFERENCES) {
+			if (nameCount == names.length) names = Arrays.copyOf(names, nameCount * 2);
+			names[nameCount++] = name;
+		}
+		return name;
+	}
+
+	// -- decoding
+
+	private long position() {
+		return base + pos;
+	}
+
+	/**
+	 * Ensure that there are at least {@code n} bytes in the window, growing
+	 * it only once it is full.
+	 *
+	 * @return false if the input ends first
+	 */
+	private boolean require(int n) throws IOException {
+		if (limit - pos >= n) return true;
+		if (pos > 0) {
+			System.arraycopy(buf, pos, buf, 0, limit - pos);
+			base += pos;
+			limit -= pos;
+			pos = 0;
+		}
+		while (limit < n) {
+			if (limit == buf.length) buf = Arrays.copyOf(buf, (int)Math.min(Integer.MAX_VALUE - 8, buf.length * 2L));
+			int r = in.read(buf, limit, buf.length - limit);
+			if (r < 0) return false;
+			limit += r;
+		}
+		return true;
+	}
+
+	private int read() throws IOException {
+		if (pos == limit && !require(1)) return -1;
+		return buf[pos++] & 0xFF;
+	}
+
+	private long varint() throws IOException {
+		long v = 0;
+		for (int s = 0; s < 64; s += 7) {
+			int b = read();
+			if (b < 0) throw new JSONException(String.format("End-of-stream while decoding binary JSON [%d]",position()));
+			v |= (long)(b & 0x7F) << s;
+			if (b < 0x80) return v;
+		}
+		throw new JSONException(String.format("Malformed varint at [%d]",position()));
+	}
+
+	private long zigzag() throws IOException {
+		long v = varint();
+		return v >>> 1 ^ -(v & 1);
+	}
+
+	private int scale() throws IOException {
+		long scale = zigzag();
+		if (scale != (int)scale) throw new JSONException(String.format("Decimal scale {%d} out of range at [%d]",scale,position()));
+		return (int)scale;
+	}
+
+	/**
+	 * @return a length, with that many bytes in the window
+	 */
+	private int length() throws IOException {
+		long at = position();
+		long n = varint();
+		if (n > Integer.MAX_VALUE - 8 || !require((int)n)) throw new JSONException(String.format("End-of-stream while decoding binary JSON value of length {%d} [%d]",n,at));
+		return (int)n;
+	}
+
+	/**
+	 * @return a count of elements or members
+	 */
+	private int count() throws IOException {
+		long n = varint();
+		if (n > Integer.MAX_VALUE - 8) throw new JSONException(String.format("Count {%d} out of range at [%d]",n,position()));
+		return (int)n;
+	}
+
+	private double bits() throws IOException {
+		if (!require(8)) throw new JSONException(String.format("End-of-stream while decoding binary JSON double [%d]",position()));
+		long v = 0;
+		for (int i = 0; i < 8; i++) v = v << 8 | (buf[pos++] & 0xFF);
+		return Double.longBitsToDouble(v);
+	}
+
+	private String utf8(int n) throws IOException {
+		if (!require(n)) throw new JSONException(String.format("End-of-stream while decoding binary JSON string [%d]",position()));
+		String s;
+		if (surrogates(pos, pos + n)) s = wtf8(pos, pos + n);
+		else s = new String(buf, pos, n, StandardCharsets.UTF_8);
+		pos += n;
+		return s;
+	}
+
+	/**
+	 * @return true if the bytes hold an unpaired surrogate, which the standard decoder would replace
+	 */
+	private boolean surrogates(int from, int to) {
+		for (int i = from; i < to - 1; i++) {
+			if (buf[i] == (byte)0xED && (buf[i + 1] & 0xE0) == 0xA0) return true;
+		}
+		return false;
+	}
+
+	/**
+	 * Decode UTF-8 that may hold unpaired surrogates, each encoded as if it
+	 * were a character of its own.
+	 */
+	private String wtf8(int from, int to) {
+		char[] c = new char[to - from];
+		int k = 0;
+		int i = from;
+		while (i < to) {
+			int x = buf[i] & 0xFF;
+			if (x < 0x80) {
+				c[k++] = (char)x;
+				i++;
+			} else if (x >= 0xC0 && x < 0xE0 && continuation(i + 1, to, 1)) {
+				c[k++] = (char)((x & 0x1F) << 6 | buf[i + 1] & 0x3F);
+				i += 2;
+			} else if (x >= 0xE0 && x < 0xF0 && continuation(i + 1, to, 2)) {
+				c[k++] = (char)((x & 0x0F) << 12 | (buf[i + 1] & 0x3F) << 6 | buf[i + 2] & 0x3F);
+				i += 3;
+			} else if (x >= 0xF0 && x < 0xF8 && continuation(i + 1, to, 3)) {
+				int p = (x & 0x07) << 18 | (buf[i + 1] & 0x3F) << 12 | (buf[i + 2] & 0x3F) << 6 | buf[i + 3] & 0x3F;
+				if (!Character.isSupplementaryCodePoint(p)) throw new JSONException(String.format("Malformed UTF-8 while decoding binary JSON string [%d]",base + i));
+				c[k++] = Character.highSurrogate(p);
+				c[k++] = Character.lowSurrogate(p);
+				i += 4;
+			} else {
+				throw new JSONException(String.format("Malformed UTF-8 while decoding binary JSON string [%d]",base + i));
+			}
+		}
+		return new String(c, 0, k);
+	}
+
+	private boolean continuation(int from, int to, int n) {
+		if (from + n > to) return false;
+		for (int i = from; i < from + n; i++) {
+			if ((buf[i] & 0xC0) != 0x80) return false;
+		}
+		return true;
+	}
+}
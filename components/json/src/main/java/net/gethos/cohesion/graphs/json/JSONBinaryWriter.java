@@ -0,0 +1,272 @@
+/**
+ * Cohesion Framework - JSON Library
+ * Copyright (c) 2017 - Stewart Gebbie, Gethos. Licensed under the MIT licence.
+ * vim: set ts=4 sw=0:
+ */
+package net.gethos.cohesion.graphs.json;
+
+import java.io.Closeable;
+import java.io.Flushable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Gethos Cohesion JSON binary writer, encoding JSON value trees in a
+ * compact binary form, for passing between services that would otherwise
+ * write the values out as text, only to parse them again.
+ * <p>
+ * Values are tagged with their type. Integers are written as varints, and
+ * doubles as their raw IEEE 754 bits, and so neither needs formatting or
+ * parsing. A number with more digits than a long or a double can hold is
+ * written as its unscaled value and scale, so that its precision is kept.
+ * Arrays of integers or doubles are written packed, without a tag per
+ * element. Each member name, and each short string, is written out once,
+ * and after that by reference. So, the names of objects that repeat
+ * throughout a stream cost a byte or two each.
+ * <p>
+ * Any number of values may be written, and read back in turn by
+ * {@link JSONBinaryStream}. The references are kept across the values of
+ * a stream, so it pays to write related values with the one writer.
+ * <pre>
+ * JSONBinaryWriter w = new JSONBinaryWriter(out);
+ * for (JSONValue v : values) w.write(v);
+ * w.flush();
+ * </pre>
+ * The encoding itself is described in {@code JSONBinary}.
+ *
+ * @author {@literal Stewart Gebbie <sgebbie@gethos.net>}
+ * @see JSONBinaryStream
+ *
+ */
+public class JSONBinaryWriter implements Closeable, Flushable {
+
+	private static final int BUFFER_SIZE = 8192;
+
+	private final OutputStream out;
+	private final byte[] buf;
+	private int count;
+
+	private boolean started;
+	private final Map<String,Integer> names;
+	private final Map<String,Integer> strings;
+
+	public JSONBinaryWriter(OutputStream out) {
+		this.out = out;
+		this.buf = new byte[BUFFER_SIZE];
+		this.count = 0;
+		this.started = false;
+		this.names = new HashMap<String,Integer>();
+		this.strings = new HashMap<String,Integer>();
+	}
+
+	/**
+	 * Write a top-level value.
+	 */
+	public JSONBinaryWriter write(JSONValue value) throws IOException {
+		if (!started) {
+			put(JSONBinary.HEADER, 0, JSONBinary.HEADER.length);
+			started = true;
+		}
+		value(value);
+		return this;
+	}
+
+	/**
+	 * Pass everything written so far through to the underlying stream, and flush it.
+	 */
+	@Override
+	public void flush() throws IOException {
+		flushBuffer();
+		out.flush();
+	}
+
+	@Override
+	public void close() throws IOException {
+		flushBuffer();
+		out.close();
+	}
+
+	// -- called back by the values
+
+	void value(JSONValue value) throws IOException {
+		if (value == null) nullValue();
+		else value.encodeTo(this);
+	}
+
+	void nullValue() throws IOException {
+		put(JSONBinary.NULL);
+	}
+
+	void value(boolean value) throws IOException {
+		put(value ? JSONBinary.TRUE : JSONBinary.FALSE);
+	}
+
+	void value(long value) throws IOException {
+		put(JSONBinary.LONG);
+		zigzag(value);
+	}
+
+	void value(double value) throws IOException {
+		put(JSONBinary.DOUBLE);
+		bits(value);
+	}
+
+	void value(BigDecimal value) throws IOException {
+		BigInteger unscaled = value.unscaledValue();
+		if (unscaled.bitLength() < 64) {
+			put(JSONBinary.DECIMAL);
+			zigzag(value.scale());
+			zigzag(unscaled.longValue());
+		} else {
+			byte[] b = unscaled.toByteArray();
+			put(JSONBinary.BIG_DECIMAL);
+			zigzag(value.scale());
+			varint(b.length);
+			put(b, 0, b.length);
+		}
+	}
+
+	void value(String value) throws IOException {
+		if (value.length() <= JSONBinary.SHORT_STRING) {
+			Integer ref = strings.get(value);
+			if (ref != null) {
+				put(JSONBinary.STRING_REFERENCE);
+				varint(ref);
+				return;
+			}
+			if (strings.size() < JSONBinary.REFERENCES) strings.put(value, strings.size());
+		}
+		put(JSONBinary.STRING);
+		varint(utf8Length(value));
+		utf8(value);
+	}
+
+	void beginArray(int size) throws IOException {
+		put(JSONBinary.ARRAY);
+		varint(size);
+	}
+
+	void longs(long[] values, int size) throws IOException {
+		put(JSONBinary.LONG_ARRAY);
+		varint(size);
+		for (int i = 0; i < size; i++) zigzag(values[i]);
+	}
+
+	void doubles(double[] values, int size) throws IOException {
+		put(JSONBinary.DOUBLE_ARRAY);
+		varint(size);
+		for (int i = 0; i < size; i++) bits(values[i]);
+	}
+
+	void beginObject(int size) throws IOException {
+		put(JSONBinary.OBJECT);
+		varint(size);
+	}
+
+	/**
+	 * Write the name of the next object member, which must be followed by its value.
+	 */
+	void name(String name) throws IOException {
+		Integer ref = names.get(name);
+		if (ref != null) {
+			varint((long)ref << 1 | 1);
+			return;
+		}
+		if (names.size() < JSONBinary.REFERENCES) names.put(name, names.size());
+		varint((long)utf8Length(name) << 1);
+		utf8(name);
+	}
+
+	// -- encoding
+
+	private void put(int b) throws IOException {
+		if (count == buf.length) flushBuffer();
+		buf[count++] = (byte)b;
+	}
+
+	private void put(byte[] b, int from, int to) throws IOException {
+		while (from < to) {
+			if (count == buf.length) flushBuffer();
+			int n = Math.min(to - from, buf.length - count);
+			System.arraycopy(b, from, buf, count, n);
+			count += n;
+			from += n;
+		}
+	}
+
+	private void varint(long v) throws IOException {
+		if (buf.length - count < 10) flushBuffer();
+		while ((v & ~0x7FL) != 0) {
+			buf[count++] = (byte)(v & 0x7F | 0x80);
+			v >>>= 7;
+		}
+		buf[count++] = (byte)v;
+	}
+
+	private void zigzag(long v) throws IOException {
+		varint(v << 1 ^ v >> 63);
+	}
+
+	private void bits(double d) throws IOException {
+		if (buf.length - count < 8) flushBuffer();
+		long v = Double.doubleToLongBits(d);
+		for (int s = 56; s >= 0; s -= 8) buf[count++] = (byte)(v >>> s);
+	}
+
+	/**
+	 * @return the length of the string encoded as UTF-8, with any unpaired surrogate encoded as if it were a character of its own
+	 */
+	private static int utf8Length(String s) {
+		int n = s.length();
+		int len = n;
+		for (int i = 0; i < n; i++) {
+			char c = s.charAt(i);
+			if (c < 0x80) continue;
+			if (c < 0x800) {
+				len += 1;
+			} else if (Character.isHighSurrogate(c) && i + 1 < n && Character.isLowSurrogate(s.charAt(i + 1))) {
+				// a pair is 4 bytes for 2 characters
+				len += 2;
+				i++;
+			} else {
+				len += 2;
+			}
+		}
+		return len;
+	}
+
+	private void utf8(String s) throws IOException {
+		int n = s.length();
+		for (int i = 0; i < n; i++) {
+			if (buf.length - count < 4) flushBuffer();
+			char c = s.charAt(i);
+			if (c < 0x80) {
+				buf[count++] = (byte)c;
+			} else if (c < 0x800) {
+				buf[count++] = (byte)(0xC0 | c >> 6);
+				buf[count++] = (byte)(0x80 | c & 0x3F);
+			} else if (Character.isHighSurrogate(c) && i + 1 < n && Character.isLowSurrogate(s.charAt(i + 1))) {
+				int p = Character.toCodePoint(c, s.charAt(++i));
+				buf[count++] = (byte)(0xF0 | p >> 18);
+				buf[count++] = (byte)(0x80 | p >> 12 & 0x3F);
+				buf[count++] = (byte)(0x80 | p >> 6 & 0x3F);
+				buf[count++] = (byte)(0x80 | p & 0x3F);
+			} else {
+				// including an unpaired surrogate, which JSON text may hold, and so must survive the round trip
+				buf[count++] = (byte)(0xE0 | c >> 12);
+				buf[count++] = (byte)(0x80 | c >> 6 & 0x3F);
+				buf[count++] = (byte)(0x80 | c & 0x3F);
+			}
+		}
+	}
+
+	private void flushBuffer() throws IOException {
+		if (count == 0) return;
+		out.write(buf, 0, count);
+		count = 0;
+	}
+}
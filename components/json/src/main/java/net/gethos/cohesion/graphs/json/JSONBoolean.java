@@ -5,6 +5,8 @@
  */
 package net.gethos.cohesion.graphs.json;
 
+import java.io.IOException;
+
 /**
  * Gethos Cohesion JSON implementation.
  * <p>
@@ -42,6 +44,16 @@ public class JSONBoolean extends JSONValue {
 		text.append(value ? TRUE : FALSE);
 	}
 
+	@Override
+	void writeTo(JSONWriter out) throws IOException {
+		out.value(value);
+	}
+
+	@Override
+	void encodeTo(JSONBinaryWriter out) throws IOException {
+		out.value(value);
+	}
+
 	@Override
 	public int hashCode() {
 		return value ? Boolean.TRUE.hashCode() : Boolean.FALSE.hashCode();
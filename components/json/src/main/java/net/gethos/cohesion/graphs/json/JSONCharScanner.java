@@ -0,0 +1,310 @@
+/**
+ * Cohesion Framework - JSON Library
+ * Copyright (c) 2017 - Stewart Gebbie, Gethos. Licensed under the MIT licence.
+ * vim: set ts=4 sw=0:
+ */
+package net.gethos.cohesion.graphs.json;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.math.BigDecimal;
+import java.util.Arrays;
+
+/**
+ * Scanner over a window of characters, either read in blocks from a
+ * {@link Reader}, or over a fixed array of characters.
+ *
+ * @author {@literal Stewart Gebbie <sgebbie@gethos.net>}
+ *
+ */
+class JSONCharScanner extends JSONScanner {
+
+	private static final int BUFFER_SIZE = 8192;
+
+	private final Reader json;
+	private final StringBuilder scratch;
+
+	private char[] buf;
+
+	JSONCharScanner(Reader reader) {
+		this.json = reader;
+		this.scratch = new StringBuilder();
+		this.buf = new char[BUFFER_SIZE];
+		this.pos = 0;
+		this.limit = 0;
+		this.base = 0;
+	}
+
+	JSONCharScanner(char[] json, int from, int to) {
+		this.json = null;
+		this.scratch = new StringBuilder();
+		this.buf = json;
+		this.pos = from;
+		this.limit = to;
+		this.base = -from;
+	}
+
+	/**
+	 * Move an array scanner on to another array of characters.
+	 */
+	void reset(char[] json, int from, int to) {
+		this.buf = json;
+		this.pos = from;
+		this.limit = to;
+		this.base = -from;
+	}
+
+	@Override
+	boolean require(int n) throws IOException {
+		if (limit - pos >= n) return true;
+		if (json == null) return false;
+		if (n > buf.length) {
+			char[] b = new char[Math.max(n, buf.length * 2)];
+			System.arraycopy(buf, pos, b, 0, limit - pos);
+			buf = b;
+		} else if (pos > 0) {
+			System.arraycopy(buf, pos, buf, 0, limit - pos);
+		}
+		base += pos;
+		limit -= pos;
+		pos = 0;
+		while (limit < n) {
+			int r = json.read(buf, limit, buf.length - limit);
+			if (r == -1) return false;
+			limit += r;
+		}
+		return true;
+	}
+
+	@Override
+	int peek() throws IOException {
+		if (pos < limit || require(1)) return buf[pos];
+		return -1;
+	}
+
+	@Override
+	void skipWhitespace() throws IOException {
+		for(;;) {
+			while (pos < limit && isWhitespace(buf[pos])) pos++;
+			if (pos < limit || !require(1)) return;
+		}
+	}
+
+	@Override
+	boolean matchKeyword(String keyword) throws IOException {
+		int n = keyword.length();
+		if (!require(n)) return false;
+		for (int i = 0; i < n; i++) {
+			if (buf[pos + i] != keyword.charAt(i)) return false;
+		}
+		pos += n;
+		return true;
+	}
+
+	@Override
+	int findNumberEnd() throws IOException {
+
+		// make sure that the whole token is in the window
+		int end = pos;
+		for(;;) {
+			while (end < limit && isNumberCharacter(buf[end])) end++;
+			if (end < limit) break;
+			int scanned = end - pos;
+			boolean more = require(scanned + 1);
+			end = pos + scanned;
+			if (!more) break;
+		}
+
+		// find the end of the number
+		return JSONNumbers.end(buf, pos, end);
+	}
+
+	@Override
+	JSONNumber decodeNumber(int from, int to) {
+		return JSONNumber.parse(buf, from, to - from);
+	}
+
+	@Override
+	void decodeNumber(JSONArray into, int from, int to) {
+		into.addNumber(buf, from, to - from);
+	}
+
+	@Override
+	BigDecimal decodeBigDecimal(int from, int to) {
+		return JSONNumbers.parseBigDecimal(buf, from, to - from);
+	}
+
+	@Override
+	long decodeLong(int from, int to) {
+		return JSONNumbers.parseLong(buf, from, to - from);
+	}
+
+	@Override
+	double decodeDouble(int from, int to) {
+		return JSONNumbers.parseDouble(buf, from, to - from);
+	}
+
+	@Override
+	String text(int from, int to) {
+		return new String(buf, from, to - from);
+	}
+
+	@Override
+	int findStringEnd() throws IOException {
+
+		long from = position();
+		int c = peek();
+		if (c == -1) throw new JSONException(String.format("End-of-stream while pasring string [%d].", from));
+		if (c != '"') throw new JSONException(String.format("No string while parsing [%d]",from));
+
+		// find the closing quote, pulling the whole string into the window
+		escaped = false;
+		int end = pos + 1;
+		for(;;) {
+			while (end < limit) {
+				char x = buf[end];
+				if (x == '"') break;
+				if (x == '\\') {
+					escaped = true;
+					if (end + 1 == limit) break;
+					end++;
+				}
+				end++;
+			}
+			if (end < limit && buf[end] == '"') break;
+			int scanned = end - pos;
+			if (!require(scanned + (end < limit ? 2 : 1))) throw new JSONException(String.format("End-of-stream while pasring string [%d].", from));
+			end = pos + scanned;
+		}
+
+		return end;
+	}
+
+	@Override
+	String decodeString(int from, int to) {
+		if (!escaped) return new String(buf, from, to - from);
+		scratch.setLength(0);
+		scratch.append(buf, from, to - from);
+		JSONString.unescape(scratch);
+		return scratch.toString();
+	}
+
+	@Override
+	boolean equalsString(int from, int to, String s) {
+		if (escaped) {
+			scratch.setLength(0);
+			scratch.append(buf, from, to - from);
+			JSONString.unescape(scratch);
+			return s.contentEquals(scratch);
+		}
+		int n = to - from;
+		if (n != s.length()) return false;
+		for (int i = 0; i < n; i++) {
+			if (buf[from + i] != s.charAt(i)) return false;
+		}
+		return true;
+	}
+
+	@Override
+	String decodeSymbol(int from, int to) {
+		if (!escaped) return symbols.lookup(buf, from, to - from);
+		scratch.setLength(0);
+		scratch.append(buf, from, to - from);
+		JSONString.unescape(scratch);
+		return symbols.lookup(scratch, 0, scratch.length());
+	}
+
+	@Override
+	JSONScanner sliceValue() throws IOException {
+		skipWhitespace();
+		int first = peek();
+		if (first == -1) return null;
+		long at = position();
+
+		// the first character decides how the value ends
+		boolean string = first == '"';
+		boolean scalar = !string && first != '{' && first != '[';
+		boolean escape = false;
+		int depth = string || scalar ? 0 : 1;
+
+		char[] out = new char[64];
+		int n = 0;
+		int from = pos;
+		int p = pos + 1;
+		for(;;) {
+			char[] b = buf;
+			int l = limit;
+			int end = -1;
+			for (; p < l; p++) {
+				char c = b[p];
+				if (string) {
+					if (escape) escape = false;
+					else if (c == '\\') escape = true;
+					else if (c == '"') {
+						string = false;
+						if (depth == 0) {
+							end = p + 1;
+							break;
+						}
+					}
+				} else if (scalar) {
+					if (isDelimiter(c)) {
+						end = p;
+						break;
+					}
+				} else if (c == '"') {
+					string = true;
+				} else if (c == '{' || c == '[') {
+					depth++;
+				} else if (c == '}' || c == ']') {
+					if (--depth == 0) {
+						end = p + 1;
+						break;
+					}
+				}
+			}
+			int to = end < 0 ? p : end;
+			if (n + to - from > out.length) out = Arrays.copyOf(out, Math.max(n + to - from, out.length * 2));
+			System.arraycopy(b, from, out, n, to - from);
+			n += to - from;
+			pos = to;
+			// the value may run on past the end of the input, in which case it will fail to parse
+			if (end >= 0 || !require(1)) break;
+			from = pos;
+			p = pos;
+		}
+		JSONScanner slice = new JSONCharScanner(out, 0, n);
+		slice.base = at; // report positions relative to the whole input
+		return slice;
+	}
+
+	@Override
+	void skipNested(int depth) throws IOException {
+		boolean string = false;
+		boolean escape = false;
+		for(;;) {
+			char[] b = buf;
+			int p = pos;
+			int l = limit;
+			for (; p < l; p++) {
+				char c = b[p];
+				if (string) {
+					if (escape) escape = false;
+					else if (c == '\\') escape = true;
+					else if (c == '"') string = false;
+				} else if (c == '"') {
+					string = true;
+				} else if (c == '{' || c == '[') {
+					depth++;
+				} else if (c == '}' || c == ']') {
+					if (--depth == 0) {
+						pos = p + 1;
+						return;
+					}
+				}
+			}
+			pos = p;
+			if (!require(1)) throw new JSONException(String.format("End-of-stream while skipping [%d].", position()));
+		}
+	}
+}
@@ -0,0 +1,332 @@
+/**
+ * Cohesion Framework - JSON Library
+ * Copyright (c) 2017 - Stewart Gebbie, Gethos. Licensed under the MIT licence.
+ * vim: set ts=4 sw=0:
+ */
+package net.gethos.cohesion.graphs.json;
+
+import java.math.BigInteger;
+
+/**
+ * Conversion between decimal and binary floating point, without going via
+ * {@link java.math.BigDecimal} or intermediate strings.
+ * <p>
+ * Decimal to double uses the Eisel-Lemire algorithm: the significand is
+ * multiplied by a 128-bit approximation of the power of ten, which is
+ * enough to round correctly in all but a vanishingly small number of
+ * cases, which are reported so that the caller can fall back to an exact
+ * conversion.
+ * <p>
+ * Double to decimal uses the Schubfach algorithm, producing the shortest
+ * decimal that reads back as the same double (and the closest such
+ * decimal, when there is a choice).
+ * <p>
+ * See: Daniel Lemire, "Number Parsing at a Gigabyte per Second", 2021, and
+ * Raffaello Giulietti, "The Schubfach way to render doubles", 2020.
+ *
+ * @author {@literal Stewart Gebbie <sgebbie@gethos.net>}
+ *
+ */
+final class JSONDoubles {
+
+	// -- decimal to double (Eisel-Lemire)
+
+	private static final int Q_LOWEST = -342; // any smaller power of ten rounds every 19 digit significand to zero
+	private static final int Q_HIGHEST = 308; // any larger power of ten overflows every non-zero significand
+
+	// 128-bit significands of the powers of ten, normalised so that the top bit is set
+	private static final long[] POWERS_HI = new long[Q_HIGHEST - Q_LOWEST + 1];
+	private static final long[] POWERS_LO = new long[Q_HIGHEST - Q_LOWEST + 1];
+
+	// -- double to decimal (Schubfach)
+
+	private static final int P = 53;                 // precision, in bits
+	private static final int Q_MIN = -1074;          // exponent of the smallest subnormal
+	private static final long C_MIN = 1L << (P - 1); // smallest normal significand
+	private static final int K_MIN = -324;
+	private static final int K_MAX = 292;
+	private static final long MASK_63 = (1L << 63) - 1;
+
+	// floor(10^-k 2^-r) + 1, for 2^125 <= 10^-k 2^-r < 2^126, split into 63 bit halves
+	private static final long[] G1 = new long[K_MAX - K_MIN + 1];
+	private static final long[] G0 = new long[K_MAX - K_MIN + 1];
+
+	static {
+		BigInteger two128 = BigInteger.ONE.shiftLeft(128);
+		BigInteger mask64 = BigInteger.ONE.shiftLeft(64).subtract(BigInteger.ONE);
+		BigInteger five = BigInteger.valueOf(5);
+		for (int q = Q_LOWEST; q <= Q_HIGHEST; q++) {
+			BigInteger x;
+			if (q >= 0) {
+				// truncated
+				x = five.pow(q);
+				x = x.bitLength() > 128 ? x.shiftRight(x.bitLength() - 128) : x.shiftLeft(128 - x.bitLength());
+			} else {
+				// rounded up, from a wider quotient for the powers that do not fit in 64 bits
+				BigInteger d = five.pow(-q);
+				int z = d.bitLength();
+				int b = q >= -27 ? z + 127 : 2 * z + 128;
+				x = BigInteger.ONE.shiftLeft(b).divide(d).add(BigInteger.ONE);
+				while (x.compareTo(two128) >= 0) x = x.shiftRight(1);
+			}
+			POWERS_HI[q - Q_LOWEST] = x.shiftRight(64).longValue();
+			POWERS_LO[q - Q_LOWEST] = x.and(mask64).longValue();
+		}
+		BigInteger mask63 = BigInteger.valueOf(MASK_63);
+		for (int k = K_MIN; k <= K_MAX; k++) {
+			BigInteger g;
+			if (k <= 0) {
+				BigInteger n = BigInteger.TEN.pow(-k);
+				g = n.shiftLeft(126 - n.bitLength());
+			} else {
+				BigInteger d = BigInteger.TEN.pow(k);
+				g = BigInteger.ONE.shiftLeft(d.bitLength() + 125).divide(d);
+			}
+			g = g.add(BigInteger.ONE);
+			G1[k - K_MIN] = g.shiftRight(63).longValue();
+			G0[k - K_MIN] = g.and(mask63).longValue();
+		}
+	}
+
+	private JSONDoubles() {
+	}
+
+	/**
+	 * The high 64 bits of the unsigned 128-bit product.
+	 */
+	static long multiplyHigh(long x, long y) {
+		long x0 = x & 0xffffffffL;
+		long x1 = x >>> 32;
+		long y0 = y & 0xffffffffL;
+		long y1 = y >>> 32;
+		long p01 = x0 * y1;
+		long middle = x1 * y0 + ((x0 * y0) >>> 32) + (p01 & 0xffffffffL);
+		return x1 * y1 + (middle >>> 32) + (p01 >>> 32);
+	}
+
+	private static boolean lessThanUnsigned(long x, long y) {
+		return x + Long.MIN_VALUE < y + Long.MIN_VALUE;
+	}
+
+	/**
+	 * Find the double nearest to {@code w * 10^q}, for the unsigned
+	 * significand {@code w}.
+	 *
+	 * @return the double, or NaN if the result could not be decided, in which case an exact conversion is needed
+	 */
+	static double toDouble(long w, long q, boolean negative) {
+		if (w == 0 || q < Q_LOWEST) return negative ? -0.0 : 0.0;
+		if (q > Q_HIGHEST) return negative ? Double.NEGATIVE_INFINITY : Double.POSITIVE_INFINITY;
+		int i = (int)q - Q_LOWEST;
+
+		// normalise the significand
+		int lz = Long.numberOfLeadingZeros(w);
+		w <<= lz;
+		long exponent = ((217706 * q) >> 16) + 64 + 1023 - lz; // floor(q log2(10)), biased
+
+		// multiply by the high half of the power, and then the low half if that is not enough
+		long hi = multiplyHigh(w, POWERS_HI[i]);
+		long lo = w * POWERS_HI[i];
+		if ((hi & 0x1ff) == 0x1ff && lessThanUnsigned(lo + w, w)) {
+			long yhi = multiplyHigh(w, POWERS_LO[i]);
+			long ylo = w * POWERS_LO[i];
+			long mergedHi = hi;
+			long mergedLo = lo + yhi;
+			if (lessThanUnsigned(mergedLo, lo)) mergedHi++;
+			if ((mergedHi & 0x1ff) == 0x1ff && mergedLo + 1 == 0 && lessThanUnsigned(ylo + w, w)) return Double.NaN;
+			hi = mergedHi;
+			lo = mergedLo;
+		}
+
+		// shift down to 54 bits
+		long msb = hi >>> 63;
+		long m = hi >>> (msb + 9);
+		exponent -= 1 ^ msb;
+
+		// exactly half way between two doubles, at the limit of the precision
+		if (lo == 0 && (hi & 0x1ff) == 0 && (m & 3) == 1) return Double.NaN;
+
+		// round to 53 bits
+		m += m & 1;
+		m >>>= 1;
+		if ((m >>> 53) > 0) {
+			m >>>= 1;
+			exponent++;
+		}
+
+		if (exponent >= 0x7ff) return negative ? Double.NEGATIVE_INFINITY : Double.POSITIVE_INFINITY;
+		// subnormal results are left to the exact conversion
+		if (exponent <= 0) return Double.NaN;
+		long bits = exponent << 52 | m & 0x000fffffffffffffL;
+		if (negative) bits |= 0x8000000000000000L;
+		return Double.longBitsToDouble(bits);
+	}
+
+	/**
+	 * Write the shortest decimal that reads back as the double into the
+	 * buffer, in the same form as ECMAScript's {@code Number.toString()}:
+	 * plain notation for magnitudes in [1e-6, 1e21), and otherwise
+	 * scientific notation, such as {@code 1.5e-7}. Negative zero is written
+	 * as {@code -0}.
+	 * <p>
+	 * At most 25 characters are written.
+	 *
+	 * @return the index after the last character written
+	 * @throws JSONException if the double is not finite
+	 */
+	static int toChars(double v, char[] buf, int off) {
+		if (Double.isNaN(v) || Double.isInfinite(v)) throw new JSONException(String.format("Non-finite number {%s} can not be written as JSON",v));
+		long bits = Double.doubleToRawLongBits(v);
+		if (bits < 0) buf[off++] = '-';
+		long t = bits & (C_MIN - 1);
+		int bq = (int)(bits >>> (P - 1)) & 0x7ff;
+
+		long f;
+		int e;
+		if (bq != 0) {
+			// normal
+			int mq = -Q_MIN + 1 - bq;
+			long c = C_MIN | t;
+			if (0 < mq && mq < P && ((c >> mq) << mq) == c) {
+				// an integer
+				f = c >> mq;
+				e = 0;
+			} else {
+				e = exponent(-mq, c);
+				f = schubfach(-mq, c, e);
+			}
+		} else if (t != 0) {
+			// subnormal
+			e = exponent(Q_MIN, t);
+			f = schubfach(Q_MIN, t, e);
+		} else {
+			buf[off++] = '0';
+			return off;
+		}
+
+		while (f % 10 == 0) {
+			f /= 10;
+			e++;
+		}
+		return format(f, e, buf, off);
+	}
+
+	/**
+	 * @return the decimal exponent k, of the digits found by {@link #schubfach(int, long, int)}
+	 */
+	private static int exponent(int q, long c) {
+		if (c != C_MIN || q == Q_MIN) return (int)(q * 661971961083L >> 41); // floor(q log10(2))
+		// the rounding interval is asymmetric at a power of two
+		return (int)(q * 661971961083L + -274743187321L >> 41); // floor(q log10(2) + log10(3/4))
+	}
+
+	/**
+	 * Find the shortest decimal {@code f * 10^k} in the rounding interval of
+	 * {@code c * 2^q}.
+	 *
+	 * @return f
+	 */
+	private static long schubfach(int q, long c, int k) {
+		int out = (int)c & 0x1;
+		long cb = c << 2;
+		long cbr = cb + 2;
+		long cbl = c != C_MIN || q == Q_MIN ? cb - 2 : cb - 1;
+		int h = q + (int)(-k * 913124641741L >> 38) + 2; // q + floor(-k log2(10)) + 2
+
+		long g1 = G1[k - K_MIN];
+		long g0 = G0[k - K_MIN];
+
+		long vb = rop(g1, g0, cb << h);
+		long vbl = rop(g1, g0, cbl << h);
+		long vbr = rop(g1, g0, cbr << h);
+
+		long s = vb >> 2;
+		if (s >= 100) {
+			// try for one digit less
+			long sp10 = 10 * multiplyHigh(s, 115292150460684698L << 4);
+			long tp10 = sp10 + 10;
+			boolean upin = vbl + out <= sp10 << 2;
+			boolean wpin = (tp10 << 2) + out <= vbr;
+			if (upin != wpin) return upin ? sp10 : tp10;
+		}
+
+		long t = s + 1;
+		boolean uin = vbl + out <= s << 2;
+		boolean win = (t << 2) + out <= vbr;
+		if (uin != win) return uin ? s : t;
+
+		// both in the interval, so pick the closest, or the even one when tied
+		long cmp = vb - (s + t << 1);
+		return cmp < 0 || cmp == 0 && (s & 0x1) == 0 ? s : t;
+	}
+
+	/**
+	 * Round to odd, the product of g and cp, scaled down by 2^127.
+	 */
+	private static long rop(long g1, long g0, long cp) {
+		long x1 = multiplyHigh(g0, cp);
+		long y0 = g1 * cp;
+		long y1 = multiplyHigh(g1, cp);
+		long z = (y0 >>> 1) + x1;
+		long vbp = y1 + (z >>> 63);
+		return vbp | (z & MASK_63) + MASK_63 >>> 63;
+	}
+
+	/**
+	 * Write {@code f * 10^e}, for f with no trailing zeros.
+	 */
+	private static int format(long f, int e, char[] buf, int off) {
+		int len = 1;
+		for (long x = f; x >= 10; x /= 10) len++;
+		int n = e + len; // the value is 0.digits * 10^n
+
+		if (len <= n && n <= 21) {
+			// integer
+			off = digits(f, len, buf, off);
+			for (int i = len; i < n; i++) buf[off++] = '0';
+		} else if (0 < n && n <= 21) {
+			// decimal point within the digits
+			digits(f, len, buf, off + 1);
+			System.arraycopy(buf, off + 1, buf, off, n);
+			buf[off + n] = '.';
+			off += len + 1;
+		} else if (-6 < n && n <= 0) {
+			// leading zeros
+			buf[off++] = '0';
+			buf[off++] = '.';
+			for (int i = n; i < 0; i++) buf[off++] = '0';
+			off = digits(f, len, buf, off);
+		} else {
+			// scientific
+			digits(f, len, buf, off + 1);
+			buf[off] = buf[off + 1];
+			if (len > 1) {
+				buf[off + 1] = '.';
+				off += len + 1;
+			} else {
+				off += 1;
+			}
+			buf[off++] = 'e';
+			int x = n - 1;
+			if (x < 0) {
+				buf[off++] = '-';
+				x = -x;
+			} else {
+				buf[off++] = '+';
+			}
+			if (x >= 100) buf[off++] = (char)('0' + x / 100);
+			if (x >= 10) buf[off++] = (char)('0' + x / 10 % 10);
+			buf[off++] = (char)('0' + x % 10);
+		}
+		return off;
+	}
+
+	private static int digits(long f, int len, char[] buf, int off) {
+		int p = off + len;
+		do {
+			buf[--p] = (char)('0' + (int)(f % 10));
+			f /= 10;
+		} while (f != 0);
+		return off + len;
+	}
+}
@@ -0,0 +1,261 @@
+/**
+ * Cohesion Framework - JSON Library
+ * Copyright (c) 2017 - Stewart Gebbie, Gethos. Licensed under the MIT licence.
+ * vim: set ts=4 sw=0:
+ */
+package net.gethos.cohesion.graphs.json;
+
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * Gethos Cohesion JSON extractor, pulling a fixed set of values, each
+ * identified by a {@link JSONPointer}, out of each value of a
+ * {@link JSONStream}, without building the rest of the value.
+ * <p>
+ * The pointers are compiled into a tree of member names and array indices.
+ * The extractor walks the input along that tree, compares member names in
+ * place, rather than decoding them, and passes over every subtree that
+ * leads to none of the pointers by counting brackets and quotes, without
+ * decoding or allocating anything. Once all the pointers below an object or
+ * array have been found, the rest of it is passed over in the same way.
+ * Only the selected values are built.
+ * <p>
+ * Where a member name repeats, the last of its values is taken, as it is
+ * in a built {@link JSONObject}, unless all of the pointers below the
+ * object had already been found, in which case the rest of the object,
+ * repeat and all, has been passed over.
+ * <pre>
+ * JSONExtractor x = new JSONExtractor("/meta/id", "/payload/items/3/price");
+ * JSONStream s = new JSONStream(in);
+ * for (JSONValue[] v = s.next(x); v != null; v = s.next(x)) {
+ *     JSONValue id = v[0];
+ *     JSONValue price = v[1];
+ * }
+ * </pre>
+ * Note, the parts of the input that are passed over are not validated.
+ * <p>
+ * An extractor holds no state between values, and so may be shared
+ * between streams, and between threads.
+ *
+ * @author {@literal Stewart Gebbie <sgebbie@gethos.net>}
+ * @see JSONStream#next(JSONExtractor)
+ *
+ */
+public final class JSONExtractor {
+
+	/**
+	 * A step in the tree of pointers.
+	 */
+	private static final class Node {
+		int target = -1;          // the pointer that ends here, if any
+		int[] below = new int[0]; // the pointers that pass through a target here
+		int depth;                // the number of tokens leading here
+		int count;                // the number of pointers that end at or below here
+		int[] reach = new int[0]; // the pointers that end at or below here
+		String[] names = new String[0];
+		Node[] byName = new Node[0];
+		int[] indices = new int[0];
+		Node[] byIndex = new Node[0];
+
+		Node child(String name, int index) {
+			for (int i = 0; i < names.length; i++) {
+				if (names[i].equals(name)) return byName[i];
+			}
+			Node x = new Node();
+			x.depth = depth + 1;
+			names = Arrays.copyOf(names, names.length + 1);
+			byName = Arrays.copyOf(byName, byName.length + 1);
+			names[names.length - 1] = name;
+			byName[byName.length - 1] = x;
+			if (index >= 0) {
+				// the token may equally be an array index, leading to the same place
+				indices = Arrays.copyOf(indices, indices.length + 1);
+				byIndex = Arrays.copyOf(byIndex, byIndex.length + 1);
+				indices[indices.length - 1] = index;
+				byIndex[byIndex.length - 1] = x;
+			}
+			return x;
+		}
+
+		Node at(int index) {
+			for (int i = 0; i < indices.length; i++) {
+				if (indices[i] == index) return byIndex[i];
+			}
+			return null;
+		}
+	}
+
+	private final JSONPointer[] pointers;
+	private final Node root;
+
+	/**
+	 * @throws JSONException if a pointer is malformed
+	 */
+	public JSONExtractor(String... pointers) {
+		this(compile(pointers));
+	}
+
+	public JSONExtractor(JSONPointer... pointers) {
+		this.pointers = pointers.clone();
+		this.root = new Node();
+		for (int p = 0; p < pointers.length; p++) {
+			Node x = root;
+			x.count++;
+			for (int i = 0; i < pointers[p].size(); i++) {
+				x = x.child(pointers[p].token(i), pointers[p].index(i));
+				x.count++;
+				x.reach = Arrays.copyOf(x.reach, x.reach.length + 1);
+				x.reach[x.reach.length - 1] = p;
+			}
+			if (x.target < 0) {
+				x.target = p;
+			} else {
+				// the same pointer again
+				x.below = Arrays.copyOf(x.below, x.below.length + 1);
+				x.below[x.below.length - 1] = p;
+			}
+		}
+		// pointers that lead on from a target are resolved from the target's value
+		gather(root);
+	}
+
+	private static JSONPointer[] compile(String[] pointers) {
+		JSONPointer[] x = new JSONPointer[pointers.length];
+		for (int i = 0; i < pointers.length; i++) x[i] = new JSONPointer(pointers[i]);
+		return x;
+	}
+
+	private static void gather(Node x) {
+		if (x.target < 0) {
+			for (Node y : x.byName) gather(y);
+			return;
+		}
+		int[] below = Arrays.copyOf(x.below, x.count - 1);
+		int k = x.below.length;
+		for (Node y : x.byName) k = collect(y, below, k);
+		x.below = below;
+	}
+
+	private static int collect(Node x, int[] into, int k) {
+		if (x.target >= 0) into[k++] = x.target;
+		for (int p : x.below) into[k++] = p;
+		for (Node y : x.byName) k = collect(y, into, k);
+		return k;
+	}
+
+	/**
+	 * @return the pointers, in the order in which their values are returned
+	 */
+	public JSONPointer[] pointers() {
+		return pointers.clone();
+	}
+
+	/**
+	 * Extract the values from a value that has already been built.
+	 *
+	 * @return the value identified by each pointer, or null where there is none
+	 */
+	public JSONValue[] extract(JSONValue value) {
+		JSONValue[] found = new JSONValue[pointers.length];
+		for (int i = 0; i < pointers.length; i++) found[i] = pointers[i].get(value);
+		return found;
+	}
+
+	/**
+	 * Extract the values from the next value of the input.
+	 *
+	 * @return the value identified by each pointer, or null where there is none, or null at the end of the input
+	 */
+	JSONValue[] extract(JSONScanner json) throws IOException {
+		json.skipWhitespace();
+		if (json.peek() == -1) return null;
+		JSONValue[] found = new JSONValue[pointers.length];
+		extract(json, root, found);
+		return found;
+	}
+
+	/**
+	 * @return the number of pointers found at or below the node
+	 */
+	private int extract(JSONScanner json, Node x, JSONValue[] found) throws IOException {
+		if (x.target >= 0) {
+			JSONValue v = json.parseValue();
+			if (v == null) throw new JSONException(String.format("End-of-stream while extracting value [%d]",json.position()));
+			found[x.target] = v;
+			for (int p : x.below) found[p] = pointers[p].get(v, x.depth);
+			return x.count;
+		}
+		json.skipWhitespace();
+		int c = json.peek();
+		if (c == '{' && x.names.length > 0) return extractObject(json, x, found);
+		if (c == '[' && x.indices.length > 0) return extractArray(json, x, found);
+		json.skipValue();
+		return 0;
+	}
+
+	private int extractObject(JSONScanner json, Node x, JSONValue[] found) throws IOException {
+		long from = json.position();
+		json.pos++;
+		json.skipWhitespace();
+		if (json.peek() == '}') {
+			json.pos++;
+			return 0;
+		}
+		int n = 0;
+		int[] got = null; // the number found below each member, since a name may repeat
+		for (;;) {
+			json.skipWhitespace();
+			int m = json.scanMemberName(x.names);
+			if (m >= 0) {
+				if (got == null) got = new int[x.names.length];
+				if (got[m] > 0) {
+					// a repeated name replaces what was found under it before, as it does in a built object
+					for (int p : x.byName[m].reach) found[p] = null;
+					n -= got[m];
+				}
+				got[m] = extract(json, x.byName[m], found);
+				n += got[m];
+			} else {
+				json.skipValue();
+			}
+			if (n == x.count) {
+				// everything has been found, so pass over the rest
+				json.skipNested(1);
+				return n;
+			}
+			json.skipWhitespace();
+			int c = json.peek();
+			if (c != -1) json.pos++;
+			if (c == ',') continue;
+			else if (c == '}') return n;
+			else throw new JSONException(String.format("Unexpected character {%s} (expected ',' or '}') while extracting from object at %d in [%d]",c,json.position(),from));
+		}
+	}
+
+	private int extractArray(JSONScanner json, Node x, JSONValue[] found) throws IOException {
+		long from = json.position();
+		json.pos++;
+		json.skipWhitespace();
+		if (json.peek() == ']') {
+			json.pos++;
+			return 0;
+		}
+		int n = 0;
+		for (int i = 0;; i++) {
+			Node y = x.at(i);
+			if (y != null) n += extract(json, y, found);
+			else json.skipValue();
+			if (n == x.count) {
+				json.skipNested(1);
+				return n;
+			}
+			json.skipWhitespace();
+			int c = json.peek();
+			if (c != -1) json.pos++;
+			if (c == ',') continue;
+			else if (c == ']') return n;
+			else throw new JSONException(String.format("Unexpected character {%s} (expected ',' or ']') while extracting from array at %d in [%d]",c,json.position(),from));
+		}
+	}
+}
@@ -0,0 +1,210 @@
+/**
+ * Cohesion Framework - JSON Library
+ * Copyright (c) 2017 - Stewart Gebbie, Gethos. Licensed under the MIT licence.
+ * vim: set ts=4 sw=0:
+ */
+package net.gethos.cohesion.graphs.json;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+
+/**
+ * Gethos Cohesion JSON feeder, parsing sequential JSON values out of UTF-8
+ * encoded bytes that are pushed to it in arbitrary chunks, for example as
+ * they arrive on a non-blocking channel.
+ * <p>
+ * Each chunk is scanned once, by a small state machine that counts
+ * brackets and quotes, and that carries its state over from one chunk to
+ * the next, so that a value may be split across any number of chunks. As
+ * soon as a top-level value is complete it is parsed, straight out of the
+ * chunk if it lies entirely within it, and otherwise out of the bytes of
+ * the value that have been held back from earlier chunks, and queued to be
+ * taken with {@link #next()}. Neither feeding nor taking values ever
+ * blocks.
+ * <pre>
+ * JSONFeeder feeder = new JSONFeeder();
+ * while (channel.read(buffer) &gt; 0) {
+ *     buffer.flip();
+ *     feeder.feed(buffer);
+ *     buffer.clear();
+ *     for (JSONValue v = feeder.next(); v != null; v = feeder.next()) handle(v);
+ * }
+ * </pre>
+ * A number or keyword at the top level is only known to be complete once
+ * the byte after it has arrived, or once {@link #end()} has been called.
+ * <p>
+ * A feeder is not thread safe, and once it has thrown an exception it
+ * should be discarded.
+ *
+ * @author {@literal Stewart Gebbie <sgebbie@gethos.net>}
+ * @see JSONStream
+ *
+ */
+public final class JSONFeeder {
+
+	private final ArrayDeque<JSONValue> values;
+
+	private JSONSymbols symbols;
+	private JSONProjection projection;
+
+	// the value in progress
+	private boolean started;
+	private boolean string;
+	private boolean escape;
+	private boolean scalar;
+	private int depth;
+	private long start;      // position in the input of the first byte of the value
+	private byte[] partial;  // the bytes of the value held back from earlier chunks
+	private int count;
+
+	private long position;   // bytes consumed before the current chunk
+	private boolean ended;
+
+	public JSONFeeder() {
+		this.values = new ArrayDeque<JSONValue>();
+		this.symbols = new JSONSymbols();
+		this.partial = new byte[256];
+	}
+
+	/**
+	 * @see JSONStream#setSymbols(JSONSymbols)
+	 */
+	public void setSymbols(JSONSymbols symbols) {
+		this.symbols = symbols;
+	}
+
+	/**
+	 * @see JSONStream#setProjection(JSONProjection)
+	 */
+	public void setProjection(JSONProjection projection) {
+		this.projection = projection;
+	}
+
+	/**
+	 * Consume all of the bytes between the buffer's position and limit,
+	 * parsing each value that they complete. The buffer's position is moved
+	 * to its limit, and the buffer may be reused as soon as this returns.
+	 *
+	 * @throws JSONException if a value is malformed
+	 * @throws IllegalStateException if the input has already ended
+	 */
+	public void feed(ByteBuffer bytes) {
+		if (ended) throw new IllegalStateException("Input has already ended");
+		int first = bytes.position();
+		int l = bytes.limit();
+		int from = first; // the first byte of the value in progress in this chunk
+		for (int p = first; p < l; p++) {
+			int c = bytes.get(p) & 0xff;
+			if (!started) {
+				if (JSONScanner.isWhitespace(c)) continue;
+				// the first byte decides how the value ends
+				started = true;
+				start = position + p - first;
+				from = p;
+				string = c == '"';
+				scalar = !string && c != '{' && c != '[';
+				escape = false;
+				depth = string || scalar ? 0 : 1;
+				continue;
+			}
+			if (string) {
+				if (escape) escape = false;
+				else if (c == '\\') escape = true;
+				else if (c == '"') {
+					string = false;
+					if (depth == 0) complete(bytes, from, p + 1);
+				}
+			} else if (scalar) {
+				if (JSONScanner.isDelimiter(c)) {
+					complete(bytes, from, p);
+					p--; // the delimiter may start the next value
+				}
+			} else if (c == '"') {
+				string = true;
+			} else if (c == '{' || c == '[') {
+				depth++;
+			} else if (c == '}' || c == ']') {
+				if (--depth == 0) complete(bytes, from, p + 1);
+			}
+		}
+		if (started) hold(bytes, from, l);
+		position += l - first;
+		bytes.position(l);
+	}
+
+	/**
+	 * Mark the end of the input, completing a number or keyword at the top
+	 * level.
+	 *
+	 * @throws JSONException if a value is incomplete
+	 */
+	public void end() {
+		if (ended) return;
+		ended = true;
+		if (!started) return;
+		if (!scalar) throw new JSONException(String.format("End-of-stream while parsing value starting at [%d]",start));
+		complete(ByteBuffer.wrap(partial), 0, 0);
+	}
+
+	/**
+	 * @return the next complete value, or null if there is none yet
+	 */
+	public JSONValue next() {
+		return values.poll();
+	}
+
+	/**
+	 * @return the number of complete values waiting to be taken
+	 */
+	public int available() {
+		return values.size();
+	}
+
+	/**
+	 * @return true if the input has ended, and every value has been taken
+	 */
+	public boolean isDone() {
+		return ended && values.isEmpty();
+	}
+
+	private void hold(ByteBuffer bytes, int from, int to) {
+		int n = to - from;
+		if (count + n > partial.length) partial = Arrays.copyOf(partial, Math.max(count + n, partial.length * 2));
+		ByteBuffer b = bytes.duplicate();
+		b.limit(to);
+		b.position(from);
+		b.get(partial, count, n);
+		count += n;
+	}
+
+	private void complete(ByteBuffer bytes, int from, int to) {
+		ByteBuffer b;
+		if (count == 0) {
+			// the whole value is in this chunk
+			b = bytes.duplicate();
+			b.limit(to);
+			b.position(from);
+		} else {
+			hold(bytes, from, to);
+			b = ByteBuffer.wrap(partial, 0, count);
+		}
+		started = false;
+		count = 0;
+
+		JSONScanner json = new JSONUTF8Scanner(b);
+		json.base = start;
+		json.symbols = symbols;
+		try {
+			JSONValue v = json.parseValue(projection);
+			json.skipWhitespace();
+			int c = json.peek();
+			if (c != -1) throw new JSONException(String.format("Unexpected character {%s} while parsing value [%d]",(char)c,json.position()));
+			values.add(v);
+		} catch (IOException e) {
+			// not expected, since the value is already in memory
+			throw new JSONException(String.format("I/O Error while parsing JSON somewhere close to [%d]",json.position()), e);
+		}
+	}
+}
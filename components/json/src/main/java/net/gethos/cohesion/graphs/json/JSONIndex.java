@@ -0,0 +1,207 @@
+/**
+ * Cohesion Framework - JSON Library
+ * Copyright (c) 2017 - Stewart Gebbie, Gethos. Licensed under the MIT licence.
+ * vim: set ts=4 sw=0:
+ */
+package net.gethos.cohesion.graphs.json;
+
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * Structural index of a JSON text, used by {@link JSON#parseLazily(String)}.
+ * <p>
+ * Stage one is a single scan over the text that records, in order, the
+ * position of every structural character ({@code {}[]:,}) and the start of
+ * every string, number and keyword, and pairs up each '{' or '[' with its
+ * closing bracket. Nothing is decoded, and only the nesting of brackets and
+ * the termination of strings are checked.
+ * <p>
+ * Stage two happens on demand: {@link JSONObject} and {@link JSONArray}
+ * views walk their own entries in the index, using the pairing to pass over
+ * nested values in a single step, and decode a value only when it is asked
+ * for. The grammar of each part of the text is checked as it is decoded.
+ *
+ * @author {@literal Stewart Gebbie <sgebbie@gethos.net>}
+ *
+ */
+final class JSONIndex {
+
+	private final char[] text;
+	private final int to;
+	private final JSONCharScanner scanner;
+
+	private int[] tape; // the position of each structural character or value start
+	private int[] ends; // for each '{' or '[', the index of its closing bracket
+	private int count;
+
+	private JSONIndex(char[] text, int from, int to) {
+		this.text = text;
+		this.to = to;
+		this.scanner = new JSONCharScanner(text, from, to);
+		this.scanner.symbols = JSONSymbols.SHARED;
+		int n = Math.max(16, (to - from) / 4);
+		this.tape = new int[n];
+		this.ends = new int[n];
+		this.count = 0;
+	}
+
+	/**
+	 * Index the text, holding a single JSON value.
+	 *
+	 * @return the view of the value
+	 * @throws JSONException if the brackets are not balanced, a string is not terminated, or there is not exactly one value
+	 */
+	static JSONValue parse(char[] text, int from, int to) {
+		JSONIndex x = new JSONIndex(text, from, to);
+		x.scan(from);
+		if (x.count == 0) return null;
+		if (x.next(0) != x.count) throw new JSONException(String.format("Unexpected character {%s} after value at [%d]",text[x.tape[x.next(0)]],x.tape[x.next(0)] - from));
+		return x.value(0);
+	}
+
+	private void scan(int from) {
+		int[] open = new int[16];
+		int depth = 0;
+		int p = from;
+		while (p < to) {
+			char c = text[p];
+			switch (c) {
+				case ' ':
+				case '\t':
+				case '\n':
+				case '\r':
+					p++;
+					continue;
+				case '{':
+				case '[':
+					if (depth == open.length) open = Arrays.copyOf(open, depth * 2);
+					open[depth++] = count;
+					add(p++);
+					continue;
+				case '}':
+				case ']': {
+					if (depth == 0) throw new JSONException(String.format("Unexpected character {%s} at [%d]",c,p - from));
+					int o = open[--depth];
+					if (text[tape[o]] != (c == '}' ? '{' : '[')) throw new JSONException(String.format("Unexpected character {%s} (expected '%s') at [%d]",c,text[tape[o]] == '{' ? '}' : ']',p - from));
+					ends[o] = count;
+					add(p++);
+					continue;
+				}
+				case ':':
+				case ',':
+					add(p++);
+					continue;
+				case '"': {
+					add(p++);
+					for (;;) {
+						if (p >= to) throw new JSONException(String.format("Unterminated string starting at [%d]",tape[count - 1] - from));
+						char d = text[p++];
+						if (d == '"') break;
+						if (d == '\\') p++;
+					}
+					continue;
+				}
+				default:
+					if (JSONScanner.isWhitespace(c)) {
+						p++;
+						continue;
+					}
+					// a number or keyword, which runs up to the next structural character, string or whitespace
+					add(p++);
+					while (p < to && !JSONScanner.isDelimiter(text[p])) p++;
+			}
+		}
+		if (depth > 0) throw new JSONException(String.format("End-of-text while parsing %s starting at [%d]",text[tape[open[depth - 1]]] == '{' ? "object" : "array",tape[open[depth - 1]] - from));
+	}
+
+	private void add(int p) {
+		if (count == tape.length) {
+			tape = Arrays.copyOf(tape, count * 2);
+			ends = Arrays.copyOf(ends, count * 2);
+		}
+		tape[count++] = p;
+	}
+
+	/**
+	 * @return the character at the entry
+	 */
+	char at(int t) {
+		return t < count ? text[tape[t]] : 0;
+	}
+
+	/**
+	 * @return the entry after the value at this entry
+	 */
+	int next(int t) {
+		char c = text[tape[t]];
+		return c == '{' || c == '[' ? ends[t] + 1 : t + 1;
+	}
+
+	/**
+	 * Decode the value at the entry, where objects and arrays are returned as
+	 * views that are only filled in when used.
+	 */
+	JSONValue value(int t) {
+		switch (text[tape[t]]) {
+			case '{': return new JSONObject(this, t);
+			case '[': return new JSONArray(this, t);
+			case '}':
+			case ']':
+			case ':':
+			case ',':
+				throw new JSONException(String.format("Unexpected character {%s} while parsing value [%d]",text[tape[t]],scanner.base + tape[t]));
+			default:
+		}
+		scanner.pos = tape[t];
+		try {
+			JSONValue v = scanner.parseValue();
+			end(t);
+			return v;
+		} catch (IOException e) {
+			// not expected, since the text is already in memory
+			throw new JSONException(String.format("I/O Error while parsing JSON somewhere close to [%d]",scanner.position()), e);
+		}
+	}
+
+	/**
+	 * Decode the number at the entry into the array, or the value, if it is
+	 * not a number.
+	 */
+	void addTo(JSONArray x, int t) {
+		char c = text[tape[t]];
+		if (c != '-' && (c < '0' || c > '9')) {
+			x.add(value(t));
+			return;
+		}
+		scanner.pos = tape[t];
+		try {
+			scanner.scanNumber(x);
+			end(t);
+		} catch (IOException e) {
+			throw new JSONException(String.format("I/O Error while parsing JSON somewhere close to [%d]",scanner.position()), e);
+		}
+	}
+
+	/**
+	 * Decode the member name at the entry, which must be followed by ':'.
+	 */
+	String name(int t) {
+		if (text[tape[t]] != '"') throw new JSONException(String.format("Unexpected character {%s} (expected '\"') while parsing object [%d]",text[tape[t]],scanner.base + tape[t]));
+		scanner.pos = tape[t];
+		try {
+			return scanner.scanMemberName();
+		} catch (IOException e) {
+			throw new JSONException(String.format("I/O Error while parsing JSON somewhere close to [%d]",scanner.position()), e);
+		}
+	}
+
+	/**
+	 * Check that the scalar just decoded ran right up to the next entry.
+	 */
+	private void end(int t) throws IOException {
+		scanner.skipWhitespace();
+		int expected = t + 1 < count ? tape[t + 1] : to;
+		if (scanner.pos != expected) throw new JSONException(String.format("Unexpected character {%s} while parsing value [%d]",text[scanner.pos],scanner.position()));
+	}
+}
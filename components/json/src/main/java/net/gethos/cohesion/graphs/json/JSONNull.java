@@ -5,6 +5,8 @@
  */
 package net.gethos.cohesion.graphs.json;
 
+import java.io.IOException;
+
 /**
  * Gethos Cohesion JSON implementation.
  * <p>
@@ -40,6 +42,16 @@ public class JSONNull extends JSONValue {
 		text.append(NULL);
 	}
 
+	@Override
+	void writeTo(JSONWriter out) throws IOException {
+		out.nullValue();
+	}
+
+	@Override
+	void encodeTo(JSONBinaryWriter out) throws IOException {
+		out.nullValue();
+	}
+
 	@Override
 	public int hashCode() {
 		return 0;
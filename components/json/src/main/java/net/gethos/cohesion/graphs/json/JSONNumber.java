@@ -5,32 +5,103 @@
  */
 package net.gethos.cohesion.graphs.json;
 
+import java.io.IOException;
 import java.math.BigDecimal;
+import java.util.Arrays;
 
 /**
  * Gethos Cohesion JSON implementation.
  * <p>
+ * The number is held in whichever form it was created from: a long, a
+ * double, the digits of the JSON text, or a BigDecimal. Parsed integers that
+ * fit in a long are decoded straight away, and any other parsed number keeps
+ * its digits. A BigDecimal is only created when {@link #value()} is called,
+ * and {@link #longValue()}, {@link #doubleValue()} and
+ * {@link #isIntegral()} never need one.
+ * <p>
  * See: http://www.json.org/
- * 
+ *
  * @author {@literal Stewart Gebbie <sgebbie@gethos.net>}
  *
  */
 public class JSONNumber extends JSONValue {
 
-	public final BigDecimal value;
+	private static final int LONG = 0;
+	private static final int DOUBLE = 1;
+	private static final int TEXT = 2;
+	private static final int DECIMAL = 3;
+
+	// shared instances of the small integers
+	private static final int CACHE_LOW = -128;
+	private static final int CACHE_HIGH = 1023;
+	private static final JSONNumber[] CACHE = new JSONNumber[CACHE_HIGH - CACHE_LOW + 1];
+	static {
+		for (int i = 0; i < CACHE.length; i++) CACHE[i] = new JSONNumber((long)(i + CACHE_LOW));
+	}
+
+	private final int kind;
+	private final long longValue;
+	private final double doubleValue;
+	private final char[] text;
+
+	private BigDecimal value;
 
 	public JSONNumber(long value) {
-		this.value = BigDecimal.valueOf(value);
+		this.kind = LONG;
+		this.longValue = value;
+		this.doubleValue = 0;
+		this.text = null;
+		this.value = null;
 	}
 
+	/**
+	 * @throws JSONException if the value is not finite, since JSON has no representation for NaN or infinity
+	 */
 	public JSONNumber(double value) {
-		this.value = BigDecimal.valueOf(value);
+		if (Double.isNaN(value) || Double.isInfinite(value)) throw new JSONException(String.format("Non-finite number {%s} can not be represented as JSON",value));
+		this.kind = DOUBLE;
+		this.longValue = 0;
+		this.doubleValue = value;
+		this.text = null;
+		this.value = null;
 	}
 
 	public JSONNumber(BigDecimal value) {
+		this.kind = DECIMAL;
+		this.longValue = 0;
+		this.doubleValue = 0;
+		this.text = null;
 		this.value = value;
 	}
 
+	private JSONNumber(char[] text) {
+		this.kind = TEXT;
+		this.longValue = 0;
+		this.doubleValue = 0;
+		this.text = text;
+		this.value = null;
+	}
+
+	/**
+	 * @return the number, shared if it is a small integer
+	 */
+	public static JSONNumber valueOf(long value) {
+		if (value >= CACHE_LOW && value <= CACHE_HIGH) return CACHE[(int)value - CACHE_LOW];
+		return new JSONNumber(value);
+	}
+
+	/**
+	 * Create the number for a JSON number token.
+	 *
+	 * @throws JSONException if the token is not a well formed JSON number
+	 */
+	static JSONNumber parse(char[] c, int off, int len) {
+		// integers that are certain to fit in a long are decoded straight away
+		if (JSONNumbers.isShortInteger(c, off, len)) return valueOf(JSONNumbers.parseLong(c, off, len));
+		if (!JSONNumbers.isValid(c, off, len)) throw new JSONException(String.format("Malformed number {%s}",new String(c, off, len)));
+		return new JSONNumber(Arrays.copyOfRange(c, off, off + len));
+	}
+
 	@Override
 	public JSONType type() {
 		return JSONType.NUMBER;
@@ -41,21 +112,140 @@ public class JSONNumber extends JSONValue {
 		return this;
 	}
 
+	/**
+	 * @return the exact value of the number, created on first use
+	 */
+	public BigDecimal value() {
+		BigDecimal x = value;
+		if (x == null) {
+			switch (kind) {
+				case LONG: x = BigDecimal.valueOf(longValue); break;
+				case DOUBLE: {
+					char[] c = new char[25];
+					x = new BigDecimal(c, 0, JSONDoubles.toChars(doubleValue, c, 0));
+					break;
+				}
+				default: x = JSONNumbers.parseBigDecimal(text, 0, text.length);
+			}
+			value = x;
+		}
+		return x;
+	}
+
+	/**
+	 * @return the number as a long, exactly if it is an integer in range, and otherwise truncated towards zero (and saturated) as per a {@code (long)} cast of {@link #doubleValue()}
+	 */
+	public long longValue() {
+		switch (kind) {
+			case LONG: return longValue;
+			case DOUBLE: return (long)doubleValue;
+			case TEXT: return JSONNumbers.parseLong(text, 0, text.length);
+			default:
+				// at most 18 integer digits can not overflow
+				if (value.precision() - value.scale() <= 18) return value.longValue();
+				return (long)value.doubleValue();
+		}
+	}
+
+	/**
+	 * @return the nearest double to the number
+	 */
+	public double doubleValue() {
+		switch (kind) {
+			case LONG: return longValue;
+			case DOUBLE: return doubleValue;
+			case TEXT: return JSONNumbers.parseDouble(text, 0, text.length);
+			default: return value.doubleValue();
+		}
+	}
+
+	/**
+	 * @return true if the number is a whole number, whatever form it was written in
+	 */
+	public boolean isIntegral() {
+		switch (kind) {
+			case LONG: return true;
+			case DOUBLE: return doubleValue == Math.rint(doubleValue);
+			case TEXT: return JSONNumbers.isIntegral(text, 0, text.length);
+			default: return value.signum() == 0 || value.scale() <= 0 || value.stripTrailingZeros().scale() <= 0;
+		}
+	}
+
 	@Override
 	void toString(StringBuilder text) {
-		text.append(value);
+		switch (kind) {
+			case LONG: text.append(longValue); break;
+			case DOUBLE: {
+				char[] c = new char[25];
+				text.append(c, 0, JSONDoubles.toChars(doubleValue, c, 0));
+				break;
+			}
+			case TEXT: text.append(this.text); break;
+			default: text.append(value());
+		}
+	}
+
+	@Override
+	void writeTo(JSONWriter out) throws IOException {
+		switch (kind) {
+			case LONG: out.value(longValue); break;
+			case DOUBLE: out.value(doubleValue); break;
+			case TEXT: out.number(text); break;
+			default: out.value(value());
+		}
+	}
+
+	@Override
+	void encodeTo(JSONBinaryWriter out) throws IOException {
+		switch (kind) {
+			case LONG: out.value(longValue); break;
+			case DOUBLE: out.value(doubleValue); break;
+			default: out.value(value()); // the digits of the text, with their scale
+		}
+	}
+
+	/**
+	 * @return true if the number is held as a long
+	 */
+	boolean isLong() {
+		return kind == LONG;
+	}
+
+	/**
+	 * @return the number as a double, if it is held as one, or would be
+	 *         written back out as the same text from one, and otherwise NaN
+	 */
+	double shortDouble() {
+		switch (kind) {
+			case DOUBLE: return doubleValue;
+			case TEXT: return JSONNumbers.parseShortDouble(text, 0, text.length);
+			default: return Double.NaN;
+		}
 	}
 
 	@Override
 	public int hashCode() {
-		return value.hashCode();
+		return hashCode(doubleValue());
+	}
+
+	/**
+	 * @return the hash code of a number with this nearest double
+	 */
+	static int hashCode(double d) {
+		// consistent with equals, since equal numbers have the same nearest double
+		if (d == 0) d = 0; // fold -0.0
+		long bits = Double.doubleToLongBits(d);
+		return (int)(bits ^ (bits >>> 32));
 	}
 
 	@Override
 	public boolean equals(Object x) {
 		if (x != null && x instanceof JSONNumber) {
+			JSONNumber y = (JSONNumber)x;
+			if (kind == LONG && y.kind == LONG) return longValue == y.longValue;
+			if (kind == DOUBLE && y.kind == DOUBLE) return doubleValue == y.doubleValue;
 			// note, use compareTo so that the 'scale' of the BigDecimal does not affect the equality check
-			return value.compareTo(((JSONNumber)x).value) == 0;
+			return value().compareTo(y.value()) == 0;
 		}
 		return false;
 	}
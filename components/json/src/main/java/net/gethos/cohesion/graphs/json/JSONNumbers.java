@@ -0,0 +1,259 @@
+/**
+ * Cohesion Framework - JSON Library
+ * Copyright (c) 2017 - Stewart Gebbie, Gethos. Licensed under the MIT licence.
+ * vim: set ts=4 sw=0:
+ */
+package net.gethos.cohesion.graphs.json;
+
+import java.math.BigDecimal;
+
+/**
+ * Decoding of JSON number tokens held in a character buffer.
+ *
+ * @author {@literal Stewart Gebbie <sgebbie@gethos.net>}
+ *
+ */
+final class JSONNumbers {
+
+	// powers of ten that are exactly representable as a double
+	private static final double[] POWERS_OF_TEN = {
+		1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 1e11,
+		1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18, 1e19, 1e20, 1e21, 1e22
+	};
+
+	private JSONNumbers() {
+	}
+
+	/**
+	 * Find the end of the number token starting at {@code from}. The token
+	 * ends at the first character that can not continue the number.
+	 */
+	static int end(char[] c, int from, int to) {
+		int p = from;
+		if (p < to && c[p] == '-') p++; // is negative
+		if (p < to && c[p] == '0') p++; // is zero
+		else while (p < to && c[p] >= '0' && c[p] <= '9') p++; // significand
+		if (p < to && c[p] == '.') { p++; while (p < to && c[p] >= '0' && c[p] <= '9') p++; } // fractional significand
+		if (p < to && (c[p] == 'e' || c[p] == 'E')) { // exponent
+			p++;
+			if (p < to && (c[p] == '+' || c[p] == '-')) p++; // check for sign
+			while (p < to && c[p] >= '0' && c[p] <= '9') p++; // exponent value
+		}
+		return p;
+	}
+
+	static BigDecimal parseBigDecimal(char[] c, int off, int len) {
+		try {
+			return new BigDecimal(c, off, len);
+		} catch (NumberFormatException e) {
+			throw new JSONException(String.format("Malformed number {%s}",new String(c, off, len)), e);
+		}
+	}
+
+	/**
+	 * Check the number against the JSON grammar.
+	 */
+	static boolean isValid(char[] c, int off, int len) {
+		int p = off;
+		int to = off + len;
+		if (p < to && c[p] == '-') p++; // is negative
+		if (p < to && c[p] == '0') p++; // is zero
+		else if (p < to && c[p] >= '1' && c[p] <= '9') while (p < to && c[p] >= '0' && c[p] <= '9') p++; // significand
+		else return false;
+		if (p < to && c[p] == '.') { // fractional significand
+			int s = ++p;
+			while (p < to && c[p] >= '0' && c[p] <= '9') p++;
+			if (p == s) return false;
+		}
+		if (p < to && (c[p] == 'e' || c[p] == 'E')) { // exponent
+			p++;
+			if (p < to && (c[p] == '+' || c[p] == '-')) p++; // check for sign
+			int s = p;
+			while (p < to && c[p] >= '0' && c[p] <= '9') p++; // exponent value
+			if (p == s) return false;
+		}
+		return p == to;
+	}
+
+	/**
+	 * Decide whether the well formed number is a whole number, i.e. that
+	 * no non-zero digit falls after the decimal point once the exponent has
+	 * been applied.
+	 */
+	static boolean isIntegral(char[] c, int off, int len) {
+		int p = off;
+		int to = off + len;
+		if (p < to && c[p] == '-') p++;
+		int integer = p;
+		while (p < to && c[p] >= '0' && c[p] <= '9') p++;
+		int digits = p - integer; // integer digits
+		if (p < to && c[p] == '.') {
+			p++;
+			while (p < to && c[p] >= '0' && c[p] <= '9') p++;
+		}
+		int end = p;
+		long exponent = 0;
+		if (p < to && (c[p] == 'e' || c[p] == 'E')) {
+			p++;
+			boolean negative = false;
+			if (p < to && (c[p] == '+' || c[p] == '-')) negative = c[p++] == '-';
+			for (; p < to && exponent < Integer.MAX_VALUE; p++) exponent = exponent * 10 + (c[p] - '0');
+			if (negative) exponent = -exponent;
+		}
+		// the index, among the significand digits, of the first digit after the decimal point
+		long point = digits + exponent;
+		int i = 0;
+		for (p = integer; p < end; p++) {
+			char d = c[p];
+			if (d == '.') continue;
+			if (i++ >= point && d != '0') return false;
+		}
+		return true;
+	}
+
+	/**
+	 * @return true if the number is an integer of at most 18 digits, and so is certain to fit in a long
+	 */
+	static boolean isShortInteger(char[] c, int off, int len) {
+		int p = off;
+		int to = off + len;
+		if (p < to && c[p] == '-') p++;
+		if (p == to || to - p > 18) return false;
+		for (; p < to; p++) {
+			char d = c[p];
+			if (d < '0' || d > '9') return false;
+		}
+		return true;
+	}
+
+	/**
+	 * Decode the number as a long. Integers in range are decoded exactly,
+	 * and otherwise the number is truncated towards zero (and saturated) as
+	 * per a {@code (long)} cast of the nearest double.
+	 */
+	static long parseLong(char[] c, int off, int len) {
+		int p = off;
+		int to = off + len;
+		boolean negative = p < to && c[p] == '-';
+		if (negative) p++;
+		int from = p;
+		// accumulate as a negative number, since the range of negative longs is larger
+		long limit = negative ? Long.MIN_VALUE : -Long.MAX_VALUE;
+		long x = 0;
+		for (; p < to; p++) {
+			char d = c[p];
+			if (d < '0' || d > '9') break;
+			int digit = d - '0';
+			// x * 10 - digit >= limit, checked before multiplying so that it can not wrap around
+			if (x < (limit + digit) / 10) break;
+			x = x * 10 - digit;
+		}
+		if (p == to && p > from) return negative ? x : -x;
+		return (long)parseDouble(c, off, len);
+	}
+
+	/**
+	 * Parse a number that is known to be well formed, provided that the double
+	 * written back out in its shortest form is exactly the same text, so that
+	 * holding the double in place of the text loses nothing (not even the
+	 * scale of {@code 1.50}, or the form of {@code 2.5e0}). Only a number
+	 * with at most 15 significant digits, that neither overflows nor falls
+	 * into the subnormal range, is read back as the same value.
+	 *
+	 * @return the nearest double, or NaN if the number would not survive the round trip
+	 */
+	static double parseShortDouble(char[] c, int off, int len) {
+		int to = off + len;
+		int digits = 0;
+		for (int p = off; p < to; p++) {
+			char d = c[p];
+			if (d == 'e' || d == 'E') break;
+			if (d >= '1' && d <= '9' || d == '0' && digits > 0) digits++;
+		}
+		if (digits > 15) return Double.NaN;
+		double x = parseDouble(c, off, len);
+		if (x == 0 ? digits != 0 : Math.abs(x) < Double.MIN_NORMAL || Double.isInfinite(x)) return Double.NaN;
+		char[] t = new char[25];
+		int n = JSONDoubles.toChars(x, t, 0);
+		if (n != len) return Double.NaN;
+		for (int i = 0; i < n; i++) {
+			if (t[i] != c[off + i]) return Double.NaN;
+		}
+		return x;
+	}
+
+	/**
+	 * Decode the number as the nearest double.
+	 */
+	static double parseDouble(char[] c, int off, int len) {
+		int p = off;
+		int to = off + len;
+		boolean negative = p < to && c[p] == '-';
+		if (negative) p++;
+
+		// gather up to 19 significant digits, which always fit in an unsigned long
+		long significand = 0;
+		int digits = 0;
+		long scale = 0;
+		boolean truncated = false; // non-zero digits were dropped
+		int from = p;
+		for (; p < to && c[p] >= '0' && c[p] <= '9'; p++) {
+			int d = c[p] - '0';
+			if (digits < 19) {
+				significand = significand * 10 + d;
+				if (significand != 0) digits++;
+			} else {
+				scale++;
+				truncated |= d != 0;
+			}
+		}
+		boolean any = p > from;
+		if (p < to && c[p] == '.') {
+			from = ++p;
+			for (; p < to && c[p] >= '0' && c[p] <= '9'; p++) {
+				int d = c[p] - '0';
+				if (digits < 19) {
+					significand = significand * 10 + d;
+					if (significand != 0) digits++;
+					scale--;
+				} else {
+					truncated |= d != 0;
+				}
+			}
+			any &= p > from;
+		}
+		if (p < to && (c[p] == 'e' || c[p] == 'E')) {
+			p++;
+			boolean negativeExponent = false;
+			if (p < to && (c[p] == '+' || c[p] == '-')) negativeExponent = c[p++] == '-';
+			long exponent = 0;
+			from = p;
+			for (; p < to && c[p] >= '0' && c[p] <= '9'; p++) {
+				if (exponent < 1000000000L) exponent = exponent * 10 + (c[p] - '0');
+			}
+			any &= p > from;
+			scale += negativeExponent ? -exponent : exponent;
+		}
+		if (!any || p != to) throw new JSONException(String.format("Malformed number {%s}",new String(c, off, len)));
+
+		// fast path: when both the significand and the power of ten are
+		// exactly representable as doubles, a single multiply or divide is
+		// correctly rounded
+		if (!truncated && significand >= 0 && significand < (1L << 53) && scale >= -22 && scale <= 22) {
+			double x = significand;
+			x = scale < 0 ? x / POWERS_OF_TEN[(int)-scale] : x * POWERS_OF_TEN[(int)scale];
+			return negative ? -x : x;
+		}
+
+		double x = JSONDoubles.toDouble(significand, scale, negative);
+		if (truncated && !Double.isNaN(x)) {
+			// the dropped digits lie between the truncated significand and the next one up,
+			// so if both round to the same double, then so does the whole number
+			if (JSONDoubles.toDouble(significand + 1, scale, negative) != x) x = Double.NaN;
+		}
+		if (!Double.isNaN(x)) return x;
+
+		// rare: too close to call, or subnormal
+		return Double.parseDouble(new String(c, off, len));
+	}
+}
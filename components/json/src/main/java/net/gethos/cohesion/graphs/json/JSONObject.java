@@ -5,14 +5,28 @@
  */
 package net.gethos.cohesion.graphs.json;
 
+import java.io.IOException;
 import java.math.BigDecimal;
-import java.util.Map;
+import java.util.AbstractSet;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
 import java.util.Set;
-import java.util.TreeMap;
 
 /**
  * Gethos Cohesion JSON implementation.
  * <p>
+ * Members are kept in the order in which they were first put. They are
+ * held in parallel arrays of names and values, which are searched linearly
+ * while the object is small, and via an open addressing hash index once it
+ * grows larger. Sorted output is available, as an option, via
+ * {@link JSONValue#toSortedString()}.
+ * <p>
+ * An object returned by {@link JSON#parseLazily(String)} starts out as a
+ * view of its text: its member names are decoded when it is first used,
+ * and each of its values when it is first asked for.
+ * <p>
  * See: http://www.json.org/
  * 
  * @author {@literal Stewart Gebbie <sgebbie@gethos.net>}
@@ -20,10 +34,74 @@ import java.util.TreeMap;
  */
 public class JSONObject extends JSONValue {
 
-	private final Map<String, JSONValue> values;
+	private static final int LINEAR = 8; // objects up to this size are searched without an index
+
+	private static final String[] NO_MEMBERS = new String[0];
+	private static final JSONValue[] NO_VALUES = new JSONValue[0];
+
+	private String[] members;
+	private JSONValue[] values;
+	private int size;
+	private int[] index; // position + 1 of each member, by hash slot, or null while the object is small
+
+	private JSONIndex lazy; // the source of the values that are still to be decoded
+	private int node;       // the entry of the object in the source, until its members are listed
+	private int[] pending;  // the entry of each value that is still to be decoded, or 0
 
 	public JSONObject() {
-		this.values = new TreeMap<String, JSONValue>();
+		this.members = NO_MEMBERS;
+		this.values = NO_VALUES;
+		this.size = 0;
+		this.index = null;
+		this.lazy = null;
+		this.node = -1;
+		this.pending = null;
+	}
+
+	/**
+	 * A view of the object at the entry of the index.
+	 */
+	JSONObject(JSONIndex lazy, int node) {
+		this();
+		this.lazy = lazy;
+		this.node = node;
+	}
+
+	/**
+	 * List the members of a view, without yet decoding their values.
+	 */
+	private void list() {
+		if (node < 0) return;
+		int t = node + 1;
+		node = -1;
+		if (lazy.at(t) == '}') return;
+		for (;;) {
+			String member = lazy.name(t);
+			int value = t + 2;
+			t = lazy.next(value);
+			char c = lazy.at(t);
+			if (c != ',' && c != '}') throw new JSONException(String.format("Unexpected character {%s} (expected ',' or '}') while parsing object member {%s}",c,member));
+			int i = find(member);
+			if (i < 0) {
+				put(member, JSONNull.JSON_NULL);
+				i = size - 1;
+			}
+			if (pending == null || pending.length < members.length) pending = pending == null ? new int[members.length] : Arrays.copyOf(pending, members.length);
+			pending[i] = value;
+			if (c == '}') break;
+			t++;
+		}
+	}
+
+	/**
+	 * @return the value at the position, decoding it if need be
+	 */
+	private JSONValue value(int i) {
+		if (pending != null && pending[i] != 0) {
+			values[i] = lazy.value(pending[i]);
+			pending[i] = 0;
+		}
+		return values[i];
 	}
 
 	@Override
@@ -32,27 +110,64 @@ public class JSONObject extends JSONValue {
 	}
 
 	public int size() {
-		return values.size();
+		list();
+		return size;
 	}
 
 	public boolean contains(String member) {
-		return values.containsKey(member);
+		list();
+		return find(member) >= 0;
 	}
 
 	public JSONValue put(String member, JSONValue value) {
-		return values.put(member, value == null ? JSONNull.JSON_NULL : value);
+		if (member == null) throw new NullPointerException("member");
+		if (value == null) value = JSONNull.JSON_NULL;
+		list();
+		int i = find(member);
+		if (i >= 0) {
+			JSONValue previous = value(i);
+			values[i] = value;
+			return previous;
+		}
+		if (size == members.length) {
+			int n = Math.max(4, size * 2);
+			members = Arrays.copyOf(members, n);
+			values = Arrays.copyOf(values, n);
+			if (pending != null) pending = Arrays.copyOf(pending, n);
+		}
+		members[size] = member;
+		values[size] = value;
+		size++;
+		if (index != null) {
+			if (size * 2 > index.length) reindex();
+			else insert(index, size - 1);
+		} else if (size > LINEAR) {
+			reindex();
+		}
+		return null;
 	}
 
 	public JSONValue get(String member) {
-		return values.get(member);
+		list();
+		int i = find(member);
+		return i < 0 ? null : value(i);
 	}
 
 	public JSONValue remove(String member) {
-		return values.remove(member);
+		list();
+		int i = find(member);
+		if (i < 0) return null;
+		JSONValue previous = value(i);
+		removeAt(i);
+		return previous;
 	}
 
+	/**
+	 * @return the member names, in insertion order
+	 */
 	public Set<String> members() {
-		return values.keySet();
+		list();
+		return new Members();
 	}
 
 	@Override
@@ -60,36 +175,196 @@ public class JSONObject extends JSONValue {
 		return this;
 	}
 
+	private static int hash(String member) {
+		int h = member.hashCode();
+		return h ^ (h >>> 16);
+	}
+
+	/**
+	 * @return the position of the member, or -1 if it is not present
+	 */
+	private int find(String member) {
+		if (index == null) {
+			for (int i = 0; i < size; i++) {
+				String m = members[i];
+				if (m == member || m.equals(member)) return i;
+			}
+			return -1;
+		}
+		int mask = index.length - 1;
+		for (int s = hash(member) & mask;; s = (s + 1) & mask) {
+			int e = index[s];
+			if (e == 0) return -1;
+			String m = members[e - 1];
+			if (m == member || m.equals(member)) return e - 1;
+		}
+	}
+
+	private void insert(int[] index, int i) {
+		int mask = index.length - 1;
+		int s = hash(members[i]) & mask;
+		while (index[s] != 0) s = (s + 1) & mask;
+		index[s] = i + 1;
+	}
+
+	private void reindex() {
+		if (size <= LINEAR) {
+			index = null;
+			return;
+		}
+		index = new int[Integer.highestOneBit(size) * 4];
+		for (int i = 0; i < size; i++) insert(index, i);
+	}
+
+	private void removeAt(int i) {
+		size--;
+		System.arraycopy(members, i + 1, members, i, size - i);
+		System.arraycopy(values, i + 1, values, i, size - i);
+		members[size] = null;
+		values[size] = null;
+		if (pending != null) {
+			System.arraycopy(pending, i + 1, pending, i, size - i);
+			pending[size] = 0;
+		}
+		if (index != null) reindex();
+	}
+
+	/**
+	 * @return the member positions, in order of member name
+	 */
+	private Integer[] sorted() {
+		Integer[] order = new Integer[size];
+		for (int i = 0; i < size; i++) order[i] = i;
+		Arrays.sort(order, new Comparator<Integer>() {
+			@Override
+			public int compare(Integer a, Integer b) {
+				return members[a].compareTo(members[b]);
+			}
+		});
+		return order;
+	}
+
 	@Override
 	void toString(StringBuilder text) {
+		list();
 		text.append('{');
 		String sep = "";
-		for(Map.Entry<String, JSONValue> v : values.entrySet()) {
+		for(int i = 0; i < size; i++) {
 			text.append(sep);
-			text.append('"').append(JSONString.escape(v.getKey())).append('"');
+			text.append('"');
+			JSONString.escape(members[i], text);
+			text.append('"');
 			text.append(':');
-			JSONValue x = v.getValue();
-			if (x == null) x = JSONNull.JSON_NULL;
-			x.toString(text);
+			value(i).toString(text);
 
 			sep = ",";
 		}
 		text.append('}');
 	}
 
+	@Override
+	void writeTo(JSONWriter out) throws IOException {
+		list();
+		out.beginObject();
+		if (out.isSorted()) {
+			for (int i : sorted()) {
+				out.name(members[i]);
+				out.value(value(i));
+			}
+		} else {
+			for(int i = 0; i < size; i++) {
+				out.name(members[i]);
+				out.value(value(i));
+			}
+		}
+		out.endObject();
+	}
+
+	@Override
+	void encodeTo(JSONBinaryWriter out) throws IOException {
+		list();
+		out.beginObject(size);
+		for(int i = 0; i < size; i++) {
+			out.name(members[i]);
+			out.value(value(i));
+		}
+	}
+
 	@Override
 	public int hashCode() {
-		return values.hashCode();
+		// as per Map, so that the order of the members does not matter
+		list();
+		int h = 0;
+		for (int i = 0; i < size; i++) h += members[i].hashCode() ^ value(i).hashCode();
+		return h;
 	}
 
 	@Override
 	public boolean equals(Object x) {
 		if (x != null && x instanceof JSONObject) {
-			return values.equals(((JSONObject)x).values);
+			JSONObject y = (JSONObject)x;
+			if (size() != y.size()) return false;
+			for (int i = 0; i < size; i++) {
+				if (!value(i).equals(y.get(members[i]))) return false;
+			}
+			return true;
 		}
 		return false;
 	}
 
+	/**
+	 * Live view of the member names.
+	 */
+	private class Members extends AbstractSet<String> {
+
+		@Override
+		public int size() {
+			return size;
+		}
+
+		@Override
+		public boolean contains(Object o) {
+			return o instanceof String && find((String)o) >= 0;
+		}
+
+		@Override
+		public boolean remove(Object o) {
+			if (!(o instanceof String)) return false;
+			int i = find((String)o);
+			if (i < 0) return false;
+			removeAt(i);
+			return true;
+		}
+
+		@Override
+		public Iterator<String> iterator() {
+			return new Iterator<String>() {
+
+				private int next = 0;
+				private boolean removable = false;
+
+				@Override
+				public boolean hasNext() {
+					return next < size;
+				}
+
+				@Override
+				public String next() {
+					if (next >= size) throw new NoSuchElementException();
+					removable = true;
+					return members[next++];
+				}
+
+				@Override
+				public void remove() {
+					if (!removable) throw new IllegalStateException();
+					removable = false;
+					removeAt(--next);
+				}
+			};
+		}
+	}
+
 	// -- convenience methods
 
 	public JSONValue put(String member, String value) {
@@ -109,7 +384,7 @@ public class JSONObject extends JSONValue {
 	}
 
 	public JSONValue put(String member, Long value) {
-		return put(member, value == null ? JSONNull.JSON_NULL : new JSONNumber(value));
+		return put(member, value == null ? JSONNull.JSON_NULL : JSONNumber.valueOf(value));
 	}
 
 }
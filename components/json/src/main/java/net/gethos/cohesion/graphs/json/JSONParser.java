@@ -0,0 +1,133 @@
+/**
+ * Cohesion Framework - JSON Library
+ * Copyright (c) 2017 - Stewart Gebbie, Gethos. Licensed under the MIT licence.
+ * vim: set ts=4 sw=0:
+ */
+package net.gethos.cohesion.graphs.json;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * Gethos Cohesion JSON parser, that may be reused from one document to the
+ * next, so that it allocates nothing but the values it returns.
+ * <p>
+ * A parser holds a scanner for text and another for UTF-8 encoded bytes,
+ * along with the scratch space that they need: a copy of the text of a
+ * {@link String} (since the scanner works over an array), and the buffers
+ * into which escaped strings and member names are decoded. Each is grown
+ * as needed and kept for the next document, unless it has grown very
+ * large. Numbers and unescaped strings are decoded in place, and nested
+ * objects and arrays are parsed on the call stack, so neither needs any
+ * scratch space.
+ * <p>
+ * A parser must only be used by one thread at a time. The static
+ * {@link JSON#parse(String)} keeps a parser per thread.
+ *
+ * @author {@literal Stewart Gebbie <sgebbie@gethos.net>}
+ * @see JSON
+ *
+ */
+public final class JSONParser {
+
+	/**
+	 * The largest copy of a string kept from one document to the next.
+	 */
+	private static final int RETAINED = 1 << 16;
+
+	private static final char[] NO_CHARS = new char[0];
+	private static final ByteBuffer NO_BYTES = ByteBuffer.allocate(0);
+
+	private final JSONCharScanner chars;
+	private final JSONUTF8Scanner bytes;
+
+	private char[] text; // a copy of the string being parsed
+
+	/**
+	 * A parser that returns member names from the shared table of symbols.
+	 */
+	public JSONParser() {
+		this(JSONSymbols.SHARED);
+	}
+
+	/**
+	 * @param symbols the table of member names, or null to not cache member names at all
+	 */
+	public JSONParser(JSONSymbols symbols) {
+		this.chars = new JSONCharScanner(NO_CHARS, 0, 0);
+		this.chars.symbols = symbols;
+		this.bytes = new JSONUTF8Scanner(NO_BYTES);
+		this.bytes.symbols = symbols;
+		this.text = NO_CHARS;
+	}
+
+	/**
+	 * Parse a text JSON representation into a JSON value.
+	 *
+	 * @param json
+	 * @return JSON value representing the parsed data, or null if there is none
+	 */
+	public JSONValue parse(String json) {
+		if (json == null) return null;
+		int n = json.length();
+		if (text.length < n) text = new char[Math.max(n, Math.min(RETAINED, text.length * 2))];
+		json.getChars(0, n, text, 0);
+		try {
+			return parse(text, 0, n);
+		} finally {
+			if (text.length > RETAINED) text = NO_CHARS;
+		}
+	}
+
+	/**
+	 * Parse the text JSON representation held between {@code from} and
+	 * {@code to} of the array into a JSON value.
+	 *
+	 * @param json
+	 * @return JSON value representing the parsed data, or null if there is none
+	 */
+	public JSONValue parse(char[] json, int from, int to) {
+		if (json == null) return null;
+		chars.reset(json, from, to);
+		try {
+			return chars.parseValue();
+		} catch (IOException e) {
+			// not expected, since the input is already in memory
+			throw new JSONException(String.format("I/O Error while parsing JSON somewhere close to [%d]",chars.position()), e);
+		} finally {
+			chars.reset(NO_CHARS, 0, 0);
+		}
+	}
+
+	/**
+	 * Parse UTF-8 encoded JSON text into a JSON value.
+	 *
+	 * @param json
+	 * @return JSON value representing the parsed data, or null if there is none
+	 */
+	public JSONValue parse(byte[] json) {
+		if (json == null) return null;
+		return parse(json, 0, json.length);
+	}
+
+	/**
+	 * Parse UTF-8 encoded JSON text, held in a range of a byte array, into a
+	 * JSON value.
+	 *
+	 * @param json
+	 * @param from index of the first byte
+	 * @param to index after the last byte
+	 * @return JSON value representing the parsed data, or null if there is none
+	 */
+	public JSONValue parse(byte[] json, int from, int to) {
+		if (json == null) return null;
+		bytes.reset(ByteBuffer.wrap(json), from, to);
+		try {
+			return bytes.parseValue();
+		} catch (IOException e) {
+			throw new JSONException(String.format("I/O Error while parsing JSON somewhere close to [%d]",bytes.position()), e);
+		} finally {
+			bytes.reset(NO_BYTES, 0, 0); // do not hold on to the caller's array
+		}
+	}
+}
@@ -0,0 +1,138 @@
+/**
+ * Cohesion Framework - JSON Library
+ * Copyright (c) 2017 - Stewart Gebbie, Gethos. Licensed under the MIT licence.
+ * vim: set ts=4 sw=0:
+ */
+package net.gethos.cohesion.graphs.json;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Gethos Cohesion JSON Pointer, identifying a single value within a JSON
+ * value, such as {@code /payload/items/3/price}.
+ * <p>
+ * See: https://tools.ietf.org/html/rfc6901
+ *
+ * @author {@literal Stewart Gebbie <sgebbie@gethos.net>}
+ * @see JSONExtractor
+ *
+ */
+public final class JSONPointer {
+
+	private final String pointer;
+	private final String[] tokens;
+	private final int[] indices; // each token as an array index, or -1 if it is not one
+
+	/**
+	 * @param pointer the pointer, either empty, for the whole value, or a sequence of '/' prefixed reference tokens
+	 * @throws JSONException if the pointer is malformed
+	 */
+	public JSONPointer(String pointer) {
+		if (pointer == null) throw new NullPointerException("pointer");
+		if (!pointer.isEmpty() && pointer.charAt(0) != '/') throw new JSONException(String.format("JSON pointer {%s} does not start with '/'",pointer));
+		List<String> tokens = new ArrayList<String>();
+		int from = 1;
+		while (from <= pointer.length()) {
+			int to = pointer.indexOf('/', from);
+			if (to < 0) to = pointer.length();
+			tokens.add(unescape(pointer, from, to));
+			from = to + 1;
+		}
+		this.pointer = pointer;
+		this.tokens = tokens.toArray(new String[tokens.size()]);
+		this.indices = new int[this.tokens.length];
+		for (int i = 0; i < this.tokens.length; i++) this.indices[i] = index(this.tokens[i]);
+	}
+
+	private static String unescape(String pointer, int from, int to) {
+		int t = pointer.indexOf('~', from);
+		if (t < 0 || t >= to) return pointer.substring(from, to);
+		StringBuilder token = new StringBuilder(to - from);
+		for (int i = from; i < to; i++) {
+			char c = pointer.charAt(i);
+			if (c == '~') {
+				char d = ++i < to ? pointer.charAt(i) : 0;
+				if (d == '0') c = '~';
+				else if (d == '1') c = '/';
+				else throw new JSONException(String.format("JSON pointer {%s} has an invalid escape at [%d]",pointer,i - 1));
+			}
+			token.append(c);
+		}
+		return token.toString();
+	}
+
+	/**
+	 * @return the token as an array index, or -1 if it is not one
+	 */
+	private static int index(String token) {
+		int n = token.length();
+		if (n == 0 || n > 9 || (n > 1 && token.charAt(0) == '0')) return -1;
+		int x = 0;
+		for (int i = 0; i < n; i++) {
+			char c = token.charAt(i);
+			if (c < '0' || c > '9') return -1;
+			x = x * 10 + (c - '0');
+		}
+		return x;
+	}
+
+	/**
+	 * @return the number of reference tokens
+	 */
+	public int size() {
+		return tokens.length;
+	}
+
+	/**
+	 * @return the reference token, unescaped
+	 */
+	public String token(int i) {
+		return tokens[i];
+	}
+
+	/**
+	 * @return the reference token as an array index, or -1 if it can not be one
+	 */
+	int index(int i) {
+		return indices[i];
+	}
+
+	/**
+	 * @return the value identified by the pointer, or null if there is none
+	 */
+	public JSONValue get(JSONValue value) {
+		return get(value, 0);
+	}
+
+	/**
+	 * @return the value identified by the tokens from the given one onwards
+	 */
+	JSONValue get(JSONValue value, int from) {
+		for (int i = from; i < tokens.length && value != null; i++) {
+			if (value.isObject()) {
+				value = value.asObject().get(tokens[i]);
+			} else if (value.isArray()) {
+				value = indices[i] < 0 ? null : value.asArray().get(indices[i]);
+			} else {
+				value = null;
+			}
+		}
+		return value;
+	}
+
+	@Override
+	public String toString() {
+		return pointer;
+	}
+
+	@Override
+	public int hashCode() {
+		return pointer.hashCode();
+	}
+
+	@Override
+	public boolean equals(Object x) {
+		return x instanceof JSONPointer && pointer.equals(((JSONPointer)x).pointer);
+	}
+}
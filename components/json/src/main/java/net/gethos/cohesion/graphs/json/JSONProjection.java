@@ -0,0 +1,105 @@
+/**
+ * Cohesion Framework - JSON Library
+ * Copyright (c) 2017 - Stewart Gebbie, Gethos. Licensed under the MIT licence.
+ * vim: set ts=4 sw=0:
+ */
+package net.gethos.cohesion.graphs.json;
+
+import java.util.Arrays;
+
+/**
+ * Gethos Cohesion JSON projection, a whitelist of the object members to
+ * keep when parsing.
+ * <p>
+ * A projection lists member names, each either kept whole, or in turn
+ * projected. Members of an object that are not listed are passed over by
+ * counting brackets and quotes, without being decoded or allocated, and
+ * their names are compared in place. An array is projected element by
+ * element, and any other value is kept as it is. The result is an ordinary
+ * tree, holding only the projected members.
+ * <pre>
+ * JSONProjection p = new JSONProjection()
+ *     .include("id")
+ *     .include("meta", new JSONProjection().include("type"));
+ * // or, equivalently
+ * JSONProjection p = new JSONProjection("/id", "/meta/type");
+ * </pre>
+ * A projection must not be changed while it is in use, but may otherwise
+ * be shared between parsers, and between threads.
+ *
+ * @author {@literal Stewart Gebbie <sgebbie@gethos.net>}
+ * @see JSONStream#setProjection(JSONProjection)
+ * @see JSON#parse(String, JSONProjection)
+ *
+ */
+public final class JSONProjection {
+
+	String[] names;
+	JSONProjection[] members; // the projection of each member, or null to keep it whole
+
+	public JSONProjection() {
+		this.names = new String[0];
+		this.members = new JSONProjection[0];
+	}
+
+	/**
+	 * Project the members along each path, given as a {@link JSONPointer},
+	 * keeping the value at the end of each path whole.
+	 *
+	 * @throws JSONException if a path is malformed
+	 */
+	public JSONProjection(String... paths) {
+		this();
+		for (String path : paths) {
+			JSONPointer p = new JSONPointer(path);
+			if (p.size() == 0) throw new JSONException(String.format("Projection path {%s} is empty",path));
+			JSONProjection x = this;
+			for (int i = 0; i < p.size(); i++) {
+				String name = p.token(i);
+				if (i == p.size() - 1) {
+					x.include(name);
+					break;
+				}
+				int m = x.find(name);
+				if (m >= 0 && x.members[m] == null) break; // already kept whole
+				if (m < 0) {
+					x.include(name, new JSONProjection());
+					m = x.names.length - 1;
+				}
+				x = x.members[m];
+			}
+		}
+	}
+
+	/**
+	 * Keep the member whole.
+	 */
+	public JSONProjection include(String name) {
+		return include(name, null);
+	}
+
+	/**
+	 * Keep the member, projected in turn.
+	 *
+	 * @param members the projection of the member, or null to keep it whole
+	 */
+	public JSONProjection include(String name, JSONProjection members) {
+		if (name == null) throw new NullPointerException("name");
+		int m = find(name);
+		if (m < 0) {
+			m = names.length;
+			names = Arrays.copyOf(names, m + 1);
+			this.members = Arrays.copyOf(this.members, m + 1);
+			names[m] = name;
+		}
+		this.members[m] = members;
+		return this;
+	}
+
+	private int find(String name) {
+		for (int i = 0; i < names.length; i++) {
+			if (names[i].equals(name)) return i;
+		}
+		return -1;
+	}
+}
@@ -0,0 +1,159 @@
+/**
+ * Cohesion Framework - JSON Library
+ * Copyright (c) 2017 - Stewart Gebbie, Gethos. Licensed under the MIT licence.
+ * vim: set ts=4 sw=0:
+ */
+package net.gethos.cohesion.graphs.json;
+
+import java.util.concurrent.Executor;
+import java.util.concurrent.Flow;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Gethos Cohesion JSON publisher, adapting a {@link JSONStream} to a
+ * reactive {@link Flow.Publisher}.
+ * <p>
+ * Values are only parsed as they are requested: each time demand arrives,
+ * a task is run on the executor that parses and delivers values, one after
+ * the other, until the demand is met, the stream ends, or the subscription
+ * is cancelled. Reads from the underlying source are made in blocks by the
+ * stream itself, so a run of values is parsed from the one buffer. At most
+ * one such task runs at a time, so the stream is never read concurrently,
+ * and the subscriber is signalled serially.
+ * <p>
+ * A {@link JSONException} (or any other error) raised while parsing is
+ * passed on through {@link Flow.Subscriber#onError(Throwable)}, and its
+ * message gives the position in the stream at which it was raised. The
+ * values delivered before it are unaffected.
+ * <p>
+ * A stream may only be read once, so only a single subscriber is accepted.
+ *
+ * @author {@literal Stewart Gebbie <sgebbie@gethos.net>}
+ * @see JSONSubscriber
+ *
+ */
+public final class JSONPublisher implements Flow.Publisher<JSONValue> {
+
+	private final JSONStream stream;
+	private final Executor executor;
+	private final AtomicBoolean subscribed;
+
+	/**
+	 * @param stream the stream of values to publish
+	 * @param executor the executor on which to parse and deliver values, which may block while reading from the stream
+	 */
+	public JSONPublisher(JSONStream stream, Executor executor) {
+		if (stream == null) throw new NullPointerException("stream");
+		if (executor == null) throw new NullPointerException("executor");
+		this.stream = stream;
+		this.executor = executor;
+		this.subscribed = new AtomicBoolean();
+	}
+
+	@Override
+	public void subscribe(Flow.Subscriber<? super JSONValue> subscriber) {
+		if (subscriber == null) throw new NullPointerException("subscriber");
+		if (!subscribed.compareAndSet(false, true)) {
+			subscriber.onSubscribe(new Flow.Subscription() {
+				@Override
+				public void request(long n) {
+				}
+
+				@Override
+				public void cancel() {
+				}
+			});
+			subscriber.onError(new IllegalStateException("A JSON stream may only be subscribed to once"));
+			return;
+		}
+		Emitter emitter = new Emitter(subscriber);
+		subscriber.onSubscribe(emitter);
+	}
+
+	private final class Emitter implements Flow.Subscription, Runnable {
+
+		private final Flow.Subscriber<? super JSONValue> subscriber;
+		private final AtomicLong requested;
+		private final AtomicInteger scheduled; // requests for a run, while a run is active
+
+		private volatile boolean cancelled;
+		private volatile Throwable invalid; // a request for a non-positive number of values
+
+		private volatile boolean done;
+
+		Emitter(Flow.Subscriber<? super JSONValue> subscriber) {
+			this.subscriber = subscriber;
+			this.requested = new AtomicLong();
+			this.scheduled = new AtomicInteger();
+		}
+
+		@Override
+		public void request(long n) {
+			if (n <= 0) {
+				invalid = new IllegalArgumentException(String.format("Subscriber requested a non-positive number of values [%d]",n));
+			} else {
+				for (;;) {
+					long r = requested.get();
+					long x = r + n < 0 ? Long.MAX_VALUE : r + n; // saturate as unbounded
+					if (requested.compareAndSet(r, x)) break;
+				}
+			}
+			schedule();
+		}
+
+		@Override
+		public void cancel() {
+			cancelled = true;
+		}
+
+		private void schedule() {
+			if (done || scheduled.getAndIncrement() != 0) return;
+			try {
+				executor.execute(this);
+			} catch (RejectedExecutionException e) {
+				// no run is active, so the error is signalled here rather than thrown from request(n)
+				done = true;
+				subscriber.onError(e);
+				scheduled.set(0);
+			}
+		}
+
+		@Override
+		public void run() {
+			int missed = 1;
+			for (;;) {
+				if (done || cancelled) return;
+				if (invalid != null) {
+					done = true;
+					subscriber.onError(invalid);
+					return;
+				}
+				long r = requested.get();
+				long delivered = 0;
+				while (delivered != r && !cancelled) {
+					JSONValue v;
+					try {
+						v = stream.next();
+					} catch (Throwable e) {
+						done = true;
+						subscriber.onError(e);
+						return;
+					}
+					if (v == null) {
+						done = true;
+						subscriber.onComplete();
+						return;
+					}
+					subscriber.onNext(v);
+					delivered++;
+				}
+				if (delivered != 0 && r != Long.MAX_VALUE) requested.addAndGet(-delivered);
+				missed = scheduled.addAndGet(-missed);
+				if (missed == 0) return;
+			}
+		}
+	}
+}
@@ -0,0 +1,340 @@
+/**
+ * Cohesion Framework - JSON Library
+ * Copyright (c) 2017 - Stewart Gebbie, Gethos. Licensed under the MIT licence.
+ * vim: set ts=4 sw=0:
+ */
+package net.gethos.cohesion.graphs.json;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Reader;
+import java.math.BigDecimal;
+import java.nio.ByteBuffer;
+
+/**
+ * Gethos Cohesion JSON pull reader, returning the tokens of the JSON text
+ * one at a time, rather than building a tree.
+ * <p>
+ * As with {@link JSONStream}, the input may hold any number of JSON values
+ * back-to-back. {@link #nextToken()} returns null once the input is
+ * exhausted.
+ * <p>
+ * Strings and numbers are only decoded when asked for via the typed
+ * accessors, and whole objects or arrays can be passed over without being
+ * decoded at all via {@link #skipChildren()}. The accessors refer to the
+ * current token, and so must be used before the next call to
+ * {@link #nextToken()}.
+ * <pre>
+ * JSONReader r = new JSONReader(reader);
+ * for (JSONToken t = r.nextToken(); t != null; t = r.nextToken()) {
+ *     if (t == JSONToken.NAME &amp;&amp; r.currentName().equals("id")) {
+ *         r.nextToken();
+ *         long id = r.getLong();
+ *     }
+ * }
+ * </pre>
+ * See: http://www.json.org/
+ *
+ * @author {@literal Stewart Gebbie <sgebbie@gethos.net>}
+ * @see JSONStream
+ *
+ */
+public class JSONReader {
+
+	// parse states, per nesting level
+	private static final int ROOT = 0;
+	private static final int OBJECT_START = 1; // after '{', expecting a name or '}'
+	private static final int OBJECT_NAME = 2;  // after a name, expecting a value
+	private static final int OBJECT_VALUE = 3; // after a value, expecting ',' or '}'
+	private static final int ARRAY_START = 4;  // after '[', expecting a value or ']'
+	private static final int ARRAY_VALUE = 5;  // after a value, expecting ',' or ']'
+
+	private final JSONScanner json;
+
+	private int[] states;
+	private String[] names; // the member name in the parent of each nesting level
+	private int depth;
+
+	private JSONToken token;
+	private String name;
+	private int tokenStart;
+	private int tokenEnd;
+	private String text;
+
+	public JSONReader(Reader reader) {
+		this(new JSONCharScanner(reader));
+	}
+
+	/**
+	 * Read tokens directly off the UTF-8 encoded bytes of the input stream.
+	 */
+	public JSONReader(InputStream in) {
+		this(new JSONUTF8Scanner(in));
+	}
+
+	public JSONReader(String json) {
+		this(new JSONCharScanner(json.toCharArray(), 0, json.length()));
+	}
+
+	/**
+	 * Read tokens directly off the UTF-8 encoded bytes.
+	 */
+	public JSONReader(byte[] json, int from, int to) {
+		this(new JSONUTF8Scanner(ByteBuffer.wrap(json, from, to - from)));
+	}
+
+	JSONReader(JSONScanner json) {
+		this.json = json;
+		this.json.symbols = new JSONSymbols();
+		this.states = new int[16];
+		this.names = new String[16];
+		this.depth = 0;
+		this.states[0] = ROOT;
+	}
+
+	/**
+	 * Replace the reader's own table of member names.
+	 *
+	 * @param symbols the table, or null to not cache member names at all
+	 * @see JSONStream#setSymbols(JSONSymbols)
+	 */
+	public void setSymbols(JSONSymbols symbols) {
+		json.symbols = symbols;
+	}
+
+	/**
+	 * Advance to the next token.
+	 *
+	 * @return the token, or null at the end of the input
+	 */
+	public JSONToken nextToken() {
+		text = null;
+		try {
+			token = advance();
+		} catch (IOException e) {
+			throw new JSONException(String.format("I/O Error while reading JSON somewhere close to [%d]",json.position()), e);
+		}
+		return token;
+	}
+
+	/**
+	 * @return the token last returned by {@link #nextToken()}
+	 */
+	public JSONToken currentToken() {
+		return token;
+	}
+
+	/**
+	 * @return the member name associated with the current token, or null if the token is not within an object
+	 */
+	public String currentName() {
+		if (token == JSONToken.START_OBJECT || token == JSONToken.START_ARRAY) return names[depth - 1];
+		return name;
+	}
+
+	/**
+	 * @return the nesting depth of the current token, with top-level values at depth 0
+	 */
+	public int depth() {
+		if (token == JSONToken.START_OBJECT || token == JSONToken.START_ARRAY) return depth - 1;
+		return depth;
+	}
+
+	/**
+	 * @return the position in the input just after the current token
+	 */
+	public long position() {
+		return json.position();
+	}
+
+	private JSONToken advance() throws IOException {
+		json.skipWhitespace();
+		int c = json.peek();
+		switch (states[depth]) {
+			case OBJECT_START:
+				if (c == '}') return end(JSONToken.END_OBJECT);
+				return readName();
+			case OBJECT_NAME:
+				states[depth] = OBJECT_VALUE;
+				return readValueToken(c);
+			case OBJECT_VALUE:
+				if (c == '}') return end(JSONToken.END_OBJECT);
+				if (c != ',') throw unexpected(c, "',' or '}'");
+				json.pos++;
+				json.skipWhitespace();
+				return readName();
+			case ARRAY_START:
+				if (c == ']') return end(JSONToken.END_ARRAY);
+				states[depth] = ARRAY_VALUE;
+				return readValueToken(c);
+			case ARRAY_VALUE:
+				if (c == ']') return end(JSONToken.END_ARRAY);
+				if (c != ',') throw unexpected(c, "',' or ']'");
+				json.pos++;
+				json.skipWhitespace();
+				return readValueToken(json.peek());
+			default:
+				if (c == -1) return null; // end-of-stream
+				return readValueToken(c);
+		}
+	}
+
+	private JSONException unexpected(int c, String expected) {
+		if (c == -1) return new JSONException(String.format("End-of-stream (expected %s) while reading [%d]",expected,json.position()));
+		return new JSONException(String.format("Unexpected character {%s} (expected %s) while reading [%d]",(char)c,expected,json.position()));
+	}
+
+	private JSONToken readName() throws IOException {
+		name = json.scanMemberName();
+		states[depth] = OBJECT_NAME;
+		return JSONToken.NAME;
+	}
+
+	private JSONToken readValueToken(int c) throws IOException {
+		switch (c) {
+			case '{': json.pos++; return start(OBJECT_START, JSONToken.START_OBJECT);
+			case '[': json.pos++; return start(ARRAY_START, JSONToken.START_ARRAY);
+			case '"':
+				tokenEnd = json.findStringEnd();
+				tokenStart = json.pos + 1;
+				json.pos = tokenEnd + 1;
+				return JSONToken.STRING;
+			case 'n': if (json.matchKeyword(JSONNull.NULL))     return JSONToken.NULL;  break;
+			case 'f': if (json.matchKeyword(JSONBoolean.FALSE)) return JSONToken.FALSE; break;
+			case 't': if (json.matchKeyword(JSONBoolean.TRUE))  return JSONToken.TRUE;  break;
+			default:
+				if (c == '-' || (c >= '0' && c <= '9')) {
+					tokenEnd = json.findNumberEnd();
+					tokenStart = json.pos;
+					json.pos = tokenEnd;
+					return JSONToken.NUMBER;
+				}
+		}
+		throw unexpected(c, "a value");
+	}
+
+	private JSONToken start(int state, JSONToken t) {
+		names[depth] = name;
+		name = null;
+		if (++depth == states.length) {
+			int[] s = new int[depth * 2];
+			System.arraycopy(states, 0, s, 0, depth);
+			states = s;
+			String[] n = new String[depth * 2];
+			System.arraycopy(names, 0, n, 0, depth);
+			names = n;
+		}
+		states[depth] = state;
+		return t;
+	}
+
+	private JSONToken end(JSONToken t) {
+		json.pos++;
+		names[depth] = null;
+		depth--;
+		name = names[depth];
+		return t;
+	}
+
+	/**
+	 * If the current token starts an object or an array, skip over all of
+	 * its content, without decoding it, so that the current token becomes
+	 * the matching end token. Otherwise, do nothing.
+	 */
+	public void skipChildren() {
+		if (token != JSONToken.START_OBJECT && token != JSONToken.START_ARRAY) return;
+		try {
+			json.skipNested(1);
+		} catch (IOException e) {
+			throw new JSONException(String.format("I/O Error while reading JSON somewhere close to [%d]",json.position()), e);
+		}
+		depth--;
+		name = names[depth];
+		token = token == JSONToken.START_OBJECT ? JSONToken.END_OBJECT : JSONToken.END_ARRAY;
+	}
+
+	/**
+	 * @return the text of the current token: the decoded value of a string, a member name, or the literal text of a number or keyword
+	 */
+	public String getString() {
+		if (token == null) return null;
+		switch (token) {
+			case NAME: return name;
+			case STRING:
+				if (text == null) text = json.symbols != null && json.symbols.cachesValue(tokenEnd - tokenStart) ? json.decodeSymbol(tokenStart, tokenEnd) : json.decodeString(tokenStart, tokenEnd);
+				return text;
+			case NUMBER:
+				if (text == null) text = json.text(tokenStart, tokenEnd);
+				return text;
+			case TRUE: return JSONBoolean.TRUE;
+			case FALSE: return JSONBoolean.FALSE;
+			case NULL: return JSONNull.NULL;
+			default: return null;
+		}
+	}
+
+	private void expectNumber() {
+		if (token != JSONToken.NUMBER) throw new JSONException(String.format("Current token {%s} is not a number at [%d]",token,json.position()));
+	}
+
+	/**
+	 * @return the current number as a long, exactly if it is an integer in range, and otherwise as per {@link JSONNumber#longValue()}
+	 */
+	public long getLong() {
+		expectNumber();
+		return json.decodeLong(tokenStart, tokenEnd);
+	}
+
+	public double getDouble() {
+		expectNumber();
+		return json.decodeDouble(tokenStart, tokenEnd);
+	}
+
+	public BigDecimal getBigDecimal() {
+		expectNumber();
+		return json.decodeBigDecimal(tokenStart, tokenEnd);
+	}
+
+	public boolean getBoolean() {
+		if (token == JSONToken.TRUE) return true;
+		if (token == JSONToken.FALSE) return false;
+		throw new JSONException(String.format("Current token {%s} is not a boolean at [%d]",token,json.position()));
+	}
+
+	/**
+	 * Build the tree for the value that starts at the current token. The
+	 * current token is left at the last token of the value.
+	 *
+	 * @return the value, or null if there is no current value
+	 */
+	public JSONValue readValue() {
+		if (token == null) return null;
+		switch (token) {
+			case START_OBJECT: {
+				JSONObject x = new JSONObject();
+				while (nextToken() == JSONToken.NAME) {
+					String member = name;
+					nextToken();
+					x.put(member, readValue());
+				}
+				return x;
+			}
+			case START_ARRAY: {
+				JSONArray x = new JSONArray();
+				while (nextToken() != JSONToken.END_ARRAY) {
+					x.add(readValue());
+				}
+				return x;
+			}
+			case STRING: return new JSONString(getString());
+			case NUMBER:
+				expectNumber();
+				return json.decodeNumber(tokenStart, tokenEnd);
+			case TRUE: return JSONBoolean.JSON_TRUE;
+			case FALSE: return JSONBoolean.JSON_FALSE;
+			case NULL: return JSONNull.JSON_NULL;
+			default:
+				throw new JSONException(String.format("Current token {%s} does not start a value at [%d]",token,json.position()));
+		}
+	}
+}
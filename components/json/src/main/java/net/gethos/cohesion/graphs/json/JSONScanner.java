@@ -0,0 +1,364 @@
+/**
+ * Cohesion Framework - JSON Library
+ * Copyright (c) 2017 - Stewart Gebbie, Gethos. Licensed under the MIT licence.
+ * vim: set ts=4 sw=0:
+ */
+package net.gethos.cohesion.graphs.json;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+
+/**
+ * Tokenizer over a refillable window of JSON text, along with the tree
+ * building that is layered on top of it.
+ * <p>
+ * Subclasses provide the window (characters or UTF-8 bytes) and the token
+ * primitives. A token is always scanned while it is wholly within the
+ * window: when a token runs past the end of the window the subclass must
+ * slide (and if need be, grow) the window to bring the rest of it in.
+ * <p>
+ * Strings and numbers are scanned in two steps: first the end of the token
+ * is found, and then the token is decoded out of the window. In between,
+ * and until the window is next slid, the token may be decoded as often,
+ * and as whatever type, as the caller needs (see {@link JSONReader}).
+ *
+ * @author {@literal Stewart Gebbie <sgebbie@gethos.net>}
+ * @see JSONStream
+ * @see JSONReader
+ *
+ */
+abstract class JSONScanner {
+
+	int pos;   // cursor into the window
+	int limit; // end of the valid input in the window
+	long base; // position in the input of the start of the window
+
+	boolean escaped; // the last string found contained escape sequences
+
+	JSONSymbols symbols; // canonical member names, or null to not cache them
+
+	/**
+	 * @return the position in the input of the cursor
+	 */
+	long position() {
+		return base + pos;
+	}
+
+	/**
+	 * Ensure that at least {@code n} units of input are available in the
+	 * window, starting at the cursor.
+	 *
+	 * @return false if the end of the input was reached first
+	 */
+	abstract boolean require(int n) throws IOException;
+
+	/**
+	 * @return the character at the cursor, without consuming it, or -1 at the end of the input
+	 */
+	abstract int peek() throws IOException;
+
+	abstract void skipWhitespace() throws IOException;
+
+	/**
+	 * Consume the keyword if it is found at the cursor.
+	 */
+	abstract boolean matchKeyword(String keyword) throws IOException;
+
+	/**
+	 * Find the end of the string starting at the cursor, bringing the whole
+	 * string into the window.
+	 *
+	 * @return the index in the window of the closing quote
+	 */
+	abstract int findStringEnd() throws IOException;
+
+	/**
+	 * Decode the content of the string last found, between the quotes.
+	 */
+	abstract String decodeString(int from, int to);
+
+	/**
+	 * Decode the content of the string last found via the symbol table,
+	 * which must be set.
+	 */
+	abstract String decodeSymbol(int from, int to);
+
+	/**
+	 * Compare the content of the string last found, between the quotes, with
+	 * the given string, in place where possible.
+	 */
+	abstract boolean equalsString(int from, int to, String s);
+
+	/**
+	 * Find the end of the number starting at the cursor, bringing the whole
+	 * number into the window.
+	 *
+	 * @return the index in the window just after the number
+	 */
+	abstract int findNumberEnd() throws IOException;
+
+	/**
+	 * Decode the number, keeping its digits unless it is an integer that fits in a long.
+	 */
+	abstract JSONNumber decodeNumber(int from, int to);
+
+	/**
+	 * Decode the number token, adding it to the array.
+	 */
+	abstract void decodeNumber(JSONArray into, int from, int to);
+
+	abstract BigDecimal decodeBigDecimal(int from, int to);
+
+	abstract long decodeLong(int from, int to);
+
+	abstract double decodeDouble(int from, int to);
+
+	/**
+	 * @return the raw text of the token in the window
+	 */
+	abstract String text(int from, int to);
+
+	/**
+	 * Find the extent of the next value by counting brackets and quotes,
+	 * without decoding or validating it, and copy it out.
+	 *
+	 * @return a scanner over the copy of the value, or null at the end of the input
+	 */
+	abstract JSONScanner sliceValue() throws IOException;
+
+	/**
+	 * Skip forward, without decoding, until {@code depth} more closing
+	 * brackets than opening brackets have been consumed. Brackets within
+	 * strings are ignored, but otherwise the input is not validated.
+	 */
+	abstract void skipNested(int depth) throws IOException;
+
+	static boolean isWhitespace(int c) {
+		// cheap checks for the common cases before deferring to the full definition
+		if (c == ' ' || c == '\n' || c == '\r' || c == '\t') return true;
+		if (c < ' ' || c >= 0x1680) return Character.isWhitespace(c);
+		return false;
+	}
+
+	/**
+	 * @return true if the character ends a number or keyword
+	 */
+	static boolean isDelimiter(int c) {
+		switch (c) {
+			case '{': case '}': case '[': case ']': case ':': case ',': case '"':
+				return true;
+			default:
+				return isWhitespace(c);
+		}
+	}
+
+	static boolean isNumberCharacter(int c) {
+		return (c >= '0' && c <= '9') || c == '-' || c == '+' || c == '.' || c == 'e' || c == 'E';
+	}
+
+	/**
+	 * Scan the string starting at the cursor, returning the unescaped value.
+	 */
+	String scanString() throws IOException {
+		int end = findStringEnd();
+		String value = symbols != null && symbols.cachesValue(end - pos - 1) ? decodeSymbol(pos + 1, end) : decodeString(pos + 1, end);
+		pos = end + 1;
+		return value;
+	}
+
+	/**
+	 * Scan the number starting at the cursor.
+	 */
+	JSONNumber scanNumber() throws IOException {
+		int end = findNumberEnd();
+		JSONNumber value;
+		try {
+			value = decodeNumber(pos, end);
+		} catch (JSONException e) {
+			throw new JSONException(String.format("%s while parsing [%d]",e.getMessage(),position()), e.getCause());
+		}
+		pos = end;
+		return value;
+	}
+
+	/**
+	 * Scan the number starting at the cursor, adding it to the array.
+	 */
+	void scanNumber(JSONArray into) throws IOException {
+		int end = findNumberEnd();
+		try {
+			decodeNumber(into, pos, end);
+		} catch (JSONException e) {
+			throw new JSONException(String.format("%s while parsing [%d]",e.getMessage(),position()), e.getCause());
+		}
+		pos = end;
+	}
+
+	/**
+	 * Skip the value starting at the cursor, without decoding it.
+	 */
+	void skipValue() throws IOException {
+		skipWhitespace();
+		int c = peek();
+		switch (c) {
+			case '"': pos = findStringEnd() + 1; return;
+			case '{':
+			case '[': pos++; skipNested(1); return;
+			default:
+				if (c == '-' || (c >= '0' && c <= '9')) { pos = findNumberEnd(); return; }
+				if (matchKeyword(JSONNull.NULL) || matchKeyword(JSONBoolean.TRUE) || matchKeyword(JSONBoolean.FALSE)) return;
+		}
+		throw new JSONException(String.format("Unexpected character {%s} while skipping value [%d]",(char)c,position()));
+	}
+
+	/**
+	 * Parse the next value.
+	 *
+	 * @return the value, or null at the end of the input
+	 */
+	JSONValue parseValue() throws IOException {
+		return parseValue(null);
+	}
+
+	/**
+	 * Parse the next value, keeping only the members in the projection.
+	 *
+	 * @param projection the members to keep, or null to keep everything
+	 * @return the value, or null at the end of the input
+	 */
+	JSONValue parseValue(JSONProjection projection) throws IOException {
+
+		skipWhitespace();
+
+		int c = peek();
+		if (c == -1) return null; // end-of-stream
+		switch (c) {
+			case 'n': if (matchKeyword(JSONNull.NULL))     return JSONNull.JSON_NULL;     break;
+			case 'f': if (matchKeyword(JSONBoolean.FALSE)) return JSONBoolean.JSON_FALSE; break;
+			case 't': if (matchKeyword(JSONBoolean.TRUE))  return JSONBoolean.JSON_TRUE;  break;
+			case '"': return new JSONString(scanString());
+			case '{': return parseObject(projection);
+			case '[': return parseArray(projection);
+			default:
+				if (c == '-' || (c >= '0' && c <= '9')) return scanNumber();
+		}
+
+		throw new JSONException(String.format("Unexpected character {%s} while parsing value [%d]",(char)c,position()));
+	}
+
+	private JSONObject parseObject(JSONProjection projection) throws IOException {
+		long from = position();
+		int c = peek();
+		if (c != '{') throw new JSONException(String.format("No object while parsing [%d]",from));
+		pos++;
+
+		JSONObject x = new JSONObject();
+
+		for(;;) {
+			skipWhitespace();
+			c = peek();
+			if (c == '}') {
+				pos++;
+				break;
+			}
+			if (projection == null) {
+				String member = scanMemberName();
+				JSONValue value = parseValue();
+				if (value == null) throw new JSONException(String.format("End-of-stream while parsing object at %d in [%d]",position(),from));
+				x.put(member,value);
+			} else {
+				// the names are compared in place, and members outside of the projection are skipped
+				int m = scanMemberName(projection.names);
+				if (m < 0) {
+					skipValue();
+				} else {
+					JSONValue value = parseValue(projection.members[m]);
+					if (value == null) throw new JSONException(String.format("End-of-stream while parsing object at %d in [%d]",position(),from));
+					x.put(projection.names[m],value);
+				}
+			}
+			skipWhitespace();
+			c = peek();
+			if (c != -1) pos++;
+			if (c == ',') continue;
+			else if (c == '}') break;
+			else throw new JSONException(String.format("Unexpected character {%s} (expected ',' or '}') while parsing object at %d in [%d]",c,position(),from));
+		}
+
+		return x;
+	}
+
+	/**
+	 * Scan a member name, along with the following ':'.
+	 */
+	String scanMemberName() throws IOException {
+		long from = position();
+		int end = findStringEnd();
+		String member = symbols != null ? decodeSymbol(pos + 1, end) : decodeString(pos + 1, end);
+		pos = end + 1;
+		scanColon(from);
+		return member;
+	}
+
+	/**
+	 * Scan a member name, along with the following ':', without decoding
+	 * it, other than to compare it with each of the names.
+	 *
+	 * @return the index of the name that matches, or -1 if there is none
+	 */
+	int scanMemberName(String[] names) throws IOException {
+		long from = position();
+		int end = findStringEnd();
+		int match = -1;
+		for (int i = 0; i < names.length; i++) {
+			if (equalsString(pos + 1, end, names[i])) {
+				match = i;
+				break;
+			}
+		}
+		pos = end + 1;
+		scanColon(from);
+		return match;
+	}
+
+	private void scanColon(long from) throws IOException {
+		skipWhitespace();
+		int c = peek();
+		if (c != ':') throw new JSONException(String.format("Unexpected character {%s} (expected ':') while parsing object at %d in [%d]",c,position(),from));
+		pos++;
+	}
+
+	private JSONArray parseArray(JSONProjection projection) throws IOException {
+		long from = position();
+		int c = peek();
+		if (c != '[') throw new JSONException(String.format("No array while parsing [%d]",from));
+		pos++;
+
+		JSONArray x = new JSONArray();
+
+		for(;;) {
+			skipWhitespace();
+			c = peek();
+			if (c == ']') {
+				pos++;
+				break;
+			}
+			if (c == '-' || (c >= '0' && c <= '9')) {
+				// numbers go straight into the array, which may hold them as primitives
+				scanNumber(x);
+			} else {
+				JSONValue value = parseValue(projection);
+				if (value == null) throw new JSONException(String.format("End-of-stream while parsing array at %d in [%d]",position(),from));
+				x.add(value);
+			}
+			skipWhitespace();
+			c = peek();
+			if (c != -1) pos++;
+			if (c == ',') continue;
+			else if (c == ']') break;
+			else throw new JSONException(String.format("Unexpected character {%s} (expected ',' or ']') while parsing array at %d in [%d].",c,position(),from));
+		}
+
+		return x;
+	}
+}
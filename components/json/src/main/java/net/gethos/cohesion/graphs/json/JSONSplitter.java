@@ -0,0 +1,359 @@
+/**
+ * Cohesion Framework - JSON Library
+ * Copyright (c) 2017 - Stewart Gebbie, Gethos. Licensed under the MIT licence.
+ * vim: set ts=4 sw=0:
+ */
+package net.gethos.cohesion.graphs.json;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Parallel parser for UTF-8 encoded JSON text holding a single, large,
+ * top-level array, used by {@link JSON#parseParallel(ByteBuffer, ForkJoinPool)}.
+ * <p>
+ * The elements of the array are split into runs, at commas between
+ * top-level elements, and each run is parsed by its own fork-join task into
+ * a part of the array. The parts are then joined, in order, into one
+ * {@link JSONArray}.
+ * <p>
+ * Finding the commas is itself done in parallel. The text is cut into
+ * chunks, never just after a backslash, and each chunk is scanned twice,
+ * once supposing that it starts outside of a string, and once supposing
+ * that it starts inside one. Each scan notes the state at the end of the
+ * chunk, the change in depth, and the first comma at each depth. A short
+ * pass over the chunks, in order, then follows the actual state from one
+ * chunk to the next, and picks out, for each chunk, the first comma that
+ * lies between top-level elements.
+ * <p>
+ * Only the bracket depth and string state are used to find the commas,
+ * while the runs themselves are fully parsed, so a malformed text is still
+ * rejected, and the text that the parts are parsed from is exactly the
+ * text of the array.
+ *
+ * @author {@literal Stewart Gebbie <sgebbie@gethos.net>}
+ *
+ */
+final class JSONSplitter {
+
+	/**
+	 * The smallest chunk worth handing to a task of its own.
+	 */
+	static final int MIN_CHUNK = 1 << 20;
+
+	/**
+	 * The largest chunk, which must fit into a single mapping.
+	 */
+	static final int MAX_CHUNK = 1 << 30;
+
+	/**
+	 * Provides the bytes of the text.
+	 */
+	static abstract class Input {
+
+		final long size;
+
+		Input(long size) {
+			this.size = size;
+		}
+
+		/**
+		 * @return the bytes between {@code from} and {@code to}, from position 0
+		 */
+		abstract ByteBuffer map(long from, long to) throws IOException;
+
+		abstract int byteAt(long i) throws IOException;
+
+		/**
+		 * @return a scanner over the bytes between {@code from} and {@code to}
+		 */
+		abstract JSONScanner scanner(long from, long to) throws IOException;
+	}
+
+	static class BufferInput extends Input {
+
+		private final ByteBuffer buffer;
+
+		/**
+		 * The bytes between the buffer's position and limit.
+		 */
+		BufferInput(ByteBuffer buffer) {
+			super(buffer.remaining());
+			this.buffer = buffer.slice();
+		}
+
+		@Override
+		ByteBuffer map(long from, long to) {
+			ByteBuffer b = buffer.duplicate();
+			b.limit((int)to);
+			b.position((int)from);
+			return b.slice();
+		}
+
+		@Override
+		int byteAt(long i) {
+			return buffer.get((int)i) & 0xff;
+		}
+
+		@Override
+		JSONScanner scanner(long from, long to) {
+			return new JSONUTF8Scanner(map(from, to));
+		}
+	}
+
+	static class FileInput extends Input {
+
+		private final FileChannel channel;
+		private final long origin;
+		private final ByteBuffer one;
+
+		/**
+		 * The bytes of the file between the channel's position and its size.
+		 */
+		FileInput(FileChannel channel) throws IOException {
+			super(channel.size() - channel.position());
+			this.channel = channel;
+			this.origin = channel.position();
+			this.one = ByteBuffer.allocate(1);
+		}
+
+		@Override
+		ByteBuffer map(long from, long to) throws IOException {
+			return channel.map(FileChannel.MapMode.READ_ONLY, origin + from, to - from);
+		}
+
+		@Override
+		int byteAt(long i) throws IOException {
+			// only used by the thread that splits the text
+			one.clear();
+			if (channel.read(one, origin + i) < 1) return -1;
+			return one.get(0) & 0xff;
+		}
+
+		@Override
+		JSONScanner scanner(long from, long to) {
+			return new JSONUTF8Scanner(ByteBuffer.allocate(0), new JSONUTF8Scanner.MappedSource(channel, origin + from, origin + to, JSONUTF8Scanner.MappedSource.CHUNK_SIZE));
+		}
+	}
+
+	/**
+	 * Scans a chunk for both starting states.
+	 */
+	private static final class Scan extends RecursiveAction {
+		private static final long serialVersionUID = 1L;
+
+		private final Input in;
+		private final long from;
+		private final long to;
+
+		// by starting state, 0 outside of a string, and 1 inside one
+		final boolean[] string = new boolean[2]; // the state at the end of the chunk
+		final int[] depth = new int[2];          // the change in depth over the chunk
+		final long[][] commas = new long[2][];   // the first comma at each depth, 0, -1, -2, ..., relative to the start
+
+		Scan(Input in, long from, long to) {
+			this.in = in;
+			this.from = from;
+			this.to = to;
+		}
+
+		@Override
+		protected void compute() {
+			try {
+				ByteBuffer b = in.map(from, to);
+				scan(b, 0);
+				scan(b, 1);
+			} catch (IOException e) {
+				throw new JSONException(String.format("I/O Error while splitting JSON somewhere close to [%d]",from), e);
+			}
+		}
+
+		private void scan(ByteBuffer b, int state) {
+			boolean string = state == 1;
+			boolean escape = false;
+			int depth = 0;
+			long[] commas = new long[4];
+			Arrays.fill(commas, -1);
+			int n = b.limit();
+			for (int p = 0; p < n; p++) {
+				byte c = b.get(p);
+				if (string) {
+					if (escape) escape = false;
+					else if (c == '\\') escape = true;
+					else if (c == '"') string = false;
+					continue;
+				}
+				switch (c) {
+					case '"':
+						string = true;
+						break;
+					case '{':
+					case '[':
+						depth++;
+						break;
+					case '}':
+					case ']':
+						depth--;
+						break;
+					case ',':
+						if (depth > 0) break;
+						if (-depth >= commas.length) {
+							int k = commas.length;
+							commas = Arrays.copyOf(commas, Math.max(-depth + 1, k * 2));
+							Arrays.fill(commas, k, commas.length, -1);
+						}
+						if (commas[-depth] < 0) commas[-depth] = from + p;
+						break;
+					default:
+				}
+			}
+			this.string[state] = string;
+			this.depth[state] = depth;
+			this.commas[state] = commas;
+		}
+	}
+
+	/**
+	 * Parses a run of elements.
+	 */
+	private static final class Part extends RecursiveAction {
+		private static final long serialVersionUID = 1L;
+
+		private final Input in;
+		private final long from;
+		private final long to;
+		private final boolean last;
+
+		JSONArray x;
+
+		Part(Input in, long from, long to, boolean last) {
+			this.in = in;
+			this.from = from;
+			this.to = to;
+			this.last = last;
+		}
+
+		@Override
+		protected void compute() {
+			JSONScanner json = null;
+			try {
+				json = in.scanner(from, to);
+				json.base = from;
+				json.symbols = JSONSymbols.SHARED;
+				x = parse(json);
+			} catch (IOException e) {
+				throw new JSONException(String.format("I/O Error while parsing JSON somewhere close to [%d]",json == null ? from : json.position()), e);
+			}
+		}
+
+		private JSONArray parse(JSONScanner json) throws IOException {
+			JSONArray x = new JSONArray();
+			for(;;) {
+				json.skipWhitespace();
+				int c = json.peek();
+				if (c == -1) {
+					// as for the sequential parser, the last element may be followed by a comma
+					if (last) return x;
+					throw new JSONException(String.format("Missing array element at [%d]",json.position()));
+				}
+				if (c == '-' || (c >= '0' && c <= '9')) {
+					json.scanNumber(x);
+				} else {
+					x.add(json.parseValue());
+				}
+				json.skipWhitespace();
+				c = json.peek();
+				if (c == -1) return x;
+				json.pos++;
+				if (c != ',') throw new JSONException(String.format("Unexpected character {%s} (expected ',' or ']') while parsing array at [%d]",(char)c,json.position() - 1));
+			}
+		}
+	}
+
+	private JSONSplitter() {
+	}
+
+	/**
+	 * Parse the text, in parallel if it holds a single, large, top-level
+	 * array, and otherwise on the calling thread.
+	 *
+	 * @param chunk the size of the chunks handed to each task, or 0 to choose one to suit the pool
+	 */
+	static JSONValue parse(Input in, ForkJoinPool pool, int chunk) throws IOException {
+		long open = 0;
+		while (open < in.size && JSONScanner.isWhitespace(in.byteAt(open))) open++;
+		long close = in.size - 1;
+		while (close > open && JSONScanner.isWhitespace(in.byteAt(close))) close--;
+		long from = open + 1;
+		long to = close;
+		if (open >= close || in.byteAt(open) != '[' || in.byteAt(close) != ']') return sequential(in);
+
+		if (chunk <= 0) chunk = (int)Math.min(MAX_CHUNK, Math.max(MIN_CHUNK, (to - from) / (4L * pool.getParallelism())));
+		int n = (int)((to - from) / chunk);
+		if (n < 2 || pool.getParallelism() < 2) {
+			// too small to be worth splitting, or with no threads to split it between, so parse the elements as a single run, on this thread
+			Part x = new Part(in, from, to, true);
+			x.compute();
+			return x.x;
+		}
+
+		// cut the text into chunks, never just after a backslash, which might escape the first byte
+		Scan[] scans = new Scan[n];
+		long start = from;
+		for (int k = 0; k < n; k++) {
+			long end = k == n - 1 ? to : Math.max(start, from + (k + 1) * (to - from) / n);
+			while (end < to && in.byteAt(end - 1) == '\\') end++;
+			scans[k] = new Scan(in, start, end);
+			start = end;
+		}
+		pool.invoke(new All(scans));
+
+		// follow the state from chunk to chunk, to find a comma between top-level elements in each
+		List<Part> parts = new ArrayList<Part>();
+		int depth = 1;
+		int state = 0;
+		start = from;
+		for (int k = 0; k < n; k++) {
+			long[] commas = scans[k].commas[state];
+			if (k > 0 && depth >= 1 && depth - 1 < commas.length && commas[depth - 1] >= 0) {
+				parts.add(new Part(in, start, commas[depth - 1], false));
+				start = commas[depth - 1] + 1;
+			}
+			depth += scans[k].depth[state];
+			state = scans[k].string[state] ? 1 : 0;
+		}
+		parts.add(new Part(in, start, to, true));
+		pool.invoke(new All(parts.toArray(new Part[parts.size()])));
+
+		JSONArray x = parts.get(0).x;
+		for (int i = 1; i < parts.size(); i++) x.join(parts.get(i).x);
+		return x;
+	}
+
+	private static JSONValue sequential(Input in) throws IOException {
+		JSONScanner json = in.scanner(0, in.size);
+		json.symbols = JSONSymbols.SHARED;
+		return json.parseValue();
+	}
+
+	private static final class All extends RecursiveAction {
+		private static final long serialVersionUID = 1L;
+
+		private final RecursiveAction[] tasks;
+
+		All(RecursiveAction[] tasks) {
+			this.tasks = tasks;
+		}
+
+		@Override
+		protected void compute() {
+			invokeAll(tasks);
+		}
+	}
+}
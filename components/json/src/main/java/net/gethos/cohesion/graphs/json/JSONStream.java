@@ -6,251 +6,238 @@
 package net.gethos.cohesion.graphs.json;
 
 import java.io.IOException;
-import java.io.PushbackReader;
+import java.io.InputStream;
 import java.io.Reader;
-import java.math.BigDecimal;
-import java.nio.CharBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.IllegalBlockingModeException;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.SelectableChannel;
+import java.util.ArrayDeque;
 import java.util.Iterator;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RejectedExecutionException;
 
 /**
  * Gethos Cohesion JSON Stream implementation, parsing sequential JSON values
- * off a reader.
+ * off a reader, a UTF-8 encoded input stream, or a memory mapped file.
+ * <p>
+ * The stream reads from the underlying source in blocks, into its own
+ * refillable window, and then scans tokens in place. A token that is split
+ * across two reads is handled by compacting (and if need be, growing) the
+ * window until the whole token is available.
+ * <p>
+ * The stream takes no locks of its own, and is meant to be used by a single
+ * thread at a time. Note that a {@link Reader} or buffered input stream
+ * handed to it may itself hold a monitor while it blocks on a read, which
+ * pins a virtual thread to its carrier, whereas a channel does not (see
+ * {@link #JSONStream(ReadableByteChannel)}). An unbuffered input stream,
+ * such as a socket's, needs no buffering in front of it, since the stream
+ * already reads in blocks.
+ * <p>
+ * Member names are returned from a symbol table, so that a name that
+ * repeats throughout the stream is only held once (see {@link JSONSymbols}).
+ * <p>
+ * Parts of each value can be left out, without being built, either via a
+ * projection of the members to keep (see {@link #setProjection(JSONProjection)}),
+ * or by extracting only the values at given pointers
+ * (see {@link #next(JSONExtractor)}).
+ * <p>
+ * Values may also be built in parallel (see {@link #setExecutor(Executor, int)}),
+ * while still being returned in the order in which they appear.
  * <p>
  * See: http://www.json.org/
- * 
+ *
  * @author {@literal Stewart Gebbie <sgebbie@gethos.net>}
  * @see JSON
  *
  */
 public class JSONStream implements Iterable<JSONValue> {
 
-	private static class Holder<T> {
-		public T value;
-	}
+	private final JSONScanner json;
 
-	private final PushbackReader json;
-	private final char[] keywordCharacters;
-	private final CharBuffer keyword;
+	private JSONProjection projection;
 
-	private int jsonPos;
+	private Executor executor;
+	private int ahead;
+	private final ArrayDeque<FutureTask<JSONValue>> pending = new ArrayDeque<FutureTask<JSONValue>>();
+	private boolean ended;
 
 	public JSONStream(Reader reader) {
-		this.keywordCharacters = new char[5];
-		this.keyword = CharBuffer.wrap(keywordCharacters);
-		this.json = new PushbackReader(reader, keywordCharacters.length);
-		this.jsonPos = 0;
+		this.json = new JSONCharScanner(reader);
+		this.json.symbols = new JSONSymbols();
 	}
 
-	public JSONValue next() {
-		return parse();
+	/**
+	 * Parse values directly off the UTF-8 encoded bytes of the input stream,
+	 * without first decoding them into characters.
+	 */
+	public JSONStream(InputStream in) {
+		this.json = new JSONUTF8Scanner(in);
+		this.json.symbols = new JSONSymbols();
 	}
 
-	private JSONValue parse() {
-		Holder<JSONValue> h = new Holder<JSONValue>();
+	/**
+	 * Parse values directly off the UTF-8 encoded bytes read from the
+	 * blocking channel, such as a {@link java.nio.channels.SocketChannel}.
+	 * <p>
+	 * The channel is read a block at a time into the stream's own buffer, and
+	 * neither the stream nor anything between it and the channel holds a
+	 * monitor while a read blocks. So, with one virtual thread per stream,
+	 * a stream that is waiting on its input does not pin a carrier thread.
+	 * The channel remains owned by the caller.
+	 *
+	 * @throws IllegalBlockingModeException if the channel is in non-blocking mode (see {@link JSONFeeder} for those)
+	 */
+	public JSONStream(ReadableByteChannel channel) {
+		// a non-blocking channel would have the stream spin on reads that return nothing
+		if (channel instanceof SelectableChannel && !((SelectableChannel)channel).isBlocking()) throw new IllegalBlockingModeException();
+		this.json = new JSONUTF8Scanner(channel);
+		this.json.symbols = new JSONSymbols();
+	}
+
+	/**
+	 * Parse values directly out of the UTF-8 encoded file, by memory mapping
+	 * the file from the channel's current position through to its end.
+	 * <p>
+	 * The file is mapped in chunks, so files larger than 2 GiB may be read.
+	 * The channel remains owned by the caller, and must be kept open for as
+	 * long as values are being read from the stream.
+	 */
+	public JSONStream(FileChannel channel) {
 		try {
-			jsonPos = parseValue(h, jsonPos);
+			this.json = new JSONUTF8Scanner(channel);
 		} catch (IOException e) {
-			throw new JSONException(String.format("I/O Error while parsing JSON from stream somewhere close to [%d]",jsonPos), e);
+			throw new JSONException("I/O Error while mapping JSON from file", e);
 		}
-		return h.value;
+		this.json.symbols = new JSONSymbols();
 	}
 
-	private int skipWhitespace(int from) throws IOException {
-		int pos = from;
-		for(;;) {
-			int c = json.read();
-			pos++;
-			if (!Character.isWhitespace(c)) {
-				if (c != -1) {
-					json.unread(c);
-					pos--;
-				}
-				break;
-			}
-		}
-		return pos;
+	/**
+	 * Replace the stream's own table of member names, for example with one
+	 * that is shared between streams, or that caches short values too.
+	 *
+	 * @param symbols the table, or null to not cache member names at all
+	 */
+	public void setSymbols(JSONSymbols symbols) {
+		json.symbols = symbols;
 	}
 
-	private int parseValue(Holder<JSONValue> holder, int from) throws IOException {
-
-		int pos = skipWhitespace(from);
-
-		keyword.clear();
-		int r = json.read(keyword);
-		if (r == -1) { holder.value = null; return pos; } // end-of-stream
-		pos += r;
-		if (r == 4 || r == 5) {
-			String k = new String(keywordCharacters);
-			if (k.startsWith(JSONNull.NULL))     { holder.value = JSONNull.JSON_NULL;     json.unread(keywordCharacters, 4, r-4); return from + 4; }
-			if (k.startsWith(JSONBoolean.FALSE)) { holder.value = JSONBoolean.JSON_FALSE; json.unread(keywordCharacters, 5, r-5); return from + 5; }
-			if (k.startsWith(JSONBoolean.TRUE))  { holder.value = JSONBoolean.JSON_TRUE;  json.unread(keywordCharacters, 4, r-4); return from + 4; }
-		}
-		// not a keyword
-		pos -= r;
-		json.unread(keywordCharacters, 0, r);
-
-
-		int c = json.read(); pos++;
-		json.unread(c); pos--;
-		if (c == -1) { holder.value = null; return pos; }  // end-of-stream
-		if (c == '"')                           { return parseString(holder, pos); }
-		if (c == '-' || (c >= '0' && c <= '9')) { return parseNumber(holder, pos); }
-		if (c == '{')                           { return parseObject(holder, pos); }
-		if (c == '[')                           { return parseArray (holder, pos); }
-
-		throw new JSONException(String.format("Unexpected character {%s} while parsing value [%d]",(char)c,pos));
+	/**
+	 * Keep only the members in the projection of each value that follows,
+	 * passing over the rest without building them.
+	 *
+	 * @param projection the members to keep, or null to keep everything
+	 */
+	public void setProjection(JSONProjection projection) {
+		this.projection = projection;
 	}
 
-	private int parseObject(Holder<JSONValue> holder, int from) throws IOException {
-		int pos = from;
-		int c;
-		c = json.read(); pos++;
-		if (c != '{') {
-			pos--;
-			json.unread(c);
-			throw new JSONException(String.format("No object while parsing [%d]",from));
-		}
-
-		JSONObject x = new JSONObject();
-
-		for(;;) {
-			pos = skipWhitespace(pos);
-			c = json.read(); pos++;
-			if (c == '}') {
-				break;
-			} else {
-				pos--;
-				json.unread(c);
-			}
-			pos = parseString(holder, pos);
-			if (holder.value == null || !holder.value.isString() || holder.value.asString().value == null) throw new JSONException(String.format("Unable to read member name while parsing at %d in [%d]",pos,from));
-			String member = holder.value.asString().value;
-			pos = skipWhitespace(pos);
-			c = json.read(); pos++;
-			if (c != ':') {
-				pos--;
-				json.unread(c);
-				throw new JSONException(String.format("Unexpected character {%s} (expected ':') while parsing array at %d in [%d]",c,pos-1,from));
-			}
-			pos = skipWhitespace(pos);
-			pos = parseValue(holder, pos);
-			x.put(member,holder.value);
-			pos = skipWhitespace(pos);
-			c = json.read(); pos++;
-			if (c == ',') continue;
-			else if (c == '}') break;
-			else {
-				pos--;
-				json.unread(c);
-				throw new JSONException(String.format("Unexpected character {%s} (expected ',' or '}') while parsing array at %d in [%d]",c,pos,from));
-			}
-		}
-
-		holder.value = x;
-
-		return pos;
+	/**
+	 * Build the values that follow in parallel, on the executor, such as a
+	 * {@link java.util.concurrent.ForkJoinPool} or a virtual thread per task
+	 * executor.
+	 * <p>
+	 * The calling thread finds where each value ends, by counting brackets
+	 * and quotes, and hands a copy of the value to the executor to be built.
+	 * At most {@code ahead} values are read ahead of the one being returned,
+	 * which bounds the memory held by values that have not yet been asked
+	 * for. The values are returned in the order in which they appear, and
+	 * errors are reported at the value in which they occur, as they would be
+	 * if the values were built one after the other.
+	 * <p>
+	 * The symbols and projection of the stream are shared by all the tasks,
+	 * and so must not be changed while values are being read ahead.
+	 *
+	 * @param executor the executor, or null to build the values one after the other, on the calling thread
+	 * @param ahead the number of values to read ahead, at least 1
+	 */
+	public void setExecutor(Executor executor, int ahead) {
+		if (executor != null && ahead < 1) throw new IllegalArgumentException(String.format("Read ahead must be at least 1, not [%d]",ahead));
+		this.executor = executor;
+		this.ahead = ahead;
 	}
 
-	private int parseArray(Holder<JSONValue> holder, int from) throws IOException {
+	public JSONValue next() {
+		return parse();
+	}
 
-		int pos = from;
-		int c;
-		c = json.read(); pos++;
-		if (c != '[') {
-			pos--;
-			json.unread(c);
-			throw new JSONException(String.format("No array while parsing [%d]",from));
+	/**
+	 * Extract the values identified by the extractor's pointers from the
+	 * next value, passing over the rest of the value without building it.
+	 *
+	 * @return the value identified by each pointer, or null where there is none, or null at the end of the stream
+	 */
+	public JSONValue[] next(JSONExtractor extractor) {
+		if (!pending.isEmpty()) throw new IllegalStateException("Values have already been read ahead by the executor");
+		try {
+			return extractor.extract(json);
+		} catch (IOException e) {
+			throw new JSONException(String.format("I/O Error while parsing JSON from stream somewhere close to [%d]",json.position()), e);
 		}
+	}
 
-		JSONArray x = new JSONArray();
-
-		for(;;) {
-			pos = skipWhitespace(pos);
-			c = json.read(); pos++;
-			if (c == ']') {
-				break;
-			} else {
-				pos--;
-				json.unread(c);
+	private JSONValue parse() {
+		if (executor == null && pending.isEmpty()) {
+			try {
+				return json.parseValue(projection);
+			} catch (IOException e) {
+				throw new JSONException(String.format("I/O Error while parsing JSON from stream somewhere close to [%d]",json.position()), e);
 			}
-			pos = parseValue(holder, pos);
-			x.add(holder.value);
-			pos = skipWhitespace(pos);
-			c = json.read(); pos++;
-			if (c == ',') continue;
-			else if (c == ']') break;
-			else throw new JSONException(String.format("Unexpected character {%s} (expected ',' or ']') while parsing array at %d in [%d].",c,pos,from));
 		}
-
-		holder.value = x;
-
-		return pos;
+		if (executor != null) readAhead();
+		FutureTask<JSONValue> task = pending.poll();
+		if (task == null) return null;
+		try {
+			return task.get();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new JSONException("Interrupted while waiting for JSON value to be parsed", e);
+		} catch (ExecutionException e) {
+			Throwable cause = e.getCause();
+			if (cause instanceof RuntimeException) throw (RuntimeException)cause;
+			if (cause instanceof Error) throw (Error)cause;
+			throw new JSONException("Error while parsing JSON from stream", cause);
+		}
 	}
 
-	private int parseNumber(Holder<JSONValue> holder, int from) throws IOException {
-
-		int pos = from;
-
-		int c;
-		StringBuilder x = new StringBuilder();
-		number:
-		{
-			// find the end of the number
-			c = json.read(); pos++;
-			if (c == -1) break number;
-			if (c == '-') { x.append((char)c); c = json.read(); pos++; } // is negative
-			if (c == -1) break number;
-			if (c == '0') { x.append((char)c); c = json.read(); pos++; } // is zero
-			if (c == -1) break number;
-			if (c >= '1' && c <= '9') do { x.append((char)c); c = json.read(); pos++; } while (c != -1 && c >= '0' && c <= '9'); // significand
-			if (c == -1) break number;
-			if (c == '.') {
-				do { x.append((char)c); c = json.read(); pos++; } while (c != -1 && c >= '0' && c <= '9'); // fractional significand
+	/**
+	 * Slice off and submit values until there are enough in hand.
+	 */
+	private void readAhead() {
+		while (!ended && pending.size() < ahead) {
+			final JSONScanner slice;
+			try {
+				slice = json.sliceValue();
+			} catch (IOException e) {
+				throw new JSONException(String.format("I/O Error while parsing JSON from stream somewhere close to [%d]",json.position()), e);
 			}
-			if (c == -1) break number;
-			if (c == 'e' || c == 'E') { // exponent
-				x.append((char)c);
-				c = json.read(); pos++;
-				// check for sign
-				if (c == '+') { x.append((char)c); c = json.read(); pos++; }
-				else if (c == '-') { x.append((char)c); c = json.read(); pos++; }
-				while (c != -1 && c >= '0' && c <= '9') { x.append((char)c); c = json.read(); pos++; } // exponent value
+			if (slice == null) {
+				ended = true;
+				break;
 			}
-			if (c != -1) { json.unread((char)c); pos--; }
-		}
-
-		// parse out the number
-		BigDecimal n = new BigDecimal(x.toString());
-
-		holder.value = new JSONNumber(n);
-
-		return pos;
-	}
-
-	private int parseString(Holder<JSONValue> holder, int from) throws IOException {
-
-		int pos = from;
-		int c = json.read(); pos++;
-		if (c == -1) throw new JSONException(String.format("End-of-stream while pasring string [%d].", from));
-		if (c != '"') {
-			pos--;
-			json.unread(c);
-			throw new JSONException(String.format("No string while parsing [%d]",from));
-		}
-
-		StringBuilder escaped = new StringBuilder();
-		for(;;) {
-			c = json.read(); pos++;
-			if (c == -1) throw new JSONException(String.format("End-of-stream while pasring string [%d].", from));
-			if (c == '"') break;
-			escaped.append((char)c);
-			if (c == '\\') { c = json.read(); pos++; escaped.append((char)c); }
+			slice.symbols = json.symbols;
+			final JSONProjection projection = this.projection;
+			FutureTask<JSONValue> task = new FutureTask<JSONValue>(new Callable<JSONValue>() {
+				@Override
+				public JSONValue call() throws IOException {
+					JSONValue v = slice.parseValue(projection);
+					slice.skipWhitespace();
+					int c = slice.peek();
+					if (c != -1) throw new JSONException(String.format("Unexpected character {%s} while parsing value [%d]",(char)c,slice.position()));
+					return v;
+				}
+			});
+			try {
+				executor.execute(task);
+			} catch (RejectedExecutionException e) {
+				// the task would never run, so it must not be waited on
+				throw new JSONException(String.format("Executor rejected the parsing of a JSON value somewhere close to [%d]",json.position()), e);
+			}
+			pending.add(task);
 		}
-
-		JSONString.unescape(escaped);
-		holder.value = new JSONString(escaped.toString());
-
-		return pos;
 	}
 
 	@Override
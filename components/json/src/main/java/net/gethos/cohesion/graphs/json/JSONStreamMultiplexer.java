@@ -0,0 +1,333 @@
+/**
+ * Cohesion Framework - JSON Library
+ * Copyright (c) 2017 - Stewart Gebbie, Gethos. Licensed under the MIT licence.
+ * vim: set ts=4 sw=0:
+ */
+package net.gethos.cohesion.graphs.json;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.CancelledKeyException;
+import java.nio.channels.ClosedSelectorException;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.SelectableChannel;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.util.Iterator;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Gethos Cohesion JSON stream multiplexer, reading back-to-back JSON values
+ * off many non-blocking channels with a small, fixed set of threads.
+ * <p>
+ * Each thread owns a {@link Selector}, and each channel is assigned to one
+ * of them when it is registered. When a channel is readable, its thread
+ * reads whatever has arrived, into a buffer shared by all of its channels,
+ * and feeds it to the channel's own {@link JSONFeeder}, which carries any
+ * partly received value over to the next read. So, the memory held for an
+ * idle connection is no more than its partly received value. All of the
+ * feeders share one table of member names.
+ * <p>
+ * Each completed value is passed to the handler on the executor, in order
+ * for each channel, and concurrently across channels. Once a channel has
+ * {@code backlog} values waiting for, or in, the handler, its thread stops
+ * reading it, so that the sender is pushed back on, until the handler has
+ * caught up to half of the backlog.
+ * <p>
+ * When a channel reaches the end of its input, or its input can not be
+ * read or parsed, it is dropped from the selector, and the handler is told
+ * so after the values that came before. If the handler throws an exception
+ * for a value, the channel is dropped in the same way, and the exception
+ * passed back to the handler, as a failure. Channels remain owned by the
+ * caller, and are not closed.
+ * <pre>
+ * JSONStreamMultiplexer m = new JSONStreamMultiplexer(handler, executor, 2, 64);
+ * for (;;) m.register(server.accept());
+ * </pre>
+ *
+ * @author {@literal Stewart Gebbie <sgebbie@gethos.net>}
+ * @see JSONFeeder
+ *
+ */
+public final class JSONStreamMultiplexer implements Closeable {
+
+	/**
+	 * Receives the values of each channel, in order.
+	 */
+	public interface Handler {
+
+		void value(SelectableChannel channel, JSONValue value);
+
+		/**
+		 * The channel reached the end of its input, after its last value.
+		 */
+		void closed(SelectableChannel channel);
+
+		/**
+		 * The channel could not be read, or its input could not be parsed.
+		 */
+		void failed(SelectableChannel channel, Throwable e);
+	}
+
+	private static final int BUFFER_SIZE = 64 * 1024;
+
+	private final Handler handler;
+	private final Executor executor;
+	private final int backlog;
+	private final JSONSymbols symbols;
+	private final Loop[] loops;
+	private final AtomicInteger next;
+
+	/**
+	 * @param handler receives the values of each channel
+	 * @param executor runs the handler
+	 * @param threads the number of selector threads
+	 * @param backlog the number of values of a channel waiting for the handler at which to stop reading it
+	 * @throws IOException if a selector can not be opened
+	 */
+	public JSONStreamMultiplexer(Handler handler, Executor executor, int threads, int backlog) throws IOException {
+		if (handler == null) throw new NullPointerException("handler");
+		if (executor == null) throw new NullPointerException("executor");
+		if (threads < 1) throw new IllegalArgumentException(String.format("Threads must be at least 1, not [%d]",threads));
+		if (backlog < 1) throw new IllegalArgumentException(String.format("Backlog must be at least 1, not [%d]",backlog));
+		this.handler = handler;
+		this.executor = executor;
+		this.backlog = backlog;
+		this.symbols = new JSONSymbols();
+		this.loops = new Loop[threads];
+		this.next = new AtomicInteger();
+		for (int i = 0; i < threads; i++) this.loops[i] = new Loop(Selector.open(), i);
+		for (Loop l : loops) l.thread.start();
+	}
+
+	/**
+	 * Start reading values off the channel, which is switched to
+	 * non-blocking mode.
+	 */
+	public <C extends SelectableChannel & ReadableByteChannel> void register(C channel) throws IOException {
+		channel.configureBlocking(false);
+		final Connection c = new Connection(channel, loops[(next.getAndIncrement() & Integer.MAX_VALUE) % loops.length]);
+		c.loop.submit(new Runnable() {
+			@Override
+			public void run() {
+				try {
+					c.key = c.channel.register(c.loop.selector, SelectionKey.OP_READ, c);
+				} catch (IOException e) {
+					c.fail(e);
+				}
+			}
+		});
+	}
+
+	/**
+	 * Stop the selector threads. The channels are not closed, and values
+	 * already read are still passed to the handler.
+	 */
+	@Override
+	public void close() throws IOException {
+		for (Loop l : loops) {
+			l.open = false;
+			l.selector.wakeup();
+		}
+	}
+
+	/**
+	 * A selector and the thread that owns it.
+	 */
+	private final class Loop implements Runnable {
+
+		final Selector selector;
+		final Thread thread;
+		final ByteBuffer buffer;
+		final ConcurrentLinkedQueue<Runnable> tasks;
+
+		volatile boolean open;
+
+		Loop(Selector selector, int i) {
+			this.selector = selector;
+			this.buffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+			this.tasks = new ConcurrentLinkedQueue<Runnable>();
+			this.open = true;
+			this.thread = new Thread(this, "json-multiplexer-" + i);
+			this.thread.setDaemon(true);
+		}
+
+		/**
+		 * Run the task on this loop's thread.
+		 */
+		void submit(Runnable task) {
+			tasks.add(task);
+			selector.wakeup();
+		}
+
+		@Override
+		public void run() {
+			try {
+				while (open) {
+					selector.select();
+					for (Runnable t = tasks.poll(); t != null; t = tasks.poll()) t.run();
+					Iterator<SelectionKey> i = selector.selectedKeys().iterator();
+					while (i.hasNext()) {
+						SelectionKey k = i.next();
+						i.remove();
+						try {
+							if (k.isReadable()) ((Connection)k.attachment()).read(buffer);
+						} catch (CancelledKeyException e) {
+							// dropped while selected
+						}
+					}
+				}
+			} catch (IOException e) {
+				for (SelectionKey k : selector.keys()) ((Connection)k.attachment()).fail(e);
+			} catch (ClosedSelectorException e) {
+				// closed
+			} finally {
+				try {
+					selector.close();
+				} catch (IOException e) {
+					// nothing more to do
+				}
+			}
+		}
+	}
+
+	/**
+	 * A channel, its parse state, and the values waiting for the handler.
+	 */
+	private final class Connection implements Runnable {
+
+		final SelectableChannel channel;
+		final Loop loop;
+		final JSONFeeder feeder;
+		final ConcurrentLinkedQueue<Object> events; // values, then possibly a final Throwable, or the channel itself for the end
+		final AtomicInteger waiting;                // values queued or in the handler
+		final AtomicInteger scheduled;              // requests to drain the events, while a drain is running
+		final AtomicBoolean paused;
+
+		SelectionKey key;
+		volatile boolean dropped;
+
+		Connection(SelectableChannel channel, Loop loop) {
+			this.channel = channel;
+			this.loop = loop;
+			this.feeder = new JSONFeeder();
+			this.feeder.setSymbols(symbols);
+			this.events = new ConcurrentLinkedQueue<Object>();
+			this.waiting = new AtomicInteger();
+			this.scheduled = new AtomicInteger();
+			this.paused = new AtomicBoolean();
+		}
+
+		/**
+		 * Read what has arrived, on the loop's thread.
+		 */
+		void read(ByteBuffer buffer) {
+			buffer.clear();
+			int n = 0;
+			try {
+				int r = ((ReadableByteChannel)channel).read(buffer);
+				if (r > 0) {
+					buffer.flip();
+					feeder.feed(buffer);
+				} else if (r < 0) {
+					feeder.end();
+				}
+				for (JSONValue v = feeder.next(); v != null; v = feeder.next()) {
+					events.add(v);
+					n++;
+				}
+				if (r < 0) {
+					key.cancel();
+					events.add(channel);
+				}
+			} catch (IOException e) {
+				fail(e);
+			} catch (RuntimeException e) {
+				// the values before the failure are still passed on
+				for (JSONValue v = feeder.next(); v != null; v = feeder.next()) {
+					events.add(v);
+					n++;
+				}
+				fail(e);
+			}
+			if (n > 0 && waiting.addAndGet(n) >= backlog && key.isValid()) {
+				paused.set(true);
+				key.interestOps(0);
+				// the handler may have caught up in the meantime
+				if (waiting.get() <= backlog / 2) resume();
+			}
+			schedule();
+		}
+
+		void fail(Throwable e) {
+			if (key != null) key.cancel();
+			events.add(e);
+			schedule();
+		}
+
+		/**
+		 * Stop reading the channel, and pass nothing more to the handler.
+		 */
+		private void drop(Throwable e) {
+			dropped = true;
+			loop.submit(new Runnable() {
+				@Override
+				public void run() {
+					if (key != null) key.cancel();
+				}
+			});
+			handler.failed(channel, e);
+		}
+
+		void resume() {
+			if (!paused.compareAndSet(true, false)) return;
+			if (Thread.currentThread() == loop.thread) {
+				if (key.isValid()) key.interestOps(SelectionKey.OP_READ);
+				return;
+			}
+			loop.submit(new Runnable() {
+				@Override
+				public void run() {
+					if (key.isValid()) key.interestOps(SelectionKey.OP_READ);
+				}
+			});
+		}
+
+		private void schedule() {
+			if (scheduled.getAndIncrement() == 0) executor.execute(this);
+		}
+
+		/**
+		 * Pass the events to the handler, in order, on the executor.
+		 */
+		@Override
+		public void run() {
+			int missed = 1;
+			for (;;) {
+				for (Object e = events.poll(); e != null; e = events.poll()) {
+					if (dropped) {
+						// the handler failed, so the rest is discarded
+						if (e instanceof JSONValue) waiting.decrementAndGet();
+					} else if (e instanceof JSONValue) {
+						try {
+							handler.value(channel, (JSONValue)e);
+						} catch (RuntimeException x) {
+							drop(x);
+						}
+						if (waiting.decrementAndGet() <= backlog / 2) resume();
+					} else if (e instanceof Throwable) {
+						handler.failed(channel, (Throwable)e);
+					} else {
+						handler.closed(channel);
+					}
+				}
+				missed = scheduled.addAndGet(-missed);
+				if (missed == 0) return;
+			}
+		}
+	}
+}
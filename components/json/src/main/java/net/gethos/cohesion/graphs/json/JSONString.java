@@ -5,6 +5,8 @@
  */
 package net.gethos.cohesion.graphs.json;
 
+import java.io.IOException;
+
 /**
  * Gethos Cohesion JSON implementation.
  * <p>
@@ -35,13 +37,29 @@ public class JSONString extends JSONValue {
 	private static final char ESC_DOUBLEQUOTE = '"';
 	private static final char ESC_TAB = 't';
 
+	/**
+	 * For each ASCII character, the character that follows the '\' in its
+	 * escaped form, 'u' for the other control characters, or
+	 * 0 if it is written as is.
+	 */
+	private static final char[] ESCAPES = new char[128];
+	static {
+		for (int c = 0; c < 0x20; c++) ESCAPES[c] = UNICODEHEX;
+		ESCAPES[BACKSLASH] = ESC_BACKSLASH;
+		ESCAPES[DOUBLEQUOTE] = ESC_DOUBLEQUOTE;
+		ESCAPES[NEWLINE] = ESC_NEWLINE;
+		ESCAPES[CARRIAGERETURN] = ESC_CARRIAGERETURN;
+		ESCAPES[BACKSPACE] = ESC_BACKSPACE;
+		ESCAPES[FORMFEED] = ESC_FORMFEED;
+		ESCAPES[TAB] = ESC_TAB;
+	}
+
+	private static final char[] HEX = "0123456789abcdef".toCharArray();
 
 	public final String value;
-	private String escaped;
 
 	public JSONString(String value) {
 		this.value = value;
-		this.escaped = null;
 	}
 
 	@Override
@@ -56,10 +74,19 @@ public class JSONString extends JSONValue {
 
 	@Override
 	void toString(StringBuilder text) {
-		escape();
-		text.append("\"");
-		text.append(escaped);
-		text.append("\"");
+		text.append('"');
+		escape(value, text);
+		text.append('"');
+	}
+
+	@Override
+	void writeTo(JSONWriter out) throws IOException {
+		out.value(value);
+	}
+
+	@Override
+	void encodeTo(JSONBinaryWriter out) throws IOException {
+		out.value(value);
 	}
 
 	@Override
@@ -75,116 +102,169 @@ public class JSONString extends JSONValue {
 		return false;
 	}
 
-	private void escape() {
-		if (escaped == null) escaped = escape(value);
-	}
-
+	/**
+	 * Escape the string for use between the quotes of a JSON string.
+	 *
+	 * @return the escaped string, or the string itself if nothing needs escaping
+	 */
 	public static String escape(String unescaped) {
 		if (unescaped == null) return null;
-		StringBuilder x = new StringBuilder(unescaped);
-		loop:
-			for(int i = 0; i < x.length(); i++) {
-				char c = x.charAt(i);
-				char r;
-				switch(c) {
-					case BACKSLASH:
-						r = ESC_BACKSLASH;
-						break;
-					case DOUBLEQUOTE:
-						r = ESC_DOUBLEQUOTE;
-						break;
-					case NEWLINE:
-						r = ESC_NEWLINE;
-						break;
-					case CARRIAGERETURN:
-						r = ESC_CARRIAGERETURN;
-						break;
-					case BACKSPACE:
-						r = ESC_BACKSPACE;
-						break;
-					case FORMFEED:
-						r = ESC_FORMFEED;
-						break;
-					case TAB:
-						r = ESC_TAB;
-						break;
-					default:
-						continue loop;
-				}
+		int n = unescaped.length();
+		int i = plain(unescaped, 0, n);
+		if (i == n) return unescaped;
+		StringBuilder x = new StringBuilder(n + 16);
+		escape(unescaped, i, x);
+		return x.toString();
+	}
 
-				// insert a '\' and replace the character with its escaped version
-				x.insert(i, BACKSLASH);
-				i++;
-				x.setCharAt(i, r);
-			}
+	/**
+	 * Append the escaped string to the text.
+	 */
+	static void escape(String unescaped, StringBuilder text) {
+		escape(unescaped, plain(unescaped, 0, unescaped.length()), text);
+	}
+
+	/**
+	 * @param i the index of the first character that needs escaping
+	 */
+	private static void escape(String unescaped, int i, StringBuilder text) {
+		int n = unescaped.length();
+		int from = 0;
+		char[] seq = new char[6];
+		while (i < n) {
+			text.append(unescaped, from, i);
+			text.append(seq, 0, escape(unescaped.charAt(i), seq, 0));
+			from = i + 1;
+			i = plain(unescaped, from, n);
+		}
+		text.append(unescaped, from, n);
+	}
+
+	/**
+	 * @return the index of the first character, from {@code from}, that needs escaping, or {@code to} if there is none
+	 */
+	static int plain(String s, int from, int to) {
+		for (int i = from; i < to; i++) {
+			char c = s.charAt(i);
+			if (c < 128 && ESCAPES[c] != 0) return i;
+		}
+		return to;
+	}
 
-		if (x.length() == unescaped.length()) return unescaped;
-		else return x.toString();
+	/**
+	 * Write the escaped form of a character that needs escaping, which is
+	 * at most 6 characters long.
+	 *
+	 * @return the index after the escaped form
+	 */
+	static int escape(char c, char[] out, int at) {
+		char r = ESCAPES[c];
+		out[at++] = BACKSLASH;
+		out[at++] = r;
+		if (r == UNICODEHEX) {
+			out[at++] = '0';
+			out[at++] = '0';
+			out[at++] = HEX[c >> 4];
+			out[at++] = HEX[c & 0xF];
+		}
+		return at;
 	}
 
 	public static String unescape(String escaped) {
+		if (escaped == null) return null;
 		return unescape(escaped,0,escaped.length());
 	}
 
+	/**
+	 * Unescape the characters held between {@code from} and {@code to}.
+	 *
+	 * @return the unescaped string, which is the string itself if the whole of it is taken and has no escapes
+	 */
 	public static String unescape(String escaped, int from, int to) {
 		if (escaped == null) return null;
-		StringBuilder x = new StringBuilder();
-		char[] chars = new char[to-from];
-		escaped.getChars(from, to, chars, 0);
-		x.append(chars);
-		unescape(x);
-		if (x.length() == escaped.length()) return escaped;
-		else return x.toString();
+		int i = from;
+		while (i < to && escaped.charAt(i) != BACKSLASH) i++; // look no further than the range
+		if (i == to) return from == 0 && to == escaped.length() ? escaped : escaped.substring(from, to);
+		StringBuilder x = new StringBuilder(to - from);
+		x.append(escaped, from, to);
+		unescape(x, i - from);
+		return x.toString();
 	}
 
 	static void unescape(StringBuilder x) {
-		for(int i = 0; i < x.length(); i++) {
-			if (x.charAt(i) == BACKSLASH) {
-				x.deleteCharAt(i); // delete the '\'
-				char c = x.charAt(i);
-				char r;
-				switch(c) {
-					case ESC_BACKSLASH:
-						r = BACKSLASH;
-						break;
-					case ESC_FORWARDSLASH:
-						r = FORWARDSLASH;
-						break;
-					case ESC_DOUBLEQUOTE:
-						r = DOUBLEQUOTE;
-						break;
-					case ESC_NEWLINE:
-						r = NEWLINE;
-						break;
-					case ESC_CARRIAGERETURN:
-						r = CARRIAGERETURN;
-						break;
-					case ESC_BACKSPACE:
-						r = BACKSPACE;
-						break;
-					case ESC_FORMFEED:
-						r = FORMFEED;
-						break;
-					case ESC_TAB:
-						r = TAB;
-						break;
-					case UNICODEHEX:
-					{
-						String hex = x.substring(i+1, i+5);
-						x.delete(i, i+4);
-						try {
-							int l = Integer.parseInt(hex, 16);
-							r = (char)l;
-						} catch (NumberFormatException e) {
-							throw new JSONException(String.format("Unexpected parsable hex code escape character {%s} at index [%d]",hex,i),e);
-						}
-						break;
-					}
-					default:
-						throw new JSONException(String.format("Unexpected escape character {%s} at index [%d]",c,i));
+		int i = x.indexOf("\\");
+		if (i >= 0) unescape(x, i);
+	}
+
+	/**
+	 * Unescape the text in place, in a single pass, reading ahead of where
+	 * the unescaped characters are written. A character outside of the
+	 * basic plane, escaped as its surrogate pair of code units, is decoded
+	 * one unit at a time back into the pair.
+	 *
+	 * @param i the index of the first '\'
+	 */
+	private static void unescape(StringBuilder x, int i) {
+		int n = x.length();
+		int w = i;
+		while (i < n) {
+			char c = x.charAt(i++);
+			if (c != BACKSLASH) {
+				x.setCharAt(w++, c);
+				continue;
+			}
+			if (i == n) throw new JSONException(String.format("Unexpected end of escape at index [%d]",i - 1));
+			c = x.charAt(i++);
+			char r;
+			switch(c) {
+				case ESC_BACKSLASH:
+					r = BACKSLASH;
+					break;
+				case ESC_FORWARDSLASH:
+					r = FORWARDSLASH;
+					break;
+				case ESC_DOUBLEQUOTE:
+					r = DOUBLEQUOTE;
+					break;
+				case ESC_NEWLINE:
+					r = NEWLINE;
+					break;
+				case ESC_CARRIAGERETURN:
+					r = CARRIAGERETURN;
+					break;
+				case ESC_BACKSPACE:
+					r = BACKSPACE;
+					break;
+				case ESC_FORMFEED:
+					r = FORMFEED;
+					break;
+				case ESC_TAB:
+					r = TAB;
+					break;
+				case UNICODEHEX:
+				{
+					// any digit that is not hex makes the code negative
+					int l = i + 4 <= n ? hex(x.charAt(i)) << 12 | hex(x.charAt(i+1)) << 8 | hex(x.charAt(i+2)) << 4 | hex(x.charAt(i+3)) : -1;
+					if (l < 0) throw new JSONException(String.format("Unexpected parsable hex code escape character {%s} at index [%d]",x.substring(i, Math.min(n, i+4)),i - 2));
+					r = (char)l;
+					i += 4;
+					break;
 				}
-				x.setCharAt(i, r);
+				default:
+					throw new JSONException(String.format("Unexpected escape character {%s} at index [%d]",c,i - 2));
 			}
+			x.setCharAt(w++, r);
 		}
+		x.setLength(w);
+	}
+
+	/**
+	 * @return the value of the hex digit, or -1 if it is not one
+	 */
+	private static int hex(char c) {
+		if (c >= '0' && c <= '9') return c - '0';
+		if (c >= 'a' && c <= 'f') return c - 'a' + 10;
+		if (c >= 'A' && c <= 'F') return c - 'A' + 10;
+		return -1;
 	}
 }
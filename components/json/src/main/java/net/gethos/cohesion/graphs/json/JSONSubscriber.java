@@ -0,0 +1,108 @@
+/**
+ * Cohesion Framework - JSON Library
+ * Copyright (c) 2017 - Stewart Gebbie, Gethos. Licensed under the MIT licence.
+ * vim: set ts=4 sw=0:
+ */
+package net.gethos.cohesion.graphs.json;
+
+import java.io.IOException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Flow;
+
+/**
+ * Gethos Cohesion JSON subscriber, writing each value that it is sent to a
+ * {@link JSONWriter}, as a top-level value of its own.
+ * <p>
+ * Values are requested in batches, topping the demand back up once half of
+ * a batch has been written, so that a fast publisher can never get more
+ * than a batch ahead of the writer.
+ * <p>
+ * When the publisher completes, the writer is flushed (but not closed),
+ * and the future completes with the number of values written. If the
+ * publisher fails, or a value can not be written, the future completes
+ * exceptionally, and in the latter case the subscription is cancelled.
+ *
+ * @author {@literal Stewart Gebbie <sgebbie@gethos.net>}
+ * @see JSONPublisher
+ *
+ */
+public final class JSONSubscriber implements Flow.Subscriber<JSONValue> {
+
+	private final JSONWriter out;
+	private final int batch;
+	private final int refill;
+	private final CompletableFuture<Long> done;
+
+	private Flow.Subscription subscription;
+	private long written;
+	private int pending; // values written since the demand was last topped up
+
+	/**
+	 * @param out the writer
+	 * @param batch the number of values to request at a time
+	 */
+	public JSONSubscriber(JSONWriter out, int batch) {
+		if (out == null) throw new NullPointerException("out");
+		if (batch < 1) throw new IllegalArgumentException(String.format("Batch must be at least 1, not [%d]",batch));
+		this.out = out;
+		this.batch = batch;
+		this.refill = Math.max(1, batch / 2);
+		this.done = new CompletableFuture<Long>();
+	}
+
+	/**
+	 * @return completes with the number of values written, once the publisher completes
+	 */
+	public CompletableFuture<Long> done() {
+		return done;
+	}
+
+	@Override
+	public void onSubscribe(Flow.Subscription subscription) {
+		if (this.subscription != null) {
+			subscription.cancel();
+			return;
+		}
+		this.subscription = subscription;
+		subscription.request(batch);
+	}
+
+	@Override
+	public void onNext(JSONValue value) {
+		if (done.isDone()) return;
+		try {
+			out.value(value);
+		} catch (IOException e) {
+			subscription.cancel();
+			done.completeExceptionally(new JSONException(String.format("I/O Error while writing JSON value [%d]",written), e));
+			return;
+		}
+		written++;
+		if (++pending == refill) {
+			pending = 0;
+			subscription.request(refill);
+		}
+	}
+
+	@Override
+	public void onError(Throwable e) {
+		try {
+			out.flush();
+		} catch (IOException x) {
+			e.addSuppressed(x);
+		}
+		done.completeExceptionally(e);
+	}
+
+	@Override
+	public void onComplete() {
+		if (done.isDone()) return;
+		try {
+			out.flush();
+		} catch (IOException e) {
+			done.completeExceptionally(new JSONException("I/O Error while flushing JSON", e));
+			return;
+		}
+		done.complete(written);
+	}
+}
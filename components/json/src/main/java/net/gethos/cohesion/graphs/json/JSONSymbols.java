@@ -0,0 +1,151 @@
+/**
+ * Cohesion Framework - JSON Library
+ * Copyright (c) 2017 - Stewart Gebbie, Gethos. Licensed under the MIT licence.
+ * vim: set ts=4 sw=0:
+ */
+package net.gethos.cohesion.graphs.json;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Gethos Cohesion JSON symbol table, used by the parsers to return a single
+ * canonical String for each repeated object member name.
+ * <p>
+ * A candidate name is hashed and compared straight out of the parser's
+ * buffer, so that a name that has been seen before costs no allocation.
+ * The table is a fixed-size, direct-mapped cache: a new name simply
+ * replaces whichever name was in its slot, so the table never grows, and
+ * names longer than {@link #MAX_LENGTH} are not cached at all.
+ * <p>
+ * A table may be shared between parsers, and between threads. Slots are
+ * read and replaced without locking, which at worst causes a miss, and
+ * never a wrong result, since every hit is checked against the candidate.
+ * <p>
+ * Optionally, short string values (up to {@link #MAX_VALUE_LENGTH}
+ * characters), such as enumerations and status codes, can be cached too.
+ *
+ * @author {@literal Stewart Gebbie <sgebbie@gethos.net>}
+ * @see JSONStream#setSymbols(JSONSymbols)
+ * @see JSONReader#setSymbols(JSONSymbols)
+ *
+ */
+public class JSONSymbols {
+
+	public static final int DEFAULT_SIZE = 1024;
+	public static final int MAX_LENGTH = 64;
+	public static final int MAX_VALUE_LENGTH = 16;
+
+	/**
+	 * The table shared by the static {@link JSON} parse methods.
+	 */
+	static final JSONSymbols SHARED = new JSONSymbols();
+
+	private final String[] table;
+	private final int mask;
+	private final boolean values;
+
+	public JSONSymbols() {
+		this(DEFAULT_SIZE, false);
+	}
+
+	/**
+	 * @param size the number of slots, rounded up to a power of two
+	 * @param values also cache short string values
+	 */
+	public JSONSymbols(int size, boolean values) {
+		int n = Integer.highestOneBit(Math.max(size, 2) - 1) << 1;
+		this.table = new String[n];
+		this.mask = n - 1;
+		this.values = values;
+	}
+
+	/**
+	 * @return true if short string values are cached, as well as member names
+	 */
+	public boolean cachesValues() {
+		return values;
+	}
+
+	/**
+	 * @return true if a string value of this length should be looked up
+	 */
+	boolean cachesValue(int len) {
+		return values && len <= MAX_VALUE_LENGTH;
+	}
+
+	private int slot(int h) {
+		return (h ^ (h >>> 16)) & mask;
+	}
+
+	/**
+	 * @return the canonical string for the characters
+	 */
+	String lookup(char[] c, int off, int len) {
+		if (len > MAX_LENGTH) return new String(c, off, len);
+		int h = 0;
+		for (int i = 0; i < len; i++) h = 31 * h + c[off + i];
+		int i = slot(h);
+		String s = table[i];
+		if (s != null && s.hashCode() == h && s.length() == len) {
+			int j = 0;
+			while (j < len && s.charAt(j) == c[off + j]) j++;
+			if (j == len) return s;
+		}
+		s = new String(c, off, len);
+		table[i] = s;
+		return s;
+	}
+
+	/**
+	 * @return the canonical string for the characters
+	 */
+	String lookup(CharSequence c, int off, int len) {
+		if (len > MAX_LENGTH) return c.subSequence(off, off + len).toString();
+		int h = 0;
+		for (int i = 0; i < len; i++) h = 31 * h + c.charAt(off + i);
+		int i = slot(h);
+		String s = table[i];
+		if (s != null && s.hashCode() == h && s.length() == len) {
+			int j = 0;
+			while (j < len && s.charAt(j) == c.charAt(off + j)) j++;
+			if (j == len) return s;
+		}
+		s = c.subSequence(off, off + len).toString();
+		table[i] = s;
+		return s;
+	}
+
+	/**
+	 * @return the canonical string for the bytes, which must all be ASCII
+	 */
+	String lookupASCII(ByteBuffer b, int off, int len) {
+		int h = 0;
+		if (len <= MAX_LENGTH) {
+			for (int i = 0; i < len; i++) h = 31 * h + b.get(off + i);
+			String s = table[slot(h)];
+			if (s != null && s.hashCode() == h && s.length() == len) {
+				int j = 0;
+				while (j < len && s.charAt(j) == b.get(off + j)) j++;
+				if (j == len) return s;
+			}
+		}
+		char[] c = new char[len];
+		for (int i = 0; i < len; i++) c[i] = (char)b.get(off + i);
+		String s = new String(c);
+		if (len <= MAX_LENGTH) table[slot(h)] = s;
+		return s;
+	}
+
+	/**
+	 * @return the canonical string equal to the given one
+	 */
+	public String intern(String x) {
+		if (x == null || x.length() > MAX_LENGTH) return x;
+		int h = x.hashCode();
+		int i = slot(h);
+		String s = table[i];
+		if (s != null && s.hashCode() == h && s.equals(x)) return s;
+		table[i] = x;
+		return x;
+	}
+}
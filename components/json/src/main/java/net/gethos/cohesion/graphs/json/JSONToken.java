@@ -0,0 +1,34 @@
+/**
+ * Cohesion Framework - JSON Library
+ * Copyright (c) 2017 - Stewart Gebbie, Gethos. Licensed under the MIT licence.
+ * vim: set ts=4 sw=0:
+ */
+package net.gethos.cohesion.graphs.json;
+
+/**
+ * The tokens returned by {@link JSONReader}.
+ *
+ * @author {@literal Stewart Gebbie <sgebbie@gethos.net>}
+ *
+ */
+public enum JSONToken {
+
+	START_OBJECT,
+	END_OBJECT,
+	START_ARRAY,
+	END_ARRAY,
+	NAME,
+	STRING,
+	NUMBER,
+	TRUE,
+	FALSE,
+	NULL
+	;
+
+	/**
+	 * @return true if the token is a complete value in its own right
+	 */
+	public boolean isScalar() {
+		return this == STRING || this == NUMBER || this == TRUE || this == FALSE || this == NULL;
+	}
+}
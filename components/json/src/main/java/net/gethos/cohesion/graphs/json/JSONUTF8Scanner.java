@@ -0,0 +1,534 @@
+/**
+ * Cohesion Framework - JSON Library
+ * Copyright (c) 2017 - Stewart Gebbie, Gethos. Licensed under the MIT licence.
+ * vim: set ts=4 sw=0:
+ */
+package net.gethos.cohesion.graphs.json;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.math.BigDecimal;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * Scanner over a window of UTF-8 encoded bytes.
+ * <p>
+ * The structure of JSON is entirely ASCII, so tokens are matched directly
+ * on the bytes and only the content of strings is ever decoded. Strings that
+ * are pure ASCII take a fast path that avoids decoding altogether.
+ * <p>
+ * Only ASCII whitespace is recognised between tokens.
+ *
+ * @author {@literal Stewart Gebbie <sgebbie@gethos.net>}
+ *
+ */
+class JSONUTF8Scanner extends JSONScanner {
+
+	private static final int BUFFER_SIZE = 8192;
+
+	private static final char REPLACEMENT = '\uFFFD';
+
+	/**
+	 * Provides the bytes of the window.
+	 */
+	static abstract class Source {
+
+		/**
+		 * Slide the window so that it starts at {@code from} and then top it
+		 * up, if the input allows, so that it holds at least {@code n} bytes.
+		 *
+		 * @param window the current window
+		 * @param from the index in the window that should become the start of the window
+		 * @param limit the end of the valid bytes in the window
+		 * @param n the number of bytes required
+		 * @return the new window, with its limit marking the end of the valid bytes, or null if there is no further input
+		 */
+		abstract ByteBuffer slide(ByteBuffer window, int from, int limit, int n) throws IOException;
+	}
+
+	/**
+	 * Move the bytes from {@code from} to {@code limit} to the start of the
+	 * heap window, growing it if it can not hold {@code n} bytes.
+	 *
+	 * @return the window, positioned after the bytes that were kept
+	 */
+	static ByteBuffer compact(ByteBuffer window, int from, int limit, int n) {
+		byte[] b = window.array();
+		int count = limit - from;
+		if (n > b.length) {
+			byte[] x = new byte[Math.max(n, b.length * 2)];
+			System.arraycopy(b, from, x, 0, count);
+			window = ByteBuffer.wrap(x);
+		} else if (from > 0) {
+			System.arraycopy(b, from, b, 0, count);
+		}
+		window.clear();
+		window.position(count);
+		return window;
+	}
+
+	/**
+	 * Reads blocks of bytes from an input stream into a heap window.
+	 */
+	static class StreamSource extends Source {
+
+		private final InputStream in;
+
+		StreamSource(InputStream in) {
+			this.in = in;
+		}
+
+		@Override
+		ByteBuffer slide(ByteBuffer window, int from, int limit, int n) throws IOException {
+			window = compact(window, from, limit, n);
+			byte[] b = window.array();
+			int count = window.position();
+			while (count < n) {
+				int r = in.read(b, count, b.length - count);
+				if (r == -1) break;
+				count += r;
+			}
+			window.position(0);
+			window.limit(count);
+			return window;
+		}
+	}
+
+	/**
+	 * Reads blocks of bytes from a blocking channel into a heap window.
+	 * <p>
+	 * Unlike most {@link java.io.Reader}s and buffered streams, nothing
+	 * between the scanner and the channel holds a monitor while the read
+	 * blocks, so a virtual thread blocked here does not pin its carrier.
+	 */
+	static class ChannelSource extends Source {
+
+		private final ReadableByteChannel in;
+
+		ChannelSource(ReadableByteChannel in) {
+			this.in = in;
+		}
+
+		@Override
+		ByteBuffer slide(ByteBuffer window, int from, int limit, int n) throws IOException {
+			window = compact(window, from, limit, n);
+			while (window.position() < n) {
+				if (in.read(window) == -1) break;
+			}
+			window.flip();
+			return window;
+		}
+	}
+
+	/**
+	 * Maps a file, in chunks, directly into the window.
+	 * <p>
+	 * Each time the window needs to slide, the next chunk is mapped starting
+	 * at the requested byte, so a token that straddles two chunks is simply
+	 * mapped again as part of the next chunk. In this way files larger than
+	 * a single mapping (2 GiB) can be parsed.
+	 */
+	static class MappedSource extends Source {
+
+		static final int CHUNK_SIZE = 1 << 30;
+
+		private final FileChannel channel;
+		private final long end;
+		private final int chunk;
+
+		private long offset; // position in the file of the start of the window
+
+		MappedSource(FileChannel channel, long from, long to, int chunk) {
+			this.channel = channel;
+			this.offset = from;
+			this.end = to;
+			this.chunk = chunk;
+		}
+
+		@Override
+		ByteBuffer slide(ByteBuffer window, int from, int limit, int n) throws IOException {
+			if (offset + limit >= end) return null; // the window already reaches the end of the file
+			long start = offset + from;
+			long size = Math.min(end - start, Math.max(chunk, n));
+			offset = start;
+			return channel.map(FileChannel.MapMode.READ_ONLY, start, size);
+		}
+	}
+
+	private static final ByteBuffer EMPTY = ByteBuffer.allocate(0);
+
+	private final Source source;
+	private final StringBuilder scratch;
+
+	private ByteBuffer buf;
+	private char[] chars;
+
+	private boolean ascii; // the last string found was entirely ASCII
+
+	JSONUTF8Scanner(InputStream in) {
+		this(ByteBuffer.allocate(BUFFER_SIZE), new StreamSource(in));
+		this.limit = 0;
+	}
+
+	JSONUTF8Scanner(ReadableByteChannel in) {
+		this(ByteBuffer.allocate(BUFFER_SIZE), new ChannelSource(in));
+		this.limit = 0;
+	}
+
+	/**
+	 * Scan over the bytes between the buffer's position and limit. The
+	 * position and limit of the buffer are not modified.
+	 */
+	JSONUTF8Scanner(ByteBuffer json) {
+		this(json.slice(), null);
+	}
+
+	/**
+	 * Scan over the bytes of the file between the channel's position and its
+	 * size, by mapping the file in chunks.
+	 */
+	JSONUTF8Scanner(FileChannel channel) throws IOException {
+		this(channel, MappedSource.CHUNK_SIZE);
+	}
+
+	JSONUTF8Scanner(FileChannel channel, int chunk) throws IOException {
+		this(EMPTY, new MappedSource(channel, channel.position(), channel.size(), chunk));
+	}
+
+	JSONUTF8Scanner(ByteBuffer window, Source source) {
+		this.source = source;
+		this.scratch = new StringBuilder();
+		this.buf = window;
+		this.chars = new char[32];
+		this.pos = 0;
+		this.limit = window.limit();
+		this.base = 0;
+	}
+
+	/**
+	 * Move a scanner with no source on to the bytes between {@code from}
+	 * and {@code to} of another buffer, ignoring its position and limit.
+	 */
+	void reset(ByteBuffer json, int from, int to) {
+		this.buf = json;
+		this.pos = from;
+		this.limit = to;
+		this.base = -from;
+	}
+
+	@Override
+	boolean require(int n) throws IOException {
+		if (limit - pos >= n) return true;
+		if (source == null) return false;
+		ByteBuffer w = source.slide(buf, pos, limit, n);
+		if (w == null) return false;
+		buf = w;
+		base += pos;
+		limit = w.limit();
+		pos = 0;
+		return limit >= n;
+	}
+
+	@Override
+	int peek() throws IOException {
+		if (pos < limit || require(1)) return buf.get(pos) & 0xff;
+		return -1;
+	}
+
+	@Override
+	void skipWhitespace() throws IOException {
+		for(;;) {
+			ByteBuffer b = buf;
+			int p = pos;
+			int l = limit;
+			while (p < l && isWhitespace(b.get(p) & 0xff)) p++;
+			pos = p;
+			if (p < l || !require(1)) return;
+		}
+	}
+
+	@Override
+	boolean matchKeyword(String keyword) throws IOException {
+		int n = keyword.length();
+		if (!require(n)) return false;
+		for (int i = 0; i < n; i++) {
+			if (buf.get(pos + i) != keyword.charAt(i)) return false;
+		}
+		pos += n;
+		return true;
+	}
+
+	@Override
+	int findNumberEnd() throws IOException {
+
+		// make sure that the whole token is in the window
+		int end = pos;
+		for(;;) {
+			while (end < limit && isNumberCharacter(buf.get(end))) end++;
+			if (end < limit) break;
+			int scanned = end - pos;
+			boolean more = require(scanned + 1);
+			end = pos + scanned;
+			if (!more) break;
+		}
+
+		// find the end of the number
+		return pos + JSONNumbers.end(copy(pos, end), 0, end - pos);
+	}
+
+	@Override
+	JSONNumber decodeNumber(int from, int to) {
+		return JSONNumber.parse(copy(from, to), 0, to - from);
+	}
+
+	@Override
+	void decodeNumber(JSONArray into, int from, int to) {
+		into.addNumber(copy(from, to), 0, to - from);
+	}
+
+	@Override
+	BigDecimal decodeBigDecimal(int from, int to) {
+		return JSONNumbers.parseBigDecimal(copy(from, to), 0, to - from);
+	}
+
+	@Override
+	long decodeLong(int from, int to) {
+		return JSONNumbers.parseLong(copy(from, to), 0, to - from);
+	}
+
+	@Override
+	double decodeDouble(int from, int to) {
+		return JSONNumbers.parseDouble(copy(from, to), 0, to - from);
+	}
+
+	@Override
+	String text(int from, int to) {
+		return new String(copy(from, to), 0, to - from);
+	}
+
+	@Override
+	int findStringEnd() throws IOException {
+
+		long from = position();
+		int c = peek();
+		if (c == -1) throw new JSONException(String.format("End-of-stream while pasring string [%d].", from));
+		if (c != '"') throw new JSONException(String.format("No string while parsing [%d]",from));
+
+		// find the closing quote, pulling the whole string into the window
+		// (note, the bytes of a multi-byte sequence are never '"' or '\')
+		escaped = false;
+		ascii = true;
+		int end = pos + 1;
+		for(;;) {
+			ByteBuffer b = buf;
+			int l = limit;
+			while (end < l) {
+				byte x = b.get(end);
+				if (x == '"') break;
+				if (x < 0) ascii = false;
+				else if (x == '\\') {
+					escaped = true;
+					if (end + 1 == l) break;
+					end++;
+				}
+				end++;
+			}
+			if (end < l && b.get(end) == '"') break;
+			int scanned = end - pos;
+			if (!require(scanned + (end < limit ? 2 : 1))) throw new JSONException(String.format("End-of-stream while pasring string [%d].", from));
+			end = pos + scanned;
+		}
+
+		return end;
+	}
+
+	@Override
+	String decodeString(int from, int to) {
+		if (ascii && !escaped) {
+			if (buf.hasArray()) return new String(buf.array(), buf.arrayOffset() + from, to - from, StandardCharsets.ISO_8859_1);
+			return new String(copy(from, to), 0, to - from);
+		}
+		decodeScratch(from, to);
+		return scratch.toString();
+	}
+
+	@Override
+	boolean equalsString(int from, int to, String s) {
+		if (ascii && !escaped) {
+			int n = to - from;
+			if (n != s.length()) return false;
+			for (int i = 0; i < n; i++) {
+				if (buf.get(from + i) != s.charAt(i)) return false;
+			}
+			return true;
+		}
+		decodeScratch(from, to);
+		return s.contentEquals(scratch);
+	}
+
+	@Override
+	String decodeSymbol(int from, int to) {
+		if (ascii && !escaped) return symbols.lookupASCII(buf, from, to - from);
+		decodeScratch(from, to);
+		return symbols.lookup(scratch, 0, scratch.length());
+	}
+
+	/**
+	 * Decode the string into the scratch buffer.
+	 */
+	private void decodeScratch(int from, int to) {
+		scratch.setLength(0);
+		if (ascii) {
+			scratch.append(copy(from, to), 0, to - from);
+		} else {
+			decode(from, to);
+		}
+		if (escaped) JSONString.unescape(scratch);
+	}
+
+	@Override
+	JSONScanner sliceValue() throws IOException {
+		skipWhitespace();
+		int first = peek();
+		if (first == -1) return null;
+		long at = position();
+
+		// the first character decides how the value ends
+		boolean string = first == '"';
+		boolean scalar = !string && first != '{' && first != '[';
+		boolean escape = false;
+		int depth = string || scalar ? 0 : 1;
+
+		byte[] out = new byte[64];
+		int n = 0;
+		int from = pos;
+		int p = pos + 1;
+		for(;;) {
+			ByteBuffer b = buf;
+			int l = limit;
+			int end = -1;
+			for (; p < l; p++) {
+				byte c = b.get(p);
+				if (string) {
+					if (escape) escape = false;
+					else if (c == '\\') escape = true;
+					else if (c == '"') {
+						string = false;
+						if (depth == 0) {
+							end = p + 1;
+							break;
+						}
+					}
+				} else if (scalar) {
+					if (isDelimiter(c & 0xff)) {
+						end = p;
+						break;
+					}
+				} else if (c == '"') {
+					string = true;
+				} else if (c == '{' || c == '[') {
+					depth++;
+				} else if (c == '}' || c == ']') {
+					if (--depth == 0) {
+						end = p + 1;
+						break;
+					}
+				}
+			}
+			int to = end < 0 ? p : end;
+			if (n + to - from > out.length) out = Arrays.copyOf(out, Math.max(n + to - from, out.length * 2));
+			for (int i = from; i < to; i++) out[n + i - from] = b.get(i);
+			n += to - from;
+			pos = to;
+			// the value may run on past the end of the input, in which case it will fail to parse
+			if (end >= 0 || !require(1)) break;
+			from = pos;
+			p = pos;
+		}
+		JSONScanner slice = new JSONUTF8Scanner(ByteBuffer.wrap(out, 0, n));
+		slice.base = at; // report positions relative to the whole input
+		return slice;
+	}
+
+	@Override
+	void skipNested(int depth) throws IOException {
+		boolean string = false;
+		boolean escape = false;
+		for(;;) {
+			ByteBuffer b = buf;
+			int p = pos;
+			int l = limit;
+			for (; p < l; p++) {
+				byte c = b.get(p);
+				if (string) {
+					if (escape) escape = false;
+					else if (c == '\\') escape = true;
+					else if (c == '"') string = false;
+				} else if (c == '"') {
+					string = true;
+				} else if (c == '{' || c == '[') {
+					depth++;
+				} else if (c == '}' || c == ']') {
+					if (--depth == 0) {
+						pos = p + 1;
+						return;
+					}
+				}
+			}
+			pos = p;
+			if (!require(1)) throw new JSONException(String.format("End-of-stream while skipping [%d].", position()));
+		}
+	}
+
+	/**
+	 * Widen the ASCII bytes in [from,to) into the scratch characters.
+	 */
+	private char[] copy(int from, int to) {
+		int len = to - from;
+		if (chars.length < len) chars = new char[Math.max(len, chars.length * 2)];
+		char[] x = chars;
+		ByteBuffer b = buf;
+		for (int i = 0; i < len; i++) x[i] = (char)(b.get(from + i) & 0xff);
+		return x;
+	}
+
+	/**
+	 * Decode the UTF-8 bytes in [from,to) into the scratch buffer. Malformed
+	 * input is replaced with U+FFFD, in the same way as the default decoder.
+	 */
+	private void decode(int from, int to) {
+		int i = from;
+		while (i < to) {
+			int b = buf.get(i);
+			if (b >= 0) {
+				scratch.append((char)b);
+				i++;
+				continue;
+			}
+			int n;
+			int cp;
+			int min;
+			if ((b & 0xe0) == 0xc0) { n = 1; cp = b & 0x1f; min = 0x80; }
+			else if ((b & 0xf0) == 0xe0) { n = 2; cp = b & 0x0f; min = 0x800; }
+			else if ((b & 0xf8) == 0xf0) { n = 3; cp = b & 0x07; min = 0x10000; }
+			else { scratch.append(REPLACEMENT); i++; continue; }
+			int j = 1;
+			for (; j <= n && i + j < to; j++) {
+				int x = buf.get(i + j);
+				if ((x & 0xc0) != 0x80) break;
+				cp = (cp << 6) | (x & 0x3f);
+			}
+			if (j <= n || cp < min || cp > Character.MAX_CODE_POINT || (cp >= Character.MIN_SURROGATE && cp <= Character.MAX_SURROGATE)) {
+				scratch.append(REPLACEMENT);
+				i += j;
+				continue;
+			}
+			scratch.appendCodePoint(cp);
+			i += n + 1;
+		}
+	}
+}
@@ -6,6 +6,7 @@
 package net.gethos.cohesion.graphs.json;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 
 /**
@@ -20,6 +21,20 @@ public class JSONUtils {
 		int dimensions;
 	}
 
+	/**
+	 * The numbers of a nested, rectangular array, flattened in row-major
+	 * order, along with the size of each dimension.
+	 */
+	public static class JSONTensor {
+		public final int[] shape;
+		public final double[] values;
+
+		public JSONTensor(int[] shape, double[] values) {
+			this.shape = shape;
+			this.values = values;
+		}
+	}
+
 	static public JSONArraySpecification getArraySpecification(JSONValue v) {
 		if (v == null || !v.isArray()) return null;
 		JSONArraySpecification spec = new JSONArraySpecification();
@@ -35,6 +50,8 @@ public class JSONUtils {
 				if (v != null) {
 					t = v.type();
 					x = v.asArray();
+				} else {
+					x = null;
 				}
 			} else {
 				x = null;
@@ -65,4 +82,156 @@ public class JSONUtils {
 		JSONArraySpecification spec = getArraySpecification(v);
 		return spec == null ? null : spec.elementType;
 	}
+
+	// -- bulk extraction of numeric arrays
+
+	/**
+	 * @return the numbers of a one-dimensional array
+	 * @throws JSONException if the value is not an array of numbers
+	 */
+	static public double[] toDoubleArray(JSONValue v) {
+		JSONArray x = expectArray(v);
+		double[] values = new double[x.size()];
+		if (!x.copyDoubles(values, 0)) throw new JSONException(String.format("Array of {%s} is not an array of numbers",x.elementType()));
+		return values;
+	}
+
+	/**
+	 * @return the integers of a one-dimensional array
+	 * @throws JSONException if the value is not an array of integers that fit in a long
+	 */
+	static public long[] toLongArray(JSONValue v) {
+		JSONArray x = expectArray(v);
+		long[] values = new long[x.size()];
+		if (!x.copyLongs(values, 0)) throw new JSONException(String.format("Array of {%s} is not an array of integers",x.elementType()));
+		return values;
+	}
+
+	/**
+	 * @return the numbers of a two-dimensional array, indexed by row and then column
+	 * @throws JSONException if the value is not an array of equally sized arrays of numbers
+	 */
+	static public double[][] toDoubleMatrix(JSONValue v) {
+		JSONArray x = expectArray(v);
+		int rows = x.size();
+		double[][] values = new double[rows][];
+		for (int i = 0; i < rows; i++) {
+			JSONValue row = x.get(i);
+			if (row == null || !row.isArray()) throw new JSONException(String.format("Row [%d] is not an array",i));
+			if (i > 0 && row.asArray().size() != values[0].length) throw new JSONException(String.format("Row [%d] has [%d] columns, where [%d] were expected",i,row.asArray().size(),values[0].length));
+			values[i] = toDoubleArray(row);
+		}
+		return values;
+	}
+
+	/**
+	 * Flatten a nested array of numbers, of any number of dimensions, in
+	 * row-major order. Every array at the same depth must be the same size.
+	 *
+	 * @throws JSONException if the value is not a rectangular, nested array of numbers
+	 */
+	static public JSONTensor toTensor(JSONValue v) {
+		expectArray(v);
+		int[] shape = getArraySpecification(v).cardinals;
+		long n = 1;
+		for (int s : shape) n *= s;
+		if (n > Integer.MAX_VALUE) throw new JSONException(String.format("Array of shape %s is too large",Arrays.toString(shape)));
+		double[] values = new double[(int)n];
+		fill(v.asArray(), shape, 0, values, 0);
+		return new JSONTensor(shape, values);
+	}
+
+	private static int fill(JSONArray x, int[] shape, int d, double[] values, int off) {
+		if (x.size() != shape[d]) throw new JSONException(String.format("Array at depth [%d] has [%d] elements, where [%d] were expected",d,x.size(),shape[d]));
+		if (d == shape.length - 1) {
+			if (!x.copyDoubles(values, off)) throw new JSONException(String.format("Array at depth [%d] is not an array of numbers",d));
+			return off + shape[d];
+		}
+		for (int i = 0; i < shape[d]; i++) {
+			JSONValue y = x.get(i);
+			if (y == null || !y.isArray()) throw new JSONException(String.format("Element [%d] at depth [%d] is not an array",i,d));
+			off = fill(y.asArray(), shape, d + 1, values, off);
+		}
+		return off;
+	}
+
+	private static JSONArray expectArray(JSONValue v) {
+		if (v == null || !v.isArray()) throw new JSONException(String.format("Value {%s} is not an array",v == null ? null : v.type()));
+		return v.asArray();
+	}
+
+	/**
+	 * Read a nested array of numbers straight from the reader into the
+	 * buffer, in row-major order, without building the tree. The current
+	 * token must be the start of the array, and is left at its end. Every
+	 * array at the same depth must be the same size.
+	 * <pre>
+	 * JSONReader r = new JSONReader(in);
+	 * double[] buffer = new double[1 &lt;&lt; 20];
+	 * while (r.nextToken() != null) {
+	 *     int[] shape = JSONUtils.readDoubles(r, buffer);
+	 *     ...
+	 * }
+	 * </pre>
+	 *
+	 * @return the shape of the array
+	 * @throws JSONException if the array is not a rectangular, nested array of numbers, or does not fit in the buffer
+	 */
+	static public int[] readDoubles(JSONReader in, double[] buffer) {
+		if (in.currentToken() != JSONToken.START_ARRAY) throw new JSONException(String.format("Current token {%s} does not start an array at [%d]",in.currentToken(),in.position()));
+
+		// the size of each dimension is fixed when its first array ends
+		int[] shape = new int[4];
+		int[] counts = new int[4];
+		boolean[] known = new boolean[4];
+		int dimensions = -1; // known once the first number is seen
+		int deepest = 0;
+		int d = 0;
+		int n = 0;
+
+		for (;;) {
+			JSONToken t = in.nextToken();
+			if (t == null) throw new JSONException(String.format("End-of-stream while reading array at [%d]",in.position()));
+			switch (t) {
+				case NUMBER:
+					if (dimensions < 0) dimensions = d + 1;
+					else if (d + 1 != dimensions) throw new JSONException(String.format("Number at depth [%d] of an array of [%d] dimensions at [%d]",d,dimensions,in.position()));
+					if (n == buffer.length) throw new JSONException(String.format("Buffer of [%d] is too small at [%d]",buffer.length,in.position()));
+					buffer[n++] = in.getDouble();
+					break;
+				case START_ARRAY:
+					if (dimensions >= 0 && d + 1 >= dimensions) throw new JSONException(String.format("Array at depth [%d] of an array of [%d] dimensions at [%d]",d + 1,dimensions,in.position()));
+					break;
+				case END_ARRAY:
+					break;
+				default:
+					throw new JSONException(String.format("Unexpected token {%s} while reading array of numbers at [%d]",t,in.position()));
+			}
+			if (t == JSONToken.END_ARRAY) {
+				if (known[d]) {
+					if (counts[d] != shape[d]) throw new JSONException(String.format("Array at depth [%d] has [%d] elements, where [%d] were expected at [%d]",d,counts[d],shape[d],in.position()));
+				} else {
+					shape[d] = counts[d];
+					known[d] = true;
+				}
+				if (d == 0) break;
+				d--;
+			} else {
+				counts[d]++;
+				if (known[d] && counts[d] > shape[d]) throw new JSONException(String.format("Array at depth [%d] has more than [%d] elements at [%d]",d,shape[d],in.position()));
+				if (t == JSONToken.START_ARRAY) {
+					d++;
+					if (d == shape.length) {
+						shape = Arrays.copyOf(shape, d * 2);
+						counts = Arrays.copyOf(counts, d * 2);
+						known = Arrays.copyOf(known, d * 2);
+					}
+					counts[d] = 0;
+					deepest = Math.max(deepest, d);
+				}
+			}
+		}
+
+		return Arrays.copyOf(shape, dimensions < 0 ? deepest + 1 : dimensions);
+	}
 }
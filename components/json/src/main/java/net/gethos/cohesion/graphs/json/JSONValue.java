@@ -5,6 +5,11 @@
  */
 package net.gethos.cohesion.graphs.json;
 
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.StringWriter;
+import java.io.Writer;
+
 /**
  * Gethos Cohesion JSON implementation.
  * 
@@ -25,6 +30,48 @@ public abstract class JSONValue {
 
 	abstract void toString(StringBuilder text);
 
+	/**
+	 * Convert the object to its JSON representation, with the members of
+	 * every object in order of member name, rather than in insertion order.
+	 */
+	public String toSortedString() {
+		StringWriter text = new StringWriter();
+		JSONWriter w = new JSONWriter(text);
+		w.setSorted(true);
+		try {
+			writeTo(w);
+			w.flush();
+		} catch (IOException e) {
+			throw new IllegalStateException(e); // a StringWriter does not fail
+		}
+		return text.toString();
+	}
+
+	/**
+	 * Write the JSON representation to the writer, a buffer at a time,
+	 * rather than first building the whole text in memory.
+	 */
+	public void writeTo(Writer out) throws IOException {
+		JSONWriter w = new JSONWriter(out);
+		writeTo(w);
+		w.flush();
+	}
+
+	/**
+	 * Write the JSON representation to the output stream, encoded as UTF-8.
+	 *
+	 * @see #writeTo(Writer)
+	 */
+	public void writeTo(OutputStream out) throws IOException {
+		JSONWriter w = new JSONWriter(out);
+		writeTo(w);
+		w.flush();
+	}
+
+	abstract void writeTo(JSONWriter out) throws IOException;
+
+	abstract void encodeTo(JSONBinaryWriter out) throws IOException;
+
 	@Override
 	abstract public int hashCode();
 
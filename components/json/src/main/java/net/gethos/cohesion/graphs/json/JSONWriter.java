@@ -0,0 +1,317 @@
+/**
+ * Cohesion Framework - JSON Library
+ * Copyright (c) 2017 - Stewart Gebbie, Gethos. Licensed under the MIT licence.
+ * vim: set ts=4 sw=0:
+ */
+package net.gethos.cohesion.graphs.json;
+
+import java.io.Closeable;
+import java.io.Flushable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Gethos Cohesion JSON streaming writer, producing JSON text one token at a
+ * time, rather than from a tree.
+ * <p>
+ * Output is gathered in a fixed-size buffer, with strings escaped directly
+ * into the buffer, and handed on to the underlying writer each time the
+ * buffer fills. So, the memory used does not grow with the size of the
+ * document.
+ * <p>
+ * Any number of top-level values may be written, in which case they are
+ * separated by newlines (and so may be read back by {@link JSONStream}).
+ * <p>
+ * Objects are written with their members in insertion order, unless
+ * {@link #setSorted(boolean)} asks for them in order of member name.
+ * <pre>
+ * JSONWriter w = new JSONWriter(writer);
+ * w.beginObject();
+ * w.name("id").value(1234);
+ * w.name("tags").beginArray().value("a").value("b").endArray();
+ * w.endObject();
+ * w.flush();
+ * </pre>
+ * See: http://www.json.org/
+ *
+ * @author {@literal Stewart Gebbie <sgebbie@gethos.net>}
+ * @see JSONReader
+ *
+ */
+public class JSONWriter implements Closeable, Flushable {
+
+	private static final int BUFFER_SIZE = 8192;
+
+	// write states, per nesting level
+	private static final int ROOT_START = 0;
+	private static final int ROOT_VALUE = 1;   // after a top-level value
+	private static final int OBJECT_START = 2; // after '{', expecting a name or '}'
+	private static final int OBJECT_NAME = 3;  // after a name, expecting a value
+	private static final int OBJECT_VALUE = 4; // after a value, expecting a name or '}'
+	private static final int ARRAY_START = 5;  // after '[', expecting a value or ']'
+	private static final int ARRAY_VALUE = 6;  // after a value, expecting a value or ']'
+
+	private final Writer out;
+	private final char[] buf;
+	private int count;
+
+	private int[] states;
+	private int depth;
+
+	private boolean sorted;
+
+	public JSONWriter(Writer out) {
+		this.out = out;
+		this.buf = new char[BUFFER_SIZE];
+		this.count = 0;
+		this.states = new int[16];
+		this.depth = 0;
+		this.states[0] = ROOT_START;
+		this.sorted = false;
+	}
+
+	/**
+	 * Write the JSON text to the output stream, encoded as UTF-8.
+	 */
+	public JSONWriter(OutputStream out) {
+		this(new OutputStreamWriter(out, StandardCharsets.UTF_8));
+	}
+
+	/**
+	 * @param sorted write the members of each {@link JSONObject} in order of member name, rather than in insertion order
+	 */
+	public void setSorted(boolean sorted) {
+		this.sorted = sorted;
+	}
+
+	public boolean isSorted() {
+		return sorted;
+	}
+
+	public JSONWriter beginObject() throws IOException {
+		beforeValue();
+		put('{');
+		push(OBJECT_START);
+		return this;
+	}
+
+	public JSONWriter endObject() throws IOException {
+		int s = states[depth];
+		if (s != OBJECT_START && s != OBJECT_VALUE) throw new JSONException(String.format("Unexpected end of object while writing at depth [%d]",depth));
+		depth--;
+		put('}');
+		return this;
+	}
+
+	public JSONWriter beginArray() throws IOException {
+		beforeValue();
+		put('[');
+		push(ARRAY_START);
+		return this;
+	}
+
+	public JSONWriter endArray() throws IOException {
+		int s = states[depth];
+		if (s != ARRAY_START && s != ARRAY_VALUE) throw new JSONException(String.format("Unexpected end of array while writing at depth [%d]",depth));
+		depth--;
+		put(']');
+		return this;
+	}
+
+	/**
+	 * Write the name of the next object member. It must be followed by the
+	 * member's value.
+	 */
+	public JSONWriter name(String name) throws IOException {
+		switch (states[depth]) {
+			case OBJECT_VALUE: put(','); break;
+			case OBJECT_START: break;
+			default:
+				throw new JSONException(String.format("Unexpected member name {%s} while writing at depth [%d]",name,depth));
+		}
+		string(name);
+		put(':');
+		states[depth] = OBJECT_NAME;
+		return this;
+	}
+
+	public JSONWriter value(String value) throws IOException {
+		if (value == null) return nullValue();
+		beforeValue();
+		string(value);
+		return this;
+	}
+
+	public JSONWriter value(boolean value) throws IOException {
+		beforeValue();
+		write(value ? JSONBoolean.TRUE : JSONBoolean.FALSE);
+		return this;
+	}
+
+	public JSONWriter value(long value) throws IOException {
+		beforeValue();
+		if (value == Long.MIN_VALUE) {
+			// can not be negated
+			write(Long.toString(value));
+			return this;
+		}
+		if (buf.length - count < 20) flushBuffer();
+		if (value < 0) {
+			buf[count++] = '-';
+			value = -value;
+		}
+		int n = 1;
+		for (long x = value; x >= 10; x /= 10) n++;
+		count += n;
+		int p = count;
+		do {
+			buf[--p] = (char)('0' + (int)(value % 10));
+			value /= 10;
+		} while (value != 0);
+		return this;
+	}
+
+	/**
+	 * Write the shortest decimal that reads back as the same double.
+	 *
+	 * @throws JSONException if the value is not finite, since JSON has no representation for NaN or infinity
+	 */
+	public JSONWriter value(double value) throws IOException {
+		if (Double.isNaN(value) || Double.isInfinite(value)) throw new JSONException(String.format("Non-finite number {%s} can not be written as JSON",value));
+		beforeValue();
+		if (buf.length - count < 25) flushBuffer();
+		count = JSONDoubles.toChars(value, buf, count);
+		return this;
+	}
+
+	public JSONWriter value(BigDecimal value) throws IOException {
+		if (value == null) return nullValue();
+		beforeValue();
+		write(value.toString());
+		return this;
+	}
+
+	/**
+	 * Write the text of a number, as is.
+	 */
+	JSONWriter number(char[] text) throws IOException {
+		beforeValue();
+		for (int from = 0; from < text.length; ) {
+			if (count == buf.length) flushBuffer();
+			int n = Math.min(text.length - from, buf.length - count);
+			System.arraycopy(text, from, buf, count, n);
+			count += n;
+			from += n;
+		}
+		return this;
+	}
+
+	public JSONWriter nullValue() throws IOException {
+		beforeValue();
+		write(JSONNull.NULL);
+		return this;
+	}
+
+	/**
+	 * Write the whole of the tree.
+	 */
+	public JSONWriter value(JSONValue value) throws IOException {
+		if (value == null) return nullValue();
+		value.writeTo(this);
+		return this;
+	}
+
+	/**
+	 * Pass everything written so far through to the underlying writer, and flush it.
+	 */
+	@Override
+	public void flush() throws IOException {
+		flushBuffer();
+		out.flush();
+	}
+
+	/**
+	 * Flush and close the underlying writer.
+	 *
+	 * @throws JSONException if an object or an array was left open
+	 */
+	@Override
+	public void close() throws IOException {
+		try {
+			flushBuffer();
+		} finally {
+			out.close();
+		}
+		if (depth > 0) throw new JSONException(String.format("Incomplete JSON document closed at depth [%d]",depth));
+	}
+
+	private void beforeValue() throws IOException {
+		switch (states[depth]) {
+			case ROOT_START:   states[depth] = ROOT_VALUE; break;
+			case ROOT_VALUE:   put('\n'); break;
+			case OBJECT_NAME:  states[depth] = OBJECT_VALUE; break;
+			case ARRAY_START:  states[depth] = ARRAY_VALUE; break;
+			case ARRAY_VALUE:  put(','); break;
+			default:
+				throw new JSONException(String.format("Unexpected value (expected a member name) while writing at depth [%d]",depth));
+		}
+	}
+
+	private void push(int state) {
+		if (++depth == states.length) {
+			int[] s = new int[depth * 2];
+			System.arraycopy(states, 0, s, 0, depth);
+			states = s;
+		}
+		states[depth] = state;
+	}
+
+	private void flushBuffer() throws IOException {
+		if (count > 0) out.write(buf, 0, count);
+		count = 0;
+	}
+
+	private void put(char c) throws IOException {
+		if (count == buf.length) flushBuffer();
+		buf[count++] = c;
+	}
+
+	/**
+	 * Copy the text into the buffer, as is.
+	 */
+	private void write(String s) throws IOException {
+		write(s, 0, s.length());
+	}
+
+	private void write(String s, int from, int to) throws IOException {
+		while (from < to) {
+			if (count == buf.length) flushBuffer();
+			int n = Math.min(to - from, buf.length - count);
+			s.getChars(from, from + n, buf, count);
+			count += n;
+			from += n;
+		}
+	}
+
+	/**
+	 * Write the string, quoted and escaped, copying the runs of characters
+	 * that need no escaping straight into the buffer.
+	 */
+	private void string(String s) throws IOException {
+		put('"');
+		int n = s.length();
+		int from = 0;
+		for (int i = JSONString.plain(s, 0, n); i < n; i = JSONString.plain(s, from, n)) {
+			write(s, from, i);
+			if (buf.length - count < 6) flushBuffer();
+			count = JSONString.escape(s.charAt(i), buf, count);
+			from = i + 1;
+		}
+		write(s, from, n);
+		put('"');
+	}
+}
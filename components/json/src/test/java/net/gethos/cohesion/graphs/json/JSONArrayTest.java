@@ -0,0 +1,128 @@
+/**
+ * Cohesion Framework - JSON Library
+ * Copyright (c) 2017 - Stewart Gebbie, Gethos. Licensed under the MIT licence.
+ * vim: set ts=4 sw=0:
+ */
+package net.gethos.cohesion.graphs.json;
+
+import static org.junit.Assert.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.nio.charset.StandardCharsets;
+import java.util.Iterator;
+
+import org.junit.Test;
+
+/**
+ * @author {@literal Stewart Gebbie <sgebbie@gethos.net>}
+ *
+ */
+public class JSONArrayTest {
+
+	private static final String[] NUMERIC = {
+		"[]",
+		"[1,2,3]",
+		"[-9223372036854775808,9223372036854775807]",
+		"[1.5,-2.25,3]",
+		"[1,2,0.5]",
+		"[9007199254740993,0.5]",
+		"[0.1,0.30000000000000004]",
+		"[1e+21,1.5e-7,-0.5]",
+		"[1.7976931348623157e+308,1e-320]",
+		"[12345678901234567890,1]",
+		"[1,\"two\",3.5,null]",
+		"[1.50,2]",
+		"[1.0]",
+		"[2.5e0,1]",
+		"[1.50,\"x\"]",
+		"[0.0,-0.0,1E+21]",
+	};
+
+	private static void assertParsed(String json) throws IOException {
+		JSONValue v = JSON.parse(json);
+		assertEquals(json, v.toString());
+		assertEquals(v, JSON.parse(json.getBytes(StandardCharsets.UTF_8)));
+		assertEquals(v, new JSONStream(new StringReader(json)).next());
+		assertEquals(v, new JSONStream(new ByteArrayInputStream(json.getBytes(StandardCharsets.UTF_8))).next());
+		JSONReader r = new JSONReader(json);
+		r.nextToken();
+		assertEquals(v, r.readValue());
+		assertEquals(v.hashCode(), JSON.parse(json.getBytes(StandardCharsets.UTF_8)).hashCode());
+		StringWriter s = new StringWriter();
+		v.writeTo(s);
+		assertEquals(json, s.toString());
+	}
+
+	@Test
+	public void parsing() throws IOException {
+		for (String json : NUMERIC) assertParsed(json);
+		// values that a double would not write back out as written keep their text
+		assertEquals("[0.1000000000000000055511151231257827,1.5]", JSON.parse("[0.1000000000000000055511151231257827,1.5]").toString());
+		assertEquals("[1e400,1]", JSON.parse("[1e400,1]".getBytes(StandardCharsets.UTF_8)).toString());
+		// and keep their scale, wherever they sit
+		assertEquals(2, JSON.parse("[1.50]").asArray().get(0).asNumber().value().scale());
+		assertEquals(2, JSON.parse("[1,1.50]".getBytes(StandardCharsets.UTF_8)).asArray().get(1).asNumber().value().scale());
+		assertEquals(JSON.parse("{\"a\":1.50}").asObject().get("a").toString(), JSON.parse("[1.50]").asArray().get(0).toString());
+		assertEquals("[1.5,2.5e0,1.0]", new JSONArray().add(new double[] { 1.5 }).add(JSON.parse("2.5e0"), JSON.parse("1.0")).toString());
+		assertEquals(JSONType.NUMBER, JSON.parse("[1,2.5]".getBytes(StandardCharsets.UTF_8)).asArray().elementType());
+		assertEquals(JSONType.OBJECT, JSON.parse("[1,\"2\"]").asArray().elementType());
+		assertEquals(JSONType.NULL, JSON.parse("[null]").asArray().elementType());
+		try {
+			JSON.parse("[1,01.5]".getBytes(StandardCharsets.UTF_8));
+			fail();
+		} catch (JSONException e) {
+			// expected
+		}
+	}
+
+	@Test
+	public void primitives() {
+		JSONArray a = new JSONArray().add(new long[] { 1, 2, 3 });
+		assertEquals("[1,2,3]", a.toString());
+		a.add(new double[] { 0.5 });
+		assertEquals("[1,2,3,0.5]", a.toString());
+		assertEquals(new JSONNumber(2), a.get(1));
+		assertEquals(new JSONNumber(0.5), a.get(3));
+		assertNull(a.get(4));
+		a.add("four");
+		assertEquals("[1,2,3,0.5,\"four\"]", a.toString());
+		assertEquals(JSONType.OBJECT, a.elementType());
+
+		JSONArray b = new JSONArray().add(new double[] { 1.25, -2 });
+		assertEquals(new JSONArray().add(1.25, -2.0), b);
+		assertEquals(new JSONArray().add(1.25, -2.0).hashCode(), b.hashCode());
+		b.add(new long[] { Long.MAX_VALUE });
+		assertEquals("[1.25,-2,9223372036854775807]", b.toString());
+
+		try {
+			new JSONArray().add(new double[] { 1, Double.NaN });
+			fail();
+		} catch (JSONException e) {
+			// expected
+		}
+	}
+
+	@Test
+	public void setAndRemove() {
+		JSONArray a = new JSONArray().add(new long[] { 1, 2, 3, 4 });
+		assertEquals(new JSONNumber(2), a.set(1, new JSONNumber(20)));
+		assertEquals(new JSONNumber(3), a.remove(2));
+		assertEquals("[1,20,4]", a.toString());
+		a.set(0, new JSONNumber(0.5));
+		assertEquals("[0.5,20,4]", a.toString());
+		a.set(5, new JSONString("x"));
+		assertEquals("[0.5,20,4,null,null,\"x\"]", a.toString());
+		assertNull(a.get(3));
+
+		Iterator<JSONValue> i = a.iterator();
+		while (i.hasNext()) {
+			JSONValue v = i.next();
+			if (v == null || !v.isNumber()) i.remove();
+		}
+		assertEquals("[0.5,20,4]", a.toString());
+		assertEquals(JSON.parse("[0.5,20,4]"), a);
+	}
+}
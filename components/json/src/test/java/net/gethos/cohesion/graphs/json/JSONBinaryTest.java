@@ -0,0 +1,200 @@
+/**
+ * Cohesion Framework - JSON Library
+ * Copyright (c) 2017 - Stewart Gebbie, Gethos. Licensed under the MIT licence.
+ * vim: set ts=4 sw=0:
+ */
+package net.gethos.cohesion.graphs.json;
+
+import static org.junit.Assert.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.StringReader;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Test;
+
+/**
+ * @author {@literal Stewart Gebbie <sgebbie@gethos.net>}
+ *
+ */
+public class JSONBinaryTest {
+
+	private static final String TEST_JSON =
+			"{\"a\":[1,2.5,{\"b\":\"}]\\\"[\"}],\"c\":null} [] {}\n"
+			+ "\"s\\\"t\" 12 -3.5e2 true false null\t[[[\"\u00e9\\u0041\\ud83d\\ude00\"]]]\n"
+			+ "{\"d\":{\"e\":{\"f\":[true,{}]}}}7{\"g\":\"\u20ac\"}-1 [1,2,-9223372036854775808] [0.5,-0.25,1.5e-7]\n"
+			+ "1.50 123456789012345678901234567890.123456789 -1e-400 9223372036854775808 0.1 [\"x\",\"x\",\"x\"]";
+
+	private static List<JSONValue> values(String json) {
+		return JSONStreams.values(new JSONStream(new StringReader(json)));
+	}
+
+	private static byte[] encode(List<JSONValue> values) throws IOException {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		JSONBinaryWriter w = new JSONBinaryWriter(out);
+		for (JSONValue v : values) w.write(v);
+		w.flush();
+		return out.toByteArray();
+	}
+
+	private static List<JSONValue> decode(InputStream in) {
+		List<JSONValue> values = new ArrayList<JSONValue>();
+		for (JSONValue v : new JSONBinaryStream(in)) values.add(v);
+		return values;
+	}
+
+	@Test
+	public void roundTrip() throws IOException {
+		List<JSONValue> expected = values(TEST_JSON);
+		assertEquals(22, expected.size());
+		List<JSONValue> actual = decode(new ByteArrayInputStream(encode(expected)));
+		assertEquals(expected, actual);
+		for (int i = 0; i < expected.size(); i++) {
+			assertEquals(expected.get(i).toString(), expected.get(i), JSON.parse(actual.get(i).toString()));
+		}
+		// integers, doubles and the exact digits of the rest
+		assertEquals("[1,2,-9223372036854775808]", actual.get(14).toString());
+		assertEquals(expected.get(15).toString(), actual.get(15).toString());
+		assertEquals(2, actual.get(16).asNumber().value().scale());
+		assertEquals(new BigDecimal("123456789012345678901234567890.123456789"), actual.get(17).asNumber().value());
+		assertEquals(9, actual.get(17).asNumber().value().scale());
+		assertEquals(new BigDecimal("-1e-400"), actual.get(18).asNumber().value());
+		assertEquals(new BigDecimal("9223372036854775808"), actual.get(19).asNumber().value());
+
+		// a value of its own
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		JSON.encode(expected.get(0), out);
+		assertEquals(expected.get(0), JSON.decode(out.toByteArray()));
+		assertNull(JSON.decode(new byte[0]));
+	}
+
+	@Test
+	public void lazy() throws IOException {
+		String json = "{\"a\":[1,{\"b\":[0.25,0.5]}],\"c\":\"d\"}";
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		JSON.encode(JSON.parseLazily(json), out);
+		assertEquals(JSON.parse(json), JSON.decode(out.toByteArray()));
+	}
+
+	@Test
+	public void references() throws IOException {
+		StringBuilder json = new StringBuilder();
+		for (int i = 0; i < 100; i++) json.append("{\"identifier\":").append(i).append(",\"category\":\"widget\",\"labels\":[\"one\",\"two\"]}\n");
+		List<JSONValue> values = values(json.toString());
+		byte[] bytes = encode(values);
+		// each repeat costs no more than the tags and references: about a byte for each name and string, and two for the integer
+		assertTrue(bytes.length + " bytes", bytes.length < json.length() / 3);
+		assertEquals(values, decode(new ByteArrayInputStream(bytes)));
+
+		// streams encoded on their own may be joined
+		byte[] joined = new byte[bytes.length * 2];
+		System.arraycopy(bytes, 0, joined, 0, bytes.length);
+		System.arraycopy(bytes, 0, joined, bytes.length, bytes.length);
+		List<JSONValue> twice = new ArrayList<JSONValue>(values);
+		twice.addAll(values);
+		assertEquals(twice, decode(new ByteArrayInputStream(joined)));
+	}
+
+	@Test
+	public void packed() throws IOException {
+		long[] longs = new long[5000];
+		double[] doubles = new double[5000];
+		for (int i = 0; i < longs.length; i++) {
+			longs[i] = i * 1000003L - 7;
+			doubles[i] = i / 7.0;
+		}
+		List<JSONValue> values = new ArrayList<JSONValue>();
+		values.add(new JSONArray().add(longs));
+		values.add(new JSONArray().add(doubles));
+		values.add(new JSONArray());
+		List<JSONValue> actual = decode(new ByteArrayInputStream(encode(values)));
+		assertEquals(values, actual);
+		assertEquals(values.get(1).toString(), actual.get(1).toString());
+	}
+
+	@Test
+	public void trickle() throws IOException {
+		List<JSONValue> expected = values(TEST_JSON);
+		final byte[] bytes = encode(expected);
+		// hand over a byte at a time
+		InputStream in = new ByteArrayInputStream(bytes) {
+			@Override
+			public synchronized int read(byte[] b, int off, int len) {
+				return super.read(b, off, Math.min(len, 1));
+			}
+		};
+		assertEquals(expected, decode(in));
+	}
+
+	@Test
+	public void corrupt() throws IOException {
+		byte[] bytes = encode(values(TEST_JSON));
+		for (int n = 1; n < bytes.length; n += 7) {
+			try {
+				decode(new ByteArrayInputStream(Arrays.copyOf(bytes, n)));
+				// some prefixes end cleanly between values
+			} catch (JSONException e) {
+				// expected
+			}
+		}
+		try {
+			decode(new ByteArrayInputStream("{\"a\":1}".getBytes(StandardCharsets.UTF_8)));
+			fail();
+		} catch (JSONException e) {
+			assertTrue(e.getMessage(), e.getMessage().contains("header"));
+		}
+		byte[] b = encode(values("[1]"));
+		b[4] = 0x7F;
+		try {
+			decode(new ByteArrayInputStream(b));
+			fail();
+		} catch (JSONException e) {
+			assertTrue(e.getMessage(), e.getMessage().contains("[4]"));
+		}
+		// a length far beyond the input
+		byte[] huge = {(byte)0xFF, 'J', 'B', 0x01, 0x07, (byte)0xFF, (byte)0xFF, (byte)0xFF, (byte)0x7F, 'x'};
+		try {
+			decode(new ByteArrayInputStream(huge));
+			fail();
+		} catch (JSONException e) {
+			// expected
+		}
+	}
+
+	@Test
+	public void unpairedSurrogates() throws IOException {
+		// JSON text may escape half of a pair, which UTF-8 has no encoding for
+		String[] json = { "[\"\\ud800\"]", "\"a\\udc00b\\ud83d\"", "{\"\\udbff\":\"\\ud83d\\ude00\\ude00\"}", "\"\\ud800\"" };
+		for (String j : json) {
+			JSONValue v = JSON.parse(j);
+			ByteArrayOutputStream out = new ByteArrayOutputStream();
+			JSON.encode(v, out);
+			JSONValue w = JSON.decode(out.toByteArray());
+			assertEquals(j, v, w);
+			assertEquals(j, v.toString(), w.toString());
+		}
+		// the second time a short string is written, it is by reference
+		List<JSONValue> values = values("\"\\ud800x\" \"\\ud800x\"");
+		assertEquals(values, decode(new ByteArrayInputStream(encode(values))));
+	}
+
+	@Test
+	public void textNumbers() throws IOException {
+		// numbers kept as their text come back as BigDecimal values, equal, but in the form of BigDecimal.toString()
+		List<JSONValue> values = values("1e400 [1.50,\"x\"] -0.0 {\"a\":2.5e0}");
+		List<JSONValue> actual = decode(new ByteArrayInputStream(encode(values)));
+		assertEquals(values, actual);
+		assertEquals("1E+400", actual.get(0).toString());
+		assertEquals("[1.50,\"x\"]", actual.get(1).toString());
+		assertEquals("0.0", actual.get(2).toString());
+		assertEquals("{\"a\":2.5}", actual.get(3).toString());
+		assertEquals(1, actual.get(3).asObject().get("a").asNumber().value().scale());
+	}
+}
@@ -0,0 +1,184 @@
+/**
+ * Cohesion Framework - JSON Library
+ * Copyright (c) 2017 - Stewart Gebbie, Gethos. Licensed under the MIT licence.
+ * vim: set ts=4 sw=0:
+ */
+package net.gethos.cohesion.graphs.json;
+
+import static org.junit.Assert.*;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.math.BigDecimal;
+import java.math.MathContext;
+import java.math.RoundingMode;
+import java.util.Random;
+
+import org.junit.Test;
+
+/**
+ * @author {@literal Stewart Gebbie <sgebbie@gethos.net>}
+ *
+ */
+public class JSONDoublesTest {
+
+	private static String format(double v) {
+		char[] c = new char[32];
+		return new String(c, 0, JSONDoubles.toChars(v, c, 0));
+	}
+
+	private static double parse(String s) {
+		return JSONNumbers.parseDouble(s.toCharArray(), 0, s.length());
+	}
+
+	/**
+	 * Check that the text reads back as the double, both here and via the
+	 * JDK, and that no decimal with fewer digits would.
+	 */
+	private static void assertRoundTrip(double v) {
+		String s = format(v);
+		long bits = Double.doubleToLongBits(v);
+		assertEquals(s, bits, Double.doubleToLongBits(Double.parseDouble(s)));
+		assertEquals(s, bits, Double.doubleToLongBits(parse(s)));
+	}
+
+	private static void assertShortest(double v) {
+		String s = format(v);
+		BigDecimal d = new BigDecimal(s);
+		int digits = d.stripTrailingZeros().precision();
+		if (digits == 1) return;
+		BigDecimal exact = new BigDecimal(v);
+		MathContext mc = new MathContext(digits - 1, RoundingMode.FLOOR);
+		BigDecimal down = exact.round(mc);
+		BigDecimal up = exact.round(new MathContext(digits - 1, RoundingMode.CEILING));
+		assertTrue(s + " vs " + down, down.doubleValue() != v);
+		assertTrue(s + " vs " + up, up.doubleValue() != v);
+	}
+
+	@Test
+	public void formatting() {
+		assertEquals("0", format(0.0));
+		assertEquals("-0", format(-0.0));
+		assertEquals("1", format(1.0));
+		assertEquals("-1500", format(-1500.0));
+		assertEquals("11.23", format(11.23));
+		assertEquals("0.1", format(0.1));
+		assertEquals("0.30000000000000004", format(0.1 + 0.2));
+		assertEquals("123.456", format(123.456));
+		assertEquals("0.000001", format(1e-6));
+		assertEquals("1e-7", format(1e-7));
+		assertEquals("1.5e-7", format(1.5e-7));
+		assertEquals("100000000000000000000", format(1e20));
+		assertEquals("1e+21", format(1e21));
+		assertEquals("2e+23", format(2e23));
+		assertEquals("1e+23", format(1e23));
+		assertEquals("9007199254740992", format(9007199254740992.0));
+		assertEquals("1.7976931348623157e+308", format(Double.MAX_VALUE));
+		assertEquals("2.2250738585072014e-308", format(Double.MIN_NORMAL));
+		assertEquals("5e-324", format(Double.MIN_VALUE));
+		assertEquals("1e-323", format(2 * Double.MIN_VALUE));
+		assertEquals("-1.2345e-300", format(-1.2345e-300));
+	}
+
+	@Test
+	public void formatRoundTripRandom() {
+		Random r = new Random(0x5eed);
+		for (int i = 0; i < 200000; i++) {
+			double v = Double.longBitsToDouble(r.nextLong());
+			if (Double.isNaN(v) || Double.isInfinite(v)) continue;
+			assertRoundTrip(v);
+			if (i % 20 == 0) assertShortest(v);
+		}
+	}
+
+	@Test
+	public void formatRoundTripBoundaries() {
+		// every binary exponent, at and around the powers of two (where the
+		// rounding interval is asymmetric) and the largest significands
+		for (long e = 0; e < 0x7ff; e++) {
+			for (long t = 0; t < 4; t++) {
+				assertRoundTrip(Double.longBitsToDouble(e << 52 | t));
+				assertRoundTrip(Double.longBitsToDouble(e << 52 | (0xfffffffffffffL - t)));
+			}
+			double v = Double.longBitsToDouble(e << 52);
+			assertShortest(v);
+			assertShortest(Math.nextUp(v));
+		}
+		// the smallest subnormals
+		for (long t = 1; t < 10000; t++) {
+			assertRoundTrip(Double.longBitsToDouble(t));
+		}
+	}
+
+	@Test
+	public void formatRoundTripDecimals() {
+		// short decimals, which must come back out as written
+		for (int i = 1; i < 20000; i++) {
+			for (int scale = -3; scale <= 8; scale++) {
+				BigDecimal d = BigDecimal.valueOf(i, scale);
+				double v = d.doubleValue();
+				assertEquals(0, d.compareTo(new BigDecimal(format(v))));
+			}
+		}
+	}
+
+	@Test
+	public void parsing() {
+		String[] hard = {
+			"0", "-0", "0.0e10", "1", "9007199254740993", "9007199254740995", "2.2250738585072011e-308",
+			"2.2250738585072012e-308", "4.9e-324", "2.4703282292062327e-324", "2.4703282292062328e-324",
+			"1.7976931348623157e308", "1.7976931348623158e308", "1.7976931348623159e308", "1e309", "1e-400",
+			"7.2057594037927933e16", "123456789012345678901234567890", "0.1000000000000000055511151231257827",
+			"0.1000000000000000055511151231257828", "3.14159265358979323846264338327950288", "1e23",
+			"8.98846567431158e307", "-1.5e-7", "0.000000000000000000000000000000000000000001e42",
+			"9999999999999999999", "99999999999999999999", "18446744073709551615", "18446744073709551616",
+		};
+		for (String s : hard) {
+			assertEquals(s, Double.doubleToLongBits(Double.parseDouble(s)), Double.doubleToLongBits(parse(s)));
+		}
+	}
+
+	@Test
+	public void parsingRandom() {
+		Random r = new Random(42);
+		StringBuilder s = new StringBuilder();
+		for (int i = 0; i < 200000; i++) {
+			s.setLength(0);
+			if (r.nextBoolean()) s.append('-');
+			int digits = 1 + r.nextInt(i % 2 == 0 ? 19 : 30);
+			int point = r.nextInt(digits + 1);
+			s.append((char)('1' + r.nextInt(9)));
+			for (int j = 1; j < digits; j++) {
+				if (j == point) s.append('.');
+				s.append((char)('0' + r.nextInt(10)));
+			}
+			if (r.nextBoolean()) s.append('e').append(r.nextInt(660) - 340);
+			String x = s.toString();
+			assertEquals(x, Double.doubleToLongBits(Double.parseDouble(x)), Double.doubleToLongBits(parse(x)));
+		}
+	}
+
+	@Test
+	public void malformed() {
+		String[] bad = { "", "-", "1.", ".5", "1e", "1e+", "1x", "--1" };
+		for (String s : bad) {
+			try {
+				parse(s);
+				fail(s);
+			} catch (JSONException e) {
+				// expected
+			}
+		}
+	}
+
+	@Test
+	public void writerAndNumber() throws IOException {
+		StringWriter s = new StringWriter();
+		JSONWriter w = new JSONWriter(s);
+		w.beginArray().value(0.1).value(1e21).value(-0.0).value(2e23).endArray().flush();
+		assertEquals("[0.1,1e+21,-0,2e+23]", s.toString());
+		assertEquals("1e+21", new JSONNumber(1e21).toString());
+		assertEquals(0, new BigDecimal("0.30000000000000004").compareTo(new JSONNumber(0.1 + 0.2).value()));
+		assertEquals(new JSONNumber(0.1 + 0.2), JSON.parse(new JSONNumber(0.1 + 0.2).toString()));
+	}
+}
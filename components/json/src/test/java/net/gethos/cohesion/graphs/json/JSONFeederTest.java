@@ -0,0 +1,112 @@
+/**
+ * Cohesion Framework - JSON Library
+ * Copyright (c) 2017 - Stewart Gebbie, Gethos. Licensed under the MIT licence.
+ * vim: set ts=4 sw=0:
+ */
+package net.gethos.cohesion.graphs.json;
+
+import static org.junit.Assert.*;
+
+import java.io.StringReader;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+
+/**
+ * @author {@literal Stewart Gebbie <sgebbie@gethos.net>}
+ *
+ */
+public class JSONFeederTest {
+
+	private static final String TEST_JSON =
+			"{\"a\":[1,2.5,{\"b\":\"}]\\\"[\"}],\"c\":null} [] {}\n"
+			+ "\"s\\\"t\" 12 -3.5e2 true false null\t[[[\"\u00e9\\u0041\"]]]\n"
+			+ "{\"d\":{\"e\":{\"f\":[true,{}]}}}7{\"g\":\"\u20ac\"}-1";
+
+	private static List<JSONValue> feed(byte[] bytes, int chunk) {
+		JSONFeeder feeder = new JSONFeeder();
+		List<JSONValue> values = new ArrayList<JSONValue>();
+		ByteBuffer buffer = ByteBuffer.allocate(chunk);
+		for (int i = 0; i < bytes.length; i += chunk) {
+			// reuse the one buffer, as a channel reader would
+			buffer.clear();
+			buffer.put(bytes, i, Math.min(chunk, bytes.length - i));
+			buffer.flip();
+			feeder.feed(buffer);
+			assertFalse(buffer.hasRemaining());
+			for (JSONValue v = feeder.next(); v != null; v = feeder.next()) values.add(v);
+		}
+		assertFalse(feeder.isDone());
+		feeder.end();
+		for (JSONValue v = feeder.next(); v != null; v = feeder.next()) values.add(v);
+		assertTrue(feeder.isDone());
+		return values;
+	}
+
+	@Test
+	public void chunks() {
+		List<JSONValue> expected = JSONStreams.values(new JSONStream(new StringReader(TEST_JSON)));
+		assertEquals(14, expected.size());
+		byte[] bytes = TEST_JSON.getBytes(StandardCharsets.UTF_8);
+		for (int chunk = 1; chunk <= bytes.length; chunk++) {
+			assertEquals("chunk " + chunk, expected, feed(bytes, chunk));
+		}
+	}
+
+	@Test
+	public void incremental() {
+		JSONFeeder feeder = new JSONFeeder();
+		feeder.feed(ByteBuffer.wrap("{\"a\":[1,".getBytes(StandardCharsets.UTF_8)));
+		assertNull(feeder.next());
+		feeder.feed(ByteBuffer.wrap("2]} 12".getBytes(StandardCharsets.UTF_8)));
+		assertEquals(1, feeder.available());
+		assertEquals(JSON.parse("{\"a\":[1,2]}"), feeder.next());
+		// the number might still run on
+		assertNull(feeder.next());
+		feeder.feed(ByteBuffer.wrap("3 ".getBytes(StandardCharsets.UTF_8)));
+		assertEquals(JSON.parse("123"), feeder.next());
+		feeder.end();
+		assertNull(feeder.next());
+		assertTrue(feeder.isDone());
+		try {
+			feeder.feed(ByteBuffer.wrap(new byte[1]));
+			fail();
+		} catch (IllegalStateException e) {
+			// expected
+		}
+	}
+
+	@Test
+	public void errors() {
+		JSONFeeder feeder = new JSONFeeder();
+		feeder.feed(ByteBuffer.wrap("[1] {\"a\":".getBytes(StandardCharsets.UTF_8)));
+		try {
+			feeder.end();
+			fail();
+		} catch (JSONException e) {
+			assertTrue(e.getMessage(), e.getMessage().contains("[4]"));
+		}
+		assertEquals(JSON.parse("[1]"), feeder.next());
+
+		String[] bad = { "{\"a\":} ", "[1 2] ", "} ", "tru ", "1x " };
+		for (String json : bad) {
+			try {
+				new JSONFeeder().feed(ByteBuffer.wrap(json.getBytes(StandardCharsets.UTF_8)));
+				fail(json);
+			} catch (JSONException e) {
+				// expected
+			}
+		}
+	}
+
+	@Test
+	public void projection() {
+		JSONFeeder feeder = new JSONFeeder();
+		feeder.setProjection(new JSONProjection("/b"));
+		feeder.feed(ByteBuffer.wrap("{\"a\":1,\"b\":2}".getBytes(StandardCharsets.UTF_8)));
+		assertEquals(JSON.parse("{\"b\":2}"), feeder.next());
+	}
+}
@@ -0,0 +1,155 @@
+/**
+ * Cohesion Framework - JSON Library
+ * Copyright (c) 2017 - Stewart Gebbie, Gethos. Licensed under the MIT licence.
+ * vim: set ts=4 sw=0:
+ */
+package net.gethos.cohesion.graphs.json;
+
+import static org.junit.Assert.*;
+
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Flow;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+/**
+ * @author {@literal Stewart Gebbie <sgebbie@gethos.net>}
+ *
+ */
+public class JSONFlowTest {
+
+	private static final String TEST_JSON = "{\"a\":1} [1,2] \"x\" 3 {\"b\":[true,null]}";
+
+	private static final Executor INLINE = new Executor() {
+		@Override
+		public void execute(Runnable task) {
+			task.run();
+		}
+	};
+
+	/**
+	 * Records what it is sent, requesting only when asked to.
+	 */
+	private static class Recorder implements Flow.Subscriber<JSONValue> {
+		Flow.Subscription subscription;
+		final List<JSONValue> values = new ArrayList<JSONValue>();
+		Throwable error;
+		boolean complete;
+
+		@Override
+		public void onSubscribe(Flow.Subscription subscription) {
+			this.subscription = subscription;
+		}
+
+		@Override
+		public void onNext(JSONValue value) {
+			values.add(value);
+		}
+
+		@Override
+		public void onError(Throwable e) {
+			error = e;
+		}
+
+		@Override
+		public void onComplete() {
+			complete = true;
+		}
+	}
+
+	@Test
+	public void demand() {
+		JSONStream stream = new JSONStream(new StringReader(TEST_JSON));
+		Recorder r = new Recorder();
+		new JSONPublisher(stream, INLINE).subscribe(r);
+		assertTrue(r.values.isEmpty());
+		r.subscription.request(2);
+		assertEquals(2, r.values.size());
+		assertFalse(r.complete);
+		// only the values requested have been parsed, so the rest are still in the stream
+		assertEquals(JSON.parse("\"x\""), stream.next());
+		r.subscription.request(5);
+		assertEquals(4, r.values.size());
+		assertTrue(r.complete);
+		assertNull(r.error);
+	}
+
+	@Test
+	public void error() {
+		Recorder r = new Recorder();
+		new JSONPublisher(new JSONStream(new StringReader("[1] {\"a\":} [2]")), INLINE).subscribe(r);
+		r.subscription.request(Long.MAX_VALUE);
+		assertEquals(1, r.values.size());
+		assertTrue(r.error instanceof JSONException);
+		assertTrue(r.error.getMessage(), r.error.getMessage().contains("[9]"));
+		assertFalse(r.complete);
+
+		r = new Recorder();
+		new JSONPublisher(new JSONStream(new StringReader(TEST_JSON)), INLINE).subscribe(r);
+		r.subscription.request(0);
+		assertTrue(r.error instanceof IllegalArgumentException);
+	}
+
+	@Test
+	public void rejected() {
+		ExecutorService shut = Executors.newSingleThreadExecutor();
+		shut.shutdown();
+		Recorder r = new Recorder();
+		new JSONPublisher(new JSONStream(new StringReader(TEST_JSON)), shut).subscribe(r);
+		r.subscription.request(1);
+		assertTrue(r.error instanceof RejectedExecutionException);
+		r.error = null;
+		r.subscription.request(1);
+		assertNull(r.error);
+		assertTrue(r.values.isEmpty());
+	}
+
+	@Test
+	public void once() {
+		JSONPublisher p = new JSONPublisher(new JSONStream(new StringReader(TEST_JSON)), INLINE);
+		Recorder r = new Recorder();
+		p.subscribe(r);
+		Recorder s = new Recorder();
+		p.subscribe(s);
+		assertTrue(s.error instanceof IllegalStateException);
+		r.subscription.request(1);
+		r.subscription.cancel();
+		r.subscription.request(1);
+		assertEquals(1, r.values.size());
+		assertFalse(r.complete);
+	}
+
+	@Test
+	public void write() throws Exception {
+		StringBuilder json = new StringBuilder();
+		for (int i = 0; i < 1000; i++) json.append("{\"id\":").append(i).append(",\"x\":[\"a\",").append(i * 0.25).append("]}\n");
+		StringWriter text = new StringWriter();
+		JSONSubscriber w = new JSONSubscriber(new JSONWriter(text), 16);
+		ExecutorService executor = Executors.newSingleThreadExecutor();
+		try {
+			new JSONPublisher(new JSONStream(new StringReader(json.toString())), executor).subscribe(w);
+			assertEquals(Long.valueOf(1000), w.done().get(10, TimeUnit.SECONDS));
+		} finally {
+			executor.shutdown();
+		}
+		assertEquals(JSONStreams.values(new JSONStream(new StringReader(json.toString()))), JSONStreams.values(new JSONStream(new StringReader(text.toString()))));
+
+		w = new JSONSubscriber(new JSONWriter(new StringWriter()), 4);
+		new JSONPublisher(new JSONStream(new StringReader("1 2 ]")), INLINE).subscribe(w);
+		try {
+			w.done().get();
+			fail();
+		} catch (ExecutionException e) {
+			assertTrue(e.getCause() instanceof JSONException);
+		}
+	}
+}
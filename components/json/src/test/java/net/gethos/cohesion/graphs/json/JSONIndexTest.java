@@ -0,0 +1,111 @@
+/**
+ * Cohesion Framework - JSON Library
+ * Copyright (c) 2017 - Stewart Gebbie, Gethos. Licensed under the MIT licence.
+ * vim: set ts=4 sw=0:
+ */
+package net.gethos.cohesion.graphs.json;
+
+import static org.junit.Assert.*;
+
+import java.nio.charset.StandardCharsets;
+
+import org.junit.Test;
+
+/**
+ * @author {@literal Stewart Gebbie <sgebbie@gethos.net>}
+ *
+ */
+public class JSONIndexTest {
+
+	private static final String TEST_JSON = " { \"myArray\" : [ \"hello\" , null , \"wo\\\"rld\" , [ ] , { } ] ,\n\t\"myBoolean\":true,\"myNull\":null,\"myNumber\":11.23,"
+			+ "\"myText\":\"hello\\nworld {[:,]}\",\"numbers\":[1,2,3.5,-4e2],\"nested\":{\"a\":{\"b\":[{\"c\":false}]}},\"caf\\u00e9\":\"\u20ac\" } ";
+
+	private static void assertInvalid(String json) {
+		try {
+			JSONValue v = JSON.parseLazily(json);
+			v.toString(); // decode everything
+			fail(json);
+		} catch (JSONException e) {
+			// expected
+		}
+	}
+
+	@Test
+	public void sameAsParse() {
+		JSONValue eager = JSON.parse(TEST_JSON);
+		JSONValue lazy = JSON.parseLazily(TEST_JSON);
+		assertEquals(eager.toString(), lazy.toString());
+		assertEquals(eager, JSON.parseLazily(TEST_JSON));
+		assertEquals(JSON.parseLazily(TEST_JSON), eager);
+		assertEquals(eager.hashCode(), JSON.parseLazily(TEST_JSON).hashCode());
+		assertEquals(eager, JSON.parseLazily(TEST_JSON.getBytes(StandardCharsets.UTF_8)));
+		for (String json : new String[] { "1", " \"x\" ", "true", "null", "[]", "{}", "[[[]]]", "-0.5e-3" }) {
+			assertEquals(JSON.parse(json), JSON.parseLazily(json));
+			assertEquals(JSON.parse(json), JSON.parseLazily(json.getBytes(StandardCharsets.UTF_8)));
+		}
+		try {
+			JSON.parseLazily("[\"\u20ac\"] x".getBytes(StandardCharsets.UTF_8));
+			fail();
+		} catch (JSONException e) {
+			assertTrue(e.getMessage(), e.getMessage().contains("[6]"));
+		}
+	}
+
+	@Test
+	public void views() {
+		JSONObject x = JSON.parseLazily(TEST_JSON).asObject();
+		assertEquals(JSONBoolean.JSON_FALSE, x.get("nested").asObject().get("a").asObject().get("b").asArray().get(0).asObject().get("c"));
+		assertEquals("hello\nworld {[:,]}", x.get("myText").asString().value);
+		assertEquals("\u20ac", x.get("caf\u00e9").asString().value);
+		assertArrayEquals(new double[] { 1, 2, 3.5, -400 }, JSONUtils.toDoubleArray(x.get("numbers")), 0);
+		assertEquals(JSONType.STRING, x.get("myArray").asArray().get(2).type());
+		assertEquals(8, x.size());
+
+		// and they may be changed, like any other value
+		x.put("myNumber", 12L);
+		x.remove("myArray");
+		x.get("numbers").asArray().add(5L);
+		JSONObject y = JSON.parse(TEST_JSON).asObject();
+		y.put("myNumber", 12L);
+		y.remove("myArray");
+		y.get("numbers").asArray().add(5L);
+		assertEquals(y, x);
+		assertEquals(y.toString(), x.toString());
+	}
+
+	@Test
+	public void lazy() {
+		// errors in values that are never looked at go unnoticed
+		JSONObject x = JSON.parseLazily("{\"good\":[1,2],\"bad\":[01,tru,{\"a\" 1}],\"worse\":{\"x\":-}}").asObject();
+		assertEquals("[1,2]", x.get("good").toString());
+		try {
+			x.get("bad").asArray().size();
+			fail();
+		} catch (JSONException e) {
+			// expected, once decoded
+		}
+		try {
+			x.get("worse").asObject().get("x");
+			fail();
+		} catch (JSONException e) {
+			// expected, once decoded
+		}
+	}
+
+	@Test
+	public void duplicates() {
+		JSONObject x = JSON.parseLazily("{\"a\":1,\"b\":2,\"a\":3}").asObject();
+		assertEquals(JSON.parse("{\"a\":1,\"b\":2,\"a\":3}"), x);
+		assertEquals(new JSONNumber(3), x.get("a"));
+		assertEquals(2, x.size());
+	}
+
+	@Test
+	public void invalid() {
+		String[] bad = {
+			"[1,2", "{\"a\":1", "[1}", "{\"a\":1]", "]", "\"open", "[\"open]", "1 2", "[1 2]", "[1,,2]",
+			"[,]", "[1,]", "{\"a\"}", "{\"a\":}", "{1:2}", "{\"a\":1,}", "{\"a\":1 \"b\":2}", "[truex]", "[1]]",
+		};
+		for (String json : bad) assertInvalid(json);
+	}
+}
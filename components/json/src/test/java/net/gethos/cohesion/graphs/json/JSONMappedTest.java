@@ -0,0 +1,94 @@
+/**
+ * Cohesion Framework - JSON Library
+ * Copyright (c) 2017 - Stewart Gebbie, Gethos. Licensed under the MIT licence.
+ * vim: set ts=4 sw=0:
+ */
+package net.gethos.cohesion.graphs.json;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * @author {@literal Stewart Gebbie <sgebbie@gethos.net>}
+ *
+ */
+public class JSONMappedTest {
+
+	private static final String TEST_JSON = "{\"myArray\":[\"hello\",null,\"world\"],\"myBoolean\":true,\"myNull\":null,\"myNumber\":11.23,\"myText\":\"hello\\nworld\\u00e9\"}";
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	private File write(String text) throws IOException {
+		File f = folder.newFile();
+		FileOutputStream out = new FileOutputStream(f);
+		try {
+			out.write(text.getBytes(StandardCharsets.UTF_8));
+		} finally {
+			out.close();
+		}
+		return f;
+	}
+
+	@Test
+	public void parseFile() throws IOException {
+		File f = write("  " + TEST_JSON + "\n");
+		RandomAccessFile file = new RandomAccessFile(f, "r");
+		try {
+			assertEquals(JSON.parse(TEST_JSON), JSON.parse(file.getChannel()));
+		} finally {
+			file.close();
+		}
+	}
+
+	@Test
+	public void streamFile() throws IOException {
+		File f = write(TEST_JSON + " " + TEST_JSON + "\n123 true");
+		RandomAccessFile file = new RandomAccessFile(f, "r");
+		try {
+			List<JSONValue> values = JSONStreams.values(new JSONStream(file.getChannel()));
+			assertEquals(4, values.size());
+			assertEquals(JSON.parse(TEST_JSON), values.get(0));
+			assertEquals(JSON.parse(TEST_JSON), values.get(1));
+			assertEquals(new JSONNumber(123), values.get(2));
+			assertEquals(JSONBoolean.JSON_TRUE, values.get(3));
+		} finally {
+			file.close();
+		}
+	}
+
+	@Test
+	public void streamFileInSmallChunks() throws IOException {
+		String corpus = TEST_JSON + " " + TEST_JSON + " -12.5e1 null";
+		File f = write(corpus);
+		for (int chunk = 1; chunk < 16; chunk++) {
+			RandomAccessFile file = new RandomAccessFile(f, "r");
+			try {
+				// map a tiny chunk at a time, so that tokens straddle the mappings
+				JSONScanner s = new JSONUTF8Scanner(file.getChannel(), chunk);
+				List<JSONValue> values = new ArrayList<JSONValue>();
+				for (JSONValue v = s.parseValue(); v != null; v = s.parseValue()) values.add(v);
+				assertEquals(4, values.size());
+				assertEquals(JSON.parse(TEST_JSON), values.get(0));
+				assertEquals(JSON.parse(TEST_JSON), values.get(1));
+				assertEquals(new JSONNumber(-125), values.get(2));
+				assertTrue(values.get(3).isNull());
+				assertEquals(corpus.getBytes(StandardCharsets.UTF_8).length, s.position());
+			} finally {
+				file.close();
+			}
+		}
+	}
+}
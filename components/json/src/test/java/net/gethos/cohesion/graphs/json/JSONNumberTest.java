@@ -0,0 +1,117 @@
+/**
+ * Cohesion Framework - JSON Library
+ * Copyright (c) 2017 - Stewart Gebbie, Gethos. Licensed under the MIT licence.
+ * vim: set ts=4 sw=0:
+ */
+package net.gethos.cohesion.graphs.json;
+
+import static org.junit.Assert.*;
+
+import java.io.StringReader;
+import java.math.BigDecimal;
+
+import org.junit.Test;
+
+/**
+ * @author {@literal Stewart Gebbie <sgebbie@gethos.net>}
+ *
+ */
+public class JSONNumberTest {
+
+	private static JSONNumber number(String json) {
+		return JSON.parse(json).asNumber();
+	}
+
+	@Test
+	public void integers() {
+		JSONNumber n = number("1234567890123");
+		assertTrue(n.isIntegral());
+		assertEquals(1234567890123L, n.longValue());
+		assertEquals(1234567890123.0, n.doubleValue(), 0.0);
+		assertEquals(new BigDecimal("1234567890123"), n.value());
+		assertEquals("1234567890123", n.toString());
+
+		assertEquals(Long.MAX_VALUE, number("9223372036854775807").longValue());
+		assertEquals(Long.MIN_VALUE, number("-9223372036854775808").longValue());
+		assertEquals(Long.MAX_VALUE, number("92233720368547758070").longValue());
+		assertTrue(number("92233720368547758070").isIntegral());
+	}
+
+	@Test
+	public void longBoundaries() {
+		// either side of 2^63, which saturate rather than wrap around
+		assertEquals(Long.MAX_VALUE, number("9223372036854775808").longValue());
+		assertEquals(Long.MAX_VALUE, number("9223372036854775809").longValue());
+		assertEquals(Long.MIN_VALUE, number("-9223372036854775809").longValue());
+		assertEquals(Long.MIN_VALUE, number("-9223372036854775810").longValue());
+		assertEquals(Long.MIN_VALUE, JSON.parse("{\"a\":-9223372036854775809}").asObject().get("a").asNumber().longValue());
+		assertEquals(Long.MIN_VALUE, JSON.parse("[-9223372036854775809]").asArray().get(0).asNumber().longValue());
+		assertEquals(Long.MAX_VALUE - 1, number("9223372036854775806").longValue());
+		assertEquals(Long.MIN_VALUE + 1, number("-9223372036854775807").longValue());
+	}
+
+	@Test
+	public void smallIntegersAreShared() {
+		assertSame(number("0"), number("0"));
+		assertSame(number("-128"), JSONNumber.valueOf(-128));
+		assertSame(number("1023"), JSONNumber.valueOf(1023));
+		assertNotSame(number("1024"), number("1024"));
+		assertSame(JSON.parse("[7]").asArray().get(0), new JSONStream(new StringReader("7")).next());
+	}
+
+	@Test
+	public void fractions() {
+		JSONNumber n = number("-11.345E+2");
+		assertFalse(n.isIntegral());
+		assertEquals(-1134.5, n.doubleValue(), 0.0);
+		assertEquals(-1134L, n.longValue());
+		assertEquals(0, new BigDecimal("-1134.5").compareTo(n.value()));
+		assertEquals("-11.345E+2", n.toString());
+	}
+
+	@Test
+	public void integral() {
+		String[] yes = { "1.0", "1.50e1", "-0.0", "12e3", "1.2e1", "0.0e-5", "1e400", "100e-2" };
+		String[] no = { "0.5", "1.05e1", "1e-1", "123e-2", "-0.001", "1.23456789e5" };
+		for (String x : yes) assertTrue(x, number(x).isIntegral());
+		for (String x : no) assertFalse(x, number(x).isIntegral());
+		assertTrue(new JSONNumber(2.0).isIntegral());
+		assertFalse(new JSONNumber(2.5).isIntegral());
+		assertTrue(new JSONNumber(new BigDecimal("2.000")).isIntegral());
+		assertFalse(new JSONNumber(new BigDecimal("2.001")).isIntegral());
+	}
+
+	@Test
+	public void equality() {
+		JSONNumber[] same = { number("1500"), number("1.5e3"), number("1500.00"), new JSONNumber(1500L), new JSONNumber(1500.0), new JSONNumber(new BigDecimal("1.500E+3")) };
+		for (JSONNumber x : same) {
+			for (JSONNumber y : same) {
+				assertEquals(x + " " + y, x, y);
+				assertEquals(x + " " + y, x.hashCode(), y.hashCode());
+			}
+		}
+		assertEquals(number("-0.0"), number("0"));
+		assertEquals(number("-0.0").hashCode(), number("0").hashCode());
+		assertNotEquals(number("0.1"), number("0.10000000000000001"));
+		assertEquals(new JSONNumber(11.23), number("11.23"));
+	}
+
+	@Test
+	public void malformed() {
+		String[] bad = { "-", "1.", "1e", "1e+", "-.5" };
+		for (String x : bad) {
+			try {
+				JSON.parse("[" + x + "]");
+				fail(x);
+			} catch (JSONException e) {
+				// expected
+			}
+			try {
+				new JSONStream(new StringReader(x)).next();
+				fail(x);
+			} catch (JSONException e) {
+				// expected
+			}
+		}
+	}
+}
@@ -0,0 +1,104 @@
+/**
+ * Cohesion Framework - JSON Library
+ * Copyright (c) 2017 - Stewart Gebbie, Gethos. Licensed under the MIT licence.
+ * vim: set ts=4 sw=0:
+ */
+package net.gethos.cohesion.graphs.json;
+
+import static org.junit.Assert.*;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+
+import org.junit.Test;
+
+/**
+ * @author {@literal Stewart Gebbie <sgebbie@gethos.net>}
+ *
+ */
+public class JSONObjectTest {
+
+	private static JSONObject numbered(int n) {
+		JSONObject x = new JSONObject();
+		for (int i = n - 1; i >= 0; i--) x.put("m" + i, (long)i);
+		return x;
+	}
+
+	@Test
+	public void insertionOrder() {
+		JSONValue v = JSON.parse("{\"b\":1,\"a\":2,\"c\":{\"z\":true,\"y\":false}}");
+		assertEquals("{\"b\":1,\"a\":2,\"c\":{\"z\":true,\"y\":false}}", v.toString());
+		assertEquals("{\"a\":2,\"b\":1,\"c\":{\"y\":false,\"z\":true}}", v.toSortedString());
+		assertEquals(Arrays.asList("b", "a", "c"), new ArrayList<String>(v.asObject().members()));
+	}
+
+	@Test
+	public void replace() {
+		JSONObject x = new JSONObject();
+		assertNull(x.put("a", 1L));
+		x.put("b", 2L);
+		assertEquals(new JSONNumber(1), x.put("a", new JSONNumber(3)));
+		x.put("c", (JSONValue)null);
+		assertEquals("{\"a\":3,\"b\":2,\"c\":null}", x.toString());
+		assertEquals(3, x.size());
+	}
+
+	@Test
+	public void large() {
+		// beyond the linear search, so that the hash index is used
+		for (int n : new int[] { 1, 8, 9, 100, 1000 }) {
+			JSONObject x = numbered(n);
+			assertEquals(n, x.size());
+			for (int i = 0; i < n; i++) assertEquals(new JSONNumber(i), x.get("m" + i));
+			assertNull(x.get("m" + n));
+			assertFalse(x.contains("missing"));
+			assertEquals("m" + (n - 1), x.members().iterator().next());
+		}
+	}
+
+	@Test
+	public void remove() {
+		JSONObject x = numbered(20);
+		for (int i = 0; i < 20; i += 2) assertEquals(new JSONNumber(i), x.remove("m" + i));
+		assertNull(x.remove("m0"));
+		assertEquals(10, x.size());
+		for (int i = 0; i < 20; i++) assertEquals(i % 2 == 1, x.contains("m" + i));
+
+		Iterator<String> i = x.members().iterator();
+		while (i.hasNext()) if (!i.next().equals("m5")) i.remove();
+		assertEquals("{\"m5\":5}", x.toString());
+		assertTrue(x.members().remove("m5"));
+		assertEquals(0, x.size());
+		assertEquals("{}", x.toString());
+
+		// and then, grow again
+		x.put("a", true);
+		assertEquals(JSONBoolean.JSON_TRUE, x.get("a"));
+	}
+
+	@Test
+	public void equality() {
+		JSONObject a = JSON.parse("{\"a\":1,\"b\":[1,2],\"c\":null}").asObject();
+		JSONObject b = JSON.parse("{\"c\":null,\"b\":[1,2],\"a\":1}").asObject();
+		assertEquals(a, b);
+		assertEquals(a.hashCode(), b.hashCode());
+		b.put("d", 4L);
+		assertNotEquals(a, b);
+		assertEquals(numbered(50), numbered(50));
+	}
+
+	@Test
+	public void sortedWriter() throws IOException {
+		List<String> names = new ArrayList<String>(numbered(12).members());
+		StringWriter s = new StringWriter();
+		JSONWriter w = new JSONWriter(s);
+		w.setSorted(true);
+		w.value(numbered(12)).flush();
+		assertTrue(s.toString().startsWith("{\"m0\":0,\"m1\":1,\"m10\":10,\"m11\":11,\"m2\":2"));
+		assertEquals("m11", names.get(0));
+	}
+}
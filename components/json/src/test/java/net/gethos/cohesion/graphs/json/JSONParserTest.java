@@ -0,0 +1,76 @@
+/**
+ * Cohesion Framework - JSON Library
+ * Copyright (c) 2017 - Stewart Gebbie, Gethos. Licensed under the MIT licence.
+ * vim: set ts=4 sw=0:
+ */
+package net.gethos.cohesion.graphs.json;
+
+import static org.junit.Assert.*;
+
+import java.nio.charset.StandardCharsets;
+
+import org.junit.Test;
+
+/**
+ * @author {@literal Stewart Gebbie <sgebbie@gethos.net>}
+ *
+ */
+public class JSONParserTest {
+
+	private static final String[] TEST_JSON = {
+		"{\"a\":[1,2.5,{\"b\":\"}]\\\"[\"}],\"c\":null}",
+		"\"s\\\"t\\u0041\u00e9\"",
+		"[[[\"x\"]],-3.5e2,true,false,null]",
+		"12",
+		"{\"d\":{\"e\":\"\u20ac\"}}",
+	};
+
+	@Test
+	public void reuse() {
+		JSONParser parser = new JSONParser();
+		for (int i = 0; i < 3; i++) {
+			for (String json : TEST_JSON) {
+				JSONValue expected = JSON.parse(json);
+				assertEquals(expected, parser.parse(json));
+				assertEquals(expected, parser.parse(json.getBytes(StandardCharsets.UTF_8)));
+			}
+		}
+		assertNull(parser.parse((String)null));
+	}
+
+	@Test
+	public void ranges() {
+		JSONParser parser = new JSONParser(null);
+		String json = "xx[1,{\"a\":\"b\"}]yy";
+		char[] chars = json.toCharArray();
+		byte[] bytes = json.getBytes(StandardCharsets.UTF_8);
+		JSONValue expected = JSON.parse("[1,{\"a\":\"b\"}]");
+		assertEquals(expected, parser.parse(chars, 2, chars.length - 2));
+		assertEquals(expected, parser.parse(bytes, 2, bytes.length - 2));
+		assertEquals(JSON.parse("1"), parser.parse(bytes, 3, 4));
+	}
+
+	@Test
+	public void large() {
+		JSONParser parser = new JSONParser();
+		StringBuilder b = new StringBuilder("[");
+		for (int i = 0; i < 50000; i++) b.append(i).append(',');
+		b.append("\"end\"]");
+		JSONValue v = parser.parse(b.toString());
+		assertEquals(50001, v.asArray().size());
+		// and the parser is still fine for small documents after a large one
+		assertEquals(JSON.parse(TEST_JSON[0]), parser.parse(TEST_JSON[0]));
+	}
+
+	@Test
+	public void errors() {
+		JSONParser parser = new JSONParser();
+		try {
+			parser.parse("{\"a\":}");
+			fail();
+		} catch (JSONException e) {
+			// expected
+		}
+		assertEquals(JSON.parse(TEST_JSON[2]), parser.parse(TEST_JSON[2]));
+	}
+}
@@ -0,0 +1,123 @@
+/**
+ * Cohesion Framework - JSON Library
+ * Copyright (c) 2017 - Stewart Gebbie, Gethos. Licensed under the MIT licence.
+ * vim: set ts=4 sw=0:
+ */
+package net.gethos.cohesion.graphs.json;
+
+import static org.junit.Assert.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.StringReader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+
+/**
+ * @author {@literal Stewart Gebbie <sgebbie@gethos.net>}
+ *
+ */
+public class JSONPointerTest {
+
+	// the example document of RFC 6901
+	private static final String RFC_JSON = "{\"foo\":[\"bar\",\"baz\"],\"\":0,\"a/b\":1,\"c%d\":2,\"e^f\":3,\"g|h\":4,\"i\\\\j\":5,\"k\\\"l\":6,\" \":7,\"m~n\":8}";
+
+	private static final String TEST_JSON =
+			"{\"meta\":{\"id\":1,\"tags\":[\"a\",\"}]\\\"\"]},\"payload\":{\"items\":[{\"price\":1},{\"price\":2},{\"price\":3},{\"price\":4.5,\"x\":[[{}]]}]}}\n"
+			+ "{\"payload\":{\"items\":[]},\"meta\":{\"i\\u0064\":\"two\"}}\n"
+			+ "{\"meta\":[1,2],\"payload\":{\"items\":[0,1,2,{\"price\":null}]}}\n"
+			+ "[]\n";
+
+	private static List<JSONValue[]> extract(JSONStream s, JSONExtractor x) {
+		List<JSONValue[]> values = new ArrayList<JSONValue[]>();
+		for (JSONValue[] v = s.next(x); v != null; v = s.next(x)) values.add(v);
+		return values;
+	}
+
+	@Test
+	public void rfc() {
+		JSONValue v = JSON.parse(RFC_JSON);
+		assertEquals(v, new JSONPointer("").get(v));
+		assertEquals(JSON.parse("[\"bar\",\"baz\"]"), new JSONPointer("/foo").get(v));
+		assertEquals(new JSONString("bar"), new JSONPointer("/foo/0").get(v));
+		assertEquals(new JSONNumber(0), new JSONPointer("/").get(v));
+		assertEquals(new JSONNumber(1), new JSONPointer("/a~1b").get(v));
+		assertEquals(new JSONNumber(2), new JSONPointer("/c%d").get(v));
+		assertEquals(new JSONNumber(5), new JSONPointer("/i\\j").get(v));
+		assertEquals(new JSONNumber(6), new JSONPointer("/k\"l").get(v));
+		assertEquals(new JSONNumber(7), new JSONPointer("/ ").get(v));
+		assertEquals(new JSONNumber(8), new JSONPointer("/m~0n").get(v));
+		assertNull(new JSONPointer("/foo/2").get(v));
+		assertNull(new JSONPointer("/foo/-").get(v));
+		assertNull(new JSONPointer("/foo/01").get(v));
+		assertNull(new JSONPointer("/a~1b/c").get(v));
+
+		// and the same, extracted as the text is scanned
+		String[] pointers = { "/foo/0", "/a~1b", "/i\\j", "/k\"l", "/m~0n", "/", "/foo/-", "/missing" };
+		JSONValue[] found = new JSONStream(new StringReader(RFC_JSON)).next(new JSONExtractor(pointers));
+		for (int i = 0; i < pointers.length; i++) assertEquals(pointers[i], new JSONPointer(pointers[i]).get(v), found[i]);
+
+		for (String bad : new String[] { "foo", "/~", "/~2", "/a~" }) {
+			try {
+				new JSONPointer(bad);
+				fail(bad);
+			} catch (JSONException e) {
+				// expected
+			}
+		}
+	}
+
+	@Test
+	public void stream() {
+		JSONExtractor x = new JSONExtractor("/meta/id", "/payload/items/3/price", "/meta/tags/1");
+		for (JSONStream s : new JSONStream[] {
+				new JSONStream(new StringReader(TEST_JSON)),
+				new JSONStream(new ByteArrayInputStream(TEST_JSON.getBytes(StandardCharsets.UTF_8))) }) {
+			List<JSONValue[]> values = extract(s, x);
+			assertEquals(4, values.size());
+			assertArrayEquals(new JSONValue[] { new JSONNumber(1), new JSONNumber(4.5), new JSONString("}]\"") }, values.get(0));
+			assertArrayEquals(new JSONValue[] { new JSONString("two"), null, null }, values.get(1));
+			assertArrayEquals(new JSONValue[] { null, JSONNull.JSON_NULL, null }, values.get(2));
+			assertArrayEquals(new JSONValue[3], values.get(3));
+		}
+	}
+
+	@Test
+	public void matchesTree() {
+		String[] pointers = { "", "/meta", "/meta/id", "/meta/tags/0", "/payload/items/3", "/payload/items/3/x/0/0", "/meta/id", "/payload/items/0/price" };
+		JSONExtractor x = new JSONExtractor(pointers);
+		JSONStream s = new JSONStream(new StringReader(TEST_JSON));
+		for (JSONValue v : new JSONStream(new StringReader(TEST_JSON))) {
+			JSONValue[] found = s.next(x);
+			assertArrayEquals(x.extract(v), found);
+		}
+		assertNull(s.next(x));
+	}
+
+	@Test
+	public void skipsTheRest() {
+		// once the pointer has been found, the rest of the value is not looked at
+		JSONExtractor x = new JSONExtractor("/a");
+		JSONStream s = new JSONStream(new StringReader("{\"a\":1,\"b\":tru} {\"b\":[1,2,{\"c\":\"]\"}],\"a\":2}"));
+		assertEquals(new JSONNumber(1), s.next(x)[0]);
+		assertEquals(new JSONNumber(2), s.next(x)[0]);
+		assertNull(s.next(x));
+	}
+
+	@Test
+	public void repeatedNames() {
+		JSONExtractor x = new JSONExtractor("/a/x", "/a/y");
+		String[] json = {
+			"{\"a\":{\"x\":1,\"x\":2,\"y\":3}}",
+			"{\"a\":{\"x\":1},\"a\":{\"y\":3}}",
+			"{\"a\":{\"x\":{\"z\":1},\"x\":[],\"y\":3}}",
+		};
+		for (String j : json) {
+			JSONValue[] found = new JSONStream(new StringReader(j)).next(x);
+			assertArrayEquals(j, x.extract(JSON.parse(j)), found);
+		}
+		assertArrayEquals(new JSONValue[] { new JSONNumber(2), new JSONNumber(3) }, new JSONStream(new StringReader(json[0])).next(x));
+	}
+}
@@ -0,0 +1,75 @@
+/**
+ * Cohesion Framework - JSON Library
+ * Copyright (c) 2017 - Stewart Gebbie, Gethos. Licensed under the MIT licence.
+ * vim: set ts=4 sw=0:
+ */
+package net.gethos.cohesion.graphs.json;
+
+import static org.junit.Assert.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.StringReader;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+import org.junit.Test;
+
+/**
+ * @author {@literal Stewart Gebbie <sgebbie@gethos.net>}
+ *
+ */
+public class JSONProjectionTest {
+
+	private static final String TEST_JSON =
+			"{\"id\":1,\"blob\":{\"x\":[1,2,{\"y\":\"}\"}],\"z\":\"\\\"\"},\"meta\":{\"type\":\"a\",\"size\":10},\"items\":[{\"price\":1,\"name\":\"p\"},{\"name\":\"q\"},7]}\n"
+			+ "{\"meta\":5,\"i\\u0064\":2,\"items\":{\"price\":3}}\n";
+
+	private static final String PROJECTED =
+			"{\"id\":1,\"meta\":{\"type\":\"a\"},\"items\":[{\"price\":1},{},7]}\n"
+			+ "{\"meta\":5,\"id\":2,\"items\":{\"price\":3}}\n";
+
+	@Test
+	public void stream() {
+		JSONProjection p = new JSONProjection()
+				.include("id")
+				.include("meta", new JSONProjection().include("type"))
+				.include("items", new JSONProjection().include("price"));
+		List<JSONValue> expected = JSONStreams.values(new JSONStream(new StringReader(PROJECTED)));
+
+		JSONStream s = new JSONStream(new StringReader(TEST_JSON));
+		s.setProjection(p);
+		assertEquals(expected, JSONStreams.values(s));
+
+		s = new JSONStream(new ByteArrayInputStream(TEST_JSON.getBytes(StandardCharsets.UTF_8)));
+		s.setProjection(new JSONProjection("/id", "/meta/type", "/items/price"));
+		assertEquals(expected, JSONStreams.values(s));
+		assertEquals("{\"id\":1,\"meta\":{\"type\":\"a\"},\"items\":[{\"price\":1},{},7]}", expected.get(0).toString());
+	}
+
+	@Test
+	public void parse() {
+		String first = TEST_JSON.substring(0, TEST_JSON.indexOf('\n'));
+		JSONProjection p = new JSONProjection("/blob/x", "/meta");
+		JSONValue expected = JSON.parse("{\"blob\":{\"x\":[1,2,{\"y\":\"}\"}]},\"meta\":{\"type\":\"a\",\"size\":10}}");
+		assertEquals(expected, JSON.parse(first, p));
+		assertEquals(expected, JSON.parse(first.getBytes(StandardCharsets.UTF_8), p));
+		assertEquals(JSON.parse(first), JSON.parse(first, null));
+		assertEquals(new JSONObject(), JSON.parse(first, new JSONProjection()));
+		assertEquals(JSON.parse("[1,{}]"), JSON.parse("[1,{\"a\":2}]", new JSONProjection()));
+	}
+
+	@Test
+	public void paths() {
+		// a wider path takes over from a narrower one, whichever comes first
+		JSONValue v = JSON.parse(TEST_JSON.substring(0, TEST_JSON.indexOf('\n')));
+		assertEquals(v.asObject().get("meta"), JSON.parse(v.toString(), new JSONProjection("/meta/type", "/meta")).asObject().get("meta"));
+		assertEquals(v.asObject().get("meta"), JSON.parse(v.toString(), new JSONProjection("/meta", "/meta/type")).asObject().get("meta"));
+		assertEquals(JSON.parse("{\"a/b\":1}"), JSON.parse("{\"a/b\":1,\"c\":2}", new JSONProjection("/a~1b")));
+		try {
+			new JSONProjection("");
+			fail();
+		} catch (JSONException e) {
+			// expected
+		}
+	}
+}
@@ -0,0 +1,135 @@
+/**
+ * Cohesion Framework - JSON Library
+ * Copyright (c) 2017 - Stewart Gebbie, Gethos. Licensed under the MIT licence.
+ * vim: set ts=4 sw=0:
+ */
+package net.gethos.cohesion.graphs.json;
+
+import static org.junit.Assert.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.StringReader;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+
+import org.junit.Test;
+
+/**
+ * @author {@literal Stewart Gebbie <sgebbie@gethos.net>}
+ *
+ */
+public class JSONReaderTest {
+
+	private static final String TEST_JSON = "{\"meta\":{\"id\":1234567890123,\"tags\":[\"a\",\"b\\\"]\"]},\"price\":-11.345E+2,\"ok\":true,\"none\":null,\"items\":[[1,2],{\"x\":false}]}";
+
+	@Test
+	public void tokens() {
+		JSONReader r = new JSONReader(TEST_JSON);
+		assertEquals(JSONToken.START_OBJECT, r.nextToken());
+		assertNull(r.currentName());
+		assertEquals(JSONToken.NAME, r.nextToken());
+		assertEquals("meta", r.currentName());
+		assertEquals(JSONToken.START_OBJECT, r.nextToken());
+		assertEquals("meta", r.currentName());
+		assertEquals(1, r.depth());
+		assertEquals(JSONToken.NAME, r.nextToken());
+		assertEquals(JSONToken.NUMBER, r.nextToken());
+		assertEquals("id", r.currentName());
+		assertEquals(1234567890123L, r.getLong());
+		assertEquals(1234567890123.0, r.getDouble(), 0.0);
+		assertEquals(new BigDecimal("1234567890123"), r.getBigDecimal());
+		assertEquals(JSONToken.NAME, r.nextToken());
+		assertEquals(JSONToken.START_ARRAY, r.nextToken());
+		assertEquals("tags", r.currentName());
+		assertEquals(JSONToken.STRING, r.nextToken());
+		assertNull(r.currentName());
+		assertEquals("a", r.getString());
+		assertEquals(JSONToken.STRING, r.nextToken());
+		assertEquals("b\"]", r.getString());
+		assertEquals(JSONToken.END_ARRAY, r.nextToken());
+		assertEquals("tags", r.currentName());
+		assertEquals(JSONToken.END_OBJECT, r.nextToken());
+		assertEquals("meta", r.currentName());
+		assertEquals(JSONToken.NAME, r.nextToken());
+		assertEquals(JSONToken.NUMBER, r.nextToken());
+		assertEquals("price", r.currentName());
+		assertEquals(-1134.5, r.getDouble(), 0.0);
+		assertEquals(-1134L, r.getLong());
+		assertEquals(JSONToken.NAME, r.nextToken());
+		assertEquals(JSONToken.TRUE, r.nextToken());
+		assertTrue(r.getBoolean());
+		assertEquals(JSONToken.NAME, r.nextToken());
+		assertEquals(JSONToken.NULL, r.nextToken());
+		assertEquals("none", r.currentName());
+		assertEquals(JSONToken.NAME, r.nextToken());
+		assertEquals(JSONToken.START_ARRAY, r.nextToken());
+		assertEquals(JSONToken.START_ARRAY, r.nextToken());
+		assertEquals(JSONToken.NUMBER, r.nextToken());
+		assertEquals(JSONToken.NUMBER, r.nextToken());
+		assertEquals(JSONToken.END_ARRAY, r.nextToken());
+		assertEquals(JSONToken.START_OBJECT, r.nextToken());
+		assertEquals(JSONToken.NAME, r.nextToken());
+		assertEquals(JSONToken.FALSE, r.nextToken());
+		assertEquals(JSONToken.END_OBJECT, r.nextToken());
+		assertEquals(JSONToken.END_ARRAY, r.nextToken());
+		assertEquals(JSONToken.END_OBJECT, r.nextToken());
+		assertEquals(0, r.depth());
+		assertNull(r.nextToken());
+	}
+
+	@Test
+	public void skipChildren() {
+		JSONReader r = new JSONReader(new StringReader(TEST_JSON + " " + TEST_JSON));
+		for (int i = 0; i < 2; i++) {
+			assertEquals(JSONToken.START_OBJECT, r.nextToken());
+			assertEquals(JSONToken.NAME, r.nextToken());
+			assertEquals(JSONToken.START_OBJECT, r.nextToken());
+			r.skipChildren();
+			assertEquals(JSONToken.END_OBJECT, r.currentToken());
+			assertEquals("meta", r.currentName());
+			assertEquals(JSONToken.NAME, r.nextToken());
+			assertEquals("price", r.currentName());
+			assertEquals(JSONToken.NUMBER, r.nextToken());
+			assertEquals(JSONToken.NAME, r.nextToken());
+			assertEquals(JSONToken.TRUE, r.nextToken());
+			assertEquals(JSONToken.NAME, r.nextToken());
+			assertEquals(JSONToken.NULL, r.nextToken());
+			assertEquals(JSONToken.NAME, r.nextToken());
+			assertEquals(JSONToken.START_ARRAY, r.nextToken());
+			r.skipChildren();
+			assertEquals(JSONToken.END_OBJECT, r.nextToken());
+		}
+		assertNull(r.nextToken());
+	}
+
+	@Test
+	public void readValue() {
+		byte[] b = (TEST_JSON + "\n" + TEST_JSON).getBytes(StandardCharsets.UTF_8);
+		JSONReader r = new JSONReader(new ByteArrayInputStream(b));
+		int n = 0;
+		while (r.nextToken() != null) {
+			assertEquals(JSON.parse(TEST_JSON), r.readValue());
+			n++;
+		}
+		assertEquals(2, n);
+	}
+
+	@Test(expected = JSONException.class)
+	public void malformed() {
+		JSONReader r = new JSONReader("{\"a\" 1}");
+		r.nextToken();
+		r.nextToken();
+	}
+
+	@Test
+	public void longBoundaries() {
+		JSONReader r = new JSONReader("[9223372036854775807,9223372036854775808,-9223372036854775808,-9223372036854775809,-9223372036854775810]");
+		assertEquals(JSONToken.START_ARRAY, r.nextToken());
+		long[] expected = { Long.MAX_VALUE, Long.MAX_VALUE, Long.MIN_VALUE, Long.MIN_VALUE, Long.MIN_VALUE };
+		for (long x : expected) {
+			assertEquals(JSONToken.NUMBER, r.nextToken());
+			assertEquals(x, r.getLong());
+		}
+		assertEquals(JSONToken.END_ARRAY, r.nextToken());
+	}
+}
@@ -0,0 +1,124 @@
+/**
+ * Cohesion Framework - JSON Library
+ * Copyright (c) 2017 - Stewart Gebbie, Gethos. Licensed under the MIT licence.
+ * vim: set ts=4 sw=0:
+ */
+package net.gethos.cohesion.graphs.json;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.concurrent.ForkJoinPool;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * @author {@literal Stewart Gebbie <sgebbie@gethos.net>}
+ *
+ */
+public class JSONSplitterTest {
+
+	private static final String TEST_JSON =
+			" [1, \"a,b\", {\"x\":[1,{\"y\":\"],\\\\\"}]}, [[],[\",\"]], \"\\\\\", \"\\\"[,\", -2.5e3,\n"
+			+ "true, null, {\"k\\\"\":\"\u00e9\\u0041,\"}, 3, [1,2,3], \"\\\\\\\",\" ] ";
+
+	private ForkJoinPool pool;
+
+	@Before
+	public void setUp() {
+		pool = new ForkJoinPool(3);
+	}
+
+	@After
+	public void tearDown() {
+		pool.shutdown();
+	}
+
+	private JSONValue parse(String json, int chunk) throws IOException {
+		return JSONSplitter.parse(new JSONSplitter.BufferInput(ByteBuffer.wrap(json.getBytes(StandardCharsets.UTF_8))), pool, chunk);
+	}
+
+	@Test
+	public void split() throws IOException {
+		JSONValue expected = JSON.parse(TEST_JSON);
+		assertEquals(13, expected.asArray().size());
+		for (int chunk = 1; chunk < TEST_JSON.length(); chunk++) {
+			assertEquals("chunk " + chunk, expected, parse(TEST_JSON, chunk));
+		}
+	}
+
+	@Test
+	public void numbers() throws IOException {
+		StringBuilder json = new StringBuilder("[");
+		for (int i = 0; i < 1000; i++) json.append(i == 0 ? "" : ",").append(i % 7 == 0 ? i + 0.5 : i);
+		json.append("]");
+		JSONArray x = parse(json.toString(), 64).asArray();
+		assertEquals(JSON.parse(json.toString()), x);
+		double[] d = new double[1000];
+		assertTrue(x.copyDoubles(d, 0));
+		assertEquals(7.5, d[7], 0);
+
+		json = new StringBuilder("[");
+		for (int i = 0; i < 1000; i++) json.append(i == 0 ? "" : ",").append(i);
+		json.append("]");
+		x = parse(json.toString(), 64).asArray();
+		long[] l = new long[1000];
+		assertTrue(x.copyLongs(l, 0));
+		assertEquals(999, l[999]);
+	}
+
+	@Test
+	public void whole() throws IOException {
+		// anything other than a top-level array is parsed in one go
+		assertEquals(JSON.parse("{\"a\":[1,2]}"), parse(" {\"a\":[1,2]} ", 1));
+		assertEquals(JSON.parse("\"[1,2]\""), parse("\"[1,2]\"", 1));
+		assertEquals(new JSONArray(), parse("[ ]", 1));
+		assertEquals(new JSONArray(), parse("[          ]", 1));
+		assertNull(parse("   ", 1));
+		assertEquals(JSON.parse("[1,2]"), parse("[1,2,]", 1));
+	}
+
+	@Test
+	public void errors() throws IOException {
+		String[] bad = { "[1,,2,3]", "[1,2 3,4]", "[{\"a\":1],[2]]", "[1],[2]", "[1,2,3]]", "[[1,2,3]", "[\"a,b,c]", "[1,2,{],3]" };
+		for (String json : bad) {
+			for (int chunk = 1; chunk < json.length(); chunk++) {
+				try {
+					parse(json, chunk);
+					fail(json + " " + chunk);
+				} catch (JSONException e) {
+					// expected
+				}
+			}
+		}
+	}
+
+	@Test
+	public void file() throws IOException {
+		File f = File.createTempFile("split", ".json");
+		try {
+			Files.write(f.toPath(), ("xx" + TEST_JSON).getBytes(StandardCharsets.UTF_8));
+			RandomAccessFile raf = new RandomAccessFile(f, "r");
+			try {
+				FileChannel channel = raf.getChannel();
+				channel.position(2);
+				for (int chunk = 1; chunk < TEST_JSON.length(); chunk += 5) {
+					assertEquals(JSON.parse(TEST_JSON), JSONSplitter.parse(new JSONSplitter.FileInput(channel), pool, chunk));
+				}
+				assertEquals(JSON.parse(TEST_JSON), JSON.parseParallel(channel, pool));
+			} finally {
+				raf.close();
+			}
+		} finally {
+			f.delete();
+		}
+	}
+}
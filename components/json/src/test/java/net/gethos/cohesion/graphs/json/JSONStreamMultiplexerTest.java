@@ -0,0 +1,192 @@
+/**
+ * Cohesion Framework - JSON Library
+ * Copyright (c) 2017 - Stewart Gebbie, Gethos. Licensed under the MIT licence.
+ * vim: set ts=4 sw=0:
+ */
+package net.gethos.cohesion.graphs.json;
+
+import static org.junit.Assert.*;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.nio.ByteBuffer;
+import java.nio.channels.Pipe;
+import java.nio.channels.SelectableChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * @author {@literal Stewart Gebbie <sgebbie@gethos.net>}
+ *
+ */
+public class JSONStreamMultiplexerTest {
+
+	private static final String TEST_JSON =
+			"{\"a\":[1,2.5,{\"b\":\"}]\\\"[\"}],\"c\":null} [] {}\n"
+			+ "\"s\\\"t\" 12 -3.5e2 true false null {\"d\":{\"e\":[true,{}]}} 7";
+
+	/**
+	 * Collects what each channel delivers.
+	 */
+	private static class Collector implements JSONStreamMultiplexer.Handler {
+		final Map<SelectableChannel, List<JSONValue>> values = Collections.synchronizedMap(new HashMap<SelectableChannel, List<JSONValue>>());
+		final Map<SelectableChannel, Throwable> failures = Collections.synchronizedMap(new HashMap<SelectableChannel, Throwable>());
+		final CountDownLatch ended;
+
+		Collector(int channels) {
+			this.ended = new CountDownLatch(channels);
+		}
+
+		List<JSONValue> of(SelectableChannel channel) {
+			synchronized (values) {
+				List<JSONValue> x = values.get(channel);
+				if (x == null) values.put(channel, x = new ArrayList<JSONValue>());
+				return x;
+			}
+		}
+
+		@Override
+		public void value(SelectableChannel channel, JSONValue value) {
+			List<JSONValue> x = of(channel);
+			synchronized (x) {
+				x.add(value);
+			}
+		}
+
+		@Override
+		public void closed(SelectableChannel channel) {
+			ended.countDown();
+		}
+
+		@Override
+		public void failed(SelectableChannel channel, Throwable e) {
+			failures.put(channel, e);
+			ended.countDown();
+		}
+	}
+
+	private ExecutorService executor;
+	private JSONStreamMultiplexer multiplexer;
+
+	@Before
+	public void setUp() {
+		executor = Executors.newFixedThreadPool(4);
+	}
+
+	@After
+	public void tearDown() throws IOException {
+		if (multiplexer != null) multiplexer.close();
+		executor.shutdownNow();
+	}
+
+	private static void write(Pipe.SinkChannel sink, byte[] bytes, int from, int to) throws IOException {
+		ByteBuffer b = ByteBuffer.wrap(bytes, from, to - from);
+		while (b.hasRemaining()) sink.write(b);
+	}
+
+	@Test
+	public void values() throws Exception {
+		int n = 20;
+		Collector c = new Collector(n);
+		multiplexer = new JSONStreamMultiplexer(c, executor, 2, 4);
+		Pipe[] pipes = new Pipe[n];
+		for (int i = 0; i < n; i++) {
+			pipes[i] = Pipe.open();
+			multiplexer.register(pipes[i].source());
+		}
+		// interleave the channels, a few bytes at a time
+		byte[] bytes = TEST_JSON.getBytes(StandardCharsets.UTF_8);
+		for (int p = 0; p < bytes.length; p += 5) {
+			for (Pipe pipe : pipes) write(pipe.sink(), bytes, p, Math.min(bytes.length, p + 5));
+		}
+		for (Pipe pipe : pipes) pipe.sink().close();
+		assertTrue(c.ended.await(10, TimeUnit.SECONDS));
+
+		List<JSONValue> expected = JSONStreams.values(new JSONStream(new StringReader(TEST_JSON)));
+		assertEquals(11, expected.size());
+		for (Pipe pipe : pipes) assertEquals(expected, c.of(pipe.source()));
+		assertTrue(c.failures.isEmpty());
+	}
+
+	@Test
+	public void failure() throws Exception {
+		Collector c = new Collector(1);
+		multiplexer = new JSONStreamMultiplexer(c, executor, 1, 4);
+		Pipe pipe = Pipe.open();
+		multiplexer.register(pipe.source());
+		byte[] bytes = "[1] {\"a\":} [2]".getBytes(StandardCharsets.UTF_8);
+		write(pipe.sink(), bytes, 0, bytes.length);
+		assertTrue(c.ended.await(10, TimeUnit.SECONDS));
+		assertEquals(Collections.singletonList(JSON.parse("[1]")), c.of(pipe.source()));
+		assertTrue(c.failures.get(pipe.source()) instanceof JSONException);
+		pipe.sink().close();
+	}
+
+	@Test
+	public void backlog() throws Exception {
+		// hold back the handler until released
+		final ConcurrentLinkedQueue<Runnable> held = new ConcurrentLinkedQueue<Runnable>();
+		Executor holding = new Executor() {
+			@Override
+			public void execute(Runnable task) {
+				held.add(task);
+			}
+		};
+		Collector c = new Collector(1);
+		multiplexer = new JSONStreamMultiplexer(c, holding, 1, 8);
+		Pipe pipe = Pipe.open();
+		multiplexer.register(pipe.source());
+		Pipe.SinkChannel sink = pipe.sink();
+		sink.configureBlocking(false);
+
+		// once the backlog is reached the channel is no longer read, so the pipe fills up
+		byte[] value = "{\"padding\":\"..............................................................\"}\n".getBytes(StandardCharsets.UTF_8);
+		int sent = 0;
+		long stalled = 0;
+		ByteBuffer b = ByteBuffer.wrap(value);
+		while (stalled < 300) {
+			sink.write(b);
+			if (!b.hasRemaining()) {
+				sent++;
+				stalled = 0;
+				b = ByteBuffer.wrap(value);
+				assertTrue("never paused", sent < 1000000);
+			} else {
+				Thread.sleep(10);
+				stalled += 10;
+			}
+		}
+		assertTrue(sent > 8);
+		assertEquals(0, c.of(pipe.source()).size());
+
+		// release the handler, and the rest of the values come through
+		for (int i = 0; i < 100 && b.hasRemaining(); i++) {
+			for (Runnable t = held.poll(); t != null; t = held.poll()) t.run();
+			sink.write(b);
+			Thread.sleep(10);
+		}
+		assertFalse(b.hasRemaining());
+		sent++;
+		sink.close();
+		for (int i = 0; i < 100 && c.ended.getCount() > 0; i++) {
+			for (Runnable t = held.poll(); t != null; t = held.poll()) t.run();
+			Thread.sleep(10);
+		}
+		assertEquals(0, c.ended.getCount());
+		assertEquals(sent, c.of(pipe.source()).size());
+	}
+}
@@ -0,0 +1,210 @@
+/**
+ * Cohesion Framework - JSON Library
+ * Copyright (c) 2017 - Stewart Gebbie, Gethos. Licensed under the MIT licence.
+ * vim: set ts=4 sw=0:
+ */
+package net.gethos.cohesion.graphs.json;
+
+import static org.junit.Assert.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.StringReader;
+import java.nio.ByteBuffer;
+import java.nio.channels.IllegalBlockingModeException;
+import java.nio.channels.Pipe;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * @author {@literal Stewart Gebbie <sgebbie@gethos.net>}
+ *
+ */
+public class JSONStreamTest {
+
+	private static final String TEST_JSON =
+			"{\"a\":[1,2.5,{\"b\":\"}]\\\"[\"}],\"c\":null} [] {}\n"
+			+ "\"s\\\"t\" 12 -3.5e2 true false null\t[[[\"\u00e9\\u0041\"]]]\n"
+			+ "{\"d\":{\"e\":{\"f\":[true,{}]}}}";
+
+	private ExecutorService executor;
+
+	@Before
+	public void setUp() {
+		executor = Executors.newFixedThreadPool(3);
+	}
+
+	@After
+	public void tearDown() {
+		executor.shutdownNow();
+	}
+
+	private JSONStream parallel(JSONStream s, int ahead) {
+		s.setExecutor(executor, ahead);
+		return s;
+	}
+
+	@Test
+	public void parallel() {
+		List<JSONValue> expected = JSONStreams.values(new JSONStream(new StringReader(TEST_JSON)));
+		assertEquals(11, expected.size());
+		for (int ahead = 1; ahead <= 16; ahead *= 4) {
+			assertEquals(expected, JSONStreams.values(parallel(new JSONStream(new StringReader(TEST_JSON)), ahead)));
+			assertEquals(expected, JSONStreams.values(parallel(new JSONStream(new ByteArrayInputStream(TEST_JSON.getBytes(StandardCharsets.UTF_8))), ahead)));
+		}
+	}
+
+	@Test
+	public void large() {
+		StringBuilder json = new StringBuilder();
+		for (int i = 0; i < 2000; i++) {
+			json.append("{\"id\":").append(i).append(",\"tags\":[\"x\",\"y\"],\"score\":").append(i * 0.5).append("}\n");
+		}
+		JSONStream s = parallel(new JSONStream(new ByteArrayInputStream(json.toString().getBytes(StandardCharsets.UTF_8))), 64);
+		int i = 0;
+		for (JSONValue v = s.next(); v != null; v = s.next()) {
+			assertEquals(i++, v.asObject().get("id").asNumber().longValue());
+		}
+		assertEquals(2000, i);
+		assertNull(s.next());
+	}
+
+	@Test
+	public void projection() {
+		JSONStream s = parallel(new JSONStream(new StringReader("{\"a\":1,\"b\":2} {\"b\":3}")), 4);
+		s.setProjection(new JSONProjection("/b"));
+		assertEquals(JSON.parse("{\"b\":2}"), s.next());
+		assertEquals(JSON.parse("{\"b\":3}"), s.next());
+		assertNull(s.next());
+	}
+
+	@Test
+	public void errors() {
+		// the values before an error are returned, and the error is reported in its place
+		String[] bad = { "{} {\"a\":} []", "[1] {\"a\":1", "[] }", "1 2x 3" };
+		for (String json : bad) {
+			for (int k = 0; k < 2; k++) {
+				JSONStream s = k == 0 ? new JSONStream(new StringReader(json)) : new JSONStream(new ByteArrayInputStream(json.getBytes(StandardCharsets.UTF_8)));
+				parallel(s, 4);
+				assertNotNull(s.next());
+				try {
+					s.next();
+					fail(json);
+				} catch (JSONException e) {
+					// expected
+				}
+			}
+		}
+	}
+
+	@Test
+	public void rejected() {
+		// a value that the executor will not take is reported, rather than waited on forever
+		ExecutorService shut = Executors.newSingleThreadExecutor();
+		shut.shutdown();
+		JSONStream s = new JSONStream(new StringReader("[1] [2] [3]"));
+		s.setExecutor(shut, 2);
+		try {
+			s.next();
+			fail();
+		} catch (JSONException e) {
+			assertTrue(e.getCause() instanceof RejectedExecutionException);
+		}
+		try {
+			s.next();
+			fail();
+		} catch (JSONException e) {
+			assertTrue(e.getCause() instanceof RejectedExecutionException);
+		}
+	}
+
+	@Test
+	public void switching() {
+		JSONStream s = parallel(new JSONStream(new StringReader("1 2 3 4 5")), 2);
+		assertEquals(JSON.parse("1"), s.next());
+		try {
+			s.next(new JSONExtractor("/a"));
+			fail();
+		} catch (IllegalStateException e) {
+			// expected
+		}
+		// values already read ahead are returned before the stream goes back to building them in turn
+		s.setExecutor(null, 0);
+		assertEquals(JSON.parse("2"), s.next());
+		assertEquals(JSON.parse("3"), s.next());
+		assertEquals(JSON.parse("4"), s.next());
+		assertEquals(JSON.parse("5"), s.next());
+		assertNull(s.next());
+	}
+
+	/**
+	 * Hands out a few bytes at a time, as a socket might.
+	 */
+	private static class TrickleChannel implements ReadableByteChannel {
+		private final ByteBuffer bytes;
+		private boolean open = true;
+
+		TrickleChannel(byte[] bytes) {
+			this.bytes = ByteBuffer.wrap(bytes);
+		}
+
+		@Override
+		public int read(ByteBuffer dst) {
+			if (!bytes.hasRemaining()) return -1;
+			int n = Math.min(3, Math.min(bytes.remaining(), dst.remaining()));
+			for (int i = 0; i < n; i++) dst.put(bytes.get());
+			return n;
+		}
+
+		@Override
+		public boolean isOpen() {
+			return open;
+		}
+
+		@Override
+		public void close() {
+			open = false;
+		}
+	}
+
+	@Test
+	public void channel() {
+		List<JSONValue> expected = JSONStreams.values(new JSONStream(new StringReader(TEST_JSON)));
+		assertEquals(expected, JSONStreams.values(new JSONStream(new TrickleChannel(TEST_JSON.getBytes(StandardCharsets.UTF_8)))));
+
+		// a value larger than the stream's buffer
+		StringBuilder json = new StringBuilder("[");
+		for (int i = 0; i < 5000; i++) json.append(i == 0 ? "" : ",").append("\"v").append(i).append('"');
+		json.append("] 1");
+		expected = JSONStreams.values(new JSONStream(new StringReader(json.toString())));
+		assertEquals(expected, JSONStreams.values(new JSONStream(new TrickleChannel(json.toString().getBytes(StandardCharsets.UTF_8)))));
+	}
+
+	@Test
+	public void nonBlockingChannel() throws IOException {
+		Pipe pipe = Pipe.open();
+		try {
+			pipe.source().configureBlocking(false);
+			try {
+				new JSONStream(pipe.source());
+				fail();
+			} catch (IllegalBlockingModeException e) {
+				// expected
+			}
+			pipe.source().configureBlocking(true);
+			pipe.sink().write(ByteBuffer.wrap("[1] 2".getBytes(StandardCharsets.UTF_8)));
+			pipe.sink().close();
+			assertEquals(2, JSONStreams.values(new JSONStream(pipe.source())).size());
+		} finally {
+			pipe.source().close();
+		}
+	}
+}
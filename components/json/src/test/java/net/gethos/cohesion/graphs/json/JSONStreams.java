@@ -0,0 +1,30 @@
+/**
+ * Cohesion Framework - JSON Library
+ * Copyright (c) 2017 - Stewart Gebbie, Gethos. Licensed under the MIT licence.
+ * vim: set ts=4 sw=0:
+ */
+package net.gethos.cohesion.graphs.json;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Helpers shared by the tests that read from a {@link JSONStream}.
+ *
+ * @author {@literal Stewart Gebbie <sgebbie@gethos.net>}
+ *
+ */
+final class JSONStreams {
+
+	private JSONStreams() {
+	}
+
+	/**
+	 * @return all the values remaining in the stream, in order
+	 */
+	static List<JSONValue> values(JSONStream s) {
+		List<JSONValue> values = new ArrayList<JSONValue>();
+		for (JSONValue v : s) values.add(v);
+		return values;
+	}
+}
@@ -47,4 +47,52 @@ public class JSONStringTest {
 		String unescaped = JSONString.unescape(stuff);
 		assertSame(stuff,unescaped);
 	}
+
+	@Test
+	public void escapeControl() {
+		assertEquals("a\\u0000b\\u001f\\u0001\\b\\f\\r\\\\\\\"/\u007f", JSONString.escape("a\u0000b\u001f\u0001\b\f\r\\\"/\u007f"));
+		assertEquals("\\u0000", JSONString.escape("\u0000"));
+		String s = "\u0002x\u00e9\n";
+		assertEquals(s, JSONString.unescape(JSONString.escape(s)));
+		assertEquals(new JSONString(s), JSON.parse(new JSONString(s).toString()));
+	}
+
+	@Test
+	public void escapeHeavy() {
+		StringBuilder json = new StringBuilder();
+		StringBuilder expected = new StringBuilder();
+		for (int i = 0; i < 20000; i++) {
+			json.append("{\"a\":\"b\"}\n");
+			expected.append("{\\\"a\\\":\\\"b\\\"}\\n");
+		}
+		assertEquals(expected.toString(), JSONString.escape(json.toString()));
+	}
+
+	@Test
+	public void unescapeCodes() {
+		assertEquals("\ud83d\ude00 \u00e9\u00e9/", JSONString.unescape("\\ud83d\\uDE00 \\u00e9\\u00E9\\/"));
+		assertEquals("oon", JSONString.unescape("moon", 1, 4));
+		assertEquals("oo", JSONString.unescape("moo\\n", 1, 3));
+		assertEquals("a\n", JSONString.unescape("[a\\n]\\q", 1, 4));
+		assertEquals("\"a\"", JSON.parse("\"\\\"\\u0061\\\"\"").asString().value);
+		for (String bad : new String[] {"\\u12", "\\u12g4", "x\\", "\\q"}) {
+			try {
+				JSONString.unescape(bad);
+				fail(bad);
+			} catch (JSONException e) {
+				// expected
+			}
+		}
+	}
+
+	@Test
+	public void unescapeHeavy() {
+		StringBuilder escaped = new StringBuilder();
+		StringBuilder expected = new StringBuilder();
+		for (int i = 0; i < 20000; i++) {
+			escaped.append("\\\"a\\\":\\u0062\\n");
+			expected.append("\"a\":b\n");
+		}
+		assertEquals(expected.toString(), JSONString.unescape(escaped.toString()));
+	}
 }
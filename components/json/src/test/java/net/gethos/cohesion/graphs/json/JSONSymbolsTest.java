@@ -0,0 +1,125 @@
+/**
+ * Cohesion Framework - JSON Library
+ * Copyright (c) 2017 - Stewart Gebbie, Gethos. Licensed under the MIT licence.
+ * vim: set ts=4 sw=0:
+ */
+package net.gethos.cohesion.graphs.json;
+
+import static org.junit.Assert.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.StringReader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+
+import org.junit.Test;
+
+/**
+ * @author {@literal Stewart Gebbie <sgebbie@gethos.net>}
+ *
+ */
+public class JSONSymbolsTest {
+
+	private static final String TEST_JSON = "{\"status\":\"OK\",\"caf\\u00e9\":1,\"esc\\\"aped\":2,\"caf\u00e9\":3} {\"status\":\"OK\",\"caf\\u00e9\":4,\"esc\\\"aped\":5,\"caf\u00e9\":6}";
+
+	private static String key(JSONValue v, String name) {
+		for (String m : v.asObject().members()) if (m.equals(name)) return m;
+		return null;
+	}
+
+	private static void assertShared(List<JSONValue> values) {
+		assertEquals(2, values.size());
+		JSONValue a = values.get(0);
+		JSONValue b = values.get(1);
+		assertEquals(JSON.parse("{\"status\":\"OK\",\"caf\u00e9\":3,\"esc\\\"aped\":2}"), a);
+		assertSame(key(a, "status"), key(b, "status"));
+		assertSame(key(a, "caf\u00e9"), key(b, "caf\u00e9"));
+		assertSame(key(a, "esc\"aped"), key(b, "esc\"aped"));
+	}
+
+	@Test
+	public void streamNames() {
+		assertShared(JSONStreams.values(new JSONStream(new StringReader(TEST_JSON))));
+		assertShared(JSONStreams.values(new JSONStream(new ByteArrayInputStream(TEST_JSON.getBytes(StandardCharsets.UTF_8)))));
+	}
+
+	@Test
+	public void staticParseNames() {
+		JSONValue a = JSON.parse("{\"shared\":1}");
+		JSONValue b = JSON.parse("{\"shared\":2}");
+		assertSame(key(a, "shared"), key(b, "shared"));
+		JSONValue c = JSON.parse("{\"shared\":3}".getBytes(StandardCharsets.UTF_8));
+		assertSame(key(a, "shared"), key(c, "shared"));
+	}
+
+	@Test
+	public void values() {
+		JSONStream s = new JSONStream(new StringReader(TEST_JSON));
+		s.setSymbols(new JSONSymbols(64, true));
+		List<JSONValue> values = JSONStreams.values(s);
+		assertSame(values.get(0).asObject().get("status").asString().value, values.get(1).asObject().get("status").asString().value);
+
+		// by default, only names are cached
+		values = JSONStreams.values(new JSONStream(new StringReader(TEST_JSON)));
+		assertNotSame(values.get(0).asObject().get("status").asString().value, values.get(1).asObject().get("status").asString().value);
+	}
+
+	@Test
+	public void disabled() {
+		JSONStream s = new JSONStream(new StringReader(TEST_JSON));
+		s.setSymbols(null);
+		List<JSONValue> values = JSONStreams.values(s);
+		assertNotSame(key(values.get(0), "status"), key(values.get(1), "status"));
+		assertEquals(values.get(0).asObject().members(), values.get(1).asObject().members());
+	}
+
+	@Test
+	public void collisionsAndLongNames() {
+		// a tiny table, so that names keep evicting each other
+		JSONSymbols symbols = new JSONSymbols(2, false);
+		StringBuilder text = new StringBuilder();
+		StringBuilder longName = new StringBuilder();
+		for (int i = 0; i < JSONSymbols.MAX_LENGTH + 1; i++) longName.append('x');
+		for (int i = 0; i < 100; i++) {
+			text.append("{\"a").append(i % 7).append("\":").append(i).append(",\"").append(longName).append("\":true}");
+		}
+		JSONStream s = new JSONStream(new ByteArrayInputStream(text.toString().getBytes(StandardCharsets.UTF_8)));
+		s.setSymbols(symbols);
+		Iterator<JSONValue> i = s.iterator();
+		for (int n = 0; n < 100; n++) {
+			JSONObject x = i.next().asObject();
+			assertEquals(new JSONNumber(n), x.get("a" + (n % 7)));
+			assertEquals(JSONBoolean.JSON_TRUE, x.get(longName.toString()));
+			assertEquals(2, x.size());
+		}
+		assertFalse(i.hasNext());
+	}
+
+	@Test
+	public void reader() {
+		JSONReader r = new JSONReader(TEST_JSON);
+		r.setSymbols(new JSONSymbols(64, true));
+		List<String> names = new ArrayList<String>();
+		List<String> strings = new ArrayList<String>();
+		for (JSONToken t = r.nextToken(); t != null; t = r.nextToken()) {
+			if (t == JSONToken.NAME) names.add(r.currentName());
+			if (t == JSONToken.STRING) strings.add(r.getString());
+		}
+		assertEquals(8, names.size());
+		assertSame(names.get(0), names.get(4));
+		assertSame(names.get(2), names.get(6));
+		assertSame(strings.get(0), strings.get(1));
+	}
+
+	@Test
+	public void intern() {
+		JSONSymbols symbols = new JSONSymbols();
+		String a = new String("key");
+		String b = new String("key");
+		assertSame(a, symbols.intern(a));
+		assertSame(a, symbols.intern(b));
+		assertNull(symbols.intern(null));
+	}
+}
@@ -48,9 +48,11 @@ public class JSONTest {
 		x.put("myNumber", new JSONNumber(11.23));
 		x.put("myArray", myArray);
 		
-		String json = x.toString();
+		// members are kept in insertion order, so ask for them sorted
+		String json = x.toSortedString();
 //		System.out.println(json);
 		assertEquals(TEST_JSON,json);
+		assertEquals(JSON.parse(TEST_JSON),JSON.parse(x.toString()));
 	}
 	
 	@Test
@@ -130,7 +132,7 @@ public class JSONTest {
 			assertNotNull(x);
 			assertTrue(x.isNumber());
 			JSONNumber n = x.asNumber();
-			assertEquals(y++, n.value.intValue());
+			assertEquals(y++, n.value().intValue());
 		}
 	}
 	
@@ -153,7 +155,7 @@ public class JSONTest {
 		JSONNumber n = v.asNumber();
 		
 //		System.out.printf("%s%n",n.value);
-		double nn = n.value.doubleValue();
+		double nn = n.value().doubleValue();
 		assertEquals(-1134.5,nn,0.0001);
 	}
 	
@@ -199,6 +201,42 @@ public class JSONTest {
 		}
 	}
 	
+	@Test
+	public void parseGraphStreamSplitReads() {
+
+		String corpus = TEST_JSON_WHITESPACE + "true false null -12.5e3 \"a\\\"b\" " + TEST_JSON;
+
+		// hand out a single character per read, so that every token is split across refills
+		StringReader r = new StringReader(corpus) {
+			@Override
+			public int read(char[] cbuf, int off, int len) throws java.io.IOException {
+				return super.read(cbuf, off, len == 0 ? 0 : 1);
+			}
+		};
+		JSONStream s = new JSONStream(r);
+		List<JSONValue> values = new ArrayList<JSONValue>();
+		for (JSONValue v : s) values.add(v);
+
+		assertEquals(7, values.size());
+		assertEquals(TEST_JSON, values.get(0).toString());
+		assertEquals(JSONBoolean.JSON_TRUE, values.get(1));
+		assertEquals(JSONBoolean.JSON_FALSE, values.get(2));
+		assertTrue(values.get(3).isNull());
+		assertEquals(-12500, values.get(4).asNumber().value().intValue());
+		assertEquals("a\"b", values.get(5).asString().value);
+		assertEquals(TEST_JSON, values.get(6).toString());
+	}
+
+	@Test
+	public void parseLongStringFromStream() {
+		StringBuilder x = new StringBuilder();
+		for (int i = 0; i < 20000; i++) x.append((char)('a' + i % 26));
+		JSONStream s = new JSONStream(new StringReader("[\"" + x + "\\n\"] " + x.length()));
+		assertEquals(x + "\n", s.next().asArray().get(0).asString().value);
+		assertEquals(x.length(), s.next().asNumber().value().intValue());
+		assertNull(s.next());
+	}
+
 	@Test
 	public void arrayCardinality() {
 		JSONArray a = createTestArray();
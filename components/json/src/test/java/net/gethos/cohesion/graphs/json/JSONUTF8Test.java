@@ -0,0 +1,79 @@
+/**
+ * Cohesion Framework - JSON Library
+ * Copyright (c) 2017 - Stewart Gebbie, Gethos. Licensed under the MIT licence.
+ * vim: set ts=4 sw=0:
+ */
+package net.gethos.cohesion.graphs.json;
+
+import static org.junit.Assert.*;
+
+import java.io.ByteArrayInputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+import org.junit.Test;
+
+/**
+ * @author {@literal Stewart Gebbie <sgebbie@gethos.net>}
+ *
+ */
+public class JSONUTF8Test {
+
+	private static final String TEST_JSON = "{\"caf\u00e9\":[\"\u20ac 10\",\"\ud83d\ude00\",\"tab\\there\"],\"ascii\":\"plain\",\"n\":-1.5e2,\"t\":true,\"f\":false,\"z\":null}";
+
+	@Test
+	public void parseBytes() {
+		byte[] b = TEST_JSON.getBytes(StandardCharsets.UTF_8);
+		JSONValue v = JSON.parse(b);
+		assertEquals(JSON.parse(TEST_JSON), v);
+		assertEquals("\u20ac 10", v.asObject().get("caf\u00e9").asArray().get(0).asString().value);
+		assertEquals("\ud83d\ude00", v.asObject().get("caf\u00e9").asArray().get(1).asString().value);
+		assertEquals("tab\there", v.asObject().get("caf\u00e9").asArray().get(2).asString().value);
+	}
+
+	@Test
+	public void parseByteRange() {
+		byte[] b = ("junk" + TEST_JSON + "junk").getBytes(StandardCharsets.UTF_8);
+		int to = b.length - 4;
+		assertEquals(JSON.parse(TEST_JSON), JSON.parse(b, 4, to));
+	}
+
+	@Test
+	public void parseDirectByteBuffer() {
+		byte[] b = TEST_JSON.getBytes(StandardCharsets.UTF_8);
+		ByteBuffer x = ByteBuffer.allocateDirect(b.length);
+		x.put(b).flip();
+		assertEquals(JSON.parse(TEST_JSON), JSON.parse(x));
+		assertEquals(0, x.position());
+		assertEquals(b.length, x.limit());
+	}
+
+	@Test
+	public void malformed() {
+		byte[] b = new byte[] { '"', 'a', (byte)0xc3, '"' };
+		assertEquals("a\ufffd", JSON.parse(b).asString().value);
+	}
+
+	@Test
+	public void stream() {
+		String corpus = " " + TEST_JSON + "\n" + TEST_JSON + " 42 \"\u00e9\"";
+		byte[] b = corpus.getBytes(StandardCharsets.UTF_8);
+
+		// hand out a single byte per read, so that every token and character is split across refills
+		ByteArrayInputStream in = new ByteArrayInputStream(b) {
+			@Override
+			public synchronized int read(byte[] x, int off, int len) {
+				return super.read(x, off, len == 0 ? 0 : 1);
+			}
+		};
+
+		List<JSONValue> values = JSONStreams.values(new JSONStream(in));
+
+		assertEquals(4, values.size());
+		assertEquals(JSON.parse(TEST_JSON), values.get(0));
+		assertEquals(JSON.parse(TEST_JSON), values.get(1));
+		assertEquals(new JSONNumber(42), values.get(2));
+		assertEquals(new JSONString("\u00e9"), values.get(3));
+	}
+}
@@ -0,0 +1,136 @@
+/**
+ * Cohesion Framework - JSON Library
+ * Copyright (c) 2017 - Stewart Gebbie, Gethos. Licensed under the MIT licence.
+ * vim: set ts=4 sw=0:
+ */
+package net.gethos.cohesion.graphs.json;
+
+import static org.junit.Assert.*;
+
+import java.nio.charset.StandardCharsets;
+
+import org.junit.Test;
+
+/**
+ * @author {@literal Stewart Gebbie <sgebbie@gethos.net>}
+ *
+ */
+public class JSONUtilsTest {
+
+	private static final String[] RAGGED = {
+		"[[1,2],[3]]",
+		"[[1,2],[3,4,5]]",
+		"[[1,2],3]",
+		"[1,[2]]",
+		"[[1,\"2\"]]",
+		"[[[1]],[[2],[3]]]",
+		"[[1],null]",
+	};
+
+	@Test
+	public void arrays() {
+		assertArrayEquals(new double[] { 1, 2.5, -3 }, JSONUtils.toDoubleArray(JSON.parse("[1,2.5,-3]")), 0);
+		assertArrayEquals(new double[] { 1, 2.5 }, JSONUtils.toDoubleArray(JSON.parse("[1,2.5]".getBytes(StandardCharsets.UTF_8))), 0);
+		assertArrayEquals(new double[0], JSONUtils.toDoubleArray(JSON.parse("[]")), 0);
+		assertArrayEquals(new long[] { 1, -2, Long.MAX_VALUE }, JSONUtils.toLongArray(JSON.parse("[1,-2,9223372036854775807]")));
+		assertArrayEquals(new long[] { 1, 20, 3 }, JSONUtils.toLongArray(JSON.parse("[1.0,2e1,3]")));
+		for (String json : new String[] { "[1,2.5]", "[1,\"2\"]", "[9223372036854775808]", "{}", "[[1]]" }) {
+			try {
+				JSONUtils.toLongArray(JSON.parse(json));
+				fail(json);
+			} catch (JSONException e) {
+				// expected
+			}
+		}
+	}
+
+	@Test
+	public void matrix() {
+		double[][] m = JSONUtils.toDoubleMatrix(JSON.parse("[[1,2,3],[4,5,6.5]]"));
+		assertEquals(2, m.length);
+		assertArrayEquals(new double[] { 1, 2, 3 }, m[0], 0);
+		assertArrayEquals(new double[] { 4, 5, 6.5 }, m[1], 0);
+		try {
+			JSONUtils.toDoubleMatrix(JSON.parse("[[1,2],[3]]"));
+			fail();
+		} catch (JSONException e) {
+			// expected
+		}
+	}
+
+	@Test
+	public void tensor() {
+		JSONUtils.JSONTensor t = JSONUtils.toTensor(JSON.parse("[[[1,2],[3,4],[5,6]],[[7,8],[9,10],[11,12.5]]]"));
+		assertArrayEquals(new int[] { 2, 3, 2 }, t.shape);
+		assertArrayEquals(new double[] { 1, 2, 3, 4, 5, 6, 7, 8, 9, 10, 11, 12.5 }, t.values, 0);
+
+		t = JSONUtils.toTensor(JSON.parse("[[],[]]"));
+		assertArrayEquals(new int[] { 2, 0 }, t.shape);
+		assertEquals(0, t.values.length);
+
+		for (String json : RAGGED) {
+			try {
+				JSONUtils.toTensor(JSON.parse(json));
+				fail(json);
+			} catch (JSONException e) {
+				// expected
+			}
+		}
+	}
+
+	@Test
+	public void readDoubles() {
+		JSONReader r = new JSONReader("[[1,2,3],[4,5,6]] [] [[[0.5]]] [[],[]] 7");
+		double[] buffer = new double[6];
+
+		r.nextToken();
+		assertArrayEquals(new int[] { 2, 3 }, JSONUtils.readDoubles(r, buffer));
+		assertArrayEquals(new double[] { 1, 2, 3, 4, 5, 6 }, buffer, 0);
+		assertEquals(JSONToken.END_ARRAY, r.currentToken());
+
+		r.nextToken();
+		assertArrayEquals(new int[] { 0 }, JSONUtils.readDoubles(r, buffer));
+		r.nextToken();
+		assertArrayEquals(new int[] { 1, 1, 1 }, JSONUtils.readDoubles(r, buffer));
+		assertEquals(0.5, buffer[0], 0);
+		r.nextToken();
+		assertArrayEquals(new int[] { 2, 0 }, JSONUtils.readDoubles(r, buffer));
+
+		r.nextToken();
+		try {
+			JSONUtils.readDoubles(r, buffer);
+			fail();
+		} catch (JSONException e) {
+			// expected, not an array
+		}
+
+		for (String json : RAGGED) {
+			r = new JSONReader(json);
+			r.nextToken();
+			try {
+				JSONUtils.readDoubles(r, buffer);
+				fail(json);
+			} catch (JSONException e) {
+				// expected
+			}
+		}
+
+		r = new JSONReader("[1,2,3,4,5,6,7]");
+		r.nextToken();
+		try {
+			JSONUtils.readDoubles(r, buffer);
+			fail();
+		} catch (JSONException e) {
+			// expected, too large for the buffer
+		}
+	}
+
+	@Test
+	public void specification() {
+		assertArrayEquals(new int[] { 2, 3 }, JSONUtils.getCardinality(JSON.parse("[[1,2,3],[4,5,6]]")));
+		assertEquals(JSONType.NUMBER, JSONUtils.getElementType(JSON.parse("[[1,2,3],[4,5,6]]")));
+		JSONArray padded = new JSONArray();
+		padded.set(1, new JSONNumber(1));
+		assertEquals(1, JSONUtils.getDimensions(padded));
+	}
+}
@@ -0,0 +1,120 @@
+/**
+ * Cohesion Framework - JSON Library
+ * Copyright (c) 2017 - Stewart Gebbie, Gethos. Licensed under the MIT licence.
+ * vim: set ts=4 sw=0:
+ */
+package net.gethos.cohesion.graphs.json;
+
+import static org.junit.Assert.*;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+import org.junit.Test;
+
+/**
+ * @author {@literal Stewart Gebbie <sgebbie@gethos.net>}
+ *
+ */
+public class JSONWriterTest {
+
+	private static final String TEST_JSON = "{\"myArray\":[\"hello\",null,\"world\"],\"myBoolean\":true,\"myNull\":null,\"myNumber\":11.23,\"myText\":\"hello\\nworld\\\"\\\\\\t\u00e9\"}";
+
+	@Test
+	public void tokens() throws IOException {
+		StringWriter s = new StringWriter();
+		JSONWriter w = new JSONWriter(s);
+		w.beginObject();
+		w.name("id").value(1234567890123L);
+		w.name("min").value(Long.MIN_VALUE);
+		w.name("neg").value(-7);
+		w.name("price").value(-11.5);
+		w.name("big").value(new BigDecimal("1.50"));
+		w.name("tags").beginArray().value("a").value("b\"").nullValue().endArray();
+		w.name("empty").beginObject().endObject();
+		w.name("ok").value(true);
+		w.endObject();
+		w.flush();
+		assertEquals("{\"id\":1234567890123,\"min\":-9223372036854775808,\"neg\":-7,\"price\":-11.5,\"big\":1.50,\"tags\":[\"a\",\"b\\\"\",null],\"empty\":{},\"ok\":true}", s.toString());
+	}
+
+	@Test
+	public void writeToMatchesToString() throws IOException {
+		JSONValue v = JSON.parse(TEST_JSON);
+		StringWriter s = new StringWriter();
+		v.writeTo(s);
+		assertEquals(v.toString(), s.toString());
+		assertEquals(TEST_JSON, s.toString());
+	}
+
+	@Test
+	public void writeToOutputStream() throws IOException {
+		JSONValue v = JSON.parse(TEST_JSON);
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		v.writeTo(out);
+		assertArrayEquals(TEST_JSON.getBytes(StandardCharsets.UTF_8), out.toByteArray());
+	}
+
+	@Test
+	public void largerThanBuffer() throws IOException {
+		StringBuilder text = new StringBuilder();
+		for (int i = 0; i < 20000; i++) text.append(i % 13 == 0 ? '\n' : i % 17 == 0 ? '\u0001' : (char)('a' + i % 26));
+		JSONArray a = new JSONArray();
+		for (int i = 0; i < 100; i++) a.add(text.toString(), null).add(new JSONNumber(i));
+		StringWriter s = new StringWriter();
+		a.writeTo(s);
+		assertEquals(a.toString(), s.toString());
+		assertEquals(a, JSON.parse(s.toString()));
+	}
+
+	@Test
+	public void topLevelValues() throws IOException {
+		StringWriter s = new StringWriter();
+		JSONWriter w = new JSONWriter(s);
+		w.value(JSON.parse(TEST_JSON));
+		w.value(12);
+		w.beginArray().endArray();
+		w.close();
+
+		List<JSONValue> values = JSONStreams.values(new JSONStream(new StringReader(s.toString())));
+		assertEquals(3, values.size());
+		assertEquals(JSON.parse(TEST_JSON), values.get(0));
+		assertEquals(new JSONNumber(12), values.get(1));
+		assertEquals(new JSONArray(), values.get(2));
+	}
+
+	@Test
+	public void misuse() throws IOException {
+		JSONWriter w = new JSONWriter(new StringWriter());
+		w.beginObject();
+		try {
+			w.value(1);
+			fail("value without a name");
+		} catch (JSONException e) {
+			// expected
+		}
+		try {
+			w.endArray();
+			fail("mismatched end");
+		} catch (JSONException e) {
+			// expected
+		}
+		try {
+			w.value(Double.NaN);
+			fail("not finite");
+		} catch (JSONException e) {
+			// expected
+		}
+		try {
+			w.close();
+			fail("incomplete");
+		} catch (JSONException e) {
+			// expected
+		}
+	}
+}